@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -36,12 +37,12 @@ public class DefaultJavaReflector implements JavaReflector {
 	private static final DefaultJavaReflector INSTANCE = new DefaultJavaReflector();
 	private static final Object JAVA_FUNCTION_TYPE = new Object();
 	private static final Object[] EMPTY_ARGUMENTS = new Object[0];
+	private static final int INLINE_DISPATCH_LIMIT = 4;
 
 	// -- State
 	private Map<Class<?>, Map<String, Accessor>> accessors = new HashMap<Class<?>, Map<String, Accessor>>();
 	private ReadWriteLock accessorLock = new ReentrantReadWriteLock();
-	private Map<LuaCallSignature, Invocable> invocableDispatches = new HashMap<LuaCallSignature, Invocable>();
-	private ReadWriteLock invocableDispatchLock = new ReentrantReadWriteLock();
+	private ConcurrentHashMap<LuaCallSignature, Invocable> invocableDispatches = new ConcurrentHashMap<LuaCallSignature, Invocable>();
 	private JavaFunction index = new Index();
 	private JavaFunction newIndex = new NewIndex();
 	private JavaFunction equal = new Equal();
@@ -672,6 +673,12 @@ public class DefaultJavaReflector implements JavaReflector {
 		// -- State
 		private Class<?> clazz;
 		private List<Invocable> invocables;
+		/**
+		 * Dispatches of recent call signatures, copied on write, or
+		 * <code>null</code> once more signatures than
+		 * <code>INLINE_DISPATCH_LIMIT</code> have been seen.
+		 */
+		private volatile InlineDispatch[] inlineDispatches = new InlineDispatch[0];
 
 		// -- Construction
 		/**
@@ -750,26 +757,21 @@ public class DefaultJavaReflector implements JavaReflector {
 			}
 
 			// Invocable dispatch
-			LuaCallSignature luaCallSignature = getLuaCallSignature(luaState);
-			Invocable invocable;
-			invocableDispatchLock.readLock().lock();
-			try {
-				invocable = invocableDispatches.get(luaCallSignature);
-			} finally {
-				invocableDispatchLock.readLock().unlock();
-			}
+			boolean staticDispatch = object == null;
+			Invocable invocable = getInlineDispatch(luaState, staticDispatch);
 			if (invocable == null) {
-				invocable = dispatchInvocable(luaState, object == null);
-				invocableDispatchLock.writeLock().lock();
-				try {
-					if (!invocableDispatches.containsKey(luaCallSignature)) {
-						invocableDispatches.put(luaCallSignature, invocable);
-					} else {
-						invocable = invocableDispatches.get(luaCallSignature);
+				LuaCallSignature luaCallSignature = getLuaCallSignature(
+						luaState, staticDispatch);
+				invocable = invocableDispatches.get(luaCallSignature);
+				if (invocable == null) {
+					invocable = dispatchInvocable(luaState, staticDispatch);
+					Invocable existing = invocableDispatches.putIfAbsent(
+							luaCallSignature, invocable);
+					if (existing != null) {
+						invocable = existing;
 					}
-				} finally {
-					invocableDispatchLock.writeLock().unlock();
 				}
+				addInlineDispatch(luaCallSignature, invocable);
 			}
 
 			// Prepare arguments
@@ -820,36 +822,98 @@ public class DefaultJavaReflector implements JavaReflector {
 		}
 
 		// -- Private methods
+		/**
+		 * Returns the invocable dispatched for the arguments on the stack by
+		 * a recent call, or <code>null</code> if there is none. Arguments are
+		 * compared with all recent call signatures at once, without
+		 * allocating.
+		 */
+		private Invocable getInlineDispatch(LuaState luaState,
+				boolean staticDispatch) {
+			InlineDispatch[] dispatches = inlineDispatches;
+			if (dispatches == null) {
+				return null;
+			}
+			int argCount = luaState.getTop() - 1;
+			int candidates = 0;
+			for (int i = 0; i < dispatches.length; i++) {
+				if (dispatches[i].staticDispatch == staticDispatch
+						&& dispatches[i].types.length == argCount) {
+					candidates |= 1 << i;
+				}
+			}
+			for (int j = 0; j < argCount && candidates != 0; j++) {
+				Object type = getType(luaState, j + 2);
+				for (int i = 0; i < dispatches.length; i++) {
+					if ((candidates & 1 << i) != 0
+							&& dispatches[i].types[j] != type) {
+						candidates &= ~(1 << i);
+					}
+				}
+			}
+			if (candidates == 0) {
+				return null;
+			}
+			return dispatches[Integer.numberOfTrailingZeros(candidates)].invocable;
+		}
+
+		/**
+		 * Records the invocable dispatched for a call signature. Once more
+		 * signatures than <code>INLINE_DISPATCH_LIMIT</code> have been seen,
+		 * calls are only dispatched through the shared dispatches.
+		 */
+		private synchronized void addInlineDispatch(
+				LuaCallSignature luaCallSignature, Invocable invocable) {
+			InlineDispatch[] dispatches = inlineDispatches;
+			if (dispatches == null) {
+				return;
+			}
+			if (dispatches.length == INLINE_DISPATCH_LIMIT) {
+				inlineDispatches = null;
+				return;
+			}
+			InlineDispatch[] updated = Arrays.copyOf(dispatches,
+					dispatches.length + 1);
+			updated[dispatches.length] = new InlineDispatch(luaCallSignature,
+					invocable);
+			inlineDispatches = updated;
+		}
+
 		/**
 		 * Creates a Lua call signature.
 		 */
-		private LuaCallSignature getLuaCallSignature(LuaState luaState) {
+		private LuaCallSignature getLuaCallSignature(LuaState luaState,
+				boolean staticDispatch) {
 			int argCount = luaState.getTop() - 1;
 			Object[] types = new Object[argCount];
 			for (int i = 0; i < argCount; i++) {
-				LuaType type = luaState.type(i + 2);
-				switch (type) {
-				case FUNCTION:
-					types[i] = luaState.isJavaFunction(i + 2) ? JAVA_FUNCTION_TYPE
-							: LuaType.FUNCTION;
-					break;
-				case USERDATA:
-					if (luaState.isJavaObjectRaw(i + 2)) {
-						Object object = luaState.toJavaObjectRaw(i + 2);
-						if (object instanceof TypedJavaObject) {
-							types[i] = ((TypedJavaObject) object).getType();
-						} else {
-							types[i] = object.getClass();
-						}
-					} else {
-						types[i] = LuaType.USERDATA;
+				types[i] = getType(luaState, i + 2);
+			}
+			return new LuaCallSignature(clazz, getName(), staticDispatch,
+					types);
+		}
+
+		/**
+		 * Returns the type of a Lua value as part of a call signature.
+		 */
+		private Object getType(LuaState luaState, int index) {
+			LuaType type = luaState.type(index);
+			switch (type) {
+			case FUNCTION:
+				return luaState.isJavaFunction(index) ? JAVA_FUNCTION_TYPE
+						: LuaType.FUNCTION;
+			case USERDATA:
+				if (luaState.isJavaObjectRaw(index)) {
+					Object object = luaState.toJavaObjectRaw(index);
+					if (object instanceof TypedJavaObject) {
+						return ((TypedJavaObject) object).getType();
 					}
-					break;
-				default:
-					types[i] = type;
+					return object.getClass();
 				}
+				return LuaType.USERDATA;
+			default:
+				return type;
 			}
-			return new LuaCallSignature(clazz, getName(), types);
 		}
 
 		/**
@@ -1359,6 +1423,7 @@ public class DefaultJavaReflector implements JavaReflector {
 		// -- State
 		private Class<?> clazz;
 		private String invocableName;
+		private boolean staticDispatch;
 		private Object[] types;
 		private int hashCode;
 
@@ -1367,12 +1432,14 @@ public class DefaultJavaReflector implements JavaReflector {
 		 * Creates a new instance.
 		 */
 		public LuaCallSignature(Class<?> clazz, String invocableName,
-				Object[] types) {
+				boolean staticDispatch, Object[] types) {
 			this.clazz = clazz;
 			this.invocableName = invocableName;
+			this.staticDispatch = staticDispatch;
 			this.types = types;
 			hashCode = clazz.hashCode();
 			hashCode = hashCode * 65599 + invocableName.hashCode();
+			hashCode = hashCode * 65599 + (staticDispatch ? 1 : 0);
 			for (int i = 0; i < types.length; i++) {
 				hashCode = hashCode * 65599 + types[i].hashCode();
 			}
@@ -1394,6 +1461,7 @@ public class DefaultJavaReflector implements JavaReflector {
 			LuaCallSignature other = (LuaCallSignature) obj;
 			if (clazz != other.clazz
 					|| !invocableName.equals(other.invocableName)
+					|| staticDispatch != other.staticDispatch
 					|| types.length != other.types.length) {
 				return false;
 			}
@@ -1411,4 +1479,26 @@ public class DefaultJavaReflector implements JavaReflector {
 					+ Arrays.asList(types) + ")";
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Invocable dispatched for a call signature, as recorded by an invocable
+	 * accessor.
+	 */
+	private static class InlineDispatch {
+		// -- State
+		private boolean staticDispatch;
+		private Object[] types;
+		private Invocable invocable;
+
+		// -- Construction
+		/**
+		 * Creates a new instance.
+		 */
+		public InlineDispatch(LuaCallSignature luaCallSignature,
+				Invocable invocable) {
+			staticDispatch = luaCallSignature.staticDispatch;
+			types = luaCallSignature.types;
+			this.invocable = invocable;
+		}
+	}
+}
@@ -24,6 +24,7 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -83,6 +84,15 @@ import com.naef.jnlua.JavaReflector.Metamethod;
  * fails</td>
  * </tr>
  * </table>
+ * 
+ * <p>
+ * By default, each method locks this Lua state and releases Lua values of
+ * collected proxies, so a Lua state can be shared among threads. A Lua state
+ * used by a single thread can be bound to it with {@link #setOwner(Thread)}:
+ * frequent stack operations then neither lock nor check this Lua state, Lua
+ * values of collected proxies are released in batches when a function is
+ * called or a chunk is loaded, and other threads can not use it anymore.
+ * </p>
  */
 public class LuaState {
 	// -- Static
@@ -176,6 +186,12 @@ public class LuaState {
 	 */
 	private ReferenceQueue<LuaValueProxyImpl> proxyQueue = new ReferenceQueue<LuaValueProxyImpl>();
 
+	/**
+	 * The only thread using this Lua state, <code>null</code> when it may be
+	 * used by any thread.
+	 */
+	private volatile Thread owner;
+
 	// -- Construction
 	/**
 	 * Creates a new instance. The class loader of this Lua state is set to the
@@ -379,6 +395,50 @@ public class LuaState {
 		closeInternal();
 	}
 
+	/**
+	 * Binds this Lua state to a thread, or makes it usable by any thread
+	 * again.
+	 * 
+	 * <p>
+	 * While a Lua state is bound, the stack operations used most often, such as
+	 * pushing, testing, converting and checking values, are performed without
+	 * locking this Lua state. Lua values of collected proxies are released when
+	 * a function is called or a chunk is loaded rather than by each operation.
+	 * Other threads using this Lua state get an {@link IllegalStateException}.
+	 * </p>
+	 * 
+	 * <p>
+	 * The method may be invoked on a closed Lua state. It must be invoked by
+	 * the current owner, if any.
+	 * </p>
+	 * 
+	 * @param owner
+	 *            the only thread using this Lua state, or <code>null</code> to
+	 *            let any thread use it
+	 */
+	public synchronized void setOwner(Thread owner) {
+		checkOwner();
+		this.owner = owner;
+		if (isOpenInternal()) {
+			releaseProxies();
+		}
+	}
+
+	/**
+	 * Returns the thread this Lua state is bound to.
+	 * 
+	 * <p>
+	 * The method may be invoked on a closed Lua state.
+	 * </p>
+	 * 
+	 * @return the only thread using this Lua state, or <code>null</code> if
+	 *         any thread may use it
+	 * @see #setOwner(Thread)
+	 */
+	public Thread getOwner() {
+		return owner;
+	}
+
 	/**
 	 * Performs a garbage collection operation.
 	 * 
@@ -501,6 +561,7 @@ public class LuaState {
 			throw new NullPointerException();
 		}
 		check();
+		releaseOwnedProxies();
 		lua_load(inputStream, "=" + chunkName);
 	}
 
@@ -521,6 +582,31 @@ public class LuaState {
 		}
 	}
 
+	/**
+	 * Loads a Lua chunk from a byte buffer and pushes it on the stack as a
+	 * function. The Lua chunk must be either a UTF-8 encoded source chunk or a
+	 * pre-compiled binary chunk.
+	 * 
+	 * <p>
+	 * The bytes between the position and the limit of the buffer are passed to
+	 * Lua in blocks, without decoding them to a Java string. The position of
+	 * the buffer is not changed.
+	 * </p>
+	 * 
+	 * @param buffer
+	 *            the byte buffer
+	 * @param chunkName
+	 *            the name of the chunk for use in error messages
+	 */
+	public synchronized void load(ByteBuffer buffer, String chunkName) {
+		try {
+			load(new ByteBufferInputStream(buffer.duplicate()), chunkName);
+		} catch (IOException e) {
+			// A byte buffer input stream never throws
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/**
 	 * Dumps the function on top of the stack as a pre-compiled binary chunk
 	 * into an output stream.
@@ -552,6 +638,7 @@ public class LuaState {
 	 */
 	public synchronized void call(int argCount, int returnCount) {
 		check();
+		releaseOwnedProxies();
 		lua_pcall(argCount, returnCount);
 	}
 
@@ -587,9 +674,15 @@ public class LuaState {
 	 * @param b
 	 *            the boolean value to push
 	 */
-	public synchronized void pushBoolean(boolean b) {
-		check();
-		lua_pushboolean(b ? 1 : 0);
+	public void pushBoolean(boolean b) {
+		if (isOwned()) {
+			lua_pushboolean(b ? 1 : 0);
+			return;
+		}
+		synchronized (this) {
+			check();
+			lua_pushboolean(b ? 1 : 0);
+		}
 	}
 
 	/**
@@ -598,9 +691,15 @@ public class LuaState {
 	 * @param n
 	 *            the integer value to push
 	 */
-	public synchronized void pushInteger(int n) {
-		check();
-		lua_pushinteger(n);
+	public void pushInteger(int n) {
+		if (isOwned()) {
+			lua_pushinteger(n);
+			return;
+		}
+		synchronized (this) {
+			check();
+			lua_pushinteger(n);
+		}
 	}
 
 	/**
@@ -647,17 +746,29 @@ public class LuaState {
 	 * @see #getConverter()
 	 * @see #setConverter(Converter)
 	 */
-	public synchronized void pushJavaObject(Object object) {
-		check();
-		getConverter().convertJavaObject(this, object);
+	public void pushJavaObject(Object object) {
+		if (isOwned()) {
+			getConverter().convertJavaObject(this, object);
+			return;
+		}
+		synchronized (this) {
+			check();
+			getConverter().convertJavaObject(this, object);
+		}
 	}
 
 	/**
 	 * Pushes a nil value on the stack.
 	 */
-	public synchronized void pushNil() {
-		check();
-		lua_pushnil();
+	public void pushNil() {
+		if (isOwned()) {
+			lua_pushnil();
+			return;
+		}
+		synchronized (this) {
+			check();
+			lua_pushnil();
+		}
 	}
 
 	/**
@@ -666,9 +777,15 @@ public class LuaState {
 	 * @param n
 	 *            the number to push
 	 */
-	public synchronized void pushNumber(double n) {
-		check();
-		lua_pushnumber(n);
+	public void pushNumber(double n) {
+		if (isOwned()) {
+			lua_pushnumber(n);
+			return;
+		}
+		synchronized (this) {
+			check();
+			lua_pushnumber(n);
+		}
 	}
 
 	/**
@@ -677,9 +794,15 @@ public class LuaState {
 	 * @param s
 	 *            the string value to push
 	 */
-	public synchronized void pushString(String s) {
-		check();
-		lua_pushstring(s);
+	public void pushString(String s) {
+		if (isOwned()) {
+			lua_pushstring(s);
+			return;
+		}
+		synchronized (this) {
+			check();
+			lua_pushstring(s);
+		}
 	}
 
 	// -- Stack type test
@@ -694,9 +817,14 @@ public class LuaState {
 	 *            the stack index
 	 * @return whether the value is a boolean
 	 */
-	public synchronized boolean isBoolean(int index) {
-		check();
-		return lua_isboolean(index) != 0;
+	public boolean isBoolean(int index) {
+		if (isOwned()) {
+			return lua_isboolean(index) != 0;
+		}
+		synchronized (this) {
+			check();
+			return lua_isboolean(index) != 0;
+		}
 	}
 
 	/**
@@ -789,9 +917,14 @@ public class LuaState {
 	 * @see #setConverter(Converter)
 	 * @see #getConverter()
 	 */
-	public synchronized boolean isJavaObject(int index, Class<?> type) {
-		check();
-		return converter.getTypeDistance(this, index, type) != Integer.MAX_VALUE;
+	public boolean isJavaObject(int index, Class<?> type) {
+		if (isOwned()) {
+			return converter.getTypeDistance(this, index, type) != Integer.MAX_VALUE;
+		}
+		synchronized (this) {
+			check();
+			return converter.getTypeDistance(this, index, type) != Integer.MAX_VALUE;
+		}
 	}
 
 	/**
@@ -856,9 +989,14 @@ public class LuaState {
 	 *            the stack index
 	 * @return whether the value is a number or a string convertible to a number
 	 */
-	public synchronized boolean isNumber(int index) {
-		check();
-		return lua_isnumber(index) != 0;
+	public boolean isNumber(int index) {
+		if (isOwned()) {
+			return lua_isnumber(index) != 0;
+		}
+		synchronized (this) {
+			check();
+			return lua_isnumber(index) != 0;
+		}
 	}
 
 	/**
@@ -873,9 +1011,14 @@ public class LuaState {
 	 *            the stack index
 	 * @return whether the value is a string or a number
 	 */
-	public synchronized boolean isString(int index) {
-		check();
-		return lua_isstring(index) != 0;
+	public boolean isString(int index) {
+		if (isOwned()) {
+			return lua_isstring(index) != 0;
+		}
+		synchronized (this) {
+			check();
+			return lua_isstring(index) != 0;
+		}
 	}
 
 	/**
@@ -982,9 +1125,14 @@ public class LuaState {
 	 *            the stack index
 	 * @return the boolean representation of the value
 	 */
-	public synchronized boolean toBoolean(int index) {
-		check();
-		return lua_toboolean(index) != 0;
+	public boolean toBoolean(int index) {
+		if (isOwned()) {
+			return lua_toboolean(index) != 0;
+		}
+		synchronized (this) {
+			check();
+			return lua_toboolean(index) != 0;
+		}
 	}
 
 	/**
@@ -996,9 +1144,14 @@ public class LuaState {
 	 *            the stack index
 	 * @return the integer representation, or <code>0</code>
 	 */
-	public synchronized int toInteger(int index) {
-		check();
-		return lua_tointeger(index);
+	public int toInteger(int index) {
+		if (isOwned()) {
+			return lua_tointeger(index);
+		}
+		synchronized (this) {
+			check();
+			return lua_tointeger(index);
+		}
 	}
 
 	/**
@@ -1050,9 +1203,14 @@ public class LuaState {
 	 * @see #getConverter()
 	 * @see #setConverter(Converter)
 	 */
-	public synchronized <T> T toJavaObject(int index, Class<T> type) {
-		check();
-		return converter.convertLuaValue(this, index, type);
+	public <T> T toJavaObject(int index, Class<T> type) {
+		if (isOwned()) {
+			return converter.convertLuaValue(this, index, type);
+		}
+		synchronized (this) {
+			check();
+			return converter.convertLuaValue(this, index, type);
+		}
 	}
 
 	/**
@@ -1095,9 +1253,14 @@ public class LuaState {
 	 *            the stack index
 	 * @return the string representation, or <code>null</code>
 	 */
-	public synchronized String toString(int index) {
-		check();
-		return lua_tostring(index);
+	public String toString(int index) {
+		if (isOwned()) {
+			return lua_tostring(index);
+		}
+		synchronized (this) {
+			check();
+			return lua_tostring(index);
+		}
 	}
 
 	/**
@@ -1173,9 +1336,14 @@ public class LuaState {
 	 * 
 	 * @return the number of values on the tack
 	 */
-	public synchronized int getTop() {
-		check();
-		return lua_gettop();
+	public int getTop() {
+		if (isOwned()) {
+			return lua_gettop();
+		}
+		synchronized (this) {
+			check();
+			return lua_gettop();
+		}
 	}
 
 	/**
@@ -1641,12 +1809,20 @@ public class LuaState {
 	 *            the argument index
 	 * @return the boolean value, or the default value
 	 */
-	public synchronized boolean checkBoolean(int index) {
-		check();
-		if (!isBoolean(index)) {
-			throw getArgTypeException(index, LuaType.BOOLEAN);
+	public boolean checkBoolean(int index) {
+		if (isOwned()) {
+			if (!isBoolean(index)) {
+				throw getArgTypeException(index, LuaType.BOOLEAN);
+			}
+			return toBoolean(index);
+		}
+		synchronized (this) {
+			check();
+			if (!isBoolean(index)) {
+				throw getArgTypeException(index, LuaType.BOOLEAN);
+			}
+			return toBoolean(index);
 		}
-		return toBoolean(index);
 	}
 
 	/**
@@ -1680,12 +1856,20 @@ public class LuaState {
 	 *            the argument index
 	 * @return the integer value
 	 */
-	public synchronized int checkInteger(int index) {
-		check();
-		if (!isNumber(index)) {
-			throw getArgTypeException(index, LuaType.NUMBER);
+	public int checkInteger(int index) {
+		if (isOwned()) {
+			if (!isNumber(index)) {
+				throw getArgTypeException(index, LuaType.NUMBER);
+			}
+			return toInteger(index);
+		}
+		synchronized (this) {
+			check();
+			if (!isNumber(index)) {
+				throw getArgTypeException(index, LuaType.NUMBER);
+			}
+			return toInteger(index);
 		}
-		return toInteger(index);
 	}
 
 	/**
@@ -1768,13 +1952,22 @@ public class LuaState {
 	 *            the expected type
 	 * @return the Java object, or <code>null</code>
 	 */
-	public synchronized <T> T checkJavaObject(int index, Class<T> clazz) {
-		check();
-		if (!isJavaObject(index, clazz)) {
-			throw getArgException(index, String.format("exptected %s, got %s",
-					clazz.getCanonicalName(), typeName(index)));
+	public <T> T checkJavaObject(int index, Class<T> clazz) {
+		if (isOwned()) {
+			if (!isJavaObject(index, clazz)) {
+				throw getArgException(index, String.format("exptected %s, got %s",
+						clazz.getCanonicalName(), typeName(index)));
+			}
+			return toJavaObject(index, clazz);
+		}
+		synchronized (this) {
+			check();
+			if (!isJavaObject(index, clazz)) {
+				throw getArgException(index, String.format("exptected %s, got %s",
+						clazz.getCanonicalName(), typeName(index)));
+			}
+			return toJavaObject(index, clazz);
 		}
-		return toJavaObject(index, clazz);
 	}
 
 	/**
@@ -1858,12 +2051,20 @@ public class LuaState {
 	 *            the argument index
 	 * @return the string value
 	 */
-	public synchronized String checkString(int index) {
-		check();
-		if (!isString(index)) {
-			throw getArgTypeException(index, LuaType.STRING);
+	public String checkString(int index) {
+		if (isOwned()) {
+			if (!isString(index)) {
+				throw getArgTypeException(index, LuaType.STRING);
+			}
+			return toString(index);
+		}
+		synchronized (this) {
+			check();
+			if (!isString(index)) {
+				throw getArgTypeException(index, LuaType.STRING);
+			}
+			return toString(index);
 		}
-		return toString(index);
 	}
 
 	/**
@@ -1999,7 +2200,37 @@ public class LuaState {
 			throw new IllegalStateException("Lua state is closed");
 		}
 
-		// Check proxy queue
+		// Check owner, proxies of an owned state are released in batches
+		if (owner == null) {
+			releaseProxies();
+		} else {
+			checkOwner();
+		}
+	}
+
+	/**
+	 * Checks that this Lua state is not bound to another thread.
+	 */
+	private void checkOwner() {
+		Thread currentOwner = owner;
+		if (currentOwner != null && currentOwner != Thread.currentThread()) {
+			throw new IllegalStateException("Lua state is owned by thread "
+					+ currentOwner.getName());
+		}
+	}
+
+	/**
+	 * Returns whether this Lua state is open and bound to the current thread,
+	 * so that stack operations may skip locking and checking.
+	 */
+	private boolean isOwned() {
+		return owner == Thread.currentThread() && isOpenInternal();
+	}
+
+	/**
+	 * Releases Lua values of collected proxies.
+	 */
+	private void releaseProxies() {
 		LuaValueProxyRef luaValueProxyRef;
 		while ((luaValueProxyRef = (LuaValueProxyRef) proxyQueue.poll()) != null) {
 			proxySet.remove(luaValueProxyRef);
@@ -2007,6 +2238,16 @@ public class LuaState {
 		}
 	}
 
+	/**
+	 * Releases Lua values of collected proxies of an owned Lua state, other
+	 * Lua states release them at each check.
+	 */
+	private void releaseOwnedProxies() {
+		if (owner != null) {
+			releaseProxies();
+		}
+	}
+
 	/**
 	 * Creates a Lua runtime exception to indicate an argument type error.
 	 */
@@ -2329,6 +2570,46 @@ public class LuaState {
 		}
 	}
 
+	/**
+	 * Input stream reading the remaining bytes of a byte buffer.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		// -- State
+		private ByteBuffer buffer;
+
+		// -- Construction
+		/**
+		 * Creates a new instance.
+		 */
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		// -- InputStream methods
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
 	/**
 	 * Lua value proxy implementation.
 	 */
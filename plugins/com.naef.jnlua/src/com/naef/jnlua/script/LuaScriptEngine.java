@@ -388,6 +388,31 @@ class LuaScriptEngine extends AbstractScriptEngine implements Compilable,
 
 		@Override
 		public int read() throws IOException {
+			if (!fill()) {
+				return -1;
+			}
+			return byteBuffer.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int count = Math.min(len, byteBuffer.remaining());
+			byteBuffer.get(b, off, count);
+			return count;
+		}
+
+		// -- Private methods
+		/**
+		 * Encodes more characters when all bytes have been read, and returns
+		 * whether bytes remain.
+		 */
+		private boolean fill() throws IOException {
 			if (!byteBuffer.hasRemaining()) {
 				if (!charBuffer.hasRemaining()) {
 					charBuffer.clear();
@@ -412,11 +437,8 @@ class LuaScriptEngine extends AbstractScriptEngine implements Compilable,
 					}
 				}
 				byteBuffer.flip();
-				if (!byteBuffer.hasRemaining()) {
-					return -1;
-				}
 			}
-			return byteBuffer.get();
+			return byteBuffer.hasRemaining();
 		}
 	}
 }
@@ -15,6 +15,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.resource.ImageRegistry;
+import org.eclipse.koneki.ldt.editor.internal.completion.LuaSymbolIndex;
 import org.eclipse.koneki.ldt.editor.internal.text.LuaTextTools;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
@@ -47,6 +48,7 @@ public class Activator extends AbstractUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		LuaSymbolIndex.getIndexes().register();
 	}
 
 	/*
@@ -55,6 +57,7 @@ public class Activator extends AbstractUIPlugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext )
 	 */
 	public void stop(BundleContext context) throws Exception {
+		LuaSymbolIndex.getIndexes().unregister();
 		plugin = null;
 		super.stop(context);
 	}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.formatter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+
+/**
+ * {@link LuaBlockScanner} state at start of each line of a document, kept up to date while document is edited.
+ * 
+ * A change only invalidates states of lines following the changed ones. They are scanned again lazily, when depth of a line after them is
+ * requested, and scanning stops as soon as a line starts with the state it had before the change: following lines can not have changed either.
+ * Typing in a line then costs the scanning of this line only.
+ */
+public final class LuaBlockDepthCache implements IDocumentListener {
+	/** Caches are dropped along with their documents */
+	private static final Map<IDocument, LuaBlockDepthCache> CACHES = new WeakHashMap<IDocument, LuaBlockDepthCache>();
+
+	/** State at start of each line, <code>null</code> when unknown */
+	private final List<LuaBlockScanner.State> starts;
+	/** Count of leading lines which start states are up to date */
+	private int valid;
+	/** Index from which an outdated state equal to a scanned one proves following states up to date */
+	private int changedUpTo;
+	/** Lines replaced by the pending change */
+	private int changeFirstLine;
+	private int changeLastLine;
+
+	private LuaBlockDepthCache(final int lineCount) {
+		starts = new ArrayList<LuaBlockScanner.State>(Collections.<LuaBlockScanner.State> nCopies(lineCount, null));
+		reset();
+	}
+
+	/**
+	 * Provides cache of a document, the cache listens to document changes from its creation.
+	 * 
+	 * @param document
+	 *            Lua document
+	 * @return cache of given document
+	 */
+	public static LuaBlockDepthCache forDocument(final IDocument document) {
+		synchronized (CACHES) {
+			LuaBlockDepthCache cache = CACHES.get(document);
+			if (cache == null) {
+				cache = new LuaBlockDepthCache(document.getNumberOfLines());
+				document.addDocumentListener(cache);
+				CACHES.put(document, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Scans a line of document, from the cached state of its start.
+	 * 
+	 * @param document
+	 *            document this cache was provided for
+	 * @param line
+	 *            index of line
+	 * @return scanned line, offsets are relative to line start
+	 * @throws BadLocationException
+	 *             when line does not exist
+	 */
+	public synchronized LuaBlockScanner.Line getLine(final IDocument document, final int line) throws BadLocationException {
+		if (starts.size() != document.getNumberOfLines()) {
+			// Missed a change, start over
+			starts.clear();
+			starts.addAll(Collections.<LuaBlockScanner.State> nCopies(document.getNumberOfLines(), null));
+			reset();
+		}
+		if (line < 0 || line >= starts.size()) {
+			throw new BadLocationException();
+		}
+		while (valid <= line) {
+			final LuaBlockScanner.State next = scan(document, valid - 1).getNext();
+			if (valid >= changedUpTo && next.equals(starts.get(valid))) {
+				// Following lines start as they did before change
+				valid = starts.size();
+			} else {
+				starts.set(valid, next);
+				valid++;
+			}
+		}
+		return scan(document, line);
+	}
+
+	private LuaBlockScanner.Line scan(final IDocument document, final int line) throws BadLocationException {
+		final String text = document.get(document.getLineOffset(line), document.getLineLength(line));
+		return LuaBlockScanner.scanLine(text, 0, starts.get(line));
+	}
+
+	private void reset() {
+		if (!starts.isEmpty()) {
+			starts.set(0, LuaBlockScanner.State.INITIAL);
+		}
+		valid = Math.min(1, starts.size());
+		changedUpTo = starts.size();
+	}
+
+	/**
+	 * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	@Override
+	public synchronized void documentAboutToBeChanged(final DocumentEvent event) {
+		try {
+			changeFirstLine = event.getDocument().getLineOfOffset(event.getOffset());
+			changeLastLine = event.getDocument().getLineOfOffset(event.getOffset() + event.getLength());
+		} catch (BadLocationException e) {
+			changeFirstLine = -1;
+		}
+	}
+
+	/**
+	 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	@Override
+	public synchronized void documentChanged(final DocumentEvent event) {
+		final int previousSize = starts.size();
+		if (changeFirstLine < 0 || changeLastLine >= previousSize) {
+			// Unable to locate change, next request starts over
+			starts.clear();
+			return;
+		}
+		// Start of first changed line is unchanged, lines which replaced the following ones are unknown
+		final int removedLines = changeLastLine - changeFirstLine;
+		final int insertedLines = event.getText() == null ? 0 : event.getDocument().computeNumberOfLines(event.getText());
+		starts.subList(changeFirstLine + 1, changeLastLine + 1).clear();
+		starts.addAll(changeFirstLine + 1, Collections.<LuaBlockScanner.State> nCopies(insertedLines, null));
+		if (starts.size() != event.getDocument().getNumberOfLines()) {
+			starts.clear();
+			return;
+		}
+		if (valid >= previousSize) {
+			changedUpTo = 0;
+		} else {
+			// States past previous changes were computed before them, only those can be compared to
+			changedUpTo = Math.max(changedUpTo, valid);
+			if (changedUpTo > changeLastLine) {
+				changedUpTo += insertedLines - removedLines;
+			}
+		}
+		changedUpTo = Math.max(changedUpTo, changeFirstLine + insertedLines + 1);
+		valid = Math.min(valid, changeFirstLine + 1);
+	}
+}
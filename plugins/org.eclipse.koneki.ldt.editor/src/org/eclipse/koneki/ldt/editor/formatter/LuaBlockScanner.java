@@ -0,0 +1,642 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.formatter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lexical scanner computing block depth of each line of Lua source, without parsing it.
+ * 
+ * Blocks are opened by <code>function</code>, <code>do</code>, <code>then</code> and <code>repeat</code>, closed by <code>end</code> and
+ * <code>until</code>, <code>else</code> and <code>elseif</code> close the previous branch. Table constructors, parentheses and brackets are tracked
+ * apart from blocks. Strings and comments are skipped. Malformed source is scanned as well as possible: unmatched closing tokens are ignored.
+ * 
+ * Lines can also be scanned one at a time with {@link #scanLine(CharSequence, int, State)}, from the {@link State} previous line ended with, so a
+ * changed line is scanned again without scanning the ones before it.
+ */
+public class LuaBlockScanner {
+	/** Not in a long bracket */
+	private static final int NONE = -1;
+	/** Kinds of nested constructs on {@link State} stack */
+	private static final char BLOCK = 'b';
+	private static final char PARENTHESIS = '(';
+	private static final char TABLE = '{';
+
+	/** Scanning state between two lines */
+	public static final class State {
+		/** State at start of source */
+		public static final State INITIAL = new State("", NONE, (char) 0, false); //$NON-NLS-1$
+
+		private final String stack;
+		private final int longLevel;
+		private final char quote;
+		private final boolean continued;
+		private final int blockDepth;
+		private final int tableDepth;
+
+		private State(final String stack, final int longLevel, final char quote, final boolean continued) {
+			this.stack = stack;
+			this.longLevel = longLevel;
+			this.quote = quote;
+			this.continued = continued;
+			int blocks = 0;
+			int tables = 0;
+			for (int i = 0; i < stack.length(); i++) {
+				if (stack.charAt(i) == BLOCK) {
+					blocks++;
+				} else if (stack.charAt(i) == TABLE) {
+					tables++;
+				}
+			}
+			this.blockDepth = blocks;
+			this.tableDepth = tables;
+		}
+
+		/**
+		 * @return count of open blocks
+		 */
+		public int getBlockDepth() {
+			return blockDepth;
+		}
+
+		/**
+		 * @return count of open table constructors
+		 */
+		public int getTableDepth() {
+			return tableDepth;
+		}
+
+		/**
+		 * @return <code>true</code> when a statement can start here: it does not continue an expression, a string or a comment
+		 */
+		public boolean isBoundary() {
+			return longLevel == NONE && quote == 0 && !continued && (stack.length() == 0 || stack.charAt(stack.length() - 1) == BLOCK);
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(final Object object) {
+			if (!(object instanceof State)) {
+				return false;
+			}
+			final State other = (State) object;
+			return longLevel == other.longLevel && quote == other.quote && continued == other.continued && stack.equals(other.stack);
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (((stack.hashCode() * 31) + longLevel) * 31 + quote) * 2 + (continued ? 1 : 0);
+		}
+	}
+
+	/** Scanned line */
+	public static final class Line {
+		private final int offset;
+		private final int end;
+		private final State start;
+		private final State next;
+		private final int minBlockDepth;
+		private final int indentationBlockDepth;
+		private final int indentationTableDepth;
+
+		private Line(final int offset, final int end, final State start, final State next, final int minBlockDepth,
+				final int indentationBlockDepth, final int indentationTableDepth) {
+			this.offset = offset;
+			this.end = end;
+			this.start = start;
+			this.next = next;
+			this.minBlockDepth = minBlockDepth;
+			this.indentationBlockDepth = indentationBlockDepth;
+			this.indentationTableDepth = indentationTableDepth;
+		}
+
+		/**
+		 * @return offset of first character of line
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return offset following last character of line, line delimiter included
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		/**
+		 * @return state at line start
+		 */
+		public State getStart() {
+			return start;
+		}
+
+		/**
+		 * @return state at line end, which is next line start state
+		 */
+		public State getNext() {
+			return next;
+		}
+
+		/**
+		 * @return count of blocks open at line start
+		 */
+		public int getBlockDepth() {
+			return start.blockDepth;
+		}
+
+		/**
+		 * @return count of table constructors open at line start
+		 */
+		public int getTableDepth() {
+			return start.tableDepth;
+		}
+
+		/**
+		 * @return <code>true</code> when a statement can start at this line: it does not continue an expression, a string or a comment
+		 */
+		public boolean isBoundary() {
+			return start.isBoundary();
+		}
+
+		/**
+		 * @return lowest count of open blocks on this line, lower than {@link #getBlockDepth()} when line closes a block
+		 */
+		public int getMinBlockDepth() {
+			return minBlockDepth;
+		}
+
+		/**
+		 * @return count of blocks containing first token of line, a leading <code>end</code>, <code>else</code>, <code>elseif</code> or
+		 *         <code>until</code> belongs to enclosing block
+		 */
+		public int getIndentationBlockDepth() {
+			return indentationBlockDepth;
+		}
+
+		/**
+		 * @return count of table constructors containing first token of line, a leading <code>}</code> belongs to enclosing constructor
+		 */
+		public int getIndentationTableDepth() {
+			return indentationTableDepth;
+		}
+	}
+
+	/** Lines a range of lines has to be extended to so it can be formatted on its own */
+	public static final class Region {
+		private final int firstLine;
+		private final int lastLine;
+		private final int blockDepth;
+		private final int tableDepth;
+
+		private Region(final int firstLine, final int lastLine, final int blockDepth, final int tableDepth) {
+			this.firstLine = firstLine;
+			this.lastLine = lastLine;
+			this.blockDepth = blockDepth;
+			this.tableDepth = tableDepth;
+		}
+
+		public int getFirstLine() {
+			return firstLine;
+		}
+
+		public int getLastLine() {
+			return lastLine;
+		}
+
+		/**
+		 * @return count of blocks enclosing region
+		 */
+		public int getBlockDepth() {
+			return blockDepth;
+		}
+
+		/**
+		 * @return count of table constructors enclosing region
+		 */
+		public int getTableDepth() {
+			return tableDepth;
+		}
+	}
+
+	private final List<Line> lines = new ArrayList<Line>();
+
+	/**
+	 * Scans given source at once.
+	 * 
+	 * @param text
+	 *            Lua source
+	 */
+	public LuaBlockScanner(final CharSequence text) {
+		int offset = 0;
+		State state = State.INITIAL;
+		do {
+			final Line line = scanLine(text, offset, state);
+			lines.add(line);
+			offset = line.end;
+			state = line.next;
+		} while (offset < text.length());
+		if (isDelimiter(text, text.length() - 1)) {
+			// Empty last line
+			lines.add(scanLine(text, offset, state));
+		}
+		// End of text is an ending line, so the last line has an end offset
+		lines.add(scanLine(text, offset, state));
+	}
+
+	/**
+	 * @return count of lines, an empty last line included
+	 */
+	public int getLineCount() {
+		return lines.size() - 1;
+	}
+
+	public Line getLine(final int index) {
+		return lines.get(index);
+	}
+
+	/**
+	 * @return offset following last character of line, line delimiter included
+	 */
+	public int getLineEnd(final int index) {
+		return lines.get(index).end;
+	}
+
+	/**
+	 * @return index of line containing offset, offset equal to text length belongs to last line
+	 */
+	public int getLineOfOffset(final int offset) {
+		int low = 0;
+		int high = getLineCount() - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (lines.get(middle).offset <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Extends a range of lines to the smallest sequence of whole statements containing it. Statements of a region are all in the same block, so
+	 * region can be formatted apart from the rest of source, starting at its depth.
+	 * 
+	 * @param first
+	 *            first line of range
+	 * @param last
+	 *            last line of range
+	 * @return region containing range
+	 */
+	public Region getEnclosingRegion(final int first, final int last) {
+		int start = first;
+		int end = last;
+		int depth = Integer.MAX_VALUE;
+		for (int i = start; i <= end; i++) {
+			depth = Math.min(depth, lines.get(i).minBlockDepth);
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			// Go up to a statement start at region depth, lines met on the way can lower depth
+			while (start > 0 && !(lines.get(start).isBoundary() && lines.get(start).getBlockDepth() == depth)) {
+				start--;
+				depth = Math.min(depth, lines.get(start).minBlockDepth);
+			}
+			// Go down until the line following region starts a statement at region depth
+			while (end < getLineCount() - 1 && !(lines.get(end + 1).isBoundary() && lines.get(end + 1).getBlockDepth() == depth)) {
+				end++;
+				if (lines.get(end).minBlockDepth < depth) {
+					depth = lines.get(end).minBlockDepth;
+					changed = true;
+				}
+			}
+		}
+		return new Region(start, end, lines.get(start).getBlockDepth(), lines.get(start).getTableDepth());
+	}
+
+	/**
+	 * Scans a single line.
+	 * 
+	 * @param text
+	 *            source containing line
+	 * @param offset
+	 *            offset of line start
+	 * @param start
+	 *            state previous line ended with, {@link State#INITIAL} for first line
+	 * @return line ending after first line delimiter following offset, or at text end
+	 */
+	public static Line scanLine(final CharSequence text, final int offset, final State start) {
+		return new LineScanner(text, start).scan(offset);
+	}
+
+	private static boolean isDelimiter(final CharSequence text, final int position) {
+		return position >= 0 && (text.charAt(position) == '\n' || text.charAt(position) == '\r');
+	}
+
+	/** Scanning state within a line */
+	private static final class LineScanner {
+		private final CharSequence text;
+		private final State start;
+		private final StringBuilder stack;
+		private int blockDepth;
+		private int tableDepth;
+		private int longLevel;
+		private char quote;
+		private boolean continued;
+		private int minBlockDepth;
+		private int indentationBlockDepth = NONE;
+		private int indentationTableDepth = NONE;
+
+		private LineScanner(final CharSequence text, final State start) {
+			this.text = text;
+			this.start = start;
+			this.stack = new StringBuilder(start.stack);
+			this.blockDepth = start.blockDepth;
+			this.tableDepth = start.tableDepth;
+			this.longLevel = start.longLevel;
+			this.quote = start.quote;
+			this.continued = start.continued;
+			this.minBlockDepth = start.blockDepth;
+		}
+
+		private Line scan(final int offset) {
+			int position = offset;
+			final int length = text.length();
+			while (position < length) {
+				final char c = text.charAt(position);
+				if (c == '\n' || c == '\r') {
+					position += c == '\r' && position + 1 < length && text.charAt(position + 1) == '\n' ? 2 : 1;
+					if (quote != 0 && !escapedNewLine(position)) {
+						// Unfinished string
+						quote = 0;
+					}
+					return endLine(offset, position);
+				} else if (longLevel != NONE) {
+					position = skipLongBracket(position);
+				} else if (quote != 0) {
+					position = skipString(position);
+				} else if (c == '-' && position + 1 < length && text.charAt(position + 1) == '-') {
+					position = skipComment(position + 2);
+				} else if (c == '\'' || c == '"') {
+					indent();
+					quote = c;
+					position = skipString(position + 1);
+					continued = false;
+				} else if (c == '[' && longBracketLevel(position) != NONE) {
+					indent();
+					longLevel = longBracketLevel(position);
+					position = skipLongBracket(position + longLevel + 2);
+					continued = false;
+				} else if (Character.isLetter(c) || c == '_') {
+					final int wordStart = position;
+					while (position < length && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+						position++;
+					}
+					keyword(text.subSequence(wordStart, position).toString());
+				} else if (Character.isDigit(c) || (c == '.' && position + 1 < length && Character.isDigit(text.charAt(position + 1)))) {
+					indent();
+					position = skipNumber(position);
+					continued = false;
+				} else {
+					punctuation(c);
+					position++;
+				}
+			}
+			return endLine(offset, position);
+		}
+
+		private Line endLine(final int offset, final int end) {
+			indent();
+			final State next = new State(stack.toString(), longLevel, quote, continued);
+			// Share unchanged states, most lines do not change any
+			return new Line(offset, end, start, next.equals(start) ? start : next, Math.min(minBlockDepth, blockDepth), indentationBlockDepth,
+					indentationTableDepth);
+		}
+
+		/** Line is indented at depth of its first token, which is the current one when none was met yet */
+		private void indent() {
+			if (indentationBlockDepth == NONE) {
+				indentationBlockDepth = blockDepth;
+				indentationTableDepth = tableDepth;
+			}
+		}
+
+		private void keyword(final String word) {
+			continued = false;
+			if ("function".equals(word) || "do".equals(word) || "then".equals(word) || "repeat".equals(word)) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				indent();
+				push(BLOCK);
+			} else if ("end".equals(word)) { //$NON-NLS-1$
+				pop(BLOCK);
+				indent();
+			} else if ("until".equals(word)) { //$NON-NLS-1$
+				pop(BLOCK);
+				indent();
+				continued = true;
+			} else if ("elseif".equals(word)) { //$NON-NLS-1$
+				pop(BLOCK);
+				indent();
+				continued = true;
+			} else if ("else".equals(word)) { //$NON-NLS-1$
+				// Closes previous branch and opens a new one
+				minBlockDepth = Math.min(minBlockDepth, blockDepth - 1);
+				if (indentationBlockDepth == NONE) {
+					indentationBlockDepth = Math.max(0, blockDepth - 1);
+					indentationTableDepth = tableDepth;
+				}
+			} else {
+				indent();
+				if ("and".equals(word) || "or".equals(word) || "not".equals(word) || "local".equals(word) || "return".equals(word) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+						|| "in".equals(word) || "if".equals(word) || "while".equals(word)) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					continued = true;
+				}
+			}
+		}
+
+		private void punctuation(final char c) {
+			switch (c) {
+			case '(':
+			case '[':
+				indent();
+				push(PARENTHESIS);
+				break;
+			case '{':
+				indent();
+				push(TABLE);
+				break;
+			case ')':
+			case ']':
+				pop(PARENTHESIS);
+				indent();
+				continued = false;
+				break;
+			case '}':
+				pop(TABLE);
+				indent();
+				continued = false;
+				break;
+			case ';':
+				indent();
+				continued = false;
+				break;
+			default:
+				// Remaining punctuation are operators, an expression goes on after them
+				if (!Character.isWhitespace(c)) {
+					indent();
+					continued = true;
+				}
+			}
+		}
+
+		private void push(final char kind) {
+			stack.append(kind);
+			if (kind == BLOCK) {
+				blockDepth++;
+			} else {
+				if (kind == TABLE) {
+					tableDepth++;
+				}
+				continued = true;
+			}
+		}
+
+		/** Closes innermost construct of given kind, and the unclosed ones it contains */
+		private void pop(final char kind) {
+			final int index = stack.lastIndexOf(String.valueOf(kind));
+			if (index < 0) {
+				return;
+			}
+			for (int i = stack.length() - 1; i >= index; i--) {
+				if (stack.charAt(i) == BLOCK) {
+					blockDepth--;
+				} else if (stack.charAt(i) == TABLE) {
+					tableDepth--;
+				}
+			}
+			stack.setLength(index);
+			minBlockDepth = Math.min(minBlockDepth, blockDepth);
+		}
+
+		/**
+		 * @return count of <code>=</code> of long bracket opening at position, {@link #NONE} when there is none
+		 */
+		private int longBracketLevel(final int position) {
+			int level = 0;
+			int i = position + 1;
+			while (i < text.length() && text.charAt(i) == '=') {
+				level++;
+				i++;
+			}
+			return i < text.length() && text.charAt(i) == '[' ? level : NONE;
+		}
+
+		/** Skips long bracket content up to its end or to next line delimiter */
+		private int skipLongBracket(final int from) {
+			int position = from;
+			while (position < text.length()) {
+				final char c = text.charAt(position);
+				if (c == '\n' || c == '\r') {
+					return position;
+				}
+				position++;
+				if (c == ']') {
+					int level = 0;
+					while (position < text.length() && text.charAt(position) == '=') {
+						level++;
+						position++;
+					}
+					if (level == longLevel && position < text.length() && text.charAt(position) == ']') {
+						longLevel = NONE;
+						return position + 1;
+					}
+				}
+			}
+			return position;
+		}
+
+		/** Skips string content up to its end or to next line delimiter */
+		private int skipString(final int from) {
+			int position = from;
+			while (position < text.length()) {
+				final char c = text.charAt(position);
+				if (c == '\n' || c == '\r') {
+					return position;
+				}
+				if (c == '\\' && position + 1 < text.length() && text.charAt(position + 1) != '\n' && text.charAt(position + 1) != '\r') {
+					position += 2;
+				} else {
+					position++;
+					if (c == quote) {
+						quote = 0;
+						return position;
+					}
+				}
+			}
+			return position;
+		}
+
+		/** A string goes on next line when line delimiter is escaped */
+		private boolean escapedNewLine(final int lineStart) {
+			int delimiter = lineStart - 1;
+			if (delimiter > 0 && text.charAt(delimiter) == '\n' && text.charAt(delimiter - 1) == '\r') {
+				delimiter--;
+			}
+			int backslashes = 0;
+			for (int i = delimiter - 1; i >= 0 && text.charAt(i) == '\\'; i--) {
+				backslashes++;
+			}
+			return backslashes % 2 == 1;
+		}
+
+		private int skipComment(final int from) {
+			if (from < text.length() && text.charAt(from) == '[') {
+				final int level = longBracketLevel(from);
+				if (level != NONE) {
+					longLevel = level;
+					return skipLongBracket(from + level + 2);
+				}
+			}
+			int position = from;
+			while (position < text.length() && text.charAt(position) != '\n' && text.charAt(position) != '\r') {
+				position++;
+			}
+			return position;
+		}
+
+		private int skipNumber(final int from) {
+			// First character is a digit or a dot
+			int position = from + 1;
+			while (position < text.length()) {
+				final char c = text.charAt(position);
+				final char previous = text.charAt(position - 1);
+				final boolean exponent = isHexadecimal(from) ? previous == 'p' || previous == 'P' : previous == 'e' || previous == 'E';
+				if (Character.isLetterOrDigit(c) || c == '.' || ((c == '+' || c == '-') && exponent)) {
+					position++;
+				} else {
+					break;
+				}
+			}
+			return position;
+		}
+
+		private boolean isHexadecimal(final int from) {
+			return from + 1 < text.length() && text.charAt(from) == '0' && (text.charAt(from + 1) == 'x' || text.charAt(from + 1) == 'X');
+		}
+	}
+}
@@ -10,19 +10,17 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.editor.formatter;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.dltk.formatter.AbstractScriptFormatter;
 import org.eclipse.dltk.ui.formatter.FormatterException;
 import org.eclipse.dltk.ui.text.util.TabStyle;
-import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
-import org.eclipse.jface.text.IRegion;
-import org.eclipse.koneki.ldt.editor.Activator;
 import org.eclipse.koneki.ldt.parser.format.LuaSourceFormat;
-import org.eclipse.swt.widgets.Display;
+import org.eclipse.text.edits.MultiTextEdit;
 import org.eclipse.text.edits.ReplaceEdit;
 import org.eclipse.text.edits.TextEdit;
 
@@ -68,63 +66,130 @@ public class LuaFormatter extends AbstractScriptFormatter {
 	}
 
 	/**
+	 * Formats statements around given range only, at their depth. Edits are restricted to lines of given range, they only cover characters which
+	 * change. When formatting changes the count of lines of statements, range can not be mapped to formatted lines: it is formatted only when it
+	 * covers all statements. Given indentation level is ignored, depth of statements is computed from source.
+	 * 
 	 * @see org.eclipse.dltk.ui.formatter.IScriptFormatter#format(String, int, int, int)
 	 */
 	@Override
 	public TextEdit format(final String source, final int offset, final int length, final int indentationLevel) throws FormatterException {
-		/*
-		 * Format given source code
-		 */
+		final LuaBlockScanner scanner = new LuaBlockScanner(source);
+		final int startLine = scanner.getLineOfOffset(offset);
+		final int endLine = scanner.getLineOfOffset(offset + length);
+
+		// Smallest sequence of statements containing selection can be formatted on its own
+		final LuaBlockScanner.Region region = scanner.getEnclosingRegion(startLine, endLine);
+		final int regionOffset = scanner.getLine(region.getFirstLine()).getOffset();
+		final String code = source.substring(regionOffset, scanner.getLineEnd(region.getLastLine()));
+		final int depth = region.getBlockDepth() + (formatTableValues ? region.getTableDepth() : 0);
+		final String formatted = indent(code, depth);
+
+		final MultiTextEdit edits = new MultiTextEdit();
+		final List<Integer> lines = lineOffsets(code);
+		final List<Integer> formattedLines = lineOffsets(formatted);
+		if (lines.size() != formattedLines.size()) {
+			// Lines do not match anymore, they can only be replaced all at once when all of them are selected
+			if (startLine != region.getFirstLine() || endLine != region.getLastLine()) {
+				throw new FormatterException(Messages.LuaFormatterUnableToFormatSelection);
+			}
+			edits.addChild(new ReplaceEdit(regionOffset, code.length(), formatted));
+			return edits;
+		}
+		for (int line = startLine; line <= endLine; line++) {
+			final int index = line - region.getFirstLine();
+			final int start = lines.get(index);
+			final int end = contentEnd(code, start, lines.get(index + 1));
+			final int formattedStart = formattedLines.get(index);
+			final int formattedEnd = contentEnd(formatted, formattedStart, formattedLines.get(index + 1));
+
+			// Only replace what differs between original and formatted line
+			int prefix = 0;
+			while (start + prefix < end && formattedStart + prefix < formattedEnd
+					&& code.charAt(start + prefix) == formatted.charAt(formattedStart + prefix)) {
+				prefix++;
+			}
+			int suffix = 0;
+			while (start + prefix < end - suffix && formattedStart + prefix < formattedEnd - suffix
+					&& code.charAt(end - suffix - 1) == formatted.charAt(formattedEnd - suffix - 1)) {
+				suffix++;
+			}
+			if (start + prefix < end - suffix || formattedStart + prefix < formattedEnd - suffix) {
+				edits.addChild(new ReplaceEdit(regionOffset + start + prefix, end - suffix - start - prefix, formatted.substring(formattedStart
+						+ prefix, formattedEnd - suffix)));
+			}
+		}
+		return edits;
+	}
+
+	/**
+	 * Indents code which starts at given depth.
+	 */
+	private String indent(final String code, final int depth) {
+		// Formatter leaves a code without line delimiter as is
+		final boolean delimited = code.endsWith("\n") || code.endsWith("\r"); //$NON-NLS-1$ //$NON-NLS-2$
+		final String source = delimited ? code : code + delimiter;
 		final String formatted;
 		// With mixed white spaces
 		if (tabPolicy == TabStyle.MIXED) {
-			formatted = LuaSourceFormat.indent(source, delimiter, tabSize, indentationSize, formatTableValues, 0);
+			formatted = LuaSourceFormat.indent(source, delimiter, tabSize, indentationSize, formatTableValues, depth);
 		} else {
 			// With one type of tabulation
-			formatted = LuaSourceFormat.indent(source, delimiter, tabulation, formatTableValues, 0);
+			formatted = LuaSourceFormat.indent(source, delimiter, tabulation, formatTableValues, depth);
 		}
-		if (length < source.length()) {
-			final Document doc = new Document(source);
-			try {
-				// Get line change range form original source
-				final int startLine = doc.getLineOfOffset(offset);
-				final int endLine = doc.getLineOfOffset(offset + length);
-
-				/*
-				 * Get source code from those lines in formatted code
-				 */
-				final StringBuffer code = new StringBuffer();
-				final Document formattedDoc = new Document(formatted);
-				int lengthToReplace = 0;
-				for (int line = startLine; line <= endLine; line++) {
-					// Sum selected text length
-					lengthToReplace += doc.getLineLength(line);
-
-					// Retrieve formatted code
-					final IRegion lineDescription = formattedDoc.getLineInformation(line);
-					final String codeOnTheLine = formattedDoc.get(lineDescription.getOffset(), lineDescription.getLength());
-					code.append(codeOnTheLine);
+		if (!delimited && formatted.endsWith(delimiter)) {
+			return formatted.substring(0, formatted.length() - delimiter.length());
+		}
+		return formatted;
+	}
 
-					// Append new line when needed
-					final String lineEnd = formattedDoc.getLineDelimiter(line);
-					if (lineEnd != null) {
-						code.append(lineEnd);
-					}
-				}
-				final int selectionStartOffset = doc.getLineOffset(startLine);
-				return new ReplaceEdit(selectionStartOffset, lengthToReplace, code.toString());
-			} catch (BadLocationException e) {
-				MessageDialog.openError(Display.getDefault().getActiveShell(), Messages.LuaFormatterErrorWhileFormattingTitle,
-						Messages.LuaFormatterUnableToFormatSelection);
-				Activator.logError(Messages.LuaFormatterUnableToFormatSelection, e);
+	/**
+	 * @return offsets of line starts, followed by text length
+	 */
+	private static List<Integer> lineOffsets(final String text) {
+		final List<Integer> offsets = new ArrayList<Integer>();
+		offsets.add(0);
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+				i++;
+				offsets.add(i + 1);
+			} else if (c == '\n' || c == '\r') {
+				offsets.add(i + 1);
 			}
 		}
-		// Construct text edition
-		return new ReplaceEdit(offset, length, formatted);
+		offsets.add(text.length());
+		return offsets;
+	}
+
+	/**
+	 * @return end of line content, before its delimiter
+	 */
+	private static int contentEnd(final String text, final int start, final int end) {
+		int contentEnd = end;
+		while (contentEnd > start && (text.charAt(contentEnd - 1) == '\n' || text.charAt(contentEnd - 1) == '\r')) {
+			contentEnd--;
+		}
+		return contentEnd;
 	}
 
+	/**
+	 * Depth of line containing offset, read from the block depth cache of document, so only lines changed since last call are scanned.
+	 * 
+	 * Depth is the count of blocks containing first token of line, plus the count of table constructors containing it when table values are
+	 * indented: it is the count of indentations {@link #format(String, int, int, int)} gives this line. Inside blocks, this is one more than the
+	 * level previously computed by Metalua, which was the depth of enclosing block minus one. DLTK formatting actions pass this level to
+	 * {@link #format(String, int, int, int)}, which ignores it, so formatting does not depend on this change.
+	 * 
+	 * @see org.eclipse.dltk.ui.formatter.IScriptFormatter#detectIndentationLevel(IDocument, int)
+	 */
 	@Override
 	public int detectIndentationLevel(final IDocument document, final int offset) {
-		return LuaSourceFormat.depth(document.get(), offset);
+		try {
+			final LuaBlockScanner.Line line = LuaBlockDepthCache.forDocument(document).getLine(document, document.getLineOfOffset(offset));
+			return line.getIndentationBlockDepth() + (formatTableValues ? line.getIndentationTableDepth() : 0);
+		} catch (BadLocationException e) {
+			return 0;
+		}
 	}
 }
@@ -15,7 +15,6 @@ import org.eclipse.osgi.util.NLS;
 // CHECKSTYLE NLS: OFF
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.koneki.ldt.editor.formatter.messages"; //$NON-NLS-1$
-	public static String LuaFormatterErrorWhileFormattingTitle;
 	public static String LuaFormatterFactoryPreviewNotFound;
 	public static String LuaFormatterUnableToFormatSelection;
 	static {
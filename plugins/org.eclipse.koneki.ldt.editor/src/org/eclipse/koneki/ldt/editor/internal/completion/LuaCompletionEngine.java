@@ -15,9 +15,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
-import org.eclipse.dltk.ast.ASTNode;
 import org.eclipse.dltk.ast.declarations.Argument;
 import org.eclipse.dltk.ast.declarations.Declaration;
 import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
@@ -29,17 +27,15 @@ import org.eclipse.dltk.core.Flags;
 import org.eclipse.dltk.core.IMember;
 import org.eclipse.dltk.core.IMethod;
 import org.eclipse.dltk.core.IModelElement;
-import org.eclipse.dltk.core.IModelElementVisitor;
-import org.eclipse.dltk.core.IProjectFragment;
-import org.eclipse.dltk.core.IScriptProject;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.IType;
 import org.eclipse.dltk.core.ModelException;
 import org.eclipse.dltk.core.SourceParserUtil;
 import org.eclipse.koneki.ldt.editor.Activator;
-import org.eclipse.koneki.ldt.editor.internal.navigation.LuaLocalDeclarationVisitor;
 import org.eclipse.koneki.ldt.parser.LuaASTUtils;
-import org.eclipse.koneki.ldt.parser.LuaSelectionEngine;
+import org.eclipse.koneki.ldt.parser.LuaRequireGraph;
+import org.eclipse.koneki.ldt.parser.ast.LuaScope;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
 import org.eclipse.koneki.ldt.parser.ast.declarations.FunctionDeclaration;
 import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
 
@@ -49,6 +45,13 @@ import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
  * 
  */
 public class LuaCompletionEngine extends ScriptCompletionEngine {
+	/** Global proposals beyond this count are dropped, a longer prefix narrows them */
+	private static final int MAX_GLOBAL_PROPOSALS = 500;
+	/** Keywords come last, locals first */
+	private static final int KEYWORD_RELEVANCE = 1;
+	/** Score of match with typed text is added, from {@link LuaNameIndex#SUBSEQUENCE} to {@link LuaNameIndex#EXACT} */
+	private static final int GLOBAL_RELEVANCE = 10;
+	private static final int LOCAL_RELEVANCE = 20;
 
 	@Override
 	public void complete(IModuleSource module, int position, int k) {
@@ -63,8 +66,8 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 				return;
 			}
 
-			// Retrieve start position of word current user is typing
-			final String start = getWordStarting(module.getSourceContents(), position).toLowerCase();
+			// Retrieve start position of word current user is typing, case is kept to rank proposals
+			final String start = getWordStarting(module.getSourceContents(), position);
 			this.actualCompletionPosition = position;
 			this.offset = actualCompletionPosition - start.length();
 			this.requestor.beginReporting();
@@ -75,7 +78,7 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 				addModuleFields(sourceModule, ids);
 			} else {
 				// Search local declaration in AST
-				// addLocalDeclarations(sourceModule, start);
+				addLocalDeclarations(sourceModule, start);
 
 				// Search global declaration in DLTK model
 				addGlobalDeclarations(sourceModule, start);
@@ -92,7 +95,7 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 	}
 
 	/**
-	 * Browse {@link ISourceModule} in order to find {@link IModelElement}s pertinent for completion stating with given string.
+	 * Looks up global members matching given string in the symbol index of project, best matches get the highest relevance.
 	 * 
 	 * @param sourceModule
 	 *            Source representation browsed for variable {@link Declaration}s
@@ -100,32 +103,9 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 	 *            String that user just typed
 	 */
 	private void addGlobalDeclarations(ISourceModule sourceModule, final String start) throws ModelException {
-		IScriptProject project = sourceModule.getScriptProject();
-		IProjectFragment[] allProjectFragments = project.getAllProjectFragments();
-		for (IProjectFragment iProjectFragment : allProjectFragments) {
-			iProjectFragment.accept(new IModelElementVisitor() {
-				public boolean visit(IModelElement element) {
-					// manage only global member
-					if (element instanceof IMember) {
-						IMember member = (IMember) element;
-						try {
-							// manage public member except module
-							if (Flags.isPublic(member.getFlags()) && !LuaASTUtils.isModule(member)) {
-								final boolean goodStart = element.getElementName().toLowerCase().startsWith(start.toLowerCase());
-								final boolean nostart = start.isEmpty();
-								if (goodStart || nostart) {
-									createProposal(element.getElementName(), element);
-								}
-							}
-						} catch (ModelException e) {
-							Activator.logWarning("unable to acces to " + member + " to feed autocompletion.", e); //$NON-NLS-1$//$NON-NLS-2$
-						}
-						// don't go inside member.
-						return false;
-					}
-					return true;
-				}
-			});
+		final LuaSymbolIndex index = LuaSymbolIndex.getIndex(sourceModule.getScriptProject());
+		for (final LuaNameIndex.Match<IMember> match : index.find(start, MAX_GLOBAL_PROPOSALS)) {
+			createProposal(match.getName(), match.getValue(), GLOBAL_RELEVANCE + match.getScore());
 		}
 	}
 
@@ -141,29 +121,29 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 				"in", "local", "nil", "not", "or",//$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
 				"repeat", "return", "then", "true", "until", "while" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
 		for (int j = 0; j < keywords.length; j++) {
-			if (start.isEmpty() || keywords[j].startsWith(start)) {
-				createProposal(keywords[j], null);
+			if (start.isEmpty() || keywords[j].startsWith(start.toLowerCase())) {
+				createProposal(keywords[j], null, KEYWORD_RELEVANCE);
 			}
 		}
 	}
 
+	/**
+	 * Looks up local declarations visible at completion offset in the scope tree of AST, the ones matching typed text are proposed.
+	 * 
+	 * @param sourceModule
+	 *            Source representation browsed for variable {@link Declaration}s
+	 * @param start
+	 *            String that user just typed
+	 */
 	private void addLocalDeclarations(ISourceModule sourceModule, String start) {
 		// Retrieve AST from cache
 		final ModuleDeclaration moduleDeclaration = SourceParserUtil.getModuleDeclaration(sourceModule);
-		if (moduleDeclaration != null) {
-			try {
-				// Locate a node at cursor position
-				final ASTNode nodeInScope = LuaASTUtils.getClosestScope(moduleDeclaration, offset);
-				// Locate nodes above this one, to gather local variable of those scopes
-				LuaLocalDeclarationVisitor visitor = new LuaLocalDeclarationVisitor(nodeInScope);
-				moduleDeclaration.traverse(visitor);
-				for (Declaration declaration : visitor.getDeclarations()) {
+		if (moduleDeclaration instanceof LuaSourceRoot) {
+			final LuaScope scope = ((LuaSourceRoot) moduleDeclaration).getScope();
+			for (final Declaration declaration : scope.getVisibleDeclarations(offset)) {
+				if (LuaNameIndex.score(declaration.getName(), start) != LuaNameIndex.NONE) {
 					createProposal(declaration);
 				}
-				// CHECKSTYLE:OFF
-			} catch (Exception e) {
-				// CHECKSTYLE:ON
-				Activator.logWarning(Messages.LuaCompletionEngineDuringLocalProposalProcessing, e);
 			}
 		}
 	}
@@ -176,21 +156,23 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 		final String identifierName = ids.get(0);
 		final ModuleDeclaration ast = SourceParserUtil.getModuleDeclaration(sourceModule);
 		final ModuleReference moduleref = LuaASTUtils.getModuleReferenceFromName(ast, identifierName);
+		if (moduleref == null) {
+			return;
+		}
 		try {
-			final IModelElement definition = LuaSelectionEngine.findDefinition(moduleref, sourceModule);
-			if (definition instanceof ISourceModule) {
-				Map<String, Declaration> moduleFields = LuaASTUtils.getModuleFields((ISourceModule) definition);
+			// Fields are resolved once until exports of required module change
+			final Map<String, IModelElement> moduleFields = LuaRequireGraph.getRequiredFields(sourceModule, moduleref.getModuleNameReference());
+			if (!moduleFields.isEmpty()) {
 				// get field name
 				final String fieldName = ids.get(1);
 				// Update replacement position as well just insert field name without module reference name
 				this.offset = actualCompletionPosition - fieldName.length();
 				// search field
-				for (final Entry<String, Declaration> entry : moduleFields.entrySet()) {
-					IModelElement element = ((ISourceModule) definition).getElementAt(entry.getValue().sourceStart());
+				for (final IModelElement element : moduleFields.values()) {
 					final boolean goodStart = element.getElementName().toLowerCase().startsWith(fieldName.toLowerCase());
 					final boolean nostart = fieldName.isEmpty();
 					if (goodStart || nostart) {
-						createProposal(element.getElementName(), element);
+						createProposal(element.getElementName(), element, GLOBAL_RELEVANCE);
 					}
 				}
 			}
@@ -230,17 +212,14 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 		proposal.setName(name);
 		proposal.setCompletion(name);
 		proposal.setReplaceRange(offset, offset + name.length());
-		proposal.setRelevance(3);
+		proposal.setRelevance(LOCAL_RELEVANCE);
 		this.requestor.accept(proposal);
 	}
 
-	private void createProposal(String name, IModelElement element) {
+	private void createProposal(String name, IModelElement element, int relevance) {
 		CompletionProposal proposal = null;
-		int relevance = 2;
 		try {
 			if (element == null) {
-				// Lower relevance for key words
-				relevance = 1;
 				proposal = this.createProposal(CompletionProposal.KEYWORD, this.actualCompletionPosition);
 			} else {
 				// Only collect global proposals
@@ -41,6 +41,16 @@ public class LuaCompletionProposal extends ScriptCompletionProposal {
 		}
 	}
 
+	/**
+	 * Proposals found by initials, substring or subsequence remain while user goes on typing.
+	 * 
+	 * @see org.eclipse.dltk.ui.text.completion.AbstractScriptCompletionProposal#isValidPrefix(java.lang.String)
+	 */
+	@Override
+	protected boolean isValidPrefix(final String prefix) {
+		return super.isValidPrefix(prefix) || LuaNameIndex.score(getReplacementString(), prefix) != LuaNameIndex.NONE;
+	}
+
 	protected boolean insertCompletion() {
 		// TODO clean Preferences ! not the good way to get the information...
 		// we must have a reflexion on the preference and where we should store it.
@@ -0,0 +1,499 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.internal.completion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Names matched against what user typed, by prefix, camel case or underscore initials, substring or subsequence.
+ * 
+ * Names are sorted by lower case name, so names starting with typed text are a range. Initials and subsequence matches are searched among names
+ * or initials starting with the first typed character, substring matches among names containing the rarest trigram of typed text, or its
+ * rarest character when typed text is shorter than a trigram. Each name also has a mask of its characters, to reject most candidates before
+ * comparing characters.
+ * 
+ * Matches are ranked in a heap holding at most the requested count of matches. Names of weaker passes are walked shortest first, so a pass stops
+ * as soon as its remaining names can not rank among the matches already found: a lookup does not depend on how many names contain a common
+ * trigram.
+ * 
+ * Not thread safe.
+ * 
+ * @param <T>
+ *            type of values associated to names
+ */
+public class LuaNameIndex<T> {
+	/** Name equals typed text */
+	public static final int EXACT = 9;
+	/** Name starts with typed text */
+	public static final int PREFIX = 8;
+	/** Name starts with typed text, ignoring case */
+	public static final int PREFIX_IGNORING_CASE = 7;
+	/** Typed text starts initials of camel case or underscore separated words of name */
+	public static final int INITIALS = 5;
+	/** Name contains typed text, ignoring case */
+	public static final int SUBSTRING = 3;
+	/** Name contains typed characters in the same order, starting with the first one */
+	public static final int SUBSEQUENCE = 1;
+	/** Name does not match */
+	public static final int NONE = -1;
+
+	/** Separates name from identifier in keys, it sorts before any name character */
+	private static final char KEY_SEPARATOR = '\0';
+	private static final int TRIGRAM = 3;
+
+	/** Indexed name */
+	private static final class Entry<T> {
+		private final String name;
+		private final String lowerCaseName;
+		private final String initials;
+		private final long mask;
+		private final T value;
+		private boolean removed = false;
+
+		private Entry(final String name, final T value) {
+			this.name = name;
+			this.lowerCaseName = name.toLowerCase();
+			this.initials = initials(name);
+			this.mask = mask(lowerCaseName);
+			this.value = value;
+		}
+	}
+
+	/** Entries sharing a trigram or a first character, sorted shortest first when walked */
+	private static final class Posting<T> {
+		private final List<Entry<T>> entries = new ArrayList<Entry<T>>(2);
+		private boolean sorted = true;
+
+		private void add(final Entry<T> entry) {
+			sorted = sorted && (entries.isEmpty() || entries.get(entries.size() - 1).name.length() <= entry.name.length());
+			entries.add(entry);
+		}
+
+		private int size() {
+			return entries.size();
+		}
+
+		/**
+		 * @return entries, shortest names first
+		 */
+		private List<Entry<T>> shortestFirst() {
+			if (!sorted) {
+				// Stable, keeping insertion order of names of the same length, and almost linear as entries are appended to a sorted list
+				Collections.sort(entries, new Comparator<Entry<T>>() {
+					@Override
+					public int compare(final Entry<T> left, final Entry<T> right) {
+						return left.name.length() - right.name.length();
+					}
+				});
+				sorted = true;
+			}
+			return entries;
+		}
+	}
+
+	/** Best matches found so far, at most limit of them */
+	private static final class Ranking<T> {
+		private final int limit;
+		/** Worst match first, so it is the one dropped for a better one */
+		private final PriorityQueue<Match<T>> worstFirst;
+
+		private Ranking(final int limit) {
+			this.limit = limit;
+			this.worstFirst = new PriorityQueue<Match<T>>(Math.max(1, Math.min(limit, 64)), new Comparator<Match<T>>() {
+				@Override
+				public int compare(final Match<T> left, final Match<T> right) {
+					return Ranking.compare(right, left);
+				}
+			});
+		}
+
+		/** Orders best match first: higher score, then shorter name, then name order */
+		private static int compare(final Match<?> left, final Match<?> right) {
+			if (left.score != right.score) {
+				return right.score - left.score;
+			}
+			if (left.name.length() != right.name.length()) {
+				return left.name.length() - right.name.length();
+			}
+			return left.name.compareTo(right.name);
+		}
+
+		/**
+		 * @return <code>true</code> when a match with given score and name length could still rank
+		 */
+		private boolean accepts(final int score, final int length) {
+			if (worstFirst.size() < limit) {
+				return true;
+			}
+			final Match<T> worst = worstFirst.peek();
+			return score > worst.score || (score == worst.score && length <= worst.name.length());
+		}
+
+		private void offer(final Entry<T> entry, final int score) {
+			if (!accepts(score, entry.name.length())) {
+				return;
+			}
+			final Match<T> match = new Match<T>(entry.name, entry.value, score);
+			if (worstFirst.size() < limit) {
+				worstFirst.add(match);
+			} else if (compare(match, worstFirst.peek()) < 0) {
+				worstFirst.poll();
+				worstFirst.add(match);
+			}
+		}
+
+		/**
+		 * @return matches, best first
+		 */
+		private List<Match<T>> matches() {
+			final List<Match<T>> matches = new ArrayList<Match<T>>(worstFirst);
+			Collections.sort(matches, new Comparator<Match<T>>() {
+				@Override
+				public int compare(final Match<T> left, final Match<T> right) {
+					return Ranking.compare(left, right);
+				}
+			});
+			return matches;
+		}
+	}
+
+	/** Value of a matching name, with its score */
+	public static final class Match<T> {
+		private final String name;
+		private final T value;
+		private final int score;
+
+		private Match(final String name, final T value, final int score) {
+			this.name = name;
+			this.value = value;
+			this.score = score;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public T getValue() {
+			return value;
+		}
+
+		/**
+		 * @return quality of match, from {@link #SUBSEQUENCE} to {@link #EXACT}
+		 */
+		public int getScore() {
+			return score;
+		}
+	}
+
+	/** Entries by lower case name followed by identifier, so homonyms do not collide */
+	private final TreeMap<String, Entry<T>> entries = new TreeMap<String, Entry<T>>();
+	/** Entries containing each lower case trigram, removed entries are purged when they get too many */
+	private final Map<String, Posting<T>> trigrams = new HashMap<String, Posting<T>>();
+	/** Entries by first lower case character, and by first initial when it differs as in <code>_name</code>, purged along with trigrams */
+	private final Map<Character, Posting<T>> firstCharacters = new HashMap<Character, Posting<T>>();
+	/** Entries containing each lower case character, for typed text too short to have a trigram, purged along with trigrams */
+	private final Map<Character, Posting<T>> characters = new HashMap<Character, Posting<T>>();
+	private int removedCount = 0;
+
+	/**
+	 * Adds a name, replacing the one with the same name and identifier.
+	 * 
+	 * @param name
+	 *            indexed name
+	 * @param identifier
+	 *            distinguishes homonyms
+	 * @param value
+	 *            value returned for name
+	 * @return key to remove name
+	 */
+	public String add(final String name, final String identifier, final T value) {
+		final String key = name.toLowerCase() + KEY_SEPARATOR + identifier;
+		remove(key);
+		final Entry<T> entry = new Entry<T>(name, value);
+		entries.put(key, entry);
+		addPostings(entry);
+		return key;
+	}
+
+	/**
+	 * @param key
+	 *            key given when name was added
+	 */
+	public void remove(final String key) {
+		final Entry<T> entry = entries.remove(key);
+		if (entry == null) {
+			return;
+		}
+		entry.removed = true;
+		removedCount++;
+		if (removedCount > entries.size()) {
+			// Rebuild posting lists from live entries only
+			trigrams.clear();
+			firstCharacters.clear();
+			characters.clear();
+			removedCount = 0;
+			for (final Entry<T> live : entries.values()) {
+				addPostings(live);
+			}
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+		trigrams.clear();
+		firstCharacters.clear();
+		characters.clear();
+		removedCount = 0;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Finds names matching typed text. Weaker matches are only searched while they can rank among the matches already found.
+	 * 
+	 * @param typed
+	 *            text typed by user, empty matches all names
+	 * @param limit
+	 *            maximum count of matches
+	 * @return best matches first, then shortest names, then names in lexicographic order
+	 */
+	public List<Match<T>> find(final String typed, final int limit) {
+		if (typed.length() == 0) {
+			// Everything matches, ranking all names would be pointless
+			final List<Match<T>> matches = new ArrayList<Match<T>>();
+			for (final Entry<T> entry : entries.values()) {
+				if (matches.size() >= limit) {
+					break;
+				}
+				matches.add(new Match<T>(entry.name, entry.value, PREFIX));
+			}
+			return matches;
+		}
+		if (limit <= 0) {
+			return new ArrayList<Match<T>>();
+		}
+		final String lowerCaseTyped = typed.toLowerCase();
+		final Ranking<T> ranking = new Ranking<T>(limit);
+
+		// Names starting with typed text are contiguous
+		for (final Entry<T> entry : entries.subMap(lowerCaseTyped, lowerCaseTyped + Character.MAX_VALUE).values()) {
+			ranking.offer(entry, score(entry.name, entry.lowerCaseName, entry.initials, typed, lowerCaseTyped));
+		}
+
+		final char first = lowerCaseTyped.charAt(0);
+		final long typedMask = mask(lowerCaseTyped);
+
+		// Other names starting with first typed character may match by initials
+		final Posting<T> sameFirst = firstCharacters.get(first);
+		if (sameFirst != null) {
+			for (final Entry<T> entry : sameFirst.shortestFirst()) {
+				if (!ranking.accepts(INITIALS, entry.name.length())) {
+					break;
+				}
+				if (!entry.removed && !entry.lowerCaseName.startsWith(lowerCaseTyped) && entry.initials.startsWith(lowerCaseTyped)) {
+					ranking.offer(entry, INITIALS);
+				}
+			}
+		}
+
+		// Names containing typed text, not already found
+		final Posting<T> candidates = substringCandidates(lowerCaseTyped);
+		if (candidates != null) {
+			for (final Entry<T> entry : candidates.shortestFirst()) {
+				if (!ranking.accepts(SUBSTRING, entry.name.length())) {
+					break;
+				}
+				if (!entry.removed && (entry.mask & typedMask) == typedMask && entry.lowerCaseName.contains(lowerCaseTyped)
+						&& score(entry.name, entry.lowerCaseName, entry.initials, typed, lowerCaseTyped) == SUBSTRING) {
+					ranking.offer(entry, SUBSTRING);
+				}
+			}
+		}
+
+		// Weakest matches
+		if (sameFirst != null) {
+			for (final Entry<T> entry : sameFirst.shortestFirst()) {
+				if (!ranking.accepts(SUBSEQUENCE, entry.name.length())) {
+					break;
+				}
+				if (!entry.removed && (entry.mask & typedMask) == typedMask
+						&& score(entry.name, entry.lowerCaseName, entry.initials, typed, lowerCaseTyped) == SUBSEQUENCE) {
+					ranking.offer(entry, SUBSEQUENCE);
+				}
+			}
+		}
+		return ranking.matches();
+	}
+
+	/**
+	 * Scores a name against typed text, without index.
+	 * 
+	 * @return score of match, {@link #NONE} when name does not match
+	 */
+	public static int score(final String name, final String typed) {
+		return score(name, name.toLowerCase(), initials(name), typed, typed.toLowerCase());
+	}
+
+	private static int score(final String name, final String lowerCaseName, final String initials, final String typed,
+			final String lowerCaseTyped) {
+		if (name.startsWith(typed)) {
+			return name.length() == typed.length() ? EXACT : PREFIX;
+		}
+		if (lowerCaseName.startsWith(lowerCaseTyped)) {
+			return PREFIX_IGNORING_CASE;
+		}
+		if (initials.startsWith(lowerCaseTyped)) {
+			return INITIALS;
+		}
+		if (lowerCaseName.contains(lowerCaseTyped)) {
+			return SUBSTRING;
+		}
+		if (lowerCaseTyped.length() > 0 && lowerCaseName.length() > 0 && lowerCaseName.charAt(0) == lowerCaseTyped.charAt(0)
+				&& isSubsequence(lowerCaseTyped, lowerCaseName)) {
+			return SUBSEQUENCE;
+		}
+		return NONE;
+	}
+
+	private static boolean isSubsequence(final String sequence, final String text) {
+		int position = 0;
+		for (int i = 0; i < sequence.length(); i++) {
+			position = text.indexOf(sequence.charAt(i), position) + 1;
+			if (position == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return entries containing least frequent trigram of text, or its least frequent character when text is shorter than a trigram,
+	 *         <code>null</code> when no name contains it
+	 */
+	private Posting<T> substringCandidates(final String lowerCaseText) {
+		Posting<T> rarest = null;
+		if (lowerCaseText.length() < TRIGRAM) {
+			for (int i = 0; i < lowerCaseText.length(); i++) {
+				final Posting<T> posting = characters.get(lowerCaseText.charAt(i));
+				if (posting == null) {
+					return null;
+				}
+				if (rarest == null || posting.size() < rarest.size()) {
+					rarest = posting;
+				}
+			}
+			return rarest;
+		}
+		for (int i = 0; i + TRIGRAM <= lowerCaseText.length(); i++) {
+			final Posting<T> posting = trigrams.get(lowerCaseText.substring(i, i + TRIGRAM));
+			if (posting == null) {
+				// No name contains text
+				return null;
+			}
+			if (rarest == null || posting.size() < rarest.size()) {
+				rarest = posting;
+			}
+		}
+		return rarest;
+	}
+
+	private void addPostings(final Entry<T> entry) {
+		final String name = entry.lowerCaseName;
+		if (name.length() > 0) {
+			addPosting(firstCharacters, name.charAt(0), entry);
+		}
+		if (entry.initials.length() > 0 && (name.length() == 0 || entry.initials.charAt(0) != name.charAt(0))) {
+			addPosting(firstCharacters, entry.initials.charAt(0), entry);
+		}
+		for (int i = 0; i < name.length(); i++) {
+			final char c = name.charAt(i);
+			// A name repeating a character is listed once
+			if (name.indexOf(c) == i) {
+				addPosting(characters, c, entry);
+			}
+		}
+		for (int i = 0; i + TRIGRAM <= name.length(); i++) {
+			final String trigram = name.substring(i, i + TRIGRAM);
+			// A name repeating a trigram is listed once
+			if (name.indexOf(trigram) == i) {
+				Posting<T> posting = trigrams.get(trigram);
+				if (posting == null) {
+					posting = new Posting<T>();
+					trigrams.put(trigram, posting);
+				}
+				posting.add(entry);
+			}
+		}
+	}
+
+	private static <T> void addPosting(final Map<Character, Posting<T>> postings, final char c, final Entry<T> entry) {
+		Posting<T> posting = postings.get(c);
+		if (posting == null) {
+			posting = new Posting<T>();
+			postings.put(c, posting);
+		}
+		posting.add(entry);
+	}
+
+	/**
+	 * @return first letter of each word of name, words are separated by case changes or underscores, in lower case
+	 */
+	private static String initials(final String name) {
+		final StringBuilder initials = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			final char c = name.charAt(i);
+			if (!Character.isLetterOrDigit(c)) {
+				continue;
+			}
+			final char previous = i > 0 ? name.charAt(i - 1) : '_';
+			final boolean afterSeparator = !Character.isLetterOrDigit(previous);
+			final boolean lowerToUpper = Character.isUpperCase(c) && !Character.isUpperCase(previous);
+			// Last capital of an acronym starts next word, as in HTTPServer
+			final boolean acronymEnd = Character.isUpperCase(c) && Character.isUpperCase(previous) && i + 1 < name.length()
+					&& Character.isLowerCase(name.charAt(i + 1));
+			if (afterSeparator || lowerToUpper || acronymEnd) {
+				initials.append(Character.toLowerCase(c));
+			}
+		}
+		return initials.toString();
+	}
+
+	/**
+	 * @return bits of characters of a lower case text: letters, digits, underscore and others
+	 */
+	private static long mask(final String lowerCaseText) {
+		long mask = 0;
+		for (int i = 0; i < lowerCaseText.length(); i++) {
+			final char c = lowerCaseText.charAt(i);
+			final int bit;
+			if (c >= 'a' && c <= 'z') {
+				bit = c - 'a';
+			} else if (c >= '0' && c <= '9') {
+				bit = 26 + c - '0';
+			} else if (c == '_') {
+				bit = 36;
+			} else {
+				bit = 37;
+			}
+			mask |= 1L << bit;
+		}
+		return mask;
+	}
+}
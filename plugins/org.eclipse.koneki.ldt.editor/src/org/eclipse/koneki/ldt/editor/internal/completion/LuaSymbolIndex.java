@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.internal.completion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.dltk.core.Flags;
+import org.eclipse.dltk.core.IMember;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.IModelElementVisitor;
+import org.eclipse.dltk.core.IProjectFragment;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ModelException;
+import org.eclipse.koneki.ldt.core.LuaProjectCache;
+import org.eclipse.koneki.ldt.editor.Activator;
+import org.eclipse.koneki.ldt.parser.LuaASTUtils;
+
+/**
+ * Public members of the source modules available to a project, in a {@link LuaNameIndex} so completion does not walk the model.
+ * 
+ * Index is built at first lookup. Model deltas then only mark changed source modules, their members are indexed again at next lookup. Build path
+ * changes drop the index, it is built again when needed.
+ */
+public final class LuaSymbolIndex {
+	/** Indexes by project */
+	private static final LuaProjectCache<LuaSymbolIndex> INDEXES = new LuaProjectCache<LuaSymbolIndex>() {
+		@Override
+		protected LuaSymbolIndex create(final IScriptProject project) {
+			return new LuaSymbolIndex(project);
+		}
+
+		@Override
+		protected void moduleChanged(final IScriptProject project, final LuaSymbolIndex index, final ISourceModule module, final int kind) {
+			index.changed(module, kind == IModelElementDelta.REMOVED);
+		}
+	};
+
+	private final IScriptProject project;
+	/** Names of members, identified by their handle */
+	private final LuaNameIndex<IMember> names = new LuaNameIndex<IMember>();
+	/** Keys of symbols of each indexed module, to remove them on change */
+	private final Map<ISourceModule, List<String>> moduleKeys = new HashMap<ISourceModule, List<String>>();
+	/** Modules changed since last lookup, with <code>true</code> when they were removed */
+	private final Map<ISourceModule, Boolean> changedModules = new ConcurrentHashMap<ISourceModule, Boolean>();
+	private boolean built = false;
+
+	private LuaSymbolIndex(final IScriptProject project) {
+		this.project = project;
+	}
+
+	/**
+	 * @return indexes of all projects, to be registered by plug-in activator
+	 */
+	public static LuaProjectCache<?> getIndexes() {
+		return INDEXES;
+	}
+
+	/**
+	 * @return index of given project, built at first lookup
+	 */
+	public static LuaSymbolIndex getIndex(final IScriptProject project) {
+		return INDEXES.get(project);
+	}
+
+	/**
+	 * Looks up symbols matching typed text by prefix, initials, substring or subsequence, as {@link LuaNameIndex} does.
+	 * 
+	 * @param typed
+	 *            text typed by user, empty for all symbols
+	 * @param limit
+	 *            maximum count of symbols to return
+	 * @return matching symbols, best ones first
+	 * @throws ModelException
+	 *             when project can not be browsed to build index
+	 */
+	public synchronized List<LuaNameIndex.Match<IMember>> find(final String typed, final int limit) throws ModelException {
+		update();
+		return names.find(typed, limit);
+	}
+
+	/**
+	 * Builds index when needed and indexes modules changed since last lookup.
+	 */
+	private void update() throws ModelException {
+		if (!built) {
+			changedModules.clear();
+			names.clear();
+			moduleKeys.clear();
+			for (final IProjectFragment fragment : project.getAllProjectFragments()) {
+				fragment.accept(new IModelElementVisitor() {
+					@Override
+					public boolean visit(final IModelElement element) {
+						if (element instanceof ISourceModule) {
+							index((ISourceModule) element);
+							return false;
+						}
+						return true;
+					}
+				});
+			}
+			built = true;
+			return;
+		}
+		for (final ISourceModule module : changedModules.keySet()) {
+			final Boolean removed = changedModules.remove(module);
+			unindex(module);
+			if (!removed && module.exists() && project.isOnBuildpath(module)) {
+				index(module);
+			}
+		}
+	}
+
+	/**
+	 * Indexes public members of a module, except modules.
+	 */
+	private void index(final ISourceModule module) {
+		final List<String> keys = new ArrayList<String>();
+		try {
+			for (final IModelElement child : module.getChildren()) {
+				if (child instanceof IMember) {
+					final IMember member = (IMember) child;
+					if (Flags.isPublic(member.getFlags()) && !LuaASTUtils.isModule(member)) {
+						keys.add(names.add(member.getElementName(), member.getHandleIdentifier(), member));
+					}
+				}
+			}
+		} catch (ModelException e) {
+			Activator.logWarning(Messages.LuaCompletionEngineProblemProcessingGlobals, e);
+		}
+		moduleKeys.put(module, keys);
+	}
+
+	private void unindex(final ISourceModule module) {
+		final List<String> keys = moduleKeys.remove(module);
+		if (keys != null) {
+			for (final String key : keys) {
+				names.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Marks a module to index again at next lookup, where it is only indexed when it is on project build path.
+	 */
+	private void changed(final ISourceModule module, final boolean removed) {
+		changedModules.put(module, removed);
+	}
+}
@@ -16,7 +16,6 @@ import org.eclipse.osgi.util.NLS;
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.koneki.ldt.editor.internal.completion.messages"; //$NON-NLS-1$
 	public static String LuaCompletionEngineBadModelElement;
-	public static String LuaCompletionEngineDuringLocalProposalProcessing;
 	public static String LuaCompletionEngineGlobalModelException;
 	public static String LuaCompletionEngineIniTialization;
 	public static String LuaCompletionEngineModelElementDoesNotImplementIMember;
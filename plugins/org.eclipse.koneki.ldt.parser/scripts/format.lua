@@ -26,7 +26,9 @@ require 'metalua.compiler'
 -- @param Indicates if code in table definitions should be indented
 -- @result Semantic depth of source at given offset
 -- @usage local depth = format.indentLevel("local var", 3)
-local parsedSources = {}
+--
+-- Only the last source is kept, as this module lives as long as its Lua state
+local lastSource, lastAST
 function M.indentLevel(source, offset, flush, indenttable)
 	---
 	-- Indicates whether an offset is included in node offsets
@@ -91,13 +93,14 @@ function M.indentLevel(source, offset, flush, indenttable)
 			walker.depth = walker.depth - 1
 		end
 	end
-	-- Fetch previous ast from those sources
-	if not parsedSources[source] or flush then
+	-- Fetch previous ast from this source
+	if source ~= lastSource or flush then
 		-- Generate AST when needed or asked
-		parsedSources[source] = mlc.luastring_to_ast(source)
+		lastAST = mlc.luastring_to_ast(source)
+		lastSource = source
 	end
 	-- Walk through AST
-	local ast = parsedSources[source]
+	local ast = lastAST
 	require 'metalua.walk'
 	walk.block(walker, ast)
 	return walker.nodeDepth > 0 and walker.nodeDepth - 1 or 0
@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.dltk.ast.ASTNode;
+
+/**
+ * Copies nodes of an AST, so the copy can be modified while the original AST is read by other threads.
+ * 
+ * Nodes are copied field by field whatever their class: a node is instantiated through its constructor with the fewest parameters, given default
+ * values, then each of its instance fields is assigned. Fields holding nodes, or lists and arrays of nodes, refer to copies; other values, such as
+ * strings, are shared. Each node is copied once, so links between nodes, such as occurrences of declarations, are kept between copies. Transient
+ * fields hold data computed from nodes, they are left to their default value.
+ * 
+ * Nodes given to {@link #share(ASTNode)} are not copied, copies refer to them as is. A copier can also shift offsets of copies, as AST of a
+ * source with a different length would have them.
+ */
+final class ASTCopier {
+
+	/** Thrown when a node can not be copied */
+	static final class CopyException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private CopyException(final String message, final Throwable cause) {
+			super(message, cause);
+		}
+	}
+
+	/** Fewest parameters first */
+	private static final Comparator<Constructor<?>> PARAMETER_COUNT_ORDER = new Comparator<Constructor<?>>() {
+		@Override
+		public int compare(final Constructor<?> left, final Constructor<?> right) {
+			return left.getParameterTypes().length - right.getParameterTypes().length;
+		}
+	};
+
+	/** Instance fields of node classes, superclasses included, computed once */
+	private static final Map<Class<?>, Field[]> FIELDS = new ConcurrentHashMap<Class<?>, Field[]>();
+	/** Constructor instantiating a node class with default values, found once */
+	private static final Map<Class<?>, Constructor<?>> CONSTRUCTORS = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+	private final int threshold;
+	private final int delta;
+	/** Copy of each reached node or list of nodes, shared nodes are their own copy */
+	private final Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+	/** Nodes copied with their original offsets */
+	private final Set<Object> unshifted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	/** Copies whose fields are not assigned yet, with their original */
+	private final LinkedList<Object[]> pending = new LinkedList<Object[]>();
+	/** Indicates that nodes reached from now on are shared instead of copied */
+	private boolean sharing = false;
+
+	/**
+	 * Copier keeping offsets as is.
+	 */
+	ASTCopier() {
+		this(0, 0);
+	}
+
+	/**
+	 * @param threshold
+	 *            offsets lower than threshold are left as is
+	 * @param delta
+	 *            shift of other offsets
+	 */
+	ASTCopier(final int threshold, final int delta) {
+		this.threshold = threshold;
+		this.delta = delta;
+	}
+
+	/**
+	 * @param node
+	 *            node which is not copied, copies refer to it
+	 */
+	void share(final ASTNode node) {
+		copies.put(node, node);
+	}
+
+	/**
+	 * @param node
+	 *            node which is copied with its original offsets
+	 */
+	void keepOffsets(final ASTNode node) {
+		unshifted.add(node);
+	}
+
+	/**
+	 * Copies a node and all nodes it refers to.
+	 * 
+	 * @param node
+	 *            node to copy
+	 * @return copy of given node
+	 * @throws CopyException
+	 *             when a node can not be instantiated or assigned
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends ASTNode> T copy(final T node) throws CopyException {
+		final T copy = (T) copyValue(node);
+		while (!pending.isEmpty()) {
+			final Object[] next = pending.removeFirst();
+			assign(next[0], next[1]);
+		}
+		return copy;
+	}
+
+	/**
+	 * Copies a node alone, nodes it refers to are shared. Their links to given node, such as parent, still lead to the original node.
+	 * 
+	 * @param node
+	 *            node to copy
+	 * @return copy of given node
+	 * @throws CopyException
+	 *             when node can not be instantiated or assigned
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends ASTNode> T copyShallow(final T node) throws CopyException {
+		final Object copy = instantiate(node.getClass());
+		copies.put(node, copy);
+		sharing = true;
+		assign(node, copy);
+		return (T) copy;
+	}
+
+	/**
+	 * @return copy of given node when it was reached by {@link #copy(ASTNode)}, given node otherwise
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T get(final T node) {
+		final Object copy = copies.get(node);
+		return copy != null ? (T) copy : node;
+	}
+
+	/**
+	 * @return value referring to copies instead of nodes
+	 */
+	private Object copyValue(final Object value) throws CopyException {
+		if (value == null) {
+			return null;
+		}
+		final Object known = copies.get(value);
+		if (known != null) {
+			return known;
+		}
+		if (value instanceof ASTNode) {
+			if (sharing) {
+				return value;
+			}
+			// Fields are assigned later, deep ASTs do not overflow stack
+			final Object copy = instantiate(value.getClass());
+			copies.put(value, copy);
+			pending.add(new Object[] { value, copy });
+			return copy;
+		} else if (value instanceof List<?>) {
+			return copyList((List<?>) value);
+		} else if (value.getClass().isArray() && !value.getClass().getComponentType().isPrimitive()) {
+			final int length = Array.getLength(value);
+			final Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+			for (int i = 0; i < length; i++) {
+				Array.set(copy, i, copyValue(Array.get(value, i)));
+			}
+			return copy;
+		} else if (value instanceof Collection<?> && containsNode((Collection<?>) value)) {
+			throw new CopyException("Unable to copy collection of nodes " + value.getClass().getName(), null); //$NON-NLS-1$
+		} else if (value instanceof Map<?, ?> && (containsNode(((Map<?, ?>) value).keySet()) || containsNode(((Map<?, ?>) value).values()))) {
+			throw new CopyException("Unable to copy map of nodes " + value.getClass().getName(), null); //$NON-NLS-1$
+		}
+		return value;
+	}
+
+	private Object copyList(final List<?> list) throws CopyException {
+		if (list.isEmpty() && !(list instanceof ArrayList<?> || list instanceof LinkedList<?>)) {
+			// Immutable empty list
+			return list;
+		}
+		final List<Object> copy;
+		if (list instanceof LinkedList<?>) {
+			copy = new LinkedList<Object>();
+		} else if (list.getClass() == ArrayList.class) {
+			copy = new ArrayList<Object>(list.size());
+		} else {
+			throw new CopyException("Unable to copy list " + list.getClass().getName(), null); //$NON-NLS-1$
+		}
+		// A list held by several nodes stays shared between their copies
+		copies.put(list, copy);
+		for (final Object element : list) {
+			copy.add(copyValue(element));
+		}
+		return copy;
+	}
+
+	private static boolean containsNode(final Collection<?> values) {
+		for (final Object value : values) {
+			if (value instanceof ASTNode) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void assign(final Object node, final Object copy) throws CopyException {
+		try {
+			for (final Field field : fields(node.getClass())) {
+				field.set(copy, copyValue(field.get(node)));
+			}
+		} catch (IllegalAccessException e) {
+			throw new CopyException("Unable to copy node " + node.getClass().getName(), e); //$NON-NLS-1$
+		}
+		if (delta != 0 && !unshifted.contains(node)) {
+			shift((ASTNode) copy);
+		}
+	}
+
+	/** Empty nodes at offset 0 are placeholders and are not moved */
+	private void shift(final ASTNode node) {
+		if (node.sourceStart() == 0 && node.sourceEnd() == 0) {
+			return;
+		}
+		if (node.sourceStart() >= threshold) {
+			node.setStart(node.sourceStart() + delta);
+		}
+		if (node.sourceEnd() >= threshold && node.sourceEnd() > 0) {
+			node.setEnd(node.sourceEnd() + delta);
+		}
+	}
+
+	private static Object instantiate(final Class<?> type) throws CopyException {
+		final Constructor<?> known = CONSTRUCTORS.get(type);
+		if (known != null) {
+			return newInstance(known);
+		}
+		final Constructor<?>[] constructors = type.getDeclaredConstructors();
+		Arrays.sort(constructors, PARAMETER_COUNT_ORDER);
+		Exception failure = null;
+		for (final Constructor<?> constructor : constructors) {
+			try {
+				constructor.setAccessible(true);
+				final Object instance = newInstance(constructor);
+				CONSTRUCTORS.put(type, constructor);
+				return instance;
+			} catch (CopyException e) {
+				// Default values may not suit this constructor, try next one
+				failure = e;
+			}
+		}
+		throw new CopyException("Unable to instantiate node " + type.getName(), failure); //$NON-NLS-1$
+	}
+
+	private static Object newInstance(final Constructor<?> constructor) throws CopyException {
+		final Class<?>[] parameterTypes = constructor.getParameterTypes();
+		final Object[] arguments = new Object[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			arguments[i] = defaultValue(parameterTypes[i]);
+		}
+		try {
+			return constructor.newInstance(arguments);
+		} catch (InstantiationException e) {
+			throw new CopyException(e.getMessage(), e);
+		} catch (IllegalAccessException e) {
+			throw new CopyException(e.getMessage(), e);
+		} catch (InvocationTargetException e) {
+			throw new CopyException(e.getMessage(), e.getCause());
+		}
+	}
+
+	private static Object defaultValue(final Class<?> type) {
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type == char.class) {
+			return Character.valueOf((char) 0);
+		} else if (type == byte.class) {
+			return Byte.valueOf((byte) 0);
+		} else if (type == short.class) {
+			return Short.valueOf((short) 0);
+		} else if (type == int.class) {
+			return Integer.valueOf(0);
+		} else if (type == long.class) {
+			return Long.valueOf(0);
+		} else if (type == float.class) {
+			return Float.valueOf(0);
+		} else if (type == double.class) {
+			return Double.valueOf(0);
+		} else if (type == String.class) {
+			// Constructors naming nodes may not accept null
+			return ""; //$NON-NLS-1$
+		}
+		return null;
+	}
+
+	/** Instance fields which are not transient */
+	private static Field[] fields(final Class<?> type) {
+		Field[] fields = FIELDS.get(type);
+		if (fields == null) {
+			final List<Field> copied = new ArrayList<Field>();
+			for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+				for (final Field field : current.getDeclaredFields()) {
+					final int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+						field.setAccessible(true);
+						copied.add(field);
+					}
+				}
+			}
+			fields = copied.toArray(new Field[copied.size()]);
+			FIELDS.put(type, fields);
+		}
+		return fields;
+	}
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache holding values up to a maximum total weight, least recently used values are evicted first.
+ * 
+ * Weight of a value is given by {@link #weight(Object)}, typically an estimation of its memory footprint. Reads do not lock: they look the entry
+ * up in a concurrent map and stamp it with the value of an access clock. Writes are serialized by a lock guarding total weight, eviction sorts
+ * entries by access stamp when the cache gets too heavy. Recency is approximate when reads and eviction are concurrent, an entry read while it
+ * is evicted may be evicted anyway.
+ * 
+ * Evicted values can optionally be kept through {@link SoftReference}s, they are then available until the garbage collector needs memory. A value
+ * found this way is brought back in the cache.
+ * 
+ * @param <K>
+ *            type of keys
+ * @param <V>
+ *            type of values
+ */
+public abstract class BoundedCache<K, V> {
+
+	/** Cached value with its weight and last access */
+	private static final class Entry<V> {
+		private final V value;
+		private final int weight;
+		/** Value of access clock when entry was last read or written */
+		private volatile long accessed;
+
+		private Entry(final V value, final int weight, final long accessed) {
+			this.value = value;
+			this.weight = weight;
+			this.accessed = accessed;
+		}
+	}
+
+	/** Evicted value which can still be retrieved while memory allows it */
+	private static final class SpilledValue<K, V> extends SoftReference<V> {
+		private final K key;
+
+		private SpilledValue(final K key, final V value, final ReferenceQueue<? super V> queue) {
+			super(value, queue);
+			this.key = key;
+		}
+	}
+
+	private final long maxWeight;
+	private final boolean spill;
+
+	private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+	/** Incremented on each access, orders entries by recency */
+	private final AtomicLong clock = new AtomicLong();
+	private final ConcurrentHashMap<K, SpilledValue<K, V>> spilled = new ConcurrentHashMap<K, SpilledValue<K, V>>();
+	private final ReferenceQueue<V> collected = new ReferenceQueue<V>();
+	/** Least recently used first */
+	private final Comparator<Map.Entry<K, Entry<V>>> accessOrder = new Comparator<Map.Entry<K, Entry<V>>>() {
+		@Override
+		public int compare(final Map.Entry<K, Entry<V>> left, final Map.Entry<K, Entry<V>> right) {
+			final long leftAccess = left.getValue().accessed;
+			final long rightAccess = right.getValue().accessed;
+			return leftAccess < rightAccess ? -1 : leftAccess == rightAccess ? 0 : 1;
+		}
+	};
+
+	/** Serializes changes of {@link #entries} and {@link #weight} */
+	private final ReentrantLock lock = new ReentrantLock();
+	private volatile long weight = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxWeight
+	 *            maximum total weight of values strongly held
+	 * @param spill
+	 *            when <code>true</code> evicted values are still softly referenced
+	 */
+	protected BoundedCache(final long maxWeight, final boolean spill) {
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("Cache maximum weight must be positive."); //$NON-NLS-1$
+		}
+		this.maxWeight = maxWeight;
+		this.spill = spill;
+	}
+
+	/**
+	 * Computes weight of a value, it is called once when value is put in cache.
+	 * 
+	 * @param value
+	 *            value to weigh
+	 * @return positive weight, in the same unit as maximum weight
+	 */
+	protected abstract int weight(V value);
+
+	/**
+	 * @param key
+	 *            key of searched value
+	 * @return value associated to key, <code>null</code> when there is none
+	 */
+	public V get(final K key) {
+		final Entry<V> entry = entries.get(key);
+		if (entry != null) {
+			entry.accessed = clock.incrementAndGet();
+			hits.incrementAndGet();
+			return entry.value;
+		}
+		if (spill) {
+			expungeCollected();
+			final SpilledValue<K, V> reference = spilled.get(key);
+			final V value = reference == null ? null : reference.get();
+			if (value != null) {
+				hits.incrementAndGet();
+				put(key, value);
+				return value;
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Associates a value to a key, least recently used values are evicted if maximum weight is exceeded. A value heavier than maximum weight is not
+	 * cached.
+	 * 
+	 * @param key
+	 *            key of value
+	 * @param value
+	 *            value to cache
+	 */
+	public void put(final K key, final V value) {
+		final int valueWeight = weight(value);
+		if (valueWeight > maxWeight) {
+			remove(key);
+			return;
+		}
+		final Entry<V> entry = new Entry<V>(value, valueWeight, clock.incrementAndGet());
+		lock.lock();
+		try {
+			final Entry<V> previous = entries.put(key, entry);
+			weight += valueWeight - (previous == null ? 0 : previous.weight);
+			spilled.remove(key);
+			evict();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param key
+	 *            key of value to forget
+	 */
+	public void remove(final K key) {
+		lock.lock();
+		try {
+			final Entry<V> previous = entries.remove(key);
+			if (previous != null) {
+				weight -= previous.weight;
+			}
+			spilled.remove(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Forgets all values, counters are left as is.
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			entries.clear();
+			spilled.clear();
+			weight = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return snapshot of keys of cached values, including softly referenced ones
+	 */
+	public Set<K> keys() {
+		final Set<K> keys = new HashSet<K>(entries.keySet());
+		keys.addAll(spilled.keySet());
+		return keys;
+	}
+
+	/**
+	 * Evicts least recently used entries until total weight fits. Has to be called holding {@link #lock}.
+	 */
+	private void evict() {
+		if (weight <= maxWeight) {
+			return;
+		}
+		final List<Map.Entry<K, Entry<V>>> candidates = new ArrayList<Map.Entry<K, Entry<V>>>(entries.entrySet());
+		Collections.sort(candidates, accessOrder);
+		for (int i = 0; weight > maxWeight && i < candidates.size(); i++) {
+			final Map.Entry<K, Entry<V>> evicted = candidates.get(i);
+			entries.remove(evicted.getKey());
+			weight -= evicted.getValue().weight;
+			evictions.incrementAndGet();
+			if (spill) {
+				spilled.put(evicted.getKey(), new SpilledValue<K, V>(evicted.getKey(), evicted.getValue().value, collected));
+			}
+		}
+		expungeCollected();
+	}
+
+	/** Forgets soft references cleared by garbage collector */
+	@SuppressWarnings("unchecked")
+	private void expungeCollected() {
+		Object reference;
+		while ((reference = collected.poll()) != null) {
+			final SpilledValue<K, V> value = (SpilledValue<K, V>) reference;
+			spilled.remove(value.key, value);
+		}
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @return total weight of values strongly held
+	 */
+	public long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @return count of values strongly held
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+}
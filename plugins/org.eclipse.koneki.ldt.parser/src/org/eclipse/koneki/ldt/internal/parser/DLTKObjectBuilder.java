@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
+import org.eclipse.dltk.ast.expressions.CallArgumentsList;
+import org.eclipse.dltk.ast.expressions.Expression;
+import org.eclipse.dltk.ast.expressions.Literal;
+import org.eclipse.dltk.ast.references.SimpleReference;
+import org.eclipse.dltk.ast.statements.Statement;
+import org.eclipse.dltk.core.Flags;
+import org.eclipse.koneki.ldt.internal.parser.DLTKObjectDecoder.Opcode;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.ast.declarations.FunctionDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.declarations.LuaModuleDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
+import org.eclipse.koneki.ldt.parser.ast.declarations.ScalarVariableDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.declarations.TableDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.declarations.VariableDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.expressions.BinaryExpression;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Call;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Dots;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Function;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Identifier;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Index;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Invoke;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Nil;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Pair;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Parenthesis;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Table;
+import org.eclipse.koneki.ldt.parser.ast.expressions.UnaryExpression;
+import org.eclipse.koneki.ldt.parser.ast.statements.Break;
+import org.eclipse.koneki.ldt.parser.ast.statements.Chunk;
+import org.eclipse.koneki.ldt.parser.ast.statements.Do;
+import org.eclipse.koneki.ldt.parser.ast.statements.ElseIf;
+import org.eclipse.koneki.ldt.parser.ast.statements.ForInPair;
+import org.eclipse.koneki.ldt.parser.ast.statements.ForNumeric;
+import org.eclipse.koneki.ldt.parser.ast.statements.If;
+import org.eclipse.koneki.ldt.parser.ast.statements.Local;
+import org.eclipse.koneki.ldt.parser.ast.statements.LocalRec;
+import org.eclipse.koneki.ldt.parser.ast.statements.Repeat;
+import org.eclipse.koneki.ldt.parser.ast.statements.Return;
+import org.eclipse.koneki.ldt.parser.ast.statements.Set;
+import org.eclipse.koneki.ldt.parser.ast.statements.While;
+
+/**
+ * Creates and links DLTK Java objects for each {@link DLTKObjectFactory} function, whether it is called from Lua or replayed by
+ * {@link DLTKObjectDecoder}. Both only differ by the way they read arguments.
+ */
+final class DLTKObjectBuilder {
+
+	/**
+	 * Arguments of a {@link DLTKObjectFactory} call, they behave as {@link com.naef.jnlua.LuaState} check methods. Indexes start at 1.
+	 */
+	interface Arguments {
+		/** @return count of arguments */
+		int count();
+
+		int checkInteger(int index);
+
+		double checkNumber(int index);
+
+		boolean checkBoolean(int index);
+
+		/** @return string value of a string or number argument, <code>null</code> for nil */
+		String toString(int index);
+
+		/** @return string value of a string or number argument, nil is not allowed */
+		String checkString(int index);
+
+		/** @return object of given type, <code>null</code> for nil */
+		<T> T checkObject(int index, Class<T> clazz);
+	}
+
+	private DLTKObjectBuilder() {
+	}
+
+	private static void setModifier(final Declaration declaration, final String scope) {
+		if ("local".equals(scope)) { //$NON-NLS-1$
+			declaration.setModifier(Declaration.AccPrivate);
+		} else {
+			declaration.setModifier(Declaration.AccPublic);
+		}
+	}
+
+	/**
+	 * Applies {@link DLTKObjectFactory} function matching opcode.
+	 * 
+	 * @param opcode
+	 *            function to apply
+	 * @param a
+	 *            arguments of the call
+	 * @return created object for constructors, <code>null</code> else way
+	 */
+	static Object build(final Opcode opcode, final Arguments a) {
+		switch (opcode) {
+		case CALL_ARGUMENTS_LIST:
+			if (a.count() == 2) {
+				return new CallArgumentsList(a.checkInteger(1), a.checkInteger(2));
+			}
+			return new CallArgumentsList();
+		case LUA_SOURCE_ROOT:
+			if (a.count() == 2) {
+				return new LuaSourceRoot(a.checkInteger(1), a.checkBoolean(2));
+			}
+			return new LuaSourceRoot(a.checkInteger(1));
+		case BINARY_EXPRESSION:
+			return new BinaryExpression(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Expression.class), a.toString(4),
+					a.checkObject(5, Expression.class));
+		case BOOLEAN:
+			return new org.eclipse.koneki.ldt.parser.ast.expressions.Boolean(a.checkInteger(1), a.checkInteger(2), a.checkBoolean(3));
+		case CALL: {
+			final CallArgumentsList list = a.checkObject(4, CallArgumentsList.class);
+			if (list == null) {
+				return new Call(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Expression.class));
+			}
+			return new Call(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Expression.class), list);
+		}
+		case DOTS:
+			return new Dots(a.checkInteger(1), a.checkInteger(2));
+		case IDENTIFIER:
+			return new Identifier(a.checkInteger(1), a.checkInteger(2), a.toString(3));
+		case FUNCTION:
+			return new Function(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Chunk.class), a.checkObject(4, Chunk.class));
+		case INDEX: {
+			final Expression left = a.checkObject(1, Expression.class);
+			final Statement statement = a.checkObject(2, Statement.class);
+			if (statement instanceof Declaration) {
+				return new Index(left, (Declaration) statement);
+			}
+			return new Index(left, (Expression) statement);
+		}
+		case INVOKE: {
+			final Expression expr = a.checkObject(3, Expression.class);
+			final org.eclipse.koneki.ldt.parser.ast.expressions.String name = a.checkObject(4,
+					org.eclipse.koneki.ldt.parser.ast.expressions.String.class);
+			final CallArgumentsList list = a.checkObject(5, CallArgumentsList.class);
+			if (list != null) {
+				return new Invoke(a.checkInteger(1), a.checkInteger(2), expr, name, list);
+			}
+			return new Invoke(a.checkInteger(1), a.checkInteger(2), expr, name);
+		}
+		case NIL:
+			return new Nil(a.checkInteger(1), a.checkInteger(2));
+		case NUMBER:
+			return new org.eclipse.koneki.ldt.parser.ast.expressions.Number(a.checkInteger(1), a.checkInteger(2), a.checkNumber(3));
+		case PAIR: {
+			final Expression left = a.checkObject(1, Expression.class);
+			final Statement right = a.checkObject(2, Statement.class);
+			if (left instanceof Literal) {
+				return new Pair((Literal) left, right);
+			}
+			return new Pair((SimpleReference) left, right);
+		}
+		case PARENTHESIS:
+			return new Parenthesis(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Expression.class));
+		case STRING:
+			return new org.eclipse.koneki.ldt.parser.ast.expressions.String(a.checkInteger(1), a.checkInteger(2), a.toString(3));
+		case TABLE:
+			return new Table(a.checkInteger(1), a.checkInteger(2));
+		case UNARY_EXPRESSION: {
+			final String operator = a.toString(3);
+			final Statement statement = a.checkObject(4, Statement.class);
+			if (operator != null) {
+				return new UnaryExpression(a.checkInteger(1), a.checkInteger(2), operator, statement);
+			}
+			return new UnaryExpression(a.checkInteger(1), a.checkInteger(2), a.checkInteger(3), statement);
+		}
+		case BREAK:
+			return new Break(a.checkInteger(1), a.checkInteger(2));
+		case CHUNK:
+			return new Chunk(a.checkInteger(1), a.checkInteger(2));
+		case DO:
+			return new Do(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Chunk.class));
+		case ELSE_IF: {
+			final Expression condition = a.checkObject(3, Expression.class);
+			final Chunk nominal = a.checkObject(4, Chunk.class);
+			final Chunk alternative = a.checkObject(5, Chunk.class);
+			if (alternative != null) {
+				return new ElseIf(a.checkInteger(1), a.checkInteger(2), condition, nominal, alternative);
+			}
+			return new ElseIf(a.checkInteger(1), a.checkInteger(2), condition, nominal);
+		}
+		case FOR_IN_PAIR:
+			return new ForInPair(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Chunk.class), a.checkObject(4, Chunk.class),
+					a.checkObject(5, Chunk.class));
+		case FOR_NUMERIC: {
+			final Identifier identifier = a.checkObject(3, Identifier.class);
+			final Expression from = a.checkObject(4, Expression.class);
+			final Expression to = a.checkObject(5, Expression.class);
+			final Expression range = a.checkObject(6, Expression.class);
+			final Chunk body = a.checkObject(7, Chunk.class);
+			if (body != null) {
+				return new ForNumeric(a.checkInteger(1), a.checkInteger(2), identifier, from, to, range, body);
+			}
+			return new ForNumeric(a.checkInteger(1), a.checkInteger(2), identifier, from, to, (Chunk) range);
+		}
+		case IF: {
+			final Expression condition = a.checkObject(3, Expression.class);
+			final Chunk nominal = a.checkObject(4, Chunk.class);
+			final Chunk alternative = a.checkObject(5, Chunk.class);
+			if (alternative != null) {
+				return new If(a.checkInteger(1), a.checkInteger(2), condition, nominal, alternative);
+			}
+			return new If(a.checkInteger(1), a.checkInteger(2), condition, nominal);
+		}
+		case LOCAL: {
+			final Chunk vars = a.checkObject(3, Chunk.class);
+			final Chunk inits = a.checkObject(4, Chunk.class);
+			if (inits != null) {
+				return new Local(a.checkInteger(1), a.checkInteger(2), vars, inits);
+			}
+			return new Local(a.checkInteger(1), a.checkInteger(2), vars);
+		}
+		case LOCAL_REC: {
+			final Chunk vars = a.checkObject(3, Chunk.class);
+			final Chunk inits = a.checkObject(4, Chunk.class);
+			if (inits != null) {
+				return new LocalRec(a.checkInteger(1), a.checkInteger(2), vars, inits);
+			}
+			return new LocalRec(a.checkInteger(1), a.checkInteger(2), vars);
+		}
+		case REPEAT:
+			return new Repeat(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Chunk.class), a.checkObject(4, Expression.class));
+		case RETURN: {
+			final Chunk values = a.checkObject(3, Chunk.class);
+			if (values != null) {
+				return new Return(a.checkInteger(1), a.checkInteger(2), values);
+			}
+			return new Return(a.checkInteger(1), a.checkInteger(2));
+		}
+		case SET:
+			return new Set(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Chunk.class), a.checkObject(4, Chunk.class));
+		case WHILE:
+			return new While(a.checkInteger(1), a.checkInteger(2), a.checkObject(3, Expression.class), a.checkObject(4, Chunk.class));
+		case FUNCTION_DECLARATION: {
+			final FunctionDeclaration declaration = new FunctionDeclaration(a.toString(1), a.checkInteger(2), a.checkInteger(3), a.checkInteger(4),
+					a.checkInteger(5));
+			final String scope = a.toString(6);
+			if ("local".equals(scope)) { //$NON-NLS-1$
+				declaration.setModifier(Declaration.AccPrivate);
+			} else if ("indexed".equals(scope)) { //$NON-NLS-1$
+				declaration.setModifier(Flags.AccModule);
+			} else {
+				declaration.setModifier(Declaration.AccPublic);
+			}
+			return declaration;
+		}
+		case TABLE_DECLARATION: {
+			final boolean isModuleRepresentation = a.checkBoolean(7);
+			final TableDeclaration declaration = new TableDeclaration(a.toString(1), a.checkInteger(2), a.checkInteger(3), a.checkInteger(4),
+					a.checkInteger(5), isModuleRepresentation);
+			setModifier(declaration, a.toString(6));
+			return declaration;
+		}
+		case SCALAR_VARIABLE_DECLARATION: {
+			final ScalarVariableDeclaration declaration = new ScalarVariableDeclaration(a.toString(1), a.checkInteger(2), a.checkInteger(3),
+					a.checkInteger(4), a.checkInteger(5));
+			setModifier(declaration, a.toString(6));
+			return declaration;
+		}
+		case VARIABLE_DECLARATION: {
+			final VariableDeclaration declaration = new VariableDeclaration(a.toString(1), a.checkInteger(2), a.checkInteger(3));
+			setModifier(declaration, a.toString(4));
+			return declaration;
+		}
+		case MODULE_REFERENCE: {
+			final String moduleName = a.checkString(7);
+			final ModuleReference moduleReference = new ModuleReference(a.toString(1), a.checkInteger(2), a.checkInteger(3), a.checkInteger(4),
+					a.checkInteger(5), moduleName);
+			setModifier(moduleReference, a.toString(6));
+			return moduleReference;
+		}
+		case LUA_MODULE_DECLARATION:
+			return new LuaModuleDeclaration(a.checkInteger(1), a.checkInteger(2), a.checkInteger(3), a.checkInteger(4));
+		case APPEND_STATEMENT_TO_CHUNK:
+			a.checkObject(1, Chunk.class).addStatement(a.checkObject(2, Statement.class));
+			return null;
+		case APPEND_NODE_TO_CALL_ARGUMENT_LIST:
+			a.checkObject(1, CallArgumentsList.class).addNode(a.checkObject(2, ASTNode.class));
+			return null;
+		case ADD_EXPRESSION_AND_RELATED_CHUNK:
+			a.checkObject(1, ElseIf.class).addExpressionAndRelatedChunk(a.checkObject(2, Expression.class), a.checkObject(3, Chunk.class));
+			return null;
+		case ADD_RETURN_VALUE:
+			a.checkObject(1, Return.class).addReturnValue(a.checkObject(2, Statement.class));
+			return null;
+		case ADD_STATEMENT:
+			a.checkObject(1, Table.class).addStatement(a.checkObject(2, Statement.class));
+			return null;
+		case ADD_STATEMENT_TO_MODULE_DECLARATION:
+			a.checkObject(1, ModuleDeclaration.class).addStatement(a.checkObject(2, Statement.class));
+			return null;
+		case SET_PROBLEM:
+			a.checkObject(1, LuaSourceRoot.class).setProblem(a.checkInteger(2), a.checkInteger(3), a.checkInteger(4), a.checkString(5));
+			return null;
+		case ACCEPT_BODY:
+			a.checkObject(1, FunctionDeclaration.class).acceptBody(a.checkObject(2, Chunk.class), false);
+			return null;
+		case ACCEPT_ARGUMENTS:
+			a.checkObject(1, FunctionDeclaration.class).acceptArguments(a.checkObject(2, Chunk.class));
+			return null;
+		case SET_INITIALIZATION:
+			a.checkObject(1, ScalarVariableDeclaration.class).setInitialization(a.checkObject(2, Expression.class));
+			return null;
+		case ADD_OCCURRENCE:
+			a.checkObject(1, IOccurrenceHolder.class).addOccurrence(a.checkObject(2, Statement.class));
+			return null;
+		case SET_DECLARATION:
+			a.checkObject(1, Identifier.class).setDeclaration(a.checkObject(2, Declaration.class));
+			return null;
+		case SET_PARENT:
+			a.checkObject(1, INavigableNode.class).setParent(a.checkObject(2, ASTNode.class));
+			return null;
+		case ADD_FUNCTION:
+			a.checkObject(1, LuaModuleDeclaration.class).getStatements().add(a.checkObject(2, FunctionDeclaration.class));
+			return null;
+		case SET_MODULE_DECLARATION:
+			a.checkObject(1, LuaSourceRoot.class).getDeclarationsContainer().setLuaModuleDeclaration(a.checkObject(2, LuaModuleDeclaration.class));
+			return null;
+		case ADD_FUNCTION_TO_MODULE_CONTAINER:
+			a.checkObject(1, LuaSourceRoot.class).getDeclarationsContainer().getDeclarations().add(a.checkObject(2, Declaration.class));
+			return null;
+		default:
+			throw new IllegalStateException("Unsupported opcode " + opcode); //$NON-NLS-1$
+		}
+	}
+}
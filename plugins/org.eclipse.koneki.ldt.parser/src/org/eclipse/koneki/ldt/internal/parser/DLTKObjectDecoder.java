@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+
+import com.naef.jnlua.LuaRuntimeException;
+import com.naef.jnlua.LuaState;
+
+/**
+ * Builds DLTK Java objects from a serialized sequence of {@link DLTKObjectFactory} calls.
+ * 
+ * Instead of calling a {@link DLTKObjectFactory} function through JNI for each node, <code>dltk_ast_builder</code> can record all calls in a single
+ * string. This class replays them in one pass, with the same {@link DLTKObjectBuilder} as {@link DLTKObjectFactory}. The string is only made of ASCII
+ * characters: jnlua converts Lua strings to Java as modified UTF-8, a NUL byte or bytes which are not UTF-8 would corrupt the whole buffer, so
+ * string values containing such bytes are written in hexadecimal.
+ * 
+ * <dl>
+ * <dt>Instruction</dt>
+ * <dd><code>opcode argumentCount argument*</code>, opcode is the ordinal of an {@link Opcode}.</dd>
+ * <dt>Unsigned integer</dt>
+ * <dd>Five bits per character, least significant first. Characters from <code>'0'</code> to <code>'O'</code> end a number, the ones from
+ * <code>'P'</code> to <code>'o'</code> are followed by more significant bits.</dd>
+ * <dt>Argument</dt>
+ * <dd>A tag character followed by its value:
+ * <ul>
+ * <li><code>n</code> for <code>nil</code>,</li>
+ * <li><code>t</code> and <code>f</code> for booleans,</li>
+ * <li><code>i</code> and <code>m</code> followed by an unsigned integer, for positive and negative integers,</li>
+ * <li><code>d</code> followed by the length of a decimal representation then the representation, for other numbers,</li>
+ * <li><code>s</code> followed by a length and the string itself, for strings of printable ASCII characters and white spaces,</li>
+ * <li><code>x</code> followed by a count of bytes and two hexadecimal digits per byte, for other strings, bytes are decoded with
+ * {@link #decodeBytes(byte[])},</li>
+ * <li><code>r</code> followed by the index of the object created by a previous constructor instruction, starting at 0.</li>
+ * </ul>
+ * </dd>
+ * </dl>
+ */
+public final class DLTKObjectDecoder {
+
+	/** Name of the Lua global table describing opcodes, see {@link #register(LuaState)} */
+	public static final String OPCODES_TABLE = "DLTKOpcodes"; //$NON-NLS-1$
+
+	/** {@link DLTKObjectFactory} functions, constructors produce an object which could be referenced by following instructions */
+	public enum Opcode {
+		CALL_ARGUMENTS_LIST("CallArgumentsList", true), //$NON-NLS-1$
+		LUA_SOURCE_ROOT("LuaSourceRoot", true), //$NON-NLS-1$
+		BINARY_EXPRESSION("BinaryExpression", true), //$NON-NLS-1$
+		BOOLEAN("Boolean", true), //$NON-NLS-1$
+		CALL("Call", true), //$NON-NLS-1$
+		DOTS("Dots", true), //$NON-NLS-1$
+		IDENTIFIER("Identifier", true), //$NON-NLS-1$
+		FUNCTION("Function", true), //$NON-NLS-1$
+		INDEX("Index", true), //$NON-NLS-1$
+		INVOKE("Invoke", true), //$NON-NLS-1$
+		NIL("Nil", true), //$NON-NLS-1$
+		NUMBER("Number", true), //$NON-NLS-1$
+		PAIR("Pair", true), //$NON-NLS-1$
+		PARENTHESIS("Parenthesis", true), //$NON-NLS-1$
+		STRING("String", true), //$NON-NLS-1$
+		TABLE("Table", true), //$NON-NLS-1$
+		UNARY_EXPRESSION("UnaryExpression", true), //$NON-NLS-1$
+		BREAK("Break", true), //$NON-NLS-1$
+		CHUNK("Chunk", true), //$NON-NLS-1$
+		DO("Do", true), //$NON-NLS-1$
+		ELSE_IF("ElseIf", true), //$NON-NLS-1$
+		FOR_IN_PAIR("ForInPair", true), //$NON-NLS-1$
+		FOR_NUMERIC("ForNumeric", true), //$NON-NLS-1$
+		IF("If", true), //$NON-NLS-1$
+		LOCAL("Local", true), //$NON-NLS-1$
+		LOCAL_REC("LocalRec", true), //$NON-NLS-1$
+		REPEAT("Repeat", true), //$NON-NLS-1$
+		RETURN("Return", true), //$NON-NLS-1$
+		SET("Set", true), //$NON-NLS-1$
+		WHILE("While", true), //$NON-NLS-1$
+		FUNCTION_DECLARATION("FunctionDeclaration", true), //$NON-NLS-1$
+		TABLE_DECLARATION("TableDeclaration", true), //$NON-NLS-1$
+		SCALAR_VARIABLE_DECLARATION("ScalarVariableDeclaration", true), //$NON-NLS-1$
+		VARIABLE_DECLARATION("VariableDeclaration", true), //$NON-NLS-1$
+		MODULE_REFERENCE("ModuleReference", true), //$NON-NLS-1$
+		LUA_MODULE_DECLARATION("LuaModuleDeclaration", true), //$NON-NLS-1$
+		APPEND_STATEMENT_TO_CHUNK("appendStatementToChunk", false), //$NON-NLS-1$
+		APPEND_NODE_TO_CALL_ARGUMENT_LIST("appendNodeToCallArgumentList", false), //$NON-NLS-1$
+		ADD_EXPRESSION_AND_RELATED_CHUNK("addExpressionAndRelatedChunk", false), //$NON-NLS-1$
+		ADD_RETURN_VALUE("addReturnValue", false), //$NON-NLS-1$
+		ADD_STATEMENT("addStatement", false), //$NON-NLS-1$
+		ADD_STATEMENT_TO_MODULE_DECLARATION("addStatementToModuleDeclaration", false), //$NON-NLS-1$
+		SET_PROBLEM("setProblem", false), //$NON-NLS-1$
+		ACCEPT_BODY("acceptBody", false), //$NON-NLS-1$
+		ACCEPT_ARGUMENTS("acceptArguments", false), //$NON-NLS-1$
+		SET_INITIALIZATION("setInitialization", false), //$NON-NLS-1$
+		ADD_OCCURRENCE("addOccurrence", false), //$NON-NLS-1$
+		SET_DECLARATION("setDeclaration", false), //$NON-NLS-1$
+		SET_PARENT("setParent", false), //$NON-NLS-1$
+		ADD_FUNCTION("addFunction", false), //$NON-NLS-1$
+		SET_MODULE_DECLARATION("setModuleDeclaration", false), //$NON-NLS-1$
+		ADD_FUNCTION_TO_MODULE_CONTAINER("addFunctionToModuleContainer", false); //$NON-NLS-1$
+
+		private final String functionName;
+		private final boolean constructor;
+
+		private Opcode(final String functionName, final boolean constructor) {
+			this.functionName = functionName;
+			this.constructor = constructor;
+		}
+
+		/** @return name of matching {@link DLTKObjectFactory} function */
+		public String getFunctionName() {
+			return functionName;
+		}
+
+		/** @return <code>true</code> when instruction creates an object */
+		public boolean isConstructor() {
+			return constructor;
+		}
+	}
+
+	private static final Opcode[] OPCODES = Opcode.values();
+
+	private static final int DIGIT_BITS = 5;
+	private static final int DIGIT_MASK = (1 << DIGIT_BITS) - 1;
+	private static final char LAST_DIGIT = '0';
+	private static final char CONTINUED_DIGIT = 'P';
+	private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+	private final String buffer;
+	private int position = 0;
+	private final List<Object> objects = new ArrayList<Object>();
+	private final ArrayArguments arguments = new ArrayArguments();
+
+	private DLTKObjectDecoder(final String buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Gives a {@link LuaState} the opcodes table needed to serialize {@link DLTKObjectFactory} calls. The table is named {@link #OPCODES_TABLE}, for
+	 * each function name it contains a table with opcode at field <code>code</code> and a boolean at field <code>constructor</code>.
+	 * 
+	 * @param L
+	 *            {@link LuaState} to load
+	 * @return true in case of success, false else way
+	 */
+	public static boolean register(final LuaState L) {
+		// Nothing to do if no LuaState is given
+		if (L == null) {
+			return false;
+		}
+		L.newTable();
+		for (final Opcode opcode : OPCODES) {
+			L.newTable();
+			L.pushInteger(opcode.ordinal());
+			L.setField(-2, "code"); //$NON-NLS-1$
+			L.pushBoolean(opcode.isConstructor());
+			L.setField(-2, "constructor"); //$NON-NLS-1$
+			L.setField(-2, opcode.getFunctionName());
+		}
+		L.setGlobal(OPCODES_TABLE);
+		return true;
+	}
+
+	/**
+	 * Replays serialized {@link DLTKObjectFactory} calls.
+	 * 
+	 * @param buffer
+	 *            Serialized calls
+	 * @return First {@link LuaSourceRoot} created
+	 * @throws LuaRuntimeException
+	 *             when buffer is malformed or a call is not consistent, as {@link DLTKObjectFactory} would have done
+	 */
+	public static LuaSourceRoot decode(final String buffer) throws LuaRuntimeException {
+		final DLTKObjectDecoder decoder = new DLTKObjectDecoder(buffer);
+		try {
+			while (decoder.position < buffer.length()) {
+				decoder.readInstruction();
+			}
+		} catch (RuntimeException e) {
+			throw new LuaRuntimeException("Unable to decode serialized AST at " + decoder.position, e); //$NON-NLS-1$
+		}
+		for (final Object object : decoder.objects) {
+			if (object instanceof LuaSourceRoot) {
+				return (LuaSourceRoot) object;
+			}
+		}
+		throw new LuaRuntimeException("No LuaSourceRoot in serialized AST."); //$NON-NLS-1$
+	}
+
+	private void readInstruction() {
+		final Opcode opcode = OPCODES[readUnsigned()];
+		final Object[] args = new Object[readUnsigned()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = readValue();
+		}
+		arguments.set(args);
+		final Object result = DLTKObjectBuilder.build(opcode, arguments);
+		if (opcode.isConstructor()) {
+			objects.add(result);
+		}
+	}
+
+	private int readUnsigned() {
+		int value = 0;
+		int shift = 0;
+		while (true) {
+			final char c = buffer.charAt(position++);
+			if (c >= CONTINUED_DIGIT) {
+				value |= (c - CONTINUED_DIGIT) << shift;
+				shift += DIGIT_BITS;
+			} else {
+				return value | ((c - LAST_DIGIT) & DIGIT_MASK) << shift;
+			}
+		}
+	}
+
+	private String readChars() {
+		final int length = readUnsigned();
+		final String value = buffer.substring(position, position + length);
+		position += length;
+		return value;
+	}
+
+	private Object readValue() {
+		final char tag = buffer.charAt(position++);
+		switch (tag) {
+		case 'n':
+			return null;
+		case 't':
+			return java.lang.Boolean.TRUE;
+		case 'f':
+			return java.lang.Boolean.FALSE;
+		case 'i':
+			return readUnsigned();
+		case 'm':
+			return -readUnsigned();
+		case 'd':
+			return parseDouble(readChars());
+		case 's':
+			return readChars();
+		case 'x':
+			final int count = readUnsigned();
+			final String value = decodeHexString(buffer, position, count);
+			position += count * 2;
+			return value;
+		case 'r':
+			return objects.get(readUnsigned());
+		default:
+			throw new IllegalStateException("Unknown tag " + tag); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Decodes bytes of a Lua string given as hexadecimal digits.
+	 * 
+	 * @param hex
+	 *            string containing two hexadecimal digits per byte
+	 * @param start
+	 *            index of first digit
+	 * @param count
+	 *            count of bytes
+	 * @return string decoded with {@link #decodeBytes(byte[])}
+	 */
+	public static String decodeHexString(final String hex, final int start, final int count) {
+		final byte[] bytes = new byte[count];
+		for (int i = 0; i < count; i++) {
+			final int digit = start + i * 2;
+			bytes[i] = (byte) (Character.digit(hex.charAt(digit), 16) << 4 | Character.digit(hex.charAt(digit + 1), 16));
+		}
+		return decodeBytes(bytes);
+	}
+
+	/**
+	 * Decodes bytes of a Lua string. Source is given to Lua as modified UTF-8, so literals may contain its two bytes NUL and surrogates encoded
+	 * separately, as well as standard UTF-8 from escape sequences. Both are accepted, each byte which is not part of a valid sequence becomes
+	 * U+FFFD.
+	 * 
+	 * @param bytes
+	 *            bytes of a Lua string
+	 * @return decoded string
+	 */
+	public static String decodeBytes(final byte[] bytes) {
+		final StringBuilder result = new StringBuilder(bytes.length);
+		int i = 0;
+		while (i < bytes.length) {
+			final int lead = bytes[i] & 0xFF;
+			if (lead < 0x80) {
+				result.append((char) lead);
+				i++;
+				continue;
+			}
+			final int length;
+			final int min;
+			int codePoint;
+			if (lead >= 0xC0 && lead < 0xE0) {
+				length = 2;
+				// Modified UTF-8 encodes NUL on two bytes
+				min = 0;
+				codePoint = lead & 0x1F;
+			} else if (lead >= 0xE0 && lead < 0xF0) {
+				length = 3;
+				min = 0x800;
+				codePoint = lead & 0x0F;
+			} else if (lead >= 0xF0 && lead < 0xF8) {
+				length = 4;
+				min = 0x10000;
+				codePoint = lead & 0x07;
+			} else {
+				result.append(REPLACEMENT_CHARACTER);
+				i++;
+				continue;
+			}
+			int read = 1;
+			while (read < length && i + read < bytes.length && (bytes[i + read] & 0xC0) == 0x80) {
+				codePoint = codePoint << 6 | bytes[i + read] & 0x3F;
+				read++;
+			}
+			final boolean overlong = codePoint < min || (length == 2 && codePoint > 0 && codePoint < 0x80);
+			if (read < length || overlong || codePoint > Character.MAX_CODE_POINT) {
+				result.append(REPLACEMENT_CHARACTER);
+				i++;
+			} else {
+				// Surrogates encoded separately are appended one by one, pairs are then valid again
+				result.appendCodePoint(codePoint);
+				i += length;
+			}
+		}
+		return result.toString();
+	}
+
+	private static Double parseDouble(final String value) {
+		// C representation of special values
+		if (value.endsWith("nan")) { //$NON-NLS-1$
+			return Double.NaN;
+		} else if (value.equals("inf")) { //$NON-NLS-1$
+			return Double.POSITIVE_INFINITY;
+		} else if (value.equals("-inf")) { //$NON-NLS-1$
+			return Double.NEGATIVE_INFINITY;
+		}
+		return Double.valueOf(value);
+	}
+
+	/** Arguments of an instruction, they are replaced for each instruction */
+	private static final class ArrayArguments implements DLTKObjectBuilder.Arguments {
+		private Object[] values;
+
+		private void set(final Object[] newValues) {
+			values = newValues;
+		}
+
+		private Object get(final int index) {
+			return index <= values.length ? values[index - 1] : null;
+		}
+
+		/** Number value of an argument, strings convertible to numbers are accepted as Lua does */
+		private java.lang.Number checkNumberValue(final int index) {
+			final Object value = get(index);
+			if (value instanceof java.lang.Number) {
+				return (java.lang.Number) value;
+			} else if (value instanceof String) {
+				try {
+					return Double.valueOf(((String) value).trim());
+				} catch (NumberFormatException e) {
+					// Reported below
+				}
+			}
+			throw new IllegalArgumentException("Number expected at argument " + index); //$NON-NLS-1$
+		}
+
+		@Override
+		public int count() {
+			return values.length;
+		}
+
+		@Override
+		public int checkInteger(final int index) {
+			return checkNumberValue(index).intValue();
+		}
+
+		@Override
+		public double checkNumber(final int index) {
+			return checkNumberValue(index).doubleValue();
+		}
+
+		@Override
+		public boolean checkBoolean(final int index) {
+			final Object value = get(index);
+			if (!(value instanceof java.lang.Boolean)) {
+				throw new IllegalArgumentException("Boolean expected at argument " + index); //$NON-NLS-1$
+			}
+			return (java.lang.Boolean) value;
+		}
+
+		@Override
+		public String toString(final int index) {
+			final Object value = get(index);
+			if (value == null || value instanceof String) {
+				return (String) value;
+			} else if (value instanceof java.lang.Number) {
+				return value.toString();
+			}
+			throw new IllegalArgumentException("String expected at argument " + index); //$NON-NLS-1$
+		}
+
+		@Override
+		public String checkString(final int index) {
+			final String value = toString(index);
+			if (value == null) {
+				throw new IllegalArgumentException("String expected at argument " + index); //$NON-NLS-1$
+			}
+			return value;
+		}
+
+		@Override
+		public <T> T checkObject(final int index, final Class<T> clazz) {
+			final Object value = get(index);
+			if (value != null && !clazz.isInstance(value)) {
+				throw new IllegalArgumentException(String.format("exptected %s, got %s", clazz.getCanonicalName(), value.getClass().getName())); //$NON-NLS-1$
+			}
+			return clazz.cast(value);
+		}
+	}
+}
@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Declarations, module references and documentation of files, stored in a binary file so they are available without parsing in next sessions.
+ * 
+ * Entries are identified by file path and remember timestamp, length and hash of the source they were computed from. An entry is valid while
+ * file content has the same length and hash, timestamp is not trusted alone as files can change within its resolution. Declarations are kept
+ * as calls to replay on an {@link org.eclipse.dltk.compiler.ISourceElementRequestor}, recorded by {@link RequestorRecorder}.
+ * 
+ * Index file header holds a version given by caller, typically identifying the AST builder, an index written with another version is ignored.
+ * Index is saved in a temporary file renamed over the index file, previous index file is kept as a backup until the rename succeeded and is
+ * read when no index file is left.
+ */
+public class DeclarationIndex {
+	/** "LDIX" */
+	private static final int MAGIC = 0x4C444958;
+	/** Version of file layout */
+	private static final int FORMAT = 2;
+	private static final String TEMPORARY_EXTENSION = ".tmp"; //$NON-NLS-1$
+	private static final String BACKUP_EXTENSION = ".bak"; //$NON-NLS-1$
+	private static final String CHARSET = "UTF-8"; //$NON-NLS-1$
+
+	/** Index data of a file */
+	public static final class Entry {
+		private final long timestamp;
+		private final int length;
+		private final long hash;
+		private final byte[] structure;
+		private final String documentation;
+		private final Map<String, String> membersDocumentation;
+		private final Map<String, String> moduleReferences;
+
+		/**
+		 * @param timestamp
+		 *            file timestamp when indexed
+		 * @param length
+		 *            count of characters of indexed source
+		 * @param hash
+		 *            hash of indexed source as computed by {@link SourceHash}
+		 * @param structure
+		 *            calls recorded by {@link RequestorRecorder}
+		 * @param documentation
+		 *            documentation of file, <code>null</code> allowed
+		 * @param membersDocumentation
+		 *            documentation by member name
+		 * @param moduleReferences
+		 *            required module name by local name
+		 */
+		public Entry(final long timestamp, final int length, final long hash, final byte[] structure, final String documentation,
+				final Map<String, String> membersDocumentation, final Map<String, String> moduleReferences) {
+			this.timestamp = timestamp;
+			this.length = length;
+			this.hash = hash;
+			this.structure = structure;
+			this.documentation = documentation;
+			this.membersDocumentation = Collections.unmodifiableMap(new LinkedHashMap<String, String>(membersDocumentation));
+			this.moduleReferences = Collections.unmodifiableMap(new LinkedHashMap<String, String>(moduleReferences));
+		}
+
+		private Entry restamp(final long newTimestamp) {
+			return new Entry(newTimestamp, length, hash, structure, documentation, membersDocumentation, moduleReferences);
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public byte[] getStructure() {
+			return structure;
+		}
+
+		public String getDocumentation() {
+			return documentation;
+		}
+
+		public Map<String, String> getMembersDocumentation() {
+			return membersDocumentation;
+		}
+
+		public Map<String, String> getModuleReferences() {
+			return moduleReferences;
+		}
+	}
+
+	private final File file;
+	private final String version;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	/** Count of entry changes */
+	private final AtomicLong changes = new AtomicLong();
+	/** Count of entry changes when entries were last loaded or saved */
+	private volatile long savedChanges = 0;
+
+	/**
+	 * @param file
+	 *            file where index is stored
+	 * @param version
+	 *            version of indexed data, an index file with another version is not loaded
+	 */
+	public DeclarationIndex(final File file, final String version) {
+		this.file = file;
+		this.version = version;
+	}
+
+	/**
+	 * Looks up an entry, file content is always compared to indexed one.
+	 * 
+	 * @param path
+	 *            path of indexed file
+	 * @param timestamp
+	 *            current timestamp of file
+	 * @param contents
+	 *            current content of file
+	 * @return entry when file content did not change since indexing, <code>null</code> otherwise
+	 */
+	public Entry get(final String path, final long timestamp, final char[] contents) {
+		final Entry entry = entries.get(path);
+		if (entry == null || entry.length != contents.length || entry.hash != SourceHash.hash(contents)) {
+			return null;
+		}
+		if (entry.timestamp == timestamp) {
+			return entry;
+		}
+		// File was only touched, remember its new timestamp
+		final Entry restamped = entry.restamp(timestamp);
+		put(path, restamped);
+		return restamped;
+	}
+
+	public void put(final String path, final Entry entry) {
+		entries.put(path, entry);
+		changes.incrementAndGet();
+	}
+
+	public void remove(final String path) {
+		if (entries.remove(path) != null) {
+			changes.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> when entries changed since last load or save
+	 */
+	public boolean isModified() {
+		return changes.get() != savedChanges;
+	}
+
+	/**
+	 * @return snapshot of indexed paths
+	 */
+	public Set<String> paths() {
+		return new HashSet<String>(entries.keySet());
+	}
+
+	/**
+	 * Reads index file, or its backup when a save was interrupted, current entries are replaced. A missing, corrupted or outdated index file is
+	 * ignored.
+	 * 
+	 * @return <code>true</code> when file was read
+	 */
+	public boolean load() {
+		entries.clear();
+		savedChanges = changes.get();
+		final File backup = new File(file.getPath() + BACKUP_EXTENSION);
+		final File source = file.isFile() ? file : backup;
+		if (!source.isFile()) {
+			return false;
+		}
+		try {
+			final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(source)));
+			try {
+				if (input.readInt() != MAGIC || input.readInt() != FORMAT || !version.equals(readString(input))) {
+					return false;
+				}
+				final int count = input.readInt();
+				for (int i = 0; i < count; i++) {
+					final String path = readString(input);
+					final long timestamp = input.readLong();
+					final int length = input.readInt();
+					final long hash = input.readLong();
+					final int structureLength = input.readInt();
+					if (structureLength < 0) {
+						throw new IOException("Corrupted index file " + source.getPath()); //$NON-NLS-1$
+					}
+					final byte[] structure = new byte[structureLength];
+					input.readFully(structure);
+					final String documentation = readString(input);
+					final Map<String, String> membersDocumentation = readMap(input);
+					final Map<String, String> moduleReferences = readMap(input);
+					entries.put(path, new Entry(timestamp, length, hash, structure, documentation, membersDocumentation, moduleReferences));
+				}
+				return true;
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			entries.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * Writes index file when entries changed since last load or save. File is written in a temporary file first, so a file with the final name is
+	 * always complete. Index stays modified when writing fails, or when entries change while they are written.
+	 * 
+	 * @throws IOException
+	 *             when index file can not be written
+	 */
+	public void save() throws IOException {
+		final long saving = changes.get();
+		if (saving == savedChanges) {
+			return;
+		}
+		final File folder = file.getParentFile();
+		if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Unable to create folder " + folder.getPath()); //$NON-NLS-1$
+		}
+		final File temporary = new File(file.getPath() + TEMPORARY_EXTENSION);
+		try {
+			write(temporary, new LinkedHashMap<String, Entry>(entries));
+		} catch (IOException e) {
+			temporary.delete();
+			throw e;
+		}
+		replace(temporary);
+		savedChanges = saving;
+	}
+
+	private void write(final File target, final Map<String, Entry> snapshot) throws IOException {
+		final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT);
+			writeString(output, version);
+			output.writeInt(snapshot.size());
+			for (final Map.Entry<String, Entry> indexed : snapshot.entrySet()) {
+				final Entry entry = indexed.getValue();
+				writeString(output, indexed.getKey());
+				output.writeLong(entry.timestamp);
+				output.writeInt(entry.length);
+				output.writeLong(entry.hash);
+				output.writeInt(entry.structure.length);
+				output.write(entry.structure);
+				writeString(output, entry.documentation);
+				writeMap(output, entry.membersDocumentation);
+				writeMap(output, entry.moduleReferences);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/** Renames written temporary file over index file, previous index file is kept as backup until the rename succeeded */
+	private void replace(final File temporary) throws IOException {
+		final File backup = new File(file.getPath() + BACKUP_EXTENSION);
+		if (file.isFile()) {
+			backup.delete();
+			if (!file.renameTo(backup)) {
+				temporary.delete();
+				throw new IOException("Unable to back index file up " + file.getPath()); //$NON-NLS-1$
+			}
+		}
+		if (!temporary.renameTo(file)) {
+			temporary.delete();
+			backup.renameTo(file);
+			throw new IOException("Unable to write index file " + file.getPath()); //$NON-NLS-1$
+		}
+		backup.delete();
+	}
+
+	/** Strings are not limited in size as {@link DataOutputStream#writeUTF(String)} is, documentation can be long */
+	private static void writeString(final DataOutputStream output, final String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+		} else {
+			final byte[] bytes = value.getBytes(CHARSET);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static String readString(final DataInputStream input) throws IOException {
+		final int length = input.readInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	private static void writeMap(final DataOutputStream output, final Map<String, String> map) throws IOException {
+		output.writeInt(map.size());
+		for (final Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(output, entry.getKey());
+			writeString(output, entry.getValue());
+		}
+	}
+
+	private static Map<String, String> readMap(final DataInputStream input) throws IOException {
+		final int size = input.readInt();
+		final Map<String, String> map = new LinkedHashMap<String, String>();
+		for (int i = 0; i < size; i++) {
+			map.put(readString(input), readString(input));
+		}
+		return map;
+	}
+}
@@ -36,6 +36,14 @@ public interface IOccurrenceHolder {
 	 */
 	public void addOccurrence(ASTNode node);
 
+	/**
+	 * Removes a reference to a declaration, used when AST is partially rebuilt
+	 * 
+	 * @param node
+	 *            {@link ASTNode} previously added with {@link #addOccurrence(ASTNode)}
+	 */
+	public void removeOccurrence(ASTNode node);
+
 	/**
 	 * Provides occurrences of current declaration
 	 * 
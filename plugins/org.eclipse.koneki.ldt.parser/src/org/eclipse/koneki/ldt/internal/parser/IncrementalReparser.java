@@ -0,0 +1,695 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.dltk.ast.declarations.MethodDeclaration;
+import org.eclipse.koneki.ldt.parser.Activator;
+import org.eclipse.koneki.ldt.parser.Messages;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.ast.declarations.DeclarationsContainer;
+import org.eclipse.koneki.ldt.parser.ast.declarations.LuaModuleDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Identifier;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Index;
+import org.eclipse.koneki.ldt.parser.ast.statements.BinaryStatement;
+import org.eclipse.koneki.ldt.parser.ast.statements.Chunk;
+import org.eclipse.koneki.ldt.parser.ast.statements.Local;
+import org.eclipse.koneki.ldt.parser.ast.statements.Return;
+
+import com.naef.jnlua.LuaException;
+
+/**
+ * Updates a previously built AST after a source change by parsing again only the top-level statements touched by the change.
+ * 
+ * Changed region of source is mapped to the enclosing top-level statements of the previous AST, extended to the untouched statements around them so
+ * comments and blank lines are parsed again as well. Only this region is sent to the parser, resulting nodes are shifted to their offsets in the
+ * whole source and spliced in a copy of the previous AST. Following statements are shifted by the size difference while they are copied.
+ * Declarations of {@link DeclarationsContainer} and occurrences of top-level locals are patched in the copy.
+ * 
+ * Previous AST is only read, it can be shared with other threads. Checks only visit the nodes of the region, names used by the rest of AST are
+ * known from {@link Names} counted along with it. Nodes of the region are not copied, as they are replaced.
+ * 
+ * Parsing a region alone is only equivalent to parsing the whole source while it is independent from the rest of the file. When the region
+ * shares declarations with other statements in a way which can not be patched, such as a new global also used elsewhere, a top-level local used
+ * after the region or a change of module definition, {@link #reparse(LuaSourceRoot, String, String)} returns <code>null</code> and a full parse is
+ * needed.
+ * 
+ * Offsets are the ones produced by Metalua, they count bytes of source as pushed to Lua by jnlua, that is in modified UTF-8.
+ */
+public class IncrementalReparser {
+
+	/** Parses a piece of Lua source as a whole file */
+	public interface ChunkParser {
+		/**
+		 * @param source
+		 *            Lua source
+		 * @return AST of given source, <code>null</code> when it could not be built
+		 */
+		LuaSourceRoot parse(String source);
+	}
+
+	/**
+	 * Names used by the nodes of an AST, counted once for an AST built by a full parse then updated along with it.
+	 */
+	static final class Names {
+		private final NameCounts names;
+		private final NameCounts boundNames;
+
+		private Names(final NameCounts names, final NameCounts boundNames) {
+			this.names = names;
+			this.boundNames = boundNames;
+		}
+
+		/**
+		 * @return names used by given AST, all its nodes are visited
+		 */
+		static Names of(final LuaSourceRoot root) throws Exception {
+			final NodeCollector collector = new NodeCollector();
+			final Chunk chunk = getChunk(root);
+			if (chunk != null) {
+				for (final Object statement : chunk.getStatements()) {
+					((ASTNode) statement).traverse(collector);
+				}
+			}
+			for (final Declaration declaration : root.getDeclarationsContainer().getDeclarations()) {
+				declaration.traverse(collector);
+			}
+			return new Names(collector.names, collector.boundNames);
+		}
+	}
+
+	private final ChunkParser parser;
+	/** Names of last AST returned by a reparse */
+	private Names names;
+	/** Indicates that last reparse removed or added module references */
+	private boolean requiresChanged;
+
+	public IncrementalReparser(final ChunkParser parser) {
+		this.parser = parser;
+	}
+
+	/**
+	 * Builds AST of new source from previous AST.
+	 * 
+	 * @param previous
+	 *            AST of <code>previousSource</code>, without error. It is not modified.
+	 * @param previousSource
+	 *            source <code>previous</code> was built from
+	 * @param source
+	 *            new source
+	 * @return copy of <code>previous</code> updated to represent <code>source</code>, <code>previous</code> itself when source did not change,
+	 *         <code>null</code> when a full parse is needed
+	 */
+	public LuaSourceRoot reparse(final LuaSourceRoot previous, final String previousSource, final String source) {
+		return reparse(previous, null, previousSource, source);
+	}
+
+	/**
+	 * @param previousNames
+	 *            names used by <code>previous</code>, <code>null</code> when they have to be counted
+	 * @see #reparse(LuaSourceRoot, String, String)
+	 */
+	LuaSourceRoot reparse(final LuaSourceRoot previous, final Names previousNames, final String previousSource, final String source) {
+		names = null;
+		requiresChanged = false;
+		try {
+			return doReparse(previous, previousNames, previousSource, source);
+		} catch (LuaException e) {
+			// Region could not be parsed alone, a full parse reports errors of whole source
+			return null;
+			// CHECKSTYLE:OFF
+		} catch (Exception e) {
+			// CHECKSTYLE:ON
+			Activator.logError(Messages.IncrementalReparserUnableToReparse, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return names used by last AST returned by a reparse, <code>null</code> when last reparse failed
+	 */
+	Names getNames() {
+		return names;
+	}
+
+	/**
+	 * Exports of a module are declared out of reparsed region, or a full parse is needed. So an AST built by a reparse only requires other modules
+	 * than the previous one when module references were removed or added.
+	 * 
+	 * @return <code>true</code> when last reparse removed or added module references
+	 */
+	boolean hasChangedRequires() {
+		return requiresChanged;
+	}
+
+	private LuaSourceRoot doReparse(final LuaSourceRoot previous, final Names previousNames, final String previousSource, final String source)
+			throws Exception {
+		if (previous.hasError()) {
+			return null;
+		}
+		final Chunk chunk = getChunk(previous);
+		if (chunk == null) {
+			return null;
+		}
+		@SuppressWarnings("unchecked")
+		final List<ASTNode> statements = chunk.getStatements();
+		final int count = statements.size();
+		if (count == 0) {
+			return null;
+		}
+
+		// Compute changed area from common prefix and suffix
+		final int previousLength = previousSource.length();
+		final int length = source.length();
+		final int maxCommon = Math.min(previousLength, length);
+		int prefix = 0;
+		while (prefix < maxCommon && previousSource.charAt(prefix) == source.charAt(prefix)) {
+			prefix++;
+		}
+		if (prefix == previousLength && prefix == length) {
+			// Nothing changed
+			names = previousNames != null ? previousNames : Names.of(previous);
+			return previous;
+		}
+		int suffix = 0;
+		while (suffix < maxCommon - prefix && previousSource.charAt(previousLength - suffix - 1) == source.charAt(length - suffix - 1)) {
+			suffix++;
+		}
+		final int changeStart = utf8Length(previousSource, 0, prefix);
+		final int changeEnd = changeStart + utf8Length(previousSource, prefix, previousLength - suffix);
+		final int delta = utf8Length(source, prefix, length - suffix) - (changeEnd - changeStart);
+
+		// Find top-level statements touching changed area
+		int first = 0;
+		while (first < count && statements.get(first).sourceEnd() < changeStart) {
+			first++;
+		}
+		int last = count - 1;
+		while (last >= 0 && statements.get(last).sourceStart() > changeEnd) {
+			last--;
+		}
+		if (first == 0 && last == count - 1) {
+			// Whole file is touched, no need to go further
+			return null;
+		}
+
+		// Region spreads from end of previous untouched statement to start of next untouched one
+		final int regionStart = first > 0 ? statements.get(first - 1).sourceEnd() : 0;
+		final int regionEnd = last + 1 < count ? statements.get(last + 1).sourceStart() : utf8Length(previousSource, 0, previousLength);
+		final int regionStartChar = charIndex(previousSource, regionStart);
+		final int regionEndChar = charIndex(previousSource, regionEnd) + length - previousLength;
+		if (regionStartChar > prefix || regionEndChar < length - suffix) {
+			return null;
+		}
+
+		// An expression starting with a parenthesis could be the continuation of previous statement
+		if (startsWithParenthesis(source, regionStartChar, regionEndChar)) {
+			return null;
+		}
+		if (last + 1 < count && startsWithParenthesis(source, regionEndChar, length)) {
+			return null;
+		}
+
+		// Analyze previous AST around region, only nodes of region are visited
+		final DeclarationsContainer container = previous.getDeclarationsContainer();
+		final LuaModuleDeclaration module = container.getLuaModuleDeclaration();
+		if (module != null && !isModuleOutside(module, regionStart, regionEnd)) {
+			return null;
+		}
+		final Map<String, Declaration> outerLocals = new HashMap<String, Declaration>();
+		for (int i = 0; i < first; i++) {
+			final ASTNode statement = statements.get(i);
+			if (statement instanceof Local) {
+				for (final Object identifier : ((Local) statement).getLeft().getStatements()) {
+					if (identifier instanceof Declaration && identifier instanceof IOccurrenceHolder) {
+						final Declaration declaration = (Declaration) identifier;
+						outerLocals.put(declaration.getName(), declaration);
+					}
+				}
+			}
+		}
+		final NodeCollector removed = new NodeCollector();
+		final List<Declaration> removedDeclarations = new ArrayList<Declaration>();
+		for (int i = first; i <= last; i++) {
+			statements.get(i).traverse(removed);
+		}
+		for (final Declaration declaration : container.getDeclarations()) {
+			if (declaration.sourceStart() >= regionStart && declaration.sourceStart() < regionEnd) {
+				removedDeclarations.add(declaration);
+				declaration.traverse(removed);
+			}
+		}
+		if (removed.hasTopLevelReturn(statements.subList(first, last + 1))) {
+			return null;
+		}
+		final Names all = previousNames != null ? previousNames : Names.of(previous);
+		final NameCounts outsideNames = all.names.minus(removed.names);
+		final NameCounts outsideBoundNames = all.boundNames.minus(removed.boundNames);
+
+		// Links between removed nodes and the rest of AST
+		final List<Identifier> unlinked = new ArrayList<Identifier>();
+		for (final Identifier identifier : removed.identifiers) {
+			final Declaration declaration = identifier.getDeclaration();
+			if (declaration == null) {
+				// Could have been first occurrence of a global declared elsewhere
+				if (outsideBoundNames.contains(identifier.getName())) {
+					return null;
+				}
+			} else if (!removed.contains(declaration)) {
+				if (outerLocals.get(identifier.getName()) != declaration) {
+					return null;
+				}
+				unlinked.add(identifier);
+			}
+		}
+		for (final Declaration declaration : removed.declarations) {
+			for (final ASTNode occurrence : ((IOccurrenceHolder) declaration).getOccurrences()) {
+				if (!removed.contains(occurrence)) {
+					return null;
+				}
+			}
+		}
+
+		// Parse region alone
+		final LuaSourceRoot root = parser.parse(source.substring(regionStartChar, regionEndChar));
+		if (root == null || root.hasError()) {
+			return null;
+		}
+		final DeclarationsContainer addedContainer = root.getDeclarationsContainer();
+		if (addedContainer.getLuaModuleDeclaration() != null) {
+			return null;
+		}
+		final Chunk addedChunk = getChunk(root);
+		@SuppressWarnings("unchecked")
+		final List<ASTNode> addedStatements = addedChunk != null ? addedChunk.getStatements() : Collections.<ASTNode> emptyList();
+		final NodeCollector added = new NodeCollector();
+		for (final ASTNode statement : addedStatements) {
+			statement.traverse(added);
+		}
+		for (final Declaration declaration : addedContainer.getDeclarations()) {
+			declaration.traverse(added);
+		}
+		if (added.hasTopLevelReturn(addedStatements)) {
+			return null;
+		}
+		if (module != null && (!addedContainer.getDeclarations().isEmpty() || added.hasIndexAssignment)) {
+			// New statements could define module members
+			return null;
+		}
+
+		// Links between added nodes and the rest of AST
+		final List<Identifier> linked = new ArrayList<Identifier>();
+		for (final Identifier identifier : added.identifiers) {
+			if (identifier.getDeclaration() == null) {
+				if (outerLocals.containsKey(identifier.getName())) {
+					linked.add(identifier);
+				} else if (outsideBoundNames.contains(identifier.getName())) {
+					return null;
+				}
+			}
+		}
+		for (final Declaration declaration : added.declarations) {
+			final boolean visibleOutside = declaration.isPublic() || isTopLevel(declaration, addedStatements);
+			if (visibleOutside && (outsideNames.contains(declaration.getName()) || outerLocals.containsKey(declaration.getName()))) {
+				return null;
+			}
+		}
+
+		/*
+		 * From here, a copy of previous AST is modified. Nodes of region are replaced, they are not copied. Nodes following region are shifted
+		 * while they are copied, bounds of whole source are computed below.
+		 */
+		final ASTCopier copier = new ASTCopier(regionEnd, delta);
+		for (final ASTNode node : removed.getVisited()) {
+			copier.share(node);
+		}
+		copier.keepOffsets(previous);
+		copier.keepOffsets(chunk);
+		copier.keepOffsets(container);
+		final LuaSourceRoot updated = copier.copy(previous);
+		final Chunk updatedChunk = copier.get(chunk);
+		final DeclarationsContainer updatedContainer = copier.get(container);
+
+		for (final Identifier identifier : unlinked) {
+			((IOccurrenceHolder) copier.get(identifier.getDeclaration())).removeOccurrence(identifier);
+		}
+
+		// Place new nodes at their offsets in whole source
+		final OffsetShifter placer = new OffsetShifter(0, regionStart);
+		for (final ASTNode statement : addedStatements) {
+			statement.traverse(placer);
+		}
+		for (final Declaration declaration : addedContainer.getDeclarations()) {
+			declaration.traverse(placer);
+		}
+		for (final Identifier identifier : linked) {
+			final Declaration declaration = copier.get(outerLocals.get(identifier.getName()));
+			identifier.setDeclaration(declaration);
+			((IOccurrenceHolder) declaration).addOccurrence(identifier);
+		}
+
+		// Splice statements
+		@SuppressWarnings("unchecked")
+		final List<ASTNode> updatedStatements = updatedChunk.getStatements();
+		final List<ASTNode> replaced = updatedStatements.subList(first, last + 1);
+		replaced.clear();
+		replaced.addAll(addedStatements);
+		for (final ASTNode statement : addedStatements) {
+			if (statement instanceof INavigableNode) {
+				((INavigableNode) statement).setParent(updatedChunk);
+			}
+		}
+
+		// Patch declarations container, keeping declarations sorted by offset
+		final List<Declaration> declarations = updatedContainer.getDeclarations();
+		for (final Declaration declaration : removedDeclarations) {
+			for (int i = 0; i < declarations.size(); i++) {
+				if (declarations.get(i) == declaration) {
+					declarations.remove(i);
+					break;
+				}
+			}
+		}
+		for (final Declaration declaration : addedContainer.getDeclarations()) {
+			int position = 0;
+			while (position < declarations.size() && declarations.get(position).sourceStart() <= declaration.sourceStart()) {
+				position++;
+			}
+			declarations.add(position, declaration);
+		}
+
+		// Bounds of whole source
+		if (updatedChunk.sourceStart() >= regionStart && updatedChunk.sourceStart() < regionEnd && !updatedStatements.isEmpty()) {
+			updatedChunk.setStart(Math.min(updatedStatements.get(0).sourceStart(), updatedChunk.sourceEnd()));
+		}
+		if (updatedChunk.sourceEnd() >= regionEnd) {
+			updatedChunk.setEnd(updatedChunk.sourceEnd() + delta);
+		} else if (updatedChunk.sourceEnd() > regionStart && !updatedStatements.isEmpty()) {
+			updatedChunk.setEnd(updatedStatements.get(updatedStatements.size() - 1).sourceEnd());
+		}
+		updated.setEnd(previous.sourceEnd() + delta);
+		updated.incrementRevision();
+
+		final NameCounts linkedNames = new NameCounts();
+		for (final Identifier identifier : linked) {
+			linkedNames.add(identifier.getName());
+		}
+		names = new Names(outsideNames.plus(added.names), outsideBoundNames.plus(added.boundNames).plus(linkedNames));
+		requiresChanged = removed.hasModuleReference || added.hasModuleReference;
+		return updated;
+	}
+
+	/**
+	 * @return {@link Chunk} containing top-level statements
+	 */
+	private static Chunk getChunk(final LuaSourceRoot root) {
+		Chunk chunk = null;
+		for (final Object statement : root.getStatements()) {
+			if (statement instanceof Chunk) {
+				chunk = (Chunk) statement;
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * Indicates if module definition and members are out of given region, so they are not affected by its change.
+	 */
+	private static boolean isModuleOutside(final LuaModuleDeclaration module, final int regionStart, final int regionEnd) {
+		if (intersects(module.sourceStart(), module.sourceEnd(), regionStart, regionEnd)
+				|| intersects(module.getNameStart(), module.getNameEnd(), regionStart, regionEnd)) {
+			return false;
+		}
+		for (final MethodDeclaration member : module.getMethods()) {
+			if (intersects(member.sourceStart(), member.sourceEnd(), regionStart, regionEnd)
+					|| intersects(member.getNameStart(), member.getNameEnd(), regionStart, regionEnd)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean intersects(final int start, final int end, final int regionStart, final int regionEnd) {
+		return start < regionEnd && end > regionStart;
+	}
+
+	/**
+	 * @return <code>true</code> when given declaration is declared by one of given statements
+	 */
+	private static boolean isTopLevel(final Declaration declaration, final List<ASTNode> statements) {
+		for (final ASTNode statement : statements) {
+			if (statement instanceof BinaryStatement) {
+				final Chunk left = ((BinaryStatement) statement).getLeft();
+				if (left != null && left.getStatements().contains(declaration)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indicates if first significant character of given source range is an opening parenthesis. A long comment is considered as a parenthesis, as
+	 * it is not worth skipping it.
+	 */
+	private static boolean startsWithParenthesis(final String source, final int start, final int end) {
+		int position = start;
+		while (position < end) {
+			final char c = source.charAt(position);
+			if (Character.isWhitespace(c) || c == ';') {
+				position++;
+			} else if (source.startsWith("--", position)) { //$NON-NLS-1$
+				if (source.startsWith("--[", position)) { //$NON-NLS-1$
+					return true;
+				}
+				while (position < end && source.charAt(position) != '\n') {
+					position++;
+				}
+			} else {
+				return c == '(';
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return count of bytes of given characters once encoded in modified UTF-8
+	 */
+	private static int utf8Length(final String source, final int start, final int end) {
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			length += utf8Length(source.charAt(i));
+		}
+		return length;
+	}
+
+	/** As in modified UTF-8, NUL is encoded on 2 bytes and each surrogate of a pair on 3 bytes */
+	private static int utf8Length(final char c) {
+		if (c == 0) {
+			return 2;
+		} else if (c < 0x80) {
+			return 1;
+		} else if (c < 0x800) {
+			return 2;
+		}
+		return 3;
+	}
+
+	/**
+	 * @return index of character at given UTF-8 offset
+	 */
+	private static int charIndex(final String source, final int offset) {
+		int bytes = 0;
+		int index = 0;
+		while (index < source.length() && bytes < offset) {
+			bytes += utf8Length(source.charAt(index));
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Visits each node once, including right side of assignments which are not always traversed.
+	 */
+	private abstract static class OnceVisitor extends ASTVisitor {
+		private final Set<ASTNode> visited = Collections.newSetFromMap(new IdentityHashMap<ASTNode, Boolean>());
+
+		@Override
+		public boolean visitGeneral(final ASTNode node) throws Exception {
+			if (!visited.add(node)) {
+				return false;
+			}
+			process(node);
+			if (node instanceof BinaryStatement && ((BinaryStatement) node).getRight() != null) {
+				((BinaryStatement) node).getRight().traverse(this);
+			}
+			return true;
+		}
+
+		protected boolean contains(final ASTNode node) {
+			return visited.contains(node);
+		}
+
+		protected Set<ASTNode> getVisited() {
+			return visited;
+		}
+
+		protected abstract void process(ASTNode node) throws Exception;
+	}
+
+	/**
+	 * Gathers nodes of a part of AST and the names they use.
+	 */
+	private static class NodeCollector extends OnceVisitor {
+		private final List<Identifier> identifiers = new ArrayList<Identifier>();
+		private final List<Declaration> declarations = new ArrayList<Declaration>();
+		/** Names of all identifiers and declarations */
+		private final NameCounts names = new NameCounts();
+		/** Names which can not be used freely elsewhere: declarations, identifiers linked to declarations and assigned identifiers */
+		private final NameCounts boundNames = new NameCounts();
+		private boolean hasIndexAssignment = false;
+		private boolean hasModuleReference = false;
+
+		@Override
+		protected void process(final ASTNode node) {
+			if (node instanceof ModuleReference) {
+				hasModuleReference = true;
+			}
+			if (node instanceof Identifier) {
+				final Identifier identifier = (Identifier) node;
+				identifiers.add(identifier);
+				names.add(identifier.getName());
+				if (identifier.hasDeclaration()) {
+					boundNames.add(identifier.getName());
+				}
+			} else if (node instanceof Declaration && node instanceof IOccurrenceHolder) {
+				final Declaration declaration = (Declaration) node;
+				declarations.add(declaration);
+				names.add(declaration.getName());
+				boundNames.add(declaration.getName());
+			} else if (node instanceof org.eclipse.koneki.ldt.parser.ast.statements.Set) {
+				final Chunk left = ((org.eclipse.koneki.ldt.parser.ast.statements.Set) node).getLeft();
+				for (final Object target : left.getStatements()) {
+					if (target instanceof Identifier) {
+						boundNames.add(((Identifier) target).getName());
+					} else if (target instanceof Index) {
+						hasIndexAssignment = true;
+					}
+				}
+			}
+		}
+
+		private boolean hasTopLevelReturn(final List<ASTNode> statements) {
+			for (final ASTNode statement : statements) {
+				if (statement instanceof Return) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Counts of uses of names, once per node. Counts are never modified once computed, so they can be shared by successive versions of AST.
+	 */
+	private static final class NameCounts {
+		private final Map<String, Integer> counts;
+
+		private NameCounts() {
+			this(new HashMap<String, Integer>());
+		}
+
+		private NameCounts(final Map<String, Integer> counts) {
+			this.counts = counts;
+		}
+
+		private void add(final String name) {
+			final Integer count = counts.get(name);
+			counts.put(name, count == null ? 1 : count + 1);
+		}
+
+		private boolean contains(final String name) {
+			return counts.containsKey(name);
+		}
+
+		/**
+		 * @return counts of both given counts and these ones
+		 */
+		private NameCounts plus(final NameCounts other) {
+			return combine(other, 1);
+		}
+
+		/**
+		 * @return these counts without given ones, which must have been counted in these ones
+		 */
+		private NameCounts minus(final NameCounts other) {
+			return combine(other, -1);
+		}
+
+		private NameCounts combine(final NameCounts other, final int sign) {
+			if (other.counts.isEmpty()) {
+				return this;
+			}
+			final Map<String, Integer> combined = new HashMap<String, Integer>(counts);
+			for (final Map.Entry<String, Integer> entry : other.counts.entrySet()) {
+				final Integer count = combined.get(entry.getKey());
+				final int total = (count == null ? 0 : count) + sign * entry.getValue();
+				if (total > 0) {
+					combined.put(entry.getKey(), total);
+				} else {
+					combined.remove(entry.getKey());
+				}
+			}
+			return new NameCounts(combined);
+		}
+	}
+
+	/**
+	 * Shifts offsets of nodes, offsets lower than threshold are left as is. Empty nodes at offset 0 are placeholders and are not moved.
+	 */
+	private static class OffsetShifter extends OnceVisitor {
+		private final int threshold;
+		private final int delta;
+
+		public OffsetShifter(final int threshold, final int delta) {
+			this.threshold = threshold;
+			this.delta = delta;
+		}
+
+		@Override
+		protected void process(final ASTNode node) throws Exception {
+			if (node.sourceStart() == 0 && node.sourceEnd() == 0) {
+				return;
+			}
+			if (node.sourceStart() >= threshold) {
+				node.setStart(node.sourceStart() + delta);
+			}
+			if (node.sourceEnd() >= threshold && node.sourceEnd() > 0) {
+				node.setEnd(node.sourceEnd() + delta);
+			}
+			if (node instanceof Declaration) {
+				// Name is held by a reference which may not be traversed
+				visitGeneral(((Declaration) node).getRef());
+			}
+		}
+	}
+}
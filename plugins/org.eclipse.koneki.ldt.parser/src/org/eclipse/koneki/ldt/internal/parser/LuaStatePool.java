@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.naef.jnlua.LuaException;
+import com.naef.jnlua.LuaState;
+
+/**
+ * Bounded pool of ready to use {@link LuaState}s.
+ * 
+ * Booting Metalua and loading scripts in a {@link LuaState} is costly, so states are created once through {@link #createState()} and handed over
+ * to one thread at a time. At most {@link #getMaxSize()} states exist simultaneously, callers wait for a state to be released when this limit is
+ * reached. States left idle longer than the idle timeout are closed, only {@link #getMinIdle()} states are kept warm. Idle states are evicted
+ * when states are acquired or released, and periodically by a background timer, so a pool nobody uses shrinks too. While a thread uses a state,
+ * state is bound to it with {@link LuaState#setOwner(Thread)}, so its stack operations do not lock.
+ * 
+ * Typical use:
+ * 
+ * <pre>
+ * final LuaState lua = pool.acquire();
+ * try {
+ * 	// work with lua
+ * } finally {
+ * 	pool.release(lua);
+ * }
+ * </pre>
+ */
+public abstract class LuaStatePool {
+	/** Daemon timer evicting idle states of all pools, created with first pool having an idle timeout */
+	private static Timer evictionTimer;
+
+	/** Idle state and date of its last release */
+	private static final class IdleState {
+		private final LuaState state;
+		private final long releaseTime;
+
+		private IdleState(final LuaState state, final long releaseTime) {
+			this.state = state;
+			this.releaseTime = releaseTime;
+		}
+	}
+
+	private final int maxSize;
+	private final int minIdle;
+	private final long idleTimeout;
+
+	/** Most recently released states first */
+	private final LinkedList<IdleState> idle = new LinkedList<IdleState>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+	/** Periodic eviction of idle states, <code>null</code> without idle timeout */
+	private final TimerTask evictionTask;
+
+	/** Count of states living in this pool, idle or in use */
+	private int size = 0;
+	private boolean closed = false;
+
+	/**
+	 * @param maxSize
+	 *            maximum count of states living simultaneously
+	 * @param minIdle
+	 *            count of idle states never evicted
+	 * @param idleTimeout
+	 *            delay in milliseconds after which an idle state is closed
+	 */
+	protected LuaStatePool(final int maxSize, final int minIdle, final long idleTimeout) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool maximum size must be positive."); //$NON-NLS-1$
+		}
+		this.maxSize = maxSize;
+		this.minIdle = Math.max(0, Math.min(minIdle, maxSize));
+		this.idleTimeout = idleTimeout;
+		if (idleTimeout > 0) {
+			evictionTask = new TimerTask() {
+				@Override
+				public void run() {
+					evictIdleStates();
+				}
+			};
+			getEvictionTimer().schedule(evictionTask, idleTimeout, idleTimeout);
+		} else {
+			evictionTask = null;
+		}
+	}
+
+	private static synchronized Timer getEvictionTimer() {
+		if (evictionTimer == null) {
+			evictionTimer = new Timer("Lua state pool eviction", true); //$NON-NLS-1$
+		}
+		return evictionTimer;
+	}
+
+	/**
+	 * Creates a fully initialized state, it will be handed over as is to callers of {@link #acquire()}.
+	 * 
+	 * @return {@link LuaState} ready to use
+	 * @throws LuaException
+	 *             when state can not be initialized
+	 */
+	protected abstract LuaState createState() throws LuaException;
+
+	/**
+	 * Called by {@link #acquire()} once a state or a slot for a new one is available, does nothing by default.
+	 * 
+	 * @param nanos
+	 *            time spent waiting for pool lock and for states in use, creation of a new state is not included
+	 */
+	protected void waited(final long nanos) {
+	}
+
+	/**
+	 * Provides a state for exclusive use of current thread, it has to be given back by this thread with {@link #release(LuaState)} or
+	 * {@link #invalidate(LuaState)}. Blocks while all states are in use.
+	 * 
+	 * @return {@link LuaState} ready to use
+	 * @throws LuaException
+	 *             when a new state can not be initialized
+	 * @throws IllegalStateException
+	 *             when pool is closed or current thread is interrupted while waiting
+	 */
+	public LuaState acquire() throws LuaException {
+		final long start = System.nanoTime();
+		LuaState idleState = null;
+		final LinkedList<LuaState> evicted = new LinkedList<LuaState>();
+		lock.lock();
+		try {
+			while (true) {
+				if (closed) {
+					throw new IllegalStateException("Lua state pool is closed."); //$NON-NLS-1$
+				}
+				// Least recently used states may have been idle for too long, most recently used one is taken
+				evictIdleStates(System.currentTimeMillis(), evicted);
+				if (!idle.isEmpty()) {
+					idleState = idle.removeFirst().state;
+					break;
+				}
+				if (size < maxSize) {
+					// Reserve a slot, state is created outside of the lock
+					size++;
+					break;
+				}
+				try {
+					released.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for a Lua state.", e); //$NON-NLS-1$
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		close(evicted);
+		waited(System.nanoTime() - start);
+		if (idleState != null) {
+			idleState.setOwner(Thread.currentThread());
+			return idleState;
+		}
+
+		// Boot a new state
+		boolean created = false;
+		try {
+			final LuaState state = createState();
+			state.setOwner(Thread.currentThread());
+			created = true;
+			return state;
+		} finally {
+			if (!created) {
+				discard();
+			}
+		}
+	}
+
+	/**
+	 * Gives a state back to the pool, so it can be reused by other threads.
+	 * 
+	 * @param state
+	 *            state obtained from {@link #acquire()}, its stack should be left as it was given
+	 */
+	public void release(final LuaState state) {
+		if (state == null) {
+			return;
+		}
+		// Idle states may be closed by any thread
+		state.setOwner(null);
+		final LinkedList<LuaState> evicted = new LinkedList<LuaState>();
+		lock.lock();
+		try {
+			if (closed) {
+				size--;
+				evicted.add(state);
+			} else {
+				final long now = System.currentTimeMillis();
+				idle.addFirst(new IdleState(state, now));
+				evictIdleStates(now, evicted);
+				released.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+		close(evicted);
+	}
+
+	/**
+	 * Closes a state which is in an unknown state, typically after a failure. Its slot is freed for a new one.
+	 * 
+	 * @param state
+	 *            state obtained from {@link #acquire()}
+	 */
+	public void invalidate(final LuaState state) {
+		if (state == null) {
+			return;
+		}
+		discard();
+		state.close();
+	}
+
+	/**
+	 * Closes all idle states, states in use will be closed at release. Following {@link #acquire()} calls will fail.
+	 */
+	public void close() {
+		if (evictionTask != null) {
+			evictionTask.cancel();
+		}
+		final LinkedList<LuaState> evicted = new LinkedList<LuaState>();
+		lock.lock();
+		try {
+			closed = true;
+			for (final IdleState idleState : idle) {
+				evicted.add(idleState.state);
+			}
+			size -= idle.size();
+			idle.clear();
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		close(evicted);
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	/**
+	 * @return count of states living in this pool, idle or in use
+	 */
+	public int getSize() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return count of states waiting to be acquired
+	 */
+	public int getIdleCount() {
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Frees slot of a state which will not come back to the pool. */
+	private void discard() {
+		lock.lock();
+		try {
+			size--;
+			released.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes states idle for too long, even when pool is not used.
+	 */
+	public void evictIdleStates() {
+		final LinkedList<LuaState> evicted = new LinkedList<LuaState>();
+		lock.lock();
+		try {
+			evictIdleStates(System.currentTimeMillis(), evicted);
+		} finally {
+			lock.unlock();
+		}
+		close(evicted);
+	}
+
+	/**
+	 * Moves states idle for too long to given list, least recently used states are at the end of {@link #idle}. Has to be called holding
+	 * {@link #lock}.
+	 */
+	private void evictIdleStates(final long now, final LinkedList<LuaState> evicted) {
+		final long deadline = now - idleTimeout;
+		final Iterator<IdleState> iterator = idle.descendingIterator();
+		while (idle.size() > minIdle && iterator.hasNext()) {
+			final IdleState idleState = iterator.next();
+			if (idleState.releaseTime > deadline) {
+				break;
+			}
+			iterator.remove();
+			size--;
+			evicted.add(idleState.state);
+		}
+	}
+
+	/** Closes states out of {@link #lock}, closing a state could take a while. */
+	private static void close(final LinkedList<LuaState> states) {
+		for (final LuaState state : states) {
+			state.close();
+		}
+	}
+}
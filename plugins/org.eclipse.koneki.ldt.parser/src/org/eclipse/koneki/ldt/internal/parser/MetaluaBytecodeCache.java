@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.eclipse.koneki.ldt.metalua.MetaluaStateFactory;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Keeps Metalua scripts compiled to Lua byte code on disk between sessions.
+ * 
+ * Compiled files are stored in a sub folder of the cache folder named after a digest of the scripts content and of Metalua version. As long as
+ * scripts and Metalua are unchanged, the same folder is found and compilation, which needs to boot a Metalua {@link LuaState}, is skipped.
+ * Folders matching an outdated key are deleted.
+ */
+public class MetaluaBytecodeCache {
+	private static final String COMPILED_EXTENSION = ".luac"; //$NON-NLS-1$
+	private static final String TEMPORARY_EXTENSION = ".tmp"; //$NON-NLS-1$
+	private static final String DIGEST_ALGORITHM = "SHA-1"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 8192;
+
+	private final File cacheFolder;
+	private final String metaluaVersion;
+
+	/**
+	 * @param cacheFolder
+	 *            folder where compiled scripts are stored
+	 * @param metaluaVersion
+	 *            version of Metalua compiling scripts, a change of version invalidates compiled files
+	 */
+	public MetaluaBytecodeCache(final File cacheFolder, final String metaluaVersion) {
+		this.cacheFolder = cacheFolder;
+		this.metaluaVersion = metaluaVersion;
+	}
+
+	/**
+	 * Provides a folder containing given scripts compiled, they are compiled only when no up to date version is available.
+	 * 
+	 * @param sourceFolder
+	 *            folder containing Metalua scripts
+	 * @param scripts
+	 *            Metalua scripts file names, such as <code>module.mlua</code>
+	 * @return folder containing a <code>module.luac</code> file for each script
+	 * @throws IOException
+	 *             when scripts can not be read or compiled files can not be written
+	 */
+	public synchronized File getCompiledFolder(final File sourceFolder, final String... scripts) throws IOException {
+		final File folder = new File(cacheFolder, computeKey(sourceFolder, scripts));
+
+		// Check if all scripts have been compiled with the same key
+		boolean upToDate = folder.isDirectory();
+		for (int i = 0; upToDate && i < scripts.length; i++) {
+			upToDate = compiledFile(folder, scripts[i]).isFile();
+		}
+		if (upToDate) {
+			return folder;
+		}
+
+		// Compile in a fresh folder, without outdated ones
+		deleteOutdatedFolders(folder);
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Unable to create folder " + folder.getPath()); //$NON-NLS-1$
+		}
+		for (final String script : scripts) {
+			compile(new File(sourceFolder, script), compiledFile(folder, script));
+		}
+		return folder;
+	}
+
+	/**
+	 * Compiles a Metalua file, compiled file is written in a temporary file first, so a file with the final name is always complete.
+	 */
+	private static void compile(final File source, final File target) throws IOException {
+		final File temporary = new File(target.getPath() + TEMPORARY_EXTENSION);
+		final LuaState justForCompilation = MetaluaStateFactory.newLuaState();
+		try {
+			final StringBuffer command = new StringBuffer("local bin  = mlc.luafile_to_luacstring([["); //$NON-NLS-1$
+			command.append(source.getPath());
+			command.append("]]) "); //$NON-NLS-1$
+			// Write compiled file on disk
+			command.append("local file = io.open([["); //$NON-NLS-1$
+			command.append(temporary.getPath());
+			command.append("]], 'wb') file:write(bin) file:close()"); //$NON-NLS-1$
+			justForCompilation.load(command.toString(), "libraryCompilation"); //$NON-NLS-1$
+			justForCompilation.call(0, 0);
+		} finally {
+			justForCompilation.close();
+		}
+		target.delete();
+		if (!temporary.renameTo(target)) {
+			temporary.delete();
+			throw new IOException("Unable to write compiled file " + target.getPath()); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Digest of Metalua version, scripts names and scripts content.
+	 */
+	private String computeKey(final File sourceFolder, final String... scripts) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage());
+		}
+		digest.update(metaluaVersion.getBytes("UTF-8")); //$NON-NLS-1$
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		for (final String script : scripts) {
+			digest.update(script.getBytes("UTF-8")); //$NON-NLS-1$
+			final InputStream input = new FileInputStream(new File(sourceFolder, script));
+			try {
+				int read;
+				while ((read = input.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+				}
+			} finally {
+				input.close();
+			}
+		}
+
+		// Hexadecimal representation
+		final StringBuilder key = new StringBuilder();
+		for (final byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16));
+			key.append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	private void deleteOutdatedFolders(final File upToDateFolder) {
+		final File[] folders = cacheFolder.listFiles();
+		if (folders == null) {
+			return;
+		}
+		for (final File folder : folders) {
+			if (folder.isDirectory() && !folder.equals(upToDateFolder)) {
+				final File[] files = folder.listFiles();
+				if (files != null) {
+					for (final File file : files) {
+						file.delete();
+					}
+				}
+				folder.delete();
+			}
+		}
+	}
+
+	private static File compiledFile(final File folder, final String script) {
+		final int extension = script.lastIndexOf('.');
+		final String moduleName = extension < 0 ? script : script.substring(0, extension);
+		return new File(folder, moduleName + COMPILED_EXTENSION);
+	}
+}
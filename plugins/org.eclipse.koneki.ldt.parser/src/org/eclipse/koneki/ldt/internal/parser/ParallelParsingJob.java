@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dltk.ast.parser.IModuleDeclaration;
+import org.eclipse.dltk.compiler.env.IModuleSource;
+import org.eclipse.dltk.compiler.env.ModuleSource;
+import org.eclipse.dltk.compiler.problem.IProblemReporter;
+import org.eclipse.dltk.compiler.problem.ProblemCollector;
+import org.eclipse.koneki.ldt.parser.Messages;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Parses modules ahead of a build on several threads.
+ * 
+ * Modules are parsed in given order by a fixed count of worker threads, each of them taking the next module as soon as it is done, so long files
+ * do not hold back short ones. Builder takes results with {@link #take(IModuleSource, char[])} in its own order: a module not parsed yet is
+ * claimed by builder which parses it itself instead of waiting, a module being parsed is waited for. Problems are collected per module, so builder
+ * reports them all at once.
+ * 
+ * Workers do not get ahead of builder by more than {@link #RESULTS_PER_WORKER} results each: once that many ASTs are waiting to be taken, they
+ * wait for builder to take one before parsing another module. So memory held by parsing ahead does not grow with project size.
+ */
+public class ParallelParsingJob extends Job {
+	/** Delay between two progress reports */
+	private static final long PROGRESS_INTERVAL = 200;
+
+	/** Count of results not taken yet which can be held for each worker thread */
+	private static final int RESULTS_PER_WORKER = 4;
+
+	/**
+	 * Parses a module
+	 */
+	public interface ModuleParser {
+		IModuleDeclaration parse(IModuleSource module, IProblemReporter reporter);
+	}
+
+	/** AST of a module with problems found while parsing it */
+	public static final class Result {
+		private final int length;
+		private final long hash;
+		private final IModuleDeclaration module;
+		private final ProblemCollector problems;
+
+		private Result(final String source, final IModuleDeclaration module, final ProblemCollector problems) {
+			this.length = source.length();
+			this.hash = SourceHash.hash(source);
+			this.module = module;
+			this.problems = problems;
+		}
+
+		public IModuleDeclaration getModule() {
+			return module;
+		}
+
+		public ProblemCollector getProblems() {
+			return problems;
+		}
+	}
+
+	/** Parsing of a module, claimed either by a worker or by builder */
+	private static final class PendingParse {
+		private final AtomicBoolean claimed = new AtomicBoolean(false);
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Result result = null;
+	}
+
+	private final List<? extends IModuleSource> modules;
+	private final ModuleParser parser;
+	private final int parallelism;
+	private final Map<IModuleSource, PendingParse> pending = new ConcurrentHashMap<IModuleSource, PendingParse>();
+	private final AtomicInteger parsed = new AtomicInteger();
+	/** One permit for each result which can still be held before builder takes one */
+	private final Semaphore results;
+
+	/**
+	 * @param modules
+	 *            modules to parse, in parsing order
+	 * @param parser
+	 *            parser to use, it is called from several threads simultaneously
+	 * @param parallelism
+	 *            count of worker threads
+	 */
+	public ParallelParsingJob(final List<? extends IModuleSource> modules, final ModuleParser parser, final int parallelism) {
+		super(Messages.ParallelParsingJobName);
+		this.modules = modules;
+		this.parser = parser;
+		this.parallelism = Math.max(1, parallelism);
+		this.results = new Semaphore(this.parallelism * RESULTS_PER_WORKER);
+		for (final IModuleSource module : modules) {
+			pending.put(module, new PendingParse());
+		}
+		setPriority(Job.BUILD);
+	}
+
+	/**
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		monitor.beginTask(getName(), modules.size());
+		final ExecutorService workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, getName() + ' ' + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (final IModuleSource module : modules) {
+			final PendingParse parse = pending.get(module);
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						results.acquire();
+					} catch (InterruptedException e) {
+						// Job is canceled, module is left to builder
+						return;
+					}
+					boolean held = false;
+					try {
+						if (parse.claimed.compareAndSet(false, true)) {
+							try {
+								parse.result = parse(module);
+								held = parse.result != null;
+							} finally {
+								parse.done.countDown();
+							}
+						}
+					} finally {
+						// A held result gives its permit back when builder takes it
+						if (!held) {
+							results.release();
+						}
+					}
+				}
+			});
+		}
+		workers.shutdown();
+
+		// Report progress until all modules are parsed
+		final long start = System.nanoTime();
+		int reported = 0;
+		try {
+			while (!workers.awaitTermination(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (monitor.isCanceled()) {
+					// Queued modules are left to builder
+					workers.shutdownNow();
+					monitor.done();
+					return Status.CANCEL_STATUS;
+				}
+				reported = reportProgress(monitor, reported, start);
+			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+		}
+		reportProgress(monitor, reported, start);
+		monitor.done();
+		return Status.OK_STATUS;
+	}
+
+	private int reportProgress(final IProgressMonitor monitor, final int reported, final long start) {
+		final int count = parsed.get();
+		monitor.worked(count - reported);
+		final long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		monitor.subTask(NLS.bind(Messages.ParallelParsingJobProgress, new Object[] { count, modules.size(), count * 1000L / elapsed }));
+		return count;
+	}
+
+	private Result parse(final IModuleSource module) {
+		try {
+			// Parse the very contents result is checked against
+			final String source = module.getSourceContents();
+			final ProblemCollector problems = new ProblemCollector();
+			final IModuleDeclaration declaration = parser.parse(new ModuleSource(module.getFileName(), module.getModelElement(), source), problems);
+			return declaration == null ? null : new Result(source, declaration, problems);
+		} catch (RuntimeException e) {
+			// Builder will parse it, and report the error
+			return null;
+		} finally {
+			parsed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Provides result of parsing a module ahead, waiting for it when it is being parsed. Result of a module is provided once.
+	 * 
+	 * @param module
+	 *            module to build
+	 * @param contents
+	 *            content of module to build
+	 * @return result of module parsing, <code>null</code> when module has to be parsed by caller, as it was not parsed yet, or parsed with another
+	 *         content
+	 */
+	public Result take(final IModuleSource module, final char[] contents) {
+		final PendingParse parse = pending.remove(module);
+		if (parse == null || parse.claimed.compareAndSet(false, true)) {
+			return null;
+		}
+		try {
+			parse.done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		final Result result = parse.result;
+		if (result != null) {
+			results.release();
+		}
+		if (result == null || result.length != contents.length || result.hash != SourceHash.hash(contents)) {
+			return null;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import org.eclipse.koneki.ldt.internal.parser.ASTCopier.CopyException;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+
+/**
+ * A valid AST of a source, once published to readers it is never modified.
+ * 
+ * Incremental parsing can not update an AST other threads read without lock. So {@link #update(String, IncrementalReparser.ChunkParser)} only
+ * reads the published AST, parses changed region and copies the published AST once the update is known to be possible, nodes of changed region
+ * are not copied. The updated copy is published in a new {@link ReparsableAST}, along with the names its nodes use, so that next update does not
+ * visit the whole AST to know them.
+ */
+public final class ReparsableAST {
+
+	private final LuaSourceRoot root;
+	private final String source;
+	/** Names used by nodes of AST, <code>null</code> until an update counts them */
+	private final IncrementalReparser.Names names;
+	/** Indicates that modules required by source may differ from previous AST, always the case after a full parse */
+	private final boolean requiresChanged;
+
+	/**
+	 * @param root
+	 *            AST of <code>source</code>, built by a full parse
+	 * @param source
+	 *            Lua source
+	 */
+	public ReparsableAST(final LuaSourceRoot root, final String source) {
+		this(root, source, null, true);
+	}
+
+	private ReparsableAST(final LuaSourceRoot root, final String source, final IncrementalReparser.Names names, final boolean requiresChanged) {
+		this.root = root;
+		this.source = source;
+		this.names = names;
+		this.requiresChanged = requiresChanged;
+	}
+
+	public LuaSourceRoot getRoot() {
+		return root;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return <code>false</code> when AST has been updated from a previous one without changing modules it requires or fields it exports
+	 */
+	public boolean hasChangedRequires() {
+		return requiresChanged;
+	}
+
+	/**
+	 * @return count of characters of source, size of AST grows along with it
+	 */
+	public int getWeight() {
+		return source.length();
+	}
+
+	/**
+	 * Parses only the part of given source which differs from current one.
+	 * 
+	 * @param newSource
+	 *            new source
+	 * @param parser
+	 *            parses changed region
+	 * @return AST of given source, <code>null</code> when a full parse is needed. Current AST is not modified.
+	 */
+	public ReparsableAST update(final String newSource, final IncrementalReparser.ChunkParser parser) {
+		if (root.hasError()) {
+			return null;
+		}
+		if (newSource.equals(source)) {
+			return this;
+		}
+		final IncrementalReparser reparser = new IncrementalReparser(parser);
+		final LuaSourceRoot updated = reparser.reparse(root, names, source, newSource);
+		if (updated == null) {
+			return null;
+		}
+		return new ReparsableAST(updated, newSource, reparser.getNames(), reparser.hasChangedRequires());
+	}
+
+	/**
+	 * Flags AST as built from a source with errors without modifying the published one: only the root is copied, other nodes are shared.
+	 * 
+	 * @return root equal to published one, except it has an error, <code>null</code> when it can not be built
+	 */
+	public LuaSourceRoot copyWithError() {
+		try {
+			final LuaSourceRoot copy = new ASTCopier().copyShallow(root);
+			copy.setError(true);
+			return copy;
+		} catch (CopyException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return new AST equal to published one and shared with no one, <code>null</code> when it can not be built
+	 */
+	public LuaSourceRoot copy() {
+		try {
+			return new ASTCopier().copy(root);
+		} catch (CopyException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.dltk.compiler.ISourceElementRequestor;
+
+/**
+ * Records calls made on an {@link ISourceElementRequestor} in a compact binary form, they can be replayed later on another requestor without the
+ * AST they were computed from.
+ * 
+ * Calls are forwarded to a delegate while they are recorded. Arguments can be integers, booleans, strings, arrays of them and element
+ * descriptions declared by requestor interfaces, such as {@link org.eclipse.dltk.compiler.IElementRequestor.MethodInfo}, which are stored field by
+ * field. Any other kind of argument makes the whole record unavailable.
+ * 
+ * Only description fields declared with one of these types are recorded, others, such as AST nodes, keep their default value on replay. Replay
+ * replaces parsing, so there is no AST they could refer to, and the requestors replayed on, building model elements and indexing them, only
+ * read names, modifiers, offsets and type names.
+ */
+public final class RequestorRecorder implements InvocationHandler {
+	private static final byte TAG_NULL = 0;
+	private static final byte TAG_INTEGER = 1;
+	private static final byte TAG_BOOLEAN = 2;
+	private static final byte TAG_STRING = 3;
+	private static final byte TAG_ARRAY = 4;
+	private static final byte TAG_INFO = 5;
+
+	private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+	static {
+		PRIMITIVES.put(int.class.getName(), int.class);
+		PRIMITIVES.put(boolean.class.getName(), boolean.class);
+	}
+
+	/** Descriptors of recorded methods, computed once */
+	private static final Map<Method, String> DESCRIPTORS = new ConcurrentHashMap<Method, String>();
+
+	private final Object delegate;
+	private final Object proxy;
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final DataOutputStream output = new DataOutputStream(bytes);
+	/** Identifiers of symbols already written, such as method descriptors or field names */
+	private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+	private boolean recordable = true;
+
+	/**
+	 * @param delegate
+	 *            requestor receiving calls while they are recorded
+	 */
+	public RequestorRecorder(final ISourceElementRequestor delegate) {
+		this.delegate = delegate;
+		// Expose all interfaces of delegate, as callers may check for extensions
+		final Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		collectInterfaces(delegate.getClass(), interfaces);
+		proxy = Proxy.newProxyInstance(delegate.getClass().getClassLoader(), interfaces.toArray(new Class<?>[interfaces.size()]), this);
+	}
+
+	/**
+	 * @return requestor to call, calls are recorded and forwarded to delegate
+	 */
+	public ISourceElementRequestor getRequestor() {
+		return (ISourceElementRequestor) proxy;
+	}
+
+	/**
+	 * @return calls recorded so far, <code>null</code> when a call could not be recorded
+	 */
+	public byte[] getRecord() {
+		return recordable ? bytes.toByteArray() : null;
+	}
+
+	/**
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	public Object invoke(final Object self, final Method method, final Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			// Proxy identity
+			if ("equals".equals(method.getName())) { //$NON-NLS-1$
+				return self == args[0];
+			} else if ("hashCode".equals(method.getName())) { //$NON-NLS-1$
+				return System.identityHashCode(self);
+			}
+			return method.invoke(delegate, args);
+		}
+		if (recordable) {
+			record(method, args);
+		}
+		try {
+			return method.invoke(delegate, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void record(final Method method, final Object[] args) {
+		final Object[] arguments = args == null ? new Object[0] : args;
+		for (final Object argument : arguments) {
+			if (!isEncodable(argument)) {
+				recordable = false;
+				return;
+			}
+		}
+		try {
+			writeSymbol(descriptor(method));
+			output.writeByte(arguments.length);
+			for (final Object argument : arguments) {
+				write(argument);
+			}
+		} catch (IOException e) {
+			// Strings too long for a record
+			recordable = false;
+		}
+	}
+
+	/**
+	 * Replays recorded calls. Record is fully decoded before first call, so nothing is called when it does not match given requestor.
+	 * 
+	 * @param record
+	 *            calls recorded by a {@link RequestorRecorder}
+	 * @param requestor
+	 *            requestor to call
+	 * @return <code>true</code> when calls were replayed, <code>false</code> when record does not match this requestor
+	 */
+	public static boolean replay(final byte[] record, final ISourceElementRequestor requestor) {
+		final Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		collectInterfaces(requestor.getClass(), interfaces);
+		final Map<String, Method> methods = new HashMap<String, Method>();
+		for (final Class<?> type : interfaces) {
+			for (final Method method : type.getMethods()) {
+				methods.put(descriptor(method), method);
+			}
+		}
+
+		// Decode
+		final List<Method> calls = new ArrayList<Method>();
+		final List<Object[]> arguments = new ArrayList<Object[]>();
+		final DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+		final List<String> symbols = new ArrayList<String>();
+		try {
+			while (input.available() > 0) {
+				final Method method = methods.get(readSymbol(input, symbols));
+				if (method == null) {
+					return false;
+				}
+				final Object[] args = new Object[input.readByte()];
+				if (args.length != method.getParameterTypes().length) {
+					return false;
+				}
+				final ClassLoader loader = method.getDeclaringClass().getClassLoader();
+				for (int i = 0; i < args.length; i++) {
+					args[i] = read(input, symbols, loader);
+				}
+				calls.add(method);
+				arguments.add(args);
+			}
+		} catch (Exception e) {
+			// Record is corrupted or refers to unavailable classes
+			return false;
+		}
+
+		// Call
+		for (int i = 0; i < calls.size(); i++) {
+			try {
+				calls.get(i).invoke(requestor, arguments.get(i));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return true;
+	}
+
+	private static boolean isEncodable(final Object value) {
+		if (value == null || value instanceof Integer || value instanceof Boolean || value instanceof String) {
+			return true;
+		}
+		final Class<?> type = value.getClass();
+		if (type.isArray()) {
+			for (int i = 0; i < Array.getLength(value); i++) {
+				if (!isEncodable(Array.get(value, i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		// Element descriptions are declared in requestor interfaces, they are instantiable and have public fields
+		if (type.getEnclosingClass() == null || !type.getEnclosingClass().isInterface() || Modifier.isAbstract(type.getModifiers())) {
+			return false;
+		}
+		try {
+			return Modifier.isPublic(type.getConstructor().getModifiers());
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private void write(final Object value) throws IOException {
+		if (value == null) {
+			output.writeByte(TAG_NULL);
+		} else if (value instanceof Integer) {
+			output.writeByte(TAG_INTEGER);
+			output.writeInt((Integer) value);
+		} else if (value instanceof Boolean) {
+			output.writeByte(TAG_BOOLEAN);
+			output.writeBoolean((Boolean) value);
+		} else if (value instanceof String) {
+			output.writeByte(TAG_STRING);
+			output.writeUTF((String) value);
+		} else if (value.getClass().isArray()) {
+			output.writeByte(TAG_ARRAY);
+			writeSymbol(value.getClass().getComponentType().getName());
+			final int length = Array.getLength(value);
+			output.writeInt(length);
+			for (int i = 0; i < length; i++) {
+				write(Array.get(value, i));
+			}
+		} else {
+			output.writeByte(TAG_INFO);
+			writeSymbol(value.getClass().getName());
+			final List<Field> fields = fields(value.getClass());
+			output.writeShort(fields.size());
+			for (final Field field : fields) {
+				writeSymbol(field.getName());
+				final Object fieldValue;
+				try {
+					fieldValue = field.get(value);
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException(e);
+				}
+				write(fieldValue);
+			}
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 *             when record is corrupted or refers to unknown classes and fields
+	 */
+	private static Object read(final DataInputStream input, final List<String> symbols, final ClassLoader loader) throws Exception {
+		final byte tag = input.readByte();
+		switch (tag) {
+		case TAG_NULL:
+			return null;
+		case TAG_INTEGER:
+			return input.readInt();
+		case TAG_BOOLEAN:
+			return input.readBoolean();
+		case TAG_STRING:
+			return input.readUTF();
+		case TAG_ARRAY:
+			final Class<?> componentType = type(readSymbol(input, symbols), loader);
+			final Object array = Array.newInstance(componentType, input.readInt());
+			for (int i = 0; i < Array.getLength(array); i++) {
+				Array.set(array, i, read(input, symbols, loader));
+			}
+			return array;
+		case TAG_INFO:
+			final Class<?> type = type(readSymbol(input, symbols), loader);
+			final Object info = type.getConstructor().newInstance();
+			final int fieldCount = input.readShort();
+			for (int i = 0; i < fieldCount; i++) {
+				final Field field = type.getField(readSymbol(input, symbols));
+				final Object value = read(input, symbols, loader);
+				// Primitive fields keep their default value
+				if (value != null || !field.getType().isPrimitive()) {
+					field.set(info, value);
+				}
+			}
+			return info;
+		default:
+			throw new IOException("Unknown record tag " + tag); //$NON-NLS-1$
+		}
+	}
+
+	/** Symbols are written once, they are referred to by their identifier afterwards */
+	private void writeSymbol(final String symbol) throws IOException {
+		final Integer id = symbols.get(symbol);
+		if (id != null) {
+			output.writeShort(id);
+		} else {
+			output.writeShort(symbols.size());
+			output.writeUTF(symbol);
+			symbols.put(symbol, symbols.size());
+		}
+	}
+
+	private static String readSymbol(final DataInputStream input, final List<String> symbols) throws IOException {
+		final int id = input.readShort();
+		if (id == symbols.size()) {
+			symbols.add(input.readUTF());
+		}
+		return symbols.get(id);
+	}
+
+	private static Class<?> type(final String name, final ClassLoader loader) throws ClassNotFoundException {
+		final Class<?> primitive = PRIMITIVES.get(name);
+		return primitive != null ? primitive : Class.forName(name, false, loader);
+	}
+
+	/** Public instance fields which can be assigned, declared with a recordable type */
+	private static List<Field> fields(final Class<?> type) {
+		final List<Field> fields = new ArrayList<Field>();
+		for (final Field field : type.getFields()) {
+			if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers()) && isRecordable(field.getType())) {
+				fields.add(field);
+			}
+		}
+		return fields;
+	}
+
+	private static boolean isRecordable(final Class<?> type) {
+		if (type.isArray()) {
+			return isRecordable(type.getComponentType());
+		}
+		return type == int.class || type == boolean.class || type == String.class;
+	}
+
+	/** Identifies a method independently of class loading, such as <code>IElementRequestor#exitField(int)</code> */
+	private static String descriptor(final Method method) {
+		String descriptor = DESCRIPTORS.get(method);
+		if (descriptor == null) {
+			final StringBuilder builder = new StringBuilder(method.getDeclaringClass().getName());
+			builder.append('#').append(method.getName()).append('(');
+			final Class<?>[] parameters = method.getParameterTypes();
+			for (int i = 0; i < parameters.length; i++) {
+				if (i > 0) {
+					builder.append(',');
+				}
+				builder.append(parameters[i].getName());
+			}
+			descriptor = builder.append(')').toString();
+			DESCRIPTORS.put(method, descriptor);
+		}
+		return descriptor;
+	}
+
+	private static void collectInterfaces(final Class<?> type, final Set<Class<?>> interfaces) {
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			for (final Class<?> implemented : current.getInterfaces()) {
+				if (interfaces.add(implemented)) {
+					collectInterfaces(implemented, interfaces);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Modules requiring each other, by module name, along with names each module exports and their kinds.
+ * 
+ * Each name gets an <code>int</code> identifier once for all, required modules are sorted arrays of identifiers and dependents are arrays grown
+ * as edges are added. A module has a stamp, incremented each time what it resolves from required modules may differ: when it requires other
+ * modules or when names exported by a required module or their kinds change. Results resolved for a module are valid as long as its stamp is
+ * the same.
+ */
+public class RequireGraph {
+	private static final int[] NONE = new int[0];
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private String[] names = new String[16];
+	/** Modules required by each module, sorted identifiers */
+	private int[][] requires = new int[16][];
+	/** Modules requiring each module, first {@link #dependentCounts} identifiers are valid */
+	private int[][] dependents = new int[16][];
+	private int[] dependentCounts = new int[16];
+	/** Kinds of names exported by each module, by name, <code>null</code> when unknown */
+	private final List<Map<String, String>> exports = new ArrayList<Map<String, String>>();
+	private int[] stamps = new int[16];
+	private int size = 0;
+
+	/**
+	 * Records what a module requires and exports.
+	 * 
+	 * @param module
+	 *            name of module
+	 * @param required
+	 *            names of modules it requires
+	 * @param exported
+	 *            kinds of names it exports, by name
+	 */
+	public synchronized void update(final String module, final Collection<String> required, final Map<String, String> exported) {
+		updateRequires(module, required);
+		setExports(ids.get(module), new HashMap<String, String>(exported));
+	}
+
+	/**
+	 * Records what a module requires, what it exports is left as it is.
+	 * 
+	 * @param module
+	 *            name of module
+	 * @param required
+	 *            names of modules it requires
+	 */
+	public synchronized void updateRequires(final String module, final Collection<String> required) {
+		final int id = getOrCreateId(module);
+		final int[] updated = toIds(required);
+		final int[] previous = requires[id];
+		if (!Arrays.equals(previous, updated)) {
+			// Both arrays are sorted, edges are added and removed in a single pass
+			int i = 0;
+			int j = 0;
+			while (i < previous.length || j < updated.length) {
+				if (j == updated.length || (i < previous.length && previous[i] < updated[j])) {
+					removeDependent(previous[i++], id);
+				} else if (i == previous.length || updated[j] < previous[i]) {
+					addDependent(updated[j++], id);
+				} else {
+					i++;
+					j++;
+				}
+			}
+			requires[id] = updated;
+			stamps[id]++;
+		}
+	}
+
+	/**
+	 * Records names a module exports, when it is known to this graph.
+	 * 
+	 * @param module
+	 *            name of module
+	 * @param exported
+	 *            kinds of names it exports, by name
+	 */
+	public synchronized void updateExports(final String module, final Map<String, String> exported) {
+		final Integer id = ids.get(module);
+		if (id != null) {
+			setExports(id, new HashMap<String, String>(exported));
+		}
+	}
+
+	/**
+	 * Forgets what a module requires and exports, modules requiring it are still recorded.
+	 * 
+	 * @param module
+	 *            name of module
+	 */
+	public synchronized void remove(final String module) {
+		final Integer id = ids.get(module);
+		if (id != null) {
+			for (final int required : requires[id]) {
+				removeDependent(required, id);
+			}
+			requires[id] = NONE;
+			stamps[id]++;
+			setExports(id, null);
+		}
+	}
+
+	/**
+	 * Makes modules requiring a module resolve it again, when another module may now be found for this name.
+	 * 
+	 * @param module
+	 *            name of module
+	 */
+	public synchronized void invalidateDependents(final String module) {
+		final Integer id = ids.get(module);
+		if (id != null) {
+			incrementDependentStamps(id);
+		}
+	}
+
+	/**
+	 * @return current stamp of a module, <code>-1</code> when it is unknown
+	 */
+	public synchronized int getStamp(final String module) {
+		final Integer id = ids.get(module);
+		return id == null ? -1 : stamps[id];
+	}
+
+	/**
+	 * @return <code>true</code> when names exported by module are known, that is when it has been recorded with its exports
+	 */
+	public synchronized boolean hasExports(final String module) {
+		final Integer id = ids.get(module);
+		return id != null && exports.get(id) != null;
+	}
+
+	/**
+	 * @return <code>true</code> when module is recorded as requiring other one
+	 */
+	public synchronized boolean requires(final String module, final String required) {
+		final Integer id = ids.get(module);
+		final Integer requiredId = ids.get(required);
+		return id != null && requiredId != null && Arrays.binarySearch(requires[id], requiredId) >= 0;
+	}
+
+	/**
+	 * @return names of modules directly required by a module
+	 */
+	public synchronized List<String> getRequires(final String module) {
+		final Integer id = ids.get(module);
+		return id == null ? Collections.<String> emptyList() : toNames(requires[id], requires[id].length);
+	}
+
+	/**
+	 * @return names of modules directly requiring a module
+	 */
+	public synchronized List<String> getDependents(final String module) {
+		final Integer id = ids.get(module);
+		return id == null ? Collections.<String> emptyList() : toNames(dependents[id], dependentCounts[id]);
+	}
+
+	/**
+	 * @return names of modules a module requires, directly or not, closest ones first, module itself is not part of it
+	 */
+	public synchronized Set<String> getRequireClosure(final String module) {
+		final Integer id = ids.get(module);
+		if (id == null) {
+			return Collections.emptySet();
+		}
+		final boolean[] visited = new boolean[size];
+		final int[] queue = new int[size];
+		int head = 0;
+		int tail = 0;
+		visited[id] = true;
+		queue[tail++] = id;
+		final Set<String> closure = new LinkedHashSet<String>();
+		while (head < tail) {
+			for (final int required : requires[queue[head++]]) {
+				if (!visited[required]) {
+					visited[required] = true;
+					queue[tail++] = required;
+					closure.add(names[required]);
+				}
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * @return count of module names known to this graph
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private void setExports(final int id, final Map<String, String> exported) {
+		final Map<String, String> previous = exports.get(id);
+		if (previous == null ? exported != null : !previous.equals(exported)) {
+			exports.set(id, exported);
+			incrementDependentStamps(id);
+		}
+	}
+
+	private void incrementDependentStamps(final int id) {
+		for (int i = 0; i < dependentCounts[id]; i++) {
+			stamps[dependents[id][i]]++;
+		}
+	}
+
+	private int getOrCreateId(final String module) {
+		final Integer existing = ids.get(module);
+		if (existing != null) {
+			return existing;
+		}
+		if (size == names.length) {
+			final int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			requires = Arrays.copyOf(requires, capacity);
+			dependents = Arrays.copyOf(dependents, capacity);
+			dependentCounts = Arrays.copyOf(dependentCounts, capacity);
+			stamps = Arrays.copyOf(stamps, capacity);
+		}
+		final int id = size++;
+		ids.put(module, id);
+		names[id] = module;
+		requires[id] = NONE;
+		dependents[id] = NONE;
+		exports.add(null);
+		return id;
+	}
+
+	private int[] toIds(final Collection<String> modules) {
+		final int[] result = new int[modules.size()];
+		int count = 0;
+		for (final String module : modules) {
+			result[count++] = getOrCreateId(module);
+		}
+		Arrays.sort(result);
+		// Remove duplicates
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (distinct == 0 || result[distinct - 1] != result[i]) {
+				result[distinct++] = result[i];
+			}
+		}
+		return distinct == result.length ? result : Arrays.copyOf(result, distinct);
+	}
+
+	private List<String> toNames(final int[] moduleIds, final int count) {
+		final List<String> result = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(names[moduleIds[i]]);
+		}
+		return result;
+	}
+
+	private void addDependent(final int id, final int dependent) {
+		if (dependentCounts[id] == dependents[id].length) {
+			dependents[id] = Arrays.copyOf(dependents[id], Math.max(4, dependentCounts[id] * 2));
+		}
+		dependents[id][dependentCounts[id]++] = dependent;
+	}
+
+	private void removeDependent(final int id, final int dependent) {
+		final int[] array = dependents[id];
+		for (int i = 0; i < dependentCounts[id]; i++) {
+			if (array[i] == dependent) {
+				array[i] = array[--dependentCounts[id]];
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of the most recent values of a measure, along with totals since creation.
+ * 
+ * Values are written in a ring of fixed size, so percentiles describe the last {@link #getWindowSize()} values only and recording never allocates.
+ * Recording does not lock, a snapshot taken while values are recorded may mix a few old and new values.
+ */
+public class RollingHistogram {
+	private final AtomicLongArray window;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+
+	/**
+	 * @param windowSize
+	 *            count of recent values percentiles are computed from
+	 */
+	public RollingHistogram(final int windowSize) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Histogram window size must be positive."); //$NON-NLS-1$
+		}
+		this.window = new AtomicLongArray(windowSize);
+	}
+
+	public void record(final long value) {
+		final long index = count.getAndIncrement();
+		window.set((int) (index % window.length()), value);
+		total.addAndGet(value);
+	}
+
+	/**
+	 * @return count of values recorded since creation or last reset
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return sum of values recorded since creation or last reset
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	public int getWindowSize() {
+		return window.length();
+	}
+
+	/**
+	 * @return most recent values, sorted in ascending order
+	 */
+	public long[] snapshot() {
+		final int size = (int) Math.min(count.get(), window.length());
+		final long[] values = new long[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = window.get(i);
+		}
+		Arrays.sort(values);
+		return values;
+	}
+
+	/**
+	 * @param sorted
+	 *            values sorted in ascending order, as given by {@link #snapshot()}
+	 * @param percentile
+	 *            percentile between 0 and 100
+	 * @return nearest rank value of percentile, 0 when there are no values
+	 */
+	public static long percentile(final long[] sorted, final double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+	}
+
+	/**
+	 * Forgets all recorded values.
+	 */
+	public void reset() {
+		count.set(0);
+		total.set(0);
+	}
+}
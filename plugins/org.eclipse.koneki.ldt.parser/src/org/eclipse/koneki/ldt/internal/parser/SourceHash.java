@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.internal.parser;
+
+/**
+ * 64 bits FNV-1a hash of source characters, used to check that a source is still the one something was computed from without keeping it.
+ */
+public final class SourceHash {
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private SourceHash() {
+	}
+
+	public static long hash(final CharSequence source) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < source.length(); i++) {
+			hash ^= source.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	public static long hash(final char[] source) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < source.length; i++) {
+			hash ^= source[i];
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+}
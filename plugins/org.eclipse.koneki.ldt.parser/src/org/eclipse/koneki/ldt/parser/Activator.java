@@ -20,6 +20,7 @@ package org.eclipse.koneki.ldt.parser;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.koneki.ldt.parser.format.LuaSourceFormat;
 import org.osgi.framework.BundleContext;
 
 // TODO: Auto-generated Javadoc
@@ -50,6 +51,8 @@ public class Activator extends Plugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		AlternativeLuaSourceParser.getMetrics().register();
+		LuaRequireGraph.getGraphs().register();
 	}
 
 	/*
@@ -58,6 +61,11 @@ public class Activator extends Plugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext )
 	 */
 	public void stop(BundleContext context) throws Exception {
+		AlternativeLuaSourceParser.getMetrics().unregister();
+		LuaRequireGraph.getGraphs().unregister();
+		AlternativeLuaSourceParser.closeStatePool();
+		LuaSourceFormat.closeStatePool();
+		LuaDeclarationIndex.close();
 		plugin = null;
 		super.stop(context);
 	}
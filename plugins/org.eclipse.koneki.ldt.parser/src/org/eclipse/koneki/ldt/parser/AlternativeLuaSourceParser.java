@@ -13,9 +13,6 @@ package org.eclipse.koneki.ldt.parser;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Hashtable;
-import java.util.Map;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Platform;
@@ -30,10 +27,19 @@ import org.eclipse.dltk.core.ElementChangedEvent;
 import org.eclipse.dltk.core.IElementChangedListener;
 import org.eclipse.dltk.core.IModelElement;
 import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.koneki.ldt.internal.parser.BoundedCache;
+import org.eclipse.koneki.ldt.internal.parser.DLTKObjectDecoder;
 import org.eclipse.koneki.ldt.internal.parser.DLTKObjectFactory;
+import org.eclipse.koneki.ldt.internal.parser.IncrementalReparser;
+import org.eclipse.koneki.ldt.internal.parser.LuaStatePool;
+import org.eclipse.koneki.ldt.internal.parser.MetaluaBytecodeCache;
+import org.eclipse.koneki.ldt.internal.parser.ReparsableAST;
 import org.eclipse.koneki.ldt.metalua.MetaluaStateFactory;
+import org.eclipse.koneki.ldt.parser.ParserMetrics.Stage;
 import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
 
+import com.naef.jnlua.JavaFunction;
 import com.naef.jnlua.LuaException;
 import com.naef.jnlua.LuaState;
 
@@ -49,13 +55,98 @@ public class AlternativeLuaSourceParser extends AbstractSourceParser {
 	//	public static final String BUILDER_BINARY = BUILDER + ".luac";//$NON-NLS-1$
 	public static final String MARKER = "declaration_marker";//$NON-NLS-1$
 	public static final String MARKER_SCRIPT = MARKER + ".mlua";//$NON-NLS-1$
-	private static LuaState lua = null;
+	/** System property defining how many files could be parsed simultaneously, default is processors count */
+	public static final String POOL_SIZE_PROPERTY = "org.eclipse.koneki.ldt.parser.pool.size"; //$NON-NLS-1$
+	/** System property defining after how many milliseconds an unused parsing {@link LuaState} is closed */
+	public static final String POOL_IDLE_TIMEOUT_PROPERTY = "org.eclipse.koneki.ldt.parser.pool.idletimeout"; //$NON-NLS-1$
+	private static final long DEFAULT_IDLE_TIMEOUT = 60000;
+	/**
+	 * System property enabling transfer of the whole AST from Lua in a single serialized buffer, when <code>false</code> each node is created
+	 * through a Java call from Lua. Default is <code>true</code>.
+	 */
+	public static final String SERIALIZED_AST_PROPERTY = "org.eclipse.koneki.ldt.parser.serializedast"; //$NON-NLS-1$
+	private static final boolean SERIALIZED_AST = Boolean.parseBoolean(System.getProperty(SERIALIZED_AST_PROPERTY, "true")); //$NON-NLS-1$
+	/**
+	 * System property enabling incremental parsing: only top-level statements touched by a change are parsed again and spliced in a copy of
+	 * previous AST. Default is <code>true</code>.
+	 */
+	public static final String INCREMENTAL_PROPERTY = "org.eclipse.koneki.ldt.parser.incremental"; //$NON-NLS-1$
+	private static final boolean INCREMENTAL = Boolean.parseBoolean(System.getProperty(INCREMENTAL_PROPERTY, "true")); //$NON-NLS-1$
+	/** System property defining how many characters of source can have their AST cached, default is 4 millions */
+	public static final String CACHE_SIZE_PROPERTY = "org.eclipse.koneki.ldt.parser.cache.size"; //$NON-NLS-1$
+	private static final long DEFAULT_CACHE_SIZE = 4000000;
+	/**
+	 * System property enabling to keep ASTs evicted from cache through soft references, they are then kept until memory is needed. Default is
+	 * <code>true</code>.
+	 */
+	public static final String CACHE_SOFT_PROPERTY = "org.eclipse.koneki.ldt.parser.cache.soft"; //$NON-NLS-1$
+
+	/** Folder of plug-in state location where compiled Metalua scripts are kept */
+	private static final String BYTECODE_CACHE_FOLDER = "metalua"; //$NON-NLS-1$
+
+	/** Folder containing compiled Metalua scripts, <code>null</code> until they are compiled */
+	private static File scriptFolder = null;
+
+	/** {@link LuaState}s loaded with AST builder, each of them parses one file at a time */
+	private static volatile LuaStatePool statePool = null;
+
+	/** Origin of {@link #CLOCK}, it keeps nanoseconds small enough to be exact in a Lua number */
+	private static final long CLOCK_ORIGIN = System.nanoTime();
+	/** Clock given to AST builder, so it measures its own stages */
+	private static final JavaFunction CLOCK = new JavaFunction() {
+		@Override
+		public int invoke(final LuaState l) {
+			l.pushNumber(System.nanoTime() - CLOCK_ORIGIN);
+			return 1;
+		}
+	};
 
 	// BEGIN CACHE MANAGEMENT
 	// TODO DLTK has already a cache system but it can be used to keep the last valid AST.
 	// so we have to cache system.
 	// Ideally, the parser should manage file with syntax errors..
-	private static Map<IModelElement, IModuleDeclaration> cache = new Hashtable<IModelElement, IModuleDeclaration>();
+	/**
+	 * Builders parse content of files while reconcilers parse editor buffers of working copies, which are equal to their file module. Each one
+	 * has its own AST, so they do not replace each other's AST and incremental parsing compares each source with its own previous version.
+	 */
+	private static final class CacheKey {
+		private final IModelElement element;
+		private final boolean workingCopy;
+
+		private CacheKey(final IModelElement element, final boolean workingCopy) {
+			this.element = element;
+			this.workingCopy = workingCopy;
+		}
+
+		private static CacheKey of(final IModelElement element) {
+			return new CacheKey(element, element instanceof ISourceModule && ((ISourceModule) element).isWorkingCopy());
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			final CacheKey other = (CacheKey) obj;
+			return workingCopy == other.workingCopy && element.equals(other.element);
+		}
+
+		@Override
+		public int hashCode() {
+			return element.hashCode() * 2 + (workingCopy ? 1 : 0);
+		}
+	}
+
+	/** Last valid ASTs, they weigh as much as the characters they keep, least recently used ones are evicted first */
+	private static final BoundedCache<CacheKey, ReparsableAST> cache = new BoundedCache<CacheKey, ReparsableAST>(Long.getLong(CACHE_SIZE_PROPERTY,
+			DEFAULT_CACHE_SIZE), Boolean.parseBoolean(System.getProperty(CACHE_SOFT_PROPERTY, "true"))) { //$NON-NLS-1$
+		@Override
+		protected int weight(final ReparsableAST module) {
+			return Math.max(1, module.getWeight());
+		}
+	};
+	private static final ParserMetrics metrics = new ParserMetrics(cache, Boolean.parseBoolean(System.getProperty(
+			ParserMetrics.METRICS_PROPERTY, "true"))); //$NON-NLS-1$
 	private static IElementChangedListener changedListener = new IElementChangedListener() {
 		public void elementChanged(ElementChangedEvent event) {
 			synchronized (AlternativeLuaSourceParser.class) {
@@ -68,16 +159,16 @@ public class AlternativeLuaSourceParser extends AbstractSourceParser {
 			IModelElement element = delta.getElement();
 			if (element.getElementType() == IModelElement.SOURCE_MODULE) {
 				if (delta.getKind() == IModelElementDelta.REMOVED) {
-					cache.remove(element);
+					removeFromCache(element);
 				} else if (delta.getKind() == IModelElementDelta.CHANGED && delta.getFlags() == IModelElementDelta.F_PRIMARY_WORKING_COPY) {
-					cache.remove(element);
+					removeFromCache(element);
 				}
 			}
 			if (delta.getFlags() == IModelElementDelta.F_REMOVED_FROM_BUILDPATH) {
 				if (delta.getAffectedChildren().length == 0) {
-					for (IModelElement sourcemodule : new ArrayList<IModelElement>(cache.keySet())) {
-						if (LuaASTUtils.isAncestor(sourcemodule, element)) {
-							cache.remove(sourcemodule);
+					for (CacheKey key : cache.keys()) {
+						if (LuaASTUtils.isAncestor(key.element, element)) {
+							cache.remove(key);
 						}
 					}
 				}
@@ -90,6 +181,11 @@ public class AlternativeLuaSourceParser extends AbstractSourceParser {
 				}
 			}
 		}
+
+		private void removeFromCache(final IModelElement element) {
+			cache.remove(new CacheKey(element, false));
+			cache.remove(new CacheKey(element, true));
+		}
 	};
 	static {
 		DLTKCore.addElementChangedListener(changedListener);
@@ -100,63 +196,134 @@ public class AlternativeLuaSourceParser extends AbstractSourceParser {
 	public AlternativeLuaSourceParser() {
 	}
 
-	private static synchronized LuaState getLuaState() {
-		if (lua == null) {
-			final String require = "require"; //$NON-NLS-1$
-			lua = MetaluaStateFactory.newLuaState();
-			// Load module which helps avoiding reflection between Lua and Java
-			DLTKObjectFactory.register(lua);
-			// Load needed files
-			try {
-				/*
-				 * Load compiled Metalua script from path
-				 */
-				final URL folderUrl = FileLocator.toFileURL(Platform.getBundle(Activator.PLUGIN_ID).getEntry(LIB_PATH));
-				final File folder = new File(folderUrl.getFile());
-				compileMetaluaFile(folder, BUILDER_SCRIPT);
-				compileMetaluaFile(folder, MARKER_SCRIPT);
-
-				// Change path
-				final StringBuffer code = new StringBuffer("package.path=[["); //$NON-NLS-1$
-				code.append(folder.getPath());
-				code.append(File.separatorChar);
-				code.append("?.luac;]]..package.path"); //$NON-NLS-1$
-				lua.load(code.toString(), "reloadingPath"); //$NON-NLS-1$
-				lua.call(0, 0);
-				lua.getGlobal(require);
-				lua.pushString(MARKER);
-				lua.call(1, 1);
-				lua.setGlobal("mark"); //$NON-NLS-1$
-				lua.getGlobal(require);
-				lua.pushString(BUILDER);
-				lua.call(1, 1);
-				lua.setGlobal("parsemod"); //$NON-NLS-1$
-			} catch (IOException e) {
-				Activator.logError(Messages.AlternativeLuaSourceParserUnableToBuild, e);
+	/**
+	 * @return how many files can be parsed simultaneously
+	 */
+	public static int getPoolSize() {
+		return Math.max(1, Integer.getInteger(POOL_SIZE_PROPERTY, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * @return cost of parsing measured so far
+	 */
+	public static ParserMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Class monitor is only taken while pool is missing, so parsing threads do not contend on it.
+	 */
+	private static LuaStatePool getStatePool() {
+		final LuaStatePool pool = statePool;
+		if (pool != null) {
+			return pool;
+		}
+		synchronized (AlternativeLuaSourceParser.class) {
+			if (statePool == null) {
+				final long idleTimeout = Long.getLong(POOL_IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT);
+				statePool = new LuaStatePool(getPoolSize(), 1, idleTimeout) {
+					@Override
+					protected LuaState createState() throws LuaException {
+						final long start = System.nanoTime();
+						final LuaState state = newLuaState();
+						metrics.record(Stage.STATE_BOOT, System.nanoTime() - start);
+						return state;
+					}
+
+					@Override
+					protected void waited(final long nanos) {
+						metrics.record(Stage.LOCK_WAIT, nanos);
+					}
+				};
 			}
+			return statePool;
+		}
+	}
+
+	/**
+	 * Closes all {@link LuaState}s used for parsing, a new pool will be created at next parsing.
+	 */
+	public static synchronized void closeStatePool() {
+		if (statePool != null) {
+			statePool.close();
+			statePool = null;
 		}
-		return lua;
 	}
 
-	private static void compileMetaluaFile(final File folder, final String fileName) throws IOException {
-		final File regular = new File(folder, fileName);
-		final String fileNameWithoutExtension = fileName.substring(0, fileName.lastIndexOf('.'));
-		final File build = new File(folder, fileNameWithoutExtension + ".luac"); //$NON-NLS-1$
-		// Compile metalua lib
-		final LuaState justForCompilation = MetaluaStateFactory.newLuaState();
+	/**
+	 * Compiles Metalua scripts at first call only, all {@link LuaState} of the pool share the same compiled files. Compiled files are kept in
+	 * plug-in state location, so they are reused across sessions while scripts and Metalua are unchanged.
+	 * 
+	 * @return folder containing compiled scripts
+	 */
+	private static synchronized File getScriptFolder() throws IOException {
+		if (scriptFolder == null) {
+			final URL folderUrl = FileLocator.toFileURL(Platform.getBundle(Activator.PLUGIN_ID).getEntry(LIB_PATH));
+			final File folder = new File(folderUrl.getFile());
+			final File cacheFolder = Activator.getDefault().getStateLocation().append(BYTECODE_CACHE_FOLDER).toFile();
+			final String metaluaVersion = Platform.getBundle(org.eclipse.koneki.ldt.metalua.Activator.PLUGIN_ID).getVersion().toString();
+			final MetaluaBytecodeCache bytecodeCache = new MetaluaBytecodeCache(cacheFolder, metaluaVersion);
+			scriptFolder = bytecodeCache.getCompiledFolder(folder, BUILDER_SCRIPT, MARKER_SCRIPT);
+		}
+		return scriptFolder;
+	}
+
+	/**
+	 * @return digest of AST builder scripts and Metalua version, it changes when built ASTs could change
+	 * @throws IOException
+	 *             when scripts can not be read or compiled
+	 */
+	static String getBuilderKey() throws IOException {
+		// Compiled scripts are stored in a folder named after this digest
+		return getScriptFolder().getName();
+	}
+
+	/**
+	 * Provides a new {@link LuaState} ready to build AST: {@link DLTKObjectFactory} and {@link DLTKObjectDecoder} opcodes are registered and both
+	 * <code>parsemod</code> and <code>mark</code> are loaded. When {@link ParserMetrics} are enabled, builder is given a clock. Parser uses its
+	 * own pooled states, this is meant for tools running parsing stages separately, such as benchmarks. Caller is in charge of closing given
+	 * state.
+	 */
+	public static LuaState newLuaState() {
+		final String require = "require"; //$NON-NLS-1$
+		final LuaState lua = MetaluaStateFactory.newLuaState();
+		// Load module which helps avoiding reflection between Lua and Java
+		DLTKObjectFactory.register(lua);
+		// Opcodes have to be known before builder is loaded, they are used to serialize AST
+		DLTKObjectDecoder.register(lua);
+		// Load needed files
 		try {
-			final StringBuffer command = new StringBuffer("local bin  = mlc.luafile_to_luacstring([["); //$NON-NLS-1$
-			command.append(regular.getPath());
-			command.append("]]) "); //$NON-NLS-1$
-			// Write compiled file on disk
-			command.append("local file = io.open([["); //$NON-NLS-1$
-			command.append(build.getPath());
-			command.append("]], 'wb') file:write(bin) file:close()"); //$NON-NLS-1$
-			justForCompilation.load(command.toString(), "libraryCompilation"); //$NON-NLS-1$
-			justForCompilation.call(0, 0);
-		} finally {
-			justForCompilation.close();
+			/*
+			 * Load compiled Metalua script from path
+			 */
+			final File folder = getScriptFolder();
+
+			// Change path
+			final StringBuffer code = new StringBuffer("package.path=[["); //$NON-NLS-1$
+			code.append(folder.getPath());
+			code.append(File.separatorChar);
+			code.append("?.luac;]]..package.path"); //$NON-NLS-1$
+			lua.load(code.toString(), "reloadingPath"); //$NON-NLS-1$
+			lua.call(0, 0);
+			lua.getGlobal(require);
+			lua.pushString(MARKER);
+			lua.call(1, 1);
+			lua.setGlobal("mark"); //$NON-NLS-1$
+			lua.getGlobal(require);
+			lua.pushString(BUILDER);
+			lua.call(1, 1);
+			lua.setGlobal("parsemod"); //$NON-NLS-1$
+			if (metrics.isEnabled()) {
+				lua.getGlobal("parsemod"); //$NON-NLS-1$
+				lua.getField(-1, "setclock"); //$NON-NLS-1$
+				lua.pushJavaFunction(CLOCK);
+				lua.call(1, 0);
+				lua.pop(1);
+			}
+		} catch (IOException e) {
+			Activator.logError(Messages.AlternativeLuaSourceParserUnableToBuild, e);
 		}
+		return lua;
 	}
 
 	/**
@@ -169,44 +336,221 @@ public class AlternativeLuaSourceParser extends AbstractSourceParser {
 	 */
 	@Override
 	public IModuleDeclaration parse(IModuleSource input, IProblemReporter reporter) {
-		LuaSourceRoot module = new LuaSourceRoot(input.getSourceContents().length());
+		final long start = System.nanoTime();
+		try {
+			return parseModule(input, reporter);
+		} finally {
+			metrics.record(Stage.TOTAL, System.nanoTime() - start);
+		}
+	}
 
-		synchronized (AlternativeLuaSourceParser.class) {
-			try {
-				// parse module
-				// Call module's parsing function
-				getLuaState().getGlobal("parsemod");//$NON-NLS-1$
-				getLuaState().getField(-1, "ast_builder"); //$NON-NLS-1$
-				getLuaState().pushString(input.getSourceContents());
-				getLuaState().call(1, 1);
-				module = getLuaState().checkJavaObject(-1, LuaSourceRoot.class);
-				getLuaState().pop(2);
-
-			} catch (LuaException e) {
-				Activator.logError("Unable to load metalua ast builder :" + input.getFileName(), e); //$NON-NLS-1$
-			}
-			// Deal with errors on Lua side
-			if (module != null) {
-				if (module.hasError()) {
-					final DefaultProblem problem = module.getProblem();
-					problem.setOriginatingFileName(input.getFileName());
-					reporter.reportProblem(problem);
-
-					// manage cache
-					if (input.getModelElement() != null) {
-						final LuaSourceRoot cached = (LuaSourceRoot) cache.get(input.getModelElement());
-						if (cached != null) {
-							cached.setError(true);
-							return cached;
-						}
+	private IModuleDeclaration parseModule(final IModuleSource input, final IProblemReporter reporter) {
+		final String source = input.getSourceContents();
+		final String fileName = input.getFileName();
+		final IModelElement element = input.getModelElement();
+		final CacheKey key = element != null ? CacheKey.of(element) : null;
+
+		// Try to update a copy of last valid AST, parsing only what changed
+		if (INCREMENTAL && key != null) {
+			final ReparsableAST cached = cache.get(key);
+			if (cached != null) {
+				final long start = System.nanoTime();
+				final ReparsableAST updated = cached.update(source, new IncrementalReparser.ChunkParser() {
+					@Override
+					public LuaSourceRoot parse(final String chunk) {
+						return parseAST(chunk, fileName);
 					}
-				} else {
-					if (input.getModelElement() != null) {
-						cache.put(input.getModelElement(), module);
+				});
+				metrics.record(Stage.INCREMENTAL_REPARSING, System.nanoTime() - start);
+				if (updated != null) {
+					// Published AST is never modified, readers of previous one are not disturbed
+					cache.put(key, updated);
+					if (updated != cached && updated.hasChangedRequires()) {
+						updateRequireGraph(element, updated.getRoot());
+					} else {
+						updateRequireGraphIfUnknown(element, updated.getRoot());
 					}
+					return updated.getRoot();
 				}
 			}
 		}
+
+		LuaSourceRoot module = parseAST(source, fileName);
+		if (module == null) {
+			module = new LuaSourceRoot(source.length());
+		}
+
+		// Deal with errors on Lua side
+		if (module.hasError()) {
+			final DefaultProblem problem = module.getProblem();
+			problem.setOriginatingFileName(fileName);
+			reporter.reportProblem(problem);
+
+			// manage cache
+			if (key != null) {
+				// Last valid AST is flagged on a copy, as it is shared with other readers
+				final ReparsableAST cached = cache.get(key);
+				final LuaSourceRoot flagged = cached != null ? cached.copyWithError() : null;
+				if (flagged != null) {
+					return flagged;
+				}
+			}
+		} else if (key != null) {
+			cache.put(key, new ReparsableAST(module, source));
+			updateRequireGraph(element, module);
+		}
 		return module;
 	}
+
+	/**
+	 * Records modules required by a valid AST, so modules requiring this one notice when its exports change
+	 */
+	private static void updateRequireGraph(final IModelElement element, final LuaSourceRoot root) {
+		if (element instanceof ISourceModule) {
+			LuaRequireGraph.update((ISourceModule) element, root);
+		}
+	}
+
+	/**
+	 * Records modules required by a valid AST when graph does not know them yet, as after it has been reset. Otherwise, AST is an incremental
+	 * update which does not change them.
+	 */
+	private static void updateRequireGraphIfUnknown(final IModelElement element, final LuaSourceRoot root) {
+		if (element instanceof ISourceModule && !LuaRequireGraph.isParsed((ISourceModule) element)) {
+			LuaRequireGraph.update((ISourceModule) element, root);
+		}
+	}
+
+	/**
+	 * @return AST of given source, built as defined by {@link #SERIALIZED_AST_PROPERTY}, <code>null</code> when an error occurred on Lua side
+	 */
+	private static LuaSourceRoot parseAST(final String source, final String fileName) {
+		if (SERIALIZED_AST) {
+			return decodeAST(serializeAST(source, fileName), fileName);
+		}
+		return buildAST(source, fileName);
+	}
+
+	/**
+	 * Builds AST of given source with a {@link LuaState} of the pool, each node is created through a Java call from Lua
+	 * 
+	 * @param source
+	 *            Lua source to parse
+	 * @param fileName
+	 *            name of parsed file, for logging purpose
+	 * @return AST of source, <code>null</code> when an error occurred on Lua side
+	 */
+	private static LuaSourceRoot buildAST(final String source, final String fileName) {
+		LuaSourceRoot module = null;
+		final LuaStatePool pool = getStatePool();
+		final LuaState lua = pool.acquire();
+		boolean reusable = false;
+		try {
+			// parse module
+			// Call module's parsing function
+			lua.getGlobal("parsemod");//$NON-NLS-1$
+			lua.getField(-1, "ast_builder"); //$NON-NLS-1$
+			lua.pushString(source);
+			lua.call(1, 1);
+			module = lua.checkJavaObject(-1, LuaSourceRoot.class);
+			lua.pop(1);
+			recordMeasures(lua, source.length());
+			lua.pop(1);
+			reusable = true;
+		} catch (LuaException e) {
+			Activator.logError("Unable to load metalua ast builder :" + fileName, e); //$NON-NLS-1$
+		} finally {
+			// After a failure, state stack is not reliable anymore
+			if (reusable) {
+				pool.release(lua);
+			} else {
+				pool.invalidate(lua);
+			}
+		}
+		return module;
+	}
+
+	/**
+	 * Serializes AST of given source with a {@link LuaState} of the pool, whole AST comes back in a single string, decoded on Java side without
+	 * crossing JNI for each node
+	 * 
+	 * @param source
+	 *            Lua source to parse
+	 * @param fileName
+	 *            name of parsed file, for logging purpose
+	 * @return serialized AST of source, <code>null</code> when an error occurred on Lua side
+	 */
+	private static String serializeAST(final String source, final String fileName) {
+		String serialized = null;
+		final LuaStatePool pool = getStatePool();
+		final LuaState lua = pool.acquire();
+		boolean reusable = false;
+		try {
+			lua.getGlobal("parsemod");//$NON-NLS-1$
+			lua.getField(-1, "ast_serializer"); //$NON-NLS-1$
+			lua.pushString(source);
+			lua.call(1, 1);
+			serialized = lua.checkString(-1);
+			lua.pop(1);
+			recordMeasures(lua, source.length());
+			lua.pop(1);
+			reusable = true;
+		} catch (LuaException e) {
+			Activator.logError("Unable to load metalua ast builder :" + fileName, e); //$NON-NLS-1$
+		} finally {
+			// After a failure, state stack is not reliable anymore
+			if (reusable) {
+				pool.release(lua);
+			} else {
+				pool.invalidate(lua);
+			}
+		}
+		return serialized;
+	}
+
+	/**
+	 * @return AST of given serialized AST, <code>null</code> when it is missing or malformed
+	 */
+	private static LuaSourceRoot decodeAST(final String serialized, final String fileName) {
+		if (serialized == null) {
+			return null;
+		}
+		final long start = System.nanoTime();
+		try {
+			return DLTKObjectDecoder.decode(serialized);
+		} catch (LuaException e) {
+			Activator.logError("Unable to decode serialized ast :" + fileName, e); //$NON-NLS-1$
+			return null;
+		} finally {
+			metrics.record(Stage.DECODING, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Records stages measured by AST builder during last build.
+	 * 
+	 * @param lua
+	 *            state which just built an AST, <code>parsemod</code> has to be on top of its stack
+	 * @param sourceLength
+	 *            length of parsed source
+	 */
+	private static void recordMeasures(final LuaState lua, final int sourceLength) {
+		if (!metrics.isEnabled()) {
+			return;
+		}
+		lua.getField(-1, "measures"); //$NON-NLS-1$
+		final Stage[] stages = { Stage.METALUA_PARSING, Stage.MARKING, Stage.BUILDING };
+		for (int i = 0; i < stages.length; i++) {
+			lua.rawGet(-1, i + 1);
+			final long nanos = (long) lua.toNumber(-1);
+			lua.pop(1);
+			// Stages following a syntax error are not run
+			if (nanos > 0) {
+				metrics.record(stages[i], nanos);
+			}
+		}
+		lua.rawGet(-1, stages.length + 1);
+		metrics.recordSource(sourceLength, lua.toInteger(-1));
+		lua.pop(2);
+	}
 }
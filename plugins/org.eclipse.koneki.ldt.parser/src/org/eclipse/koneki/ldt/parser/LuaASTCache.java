@@ -1,8 +1,6 @@
 package org.eclipse.koneki.ldt.parser;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.dltk.ast.parser.IASTCache;
 import org.eclipse.dltk.ast.parser.IModuleDeclaration;
@@ -10,25 +8,83 @@ import org.eclipse.dltk.compiler.problem.IProblem;
 import org.eclipse.dltk.compiler.problem.ProblemCollector;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.ModelException;
+import org.eclipse.koneki.ldt.internal.parser.BoundedCache;
+import org.eclipse.koneki.ldt.internal.parser.SourceHash;
 import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
 
 /**
  * Enable framework to cache last AST built, so far they are {@link LuaSourceRoot}.
  * 
+ * ASTs are stored by {@link IPath}, a working copy and its file having distinct entries, along with a 64 bits hash of the source they were built
+ * from, so consistency is checked without keeping sources. ASTs of files also remember the modification stamp of the file, it is compared
+ * instead of hashing source again. Cache is bounded, least recently used ASTs are evicted first.
+ * 
  * @author Kevin KIN-FOO <kkinfoo@sierrawireless.com>
  */
-@Deprecated
 public class LuaASTCache implements IASTCache {
+	/** System property defining how many characters of source can have their AST cached, default is 4 millions */
+	public static final String CACHE_SIZE_PROPERTY = "org.eclipse.koneki.ldt.parser.astcache.size"; //$NON-NLS-1$
+	private static final long DEFAULT_CACHE_SIZE = 4000000;
+
 	/** Where AST are stored, the key of the map is it {@link IPath} */
-	private Map<IPath, LuaCacheUnit> cache = new HashMap<IPath, LuaCacheUnit>();
+	private final BoundedCache<CacheKey, LuaCacheUnit> cache = new BoundedCache<CacheKey, LuaCacheUnit>(Long.getLong(CACHE_SIZE_PROPERTY,
+			DEFAULT_CACHE_SIZE), false) {
+		@Override
+		protected int weight(final LuaCacheUnit unit) {
+			return Math.max(1, unit.sourceLength);
+		}
+	};
+
+	/** Reconcilers parse buffers of working copies while builders parse files, they do not share their AST */
+	private static final class CacheKey {
+		private final IPath path;
+		private final boolean workingCopy;
+
+		private CacheKey(final ISourceModule module) {
+			this.path = module.getPath();
+			this.workingCopy = module.isWorkingCopy();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			final CacheKey other = (CacheKey) obj;
+			return workingCopy == other.workingCopy && path.equals(other.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() * 2 + (workingCopy ? 1 : 0);
+		}
+	}
 
 	/**
-	 * Just as useful as {@link ASTCacheEntry} but adding parsed source code., which will be useful to compute {@link ISourceModule} consistency.
+	 * Just as useful as {@link ASTCacheEntry} but adding hash and length of parsed source code, which will be useful to compute
+	 * {@link ISourceModule} consistency.
 	 * 
 	 * @see ASTCacheEntry
 	 */
-	private class LuaCacheUnit extends ASTCacheEntry {
-		public String source;
+	private static final class LuaCacheUnit {
+		private final long sourceHash;
+		private final int sourceLength;
+		/** Modification stamp of parsed file, {@link IResource#NULL_STAMP} for working copies */
+		private final long modificationStamp;
+		private final IModuleDeclaration module;
+		private final ProblemCollector problems;
+		/** Revision of {@link LuaSourceRoot} when stored, it could be updated in place afterwards for another source */
+		private final int revision;
+
+		private LuaCacheUnit(final long sourceHash, final int sourceLength, final long modificationStamp, final IModuleDeclaration module,
+				final ProblemCollector problems) {
+			this.sourceHash = sourceHash;
+			this.sourceLength = sourceLength;
+			this.modificationStamp = modificationStamp;
+			this.module = module;
+			this.problems = problems;
+			this.revision = revision(module);
+		}
 	}
 
 	/**
@@ -42,17 +98,32 @@ public class LuaASTCache implements IASTCache {
 	 */
 	@Override
 	public ASTCacheEntry restoreModule(ISourceModule module) {
-		LuaCacheUnit unit = cache.get(module.getPath());
-		try {
-			// If cached source differs from given source
-			if (unit == null || !unit.source.equals(module.getSource())) {
-				// AST is not pertinent, return null is asking for given source parsing
+		final LuaCacheUnit unit = cache.get(new CacheKey(module));
+		if (unit == null) {
+			return null;
+		}
+		if (unit.revision != revision(unit.module)) {
+			return null;
+		}
+		final long modificationStamp = modificationStamp(module);
+		if (modificationStamp != IResource.NULL_STAMP) {
+			// File did not change since it was parsed when it has the same stamp, no need to read it
+			if (modificationStamp != unit.modificationStamp) {
+				return null;
+			}
+		} else {
+			try {
+				// If cached source differs from given source
+				final String source = module.getSource();
+				if (unit.sourceLength != source.length() || unit.sourceHash != SourceHash.hash(source)) {
+					// AST is not pertinent, return null is asking for given source parsing
+					return null;
+				}
+			} catch (ModelException e) {
+				// If no source is given, it is not possible to guarantee AST consistency
+				Activator.logWarning(Messages.LuaASTCacheNoSourceProvided, e);
 				return null;
 			}
-		} catch (ModelException e) {
-			// If no source is given, it is not possible to guarantee AST consistency
-			Activator.logWarning(Messages.LuaASTCacheNoSourceProvided, e);
-			return null;
 		}
 		ASTCacheEntry entry = new ASTCacheEntry();
 		entry.module = unit.module;
@@ -74,17 +145,31 @@ public class LuaASTCache implements IASTCache {
 	 */
 	@Override
 	public void storeModule(ISourceModule module, IModuleDeclaration moduleDeclaration, ProblemCollector problems) {
-		LuaCacheUnit unit = new LuaCacheUnit();
-		unit.module = moduleDeclaration;
-		unit.problems = problems;
 		try {
 			// If no source is given, AST is not cached
 			// As it will not possible to provide it ensuring its consistency
-			unit.source = module.getSource();
-			cache.put(module.getPath(), unit);
+			final long modificationStamp = modificationStamp(module);
+			final String source = module.getSource();
+			// Source of files is not hashed, their stamp is checked instead
+			final long sourceHash = modificationStamp == IResource.NULL_STAMP ? SourceHash.hash(source) : 0;
+			cache.put(new CacheKey(module), new LuaCacheUnit(sourceHash, source.length(), modificationStamp, moduleDeclaration, problems));
 		} catch (ModelException e) {
 			Activator.logWarning(Messages.LuaASTCacheNoSourceProvided, e);
 		}
 	}
 
+	/**
+	 * @return modification stamp of file of a module, {@link IResource#NULL_STAMP} for working copies as their buffer can differ from their file
+	 */
+	private static long modificationStamp(final ISourceModule module) {
+		if (module.isWorkingCopy()) {
+			return IResource.NULL_STAMP;
+		}
+		final IResource resource = module.getResource();
+		return resource == null ? IResource.NULL_STAMP : resource.getModificationStamp();
+	}
+
+	private static int revision(final IModuleDeclaration module) {
+		return module instanceof LuaSourceRoot ? ((LuaSourceRoot) module).getRevision() : 0;
+	}
 }
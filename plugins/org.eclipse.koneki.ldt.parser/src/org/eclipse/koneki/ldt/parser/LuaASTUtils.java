@@ -10,12 +10,11 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.parser;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 
 import org.eclipse.dltk.ast.ASTNode;
 import org.eclipse.dltk.ast.declarations.Declaration;
-import org.eclipse.dltk.ast.declarations.MethodDeclaration;
 import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
 import org.eclipse.dltk.compiler.env.IModuleSource;
 import org.eclipse.dltk.core.Flags;
@@ -29,7 +28,6 @@ import org.eclipse.dltk.core.ModelException;
 import org.eclipse.dltk.core.SourceParserUtil;
 import org.eclipse.koneki.ldt.core.LuaUtils;
 import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
-import org.eclipse.koneki.ldt.parser.ast.declarations.LuaModuleDeclaration;
 import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
 import org.eclipse.koneki.ldt.parser.ast.visitor.ModuleReferenceVisitor;
 import org.eclipse.koneki.ldt.parser.ast.visitor.ScopeVisitor;
@@ -81,17 +79,15 @@ public final class LuaASTUtils {
 		}
 	}
 
+	/**
+	 * @return declarations of fields exported by module, kept along with its AST, this map can not be modified
+	 */
 	public static Map<String, Declaration> getModuleFields(ISourceModule module) throws ModelException {
-		HashMap<String, Declaration> result = new HashMap<String, Declaration>();
 		ModuleDeclaration moduleDeclaration = SourceParserUtil.getModuleDeclaration(module);
 		if (moduleDeclaration instanceof LuaSourceRoot) {
-			LuaModuleDeclaration luaModuleDeclaration = ((LuaSourceRoot) moduleDeclaration).getDeclarationsContainer().getLuaModuleDeclaration();
-			if (luaModuleDeclaration != null)
-				for (MethodDeclaration declaration : luaModuleDeclaration.getMethods()) {
-					result.put(declaration.getName(), declaration);
-				}
+			return ((LuaSourceRoot) moduleDeclaration).getModuleFields().getDeclarations();
 		}
-		return result;
+		return Collections.emptyMap();
 	}
 
 	public static Map<String, Declaration> getModuleFields(String name, IScriptProject project) throws ModelException {
@@ -99,7 +95,18 @@ public final class LuaASTUtils {
 		if (moduleSource instanceof ISourceModule) {
 			return getModuleFields((ISourceModule) moduleSource);
 		}
-		return new HashMap<String, Declaration>();
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * @return model elements defined by fields exported by module, kept along with its AST, this map can not be modified
+	 */
+	public static Map<String, IModelElement> getModuleFieldElements(ISourceModule module) throws ModelException {
+		ModuleDeclaration moduleDeclaration = SourceParserUtil.getModuleDeclaration(module);
+		if (moduleDeclaration instanceof LuaSourceRoot) {
+			return ((LuaSourceRoot) moduleDeclaration).getModuleFields().getElements(module);
+		}
+		return Collections.emptyMap();
 	}
 
 	public static boolean isAncestor(IModelElement element, IModelElement ancestor) {
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.dltk.ast.parser.IModuleDeclaration;
+import org.eclipse.dltk.compiler.env.IModuleSource;
+import org.eclipse.dltk.compiler.problem.IProblemReporter;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementVisitor;
+import org.eclipse.dltk.core.IProjectFragment;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ModelException;
+import org.eclipse.dltk.core.builder.IBuildContext;
+import org.eclipse.dltk.core.builder.IBuildParticipant;
+import org.eclipse.dltk.core.builder.IBuildParticipantExtension;
+import org.eclipse.koneki.ldt.internal.parser.ParallelParsingJob;
+
+/**
+ * Provides AST of built modules to other build participants, reporting syntax errors.
+ * 
+ * On full builds, all source modules of the project are parsed ahead on as many threads as there are parsing {@link com.naef.jnlua.LuaState}s,
+ * largest files first. Other builds parse modules one at a time as they come.
+ */
+public class LuaBuildParticipant implements IBuildParticipant, IBuildParticipantExtension {
+
+	private final IScriptProject project;
+
+	/** Parsing ahead of current full build, <code>null</code> when there is none */
+	private ParallelParsingJob parsingJob = null;
+
+	private static final ParallelParsingJob.ModuleParser PARSER = new ParallelParsingJob.ModuleParser() {
+		@Override
+		public IModuleDeclaration parse(final IModuleSource module, final IProblemReporter reporter) {
+			return new AlternativeLuaSourceParser().parse(module, reporter);
+		}
+	};
+
+	public LuaBuildParticipant(final IScriptProject project) {
+		this.project = project;
+	}
+
+	/**
+	 * @see org.eclipse.dltk.core.builder.IBuildParticipantExtension#beginBuild(int)
+	 */
+	@Override
+	public boolean beginBuild(final int buildType) {
+		cancelParsing();
+		if (buildType == IBuildContext.FULL_BUILD && AlternativeLuaSourceParser.getPoolSize() > 1) {
+			try {
+				final List<ISourceModule> modules = sourceModules();
+				if (modules.size() > 1) {
+					parsingJob = new ParallelParsingJob(modules, PARSER, AlternativeLuaSourceParser.getPoolSize());
+					parsingJob.schedule();
+				}
+			} catch (ModelException e) {
+				// Modules will be parsed while they are built
+				Activator.logWarning(Messages.LuaBuildParticipantUnableToListModules, e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @see org.eclipse.dltk.core.builder.IBuildParticipant#build(org.eclipse.dltk.core.builder.IBuildContext)
+	 */
+	@Override
+	public void build(final IBuildContext context) throws CoreException {
+		if (context.get(IBuildContext.ATTR_MODULE_DECLARATION) != null) {
+			return;
+		}
+		final ISourceModule module = context.getSourceModule();
+		final ParallelParsingJob job = parsingJob;
+		final ParallelParsingJob.Result result = job == null ? null : job.take(module, context.getContents());
+		final IModuleDeclaration declaration;
+		if (result != null) {
+			result.getProblems().copyTo(context.getProblemReporter());
+			declaration = result.getModule();
+		} else {
+			// Parse contents being built, which may differ from module ones
+			declaration = PARSER.parse(context, context.getProblemReporter());
+		}
+		context.set(IBuildContext.ATTR_MODULE_DECLARATION, declaration);
+	}
+
+	/**
+	 * @see org.eclipse.dltk.core.builder.IBuildParticipantExtension#endBuild(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	public void endBuild(final IProgressMonitor monitor) {
+		cancelParsing();
+	}
+
+	private void cancelParsing() {
+		if (parsingJob != null) {
+			parsingJob.cancel();
+			parsingJob = null;
+		}
+	}
+
+	/**
+	 * @return source modules of project, largest files first
+	 */
+	private List<ISourceModule> sourceModules() throws ModelException {
+		final List<ISourceModule> modules = new ArrayList<ISourceModule>();
+		final Map<ISourceModule, Long> sizes = new HashMap<ISourceModule, Long>();
+		project.accept(new IModelElementVisitor() {
+			public boolean visit(final IModelElement element) {
+				if (element instanceof IProjectFragment) {
+					final IProjectFragment fragment = (IProjectFragment) element;
+					return !fragment.isExternal() && !fragment.isArchive();
+				} else if (element instanceof ISourceModule) {
+					final ISourceModule module = (ISourceModule) element;
+					final IPath location = module.getResource() == null ? null : module.getResource().getLocation();
+					modules.add(module);
+					sizes.put(module, location == null ? 0L : new File(location.toOSString()).length());
+					return false;
+				}
+				return true;
+			}
+		});
+		Collections.sort(modules, new Comparator<ISourceModule>() {
+			@Override
+			public int compare(final ISourceModule left, final ISourceModule right) {
+				return sizes.get(right).compareTo(sizes.get(left));
+			}
+		});
+		return modules;
+	}
+}
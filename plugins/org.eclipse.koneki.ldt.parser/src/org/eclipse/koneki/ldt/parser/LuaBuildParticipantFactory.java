@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.builder.IBuildParticipant;
+import org.eclipse.dltk.core.builder.IBuildParticipantFactory;
+
+/**
+ * Provides a {@link LuaBuildParticipant} per built project.
+ */
+public class LuaBuildParticipantFactory implements IBuildParticipantFactory {
+
+	/**
+	 * @see org.eclipse.dltk.core.builder.IBuildParticipantFactory#createBuildParticipant(org.eclipse.dltk.core.IScriptProject)
+	 */
+	@Override
+	public IBuildParticipant createBuildParticipant(final IScriptProject project) throws CoreException {
+		return new LuaBuildParticipant(project);
+	}
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.dltk.compiler.ISourceElementRequestor;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ModelException;
+import org.eclipse.koneki.ldt.internal.parser.DeclarationIndex;
+import org.eclipse.koneki.ldt.internal.parser.RequestorRecorder;
+import org.eclipse.koneki.ldt.internal.parser.SourceHash;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
+
+/**
+ * Per project {@link DeclarationIndex} of Lua files, stored in plug-in state location.
+ * 
+ * Structure of files unchanged since last session is replayed from index instead of parsing them. Only files on disk are indexed, working copies
+ * are always parsed, so files are parsed again once opened or changed.
+ * 
+ * Indexes are saved {@link #SAVE_DELAY} milliseconds after a change, so a session which does not end properly only loses the last changes.
+ * They are versioned with parser bundle version and AST builder scripts digest, so an index written by another parser is not replayed.
+ */
+public final class LuaDeclarationIndex {
+	private static final String INDEX_FOLDER = "index"; //$NON-NLS-1$
+	private static final String INDEX_EXTENSION = ".idx"; //$NON-NLS-1$
+
+	/** Delay between a change of an index and its save, in milliseconds */
+	public static final long SAVE_DELAY = 30000;
+
+	/** Loaded indexes by project name */
+	private static final Map<String, DeclarationIndex> INDEXES = new HashMap<String, DeclarationIndex>();
+
+	private static final Job SAVE_JOB = new Job(Messages.LuaDeclarationIndexSaving) {
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			save();
+			return Status.OK_STATUS;
+		}
+	};
+	static {
+		SAVE_JOB.setSystem(true);
+	}
+
+	private LuaDeclarationIndex() {
+	}
+
+	/**
+	 * @return index of given project, loaded from disk on first call
+	 */
+	public static synchronized DeclarationIndex getIndex(final IProject project) {
+		DeclarationIndex index = INDEXES.get(project.getName());
+		if (index == null) {
+			index = new DeclarationIndex(indexFile(project), indexVersion());
+			index.load();
+			INDEXES.put(project.getName(), index);
+		}
+		return index;
+	}
+
+	/**
+	 * @return index entry of a module when its file did not change since indexing, <code>null</code> otherwise
+	 */
+	public static DeclarationIndex.Entry getEntry(final ISourceModule module) {
+		if (module.isWorkingCopy() || !(module.getResource() instanceof IFile)) {
+			return null;
+		}
+		final IFile file = (IFile) module.getResource();
+		try {
+			return getEntry(file, module.getSourceAsCharArray());
+		} catch (ModelException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param file
+	 *            indexed file
+	 * @param contents
+	 *            current content of file
+	 * @return index entry of file when its content did not change since indexing, <code>null</code> otherwise
+	 */
+	public static DeclarationIndex.Entry getEntry(final IFile file, final char[] contents) {
+		final long timestamp = file.getLocalTimeStamp();
+		if (timestamp == IResource.NULL_STAMP) {
+			return null;
+		}
+		final DeclarationIndex index = getIndex(file.getProject());
+		final DeclarationIndex.Entry entry = index.get(key(file), timestamp, contents);
+		// A new timestamp may have been recorded
+		if (index.isModified()) {
+			SAVE_JOB.schedule(SAVE_DELAY);
+		}
+		return entry;
+	}
+
+	/**
+	 * Calls given requestor as parsing file of given module would have, and records modules it requires in {@link LuaRequireGraph}.
+	 * 
+	 * @return <code>true</code> when structure was available in index and replayed
+	 */
+	public static boolean replay(final ISourceModule module, final IFile file, final char[] contents, final ISourceElementRequestor requestor) {
+		final DeclarationIndex.Entry entry = getEntry(file, contents);
+		if (entry == null || !RequestorRecorder.replay(entry.getStructure(), requestor)) {
+			return false;
+		}
+		LuaRequireGraph.updateRequires(module, entry.getModuleReferences().values());
+		return true;
+	}
+
+	/**
+	 * Indexes a file just parsed.
+	 * 
+	 * @param file
+	 *            parsed file
+	 * @param contents
+	 *            parsed content
+	 * @param structure
+	 *            calls recorded while reporting structure of file, <code>null</code> when they could not be recorded
+	 * @param root
+	 *            AST of file
+	 */
+	public static void index(final IFile file, final char[] contents, final byte[] structure, final LuaSourceRoot root) {
+		final long timestamp = file.getLocalTimeStamp();
+		final DeclarationIndex index = getIndex(file.getProject());
+		// AST of a file with errors is the last valid one, it does not describe current content
+		if (structure == null || root == null || root.hasError() || timestamp == IResource.NULL_STAMP) {
+			index.remove(key(file));
+		} else {
+			final Map<String, String> membersDocumentation = root.getMembersDocumentation();
+			index.put(key(file), new DeclarationIndex.Entry(timestamp, contents.length, SourceHash.hash(contents), structure, root
+					.getGlobalDocumentation(), membersDocumentation == null ? Collections.<String, String> emptyMap() : membersDocumentation,
+					moduleReferences(root)));
+		}
+		if (index.isModified()) {
+			SAVE_JOB.schedule(SAVE_DELAY);
+		}
+	}
+
+	/**
+	 * Writes indexes which changed, entries of deleted files are dropped.
+	 */
+	public static synchronized void save() {
+		for (final Map.Entry<String, DeclarationIndex> loaded : INDEXES.entrySet()) {
+			final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(loaded.getKey());
+			final DeclarationIndex index = loaded.getValue();
+			if (!project.exists()) {
+				indexFile(project).delete();
+				continue;
+			}
+			if (project.isOpen()) {
+				for (final String path : index.paths()) {
+					if (!project.getFile(path).exists()) {
+						index.remove(path);
+					}
+				}
+			}
+			try {
+				index.save();
+			} catch (IOException e) {
+				Activator.logWarning(Messages.LuaDeclarationIndexUnableToSave, e);
+			}
+		}
+	}
+
+	/**
+	 * Cancels pending save and writes indexes which changed, to be called when plug-in stops.
+	 */
+	public static void close() {
+		SAVE_JOB.cancel();
+		try {
+			SAVE_JOB.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		save();
+	}
+
+	/**
+	 * @return parser bundle version and digest of AST builder scripts, an index built by another parser version is not reliable
+	 */
+	private static String indexVersion() {
+		final String bundleVersion = Activator.getDefault().getBundle().getVersion().toString();
+		try {
+			return bundleVersion + '/' + AlternativeLuaSourceParser.getBuilderKey();
+		} catch (IOException e) {
+			Activator.logWarning(Messages.AlternativeLuaSourceParserUnableToBuild, e);
+			return bundleVersion;
+		}
+	}
+
+	private static String key(final IFile file) {
+		return file.getProjectRelativePath().toPortableString();
+	}
+
+	private static File indexFile(final IProject project) {
+		return Activator.getDefault().getStateLocation().append(INDEX_FOLDER).append(project.getName() + INDEX_EXTENSION).toFile();
+	}
+
+	/**
+	 * @return required module name by local name
+	 */
+	private static Map<String, String> moduleReferences(final LuaSourceRoot root) {
+		final Map<String, String> references = new LinkedHashMap<String, String>();
+		try {
+			root.traverse(new ASTVisitor() {
+				@Override
+				public boolean visitGeneral(final ASTNode node) throws Exception {
+					if (node instanceof ModuleReference) {
+						final ModuleReference reference = (ModuleReference) node;
+						references.put(reference.getName(), reference.getModuleNameReference());
+					}
+					return true;
+				}
+			});
+		} catch (Exception e) {
+			Activator.logWarning(Messages.LuaDeclarationIndexUnableToIndex, e);
+		}
+		return references;
+	}
+}
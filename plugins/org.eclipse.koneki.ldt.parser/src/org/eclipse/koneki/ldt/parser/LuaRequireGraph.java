@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.dltk.ast.declarations.MethodDeclaration;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ModelException;
+import org.eclipse.koneki.ldt.core.LuaProjectCache;
+import org.eclipse.koneki.ldt.core.LuaUtils;
+import org.eclipse.koneki.ldt.internal.parser.RequireGraph;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
+import org.eclipse.koneki.ldt.parser.ast.declarations.TableDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.visitor.ModuleReferenceVisitor;
+
+/**
+ * Per project {@link RequireGraph} of Lua modules, updated each time a module is parsed or replayed from {@link LuaDeclarationIndex}.
+ * 
+ * Fields of required modules are resolved once for each requiring module and kept until names exported by required module or their kinds
+ * change, so only modules requiring a changed module resolve it again. Graph only knows modules parsed or replayed since it was created, fields
+ * are not kept for other modules. A replayed module only provides modules it requires, its exports are unknown until it is parsed, then modules
+ * requiring it resolve its fields again.
+ */
+public final class LuaRequireGraph {
+	private static final String KIND_FUNCTION = "function"; //$NON-NLS-1$
+	private static final String KIND_TABLE = "table"; //$NON-NLS-1$
+	private static final String KIND_VARIABLE = "variable"; //$NON-NLS-1$
+
+	/** Graphs by project */
+	private static final LuaProjectCache<ProjectGraph> GRAPHS = new LuaProjectCache<ProjectGraph>() {
+		@Override
+		protected ProjectGraph create(final IScriptProject project) {
+			return new ProjectGraph();
+		}
+
+		@Override
+		protected void moduleChanged(final IScriptProject project, final ProjectGraph graph, final ISourceModule module, final int kind) {
+			if (kind != IModelElementDelta.CHANGED) {
+				// Another module may now be found for this name
+				final String name = LuaUtils.getModuleFullName(module);
+				if (kind == IModelElementDelta.REMOVED && project.equals(module.getScriptProject())) {
+					graph.graph.remove(name);
+				} else {
+					graph.graph.invalidateDependents(name);
+				}
+			}
+		}
+	};
+
+	/** Graph of a project with fields resolved for its modules */
+	private static final class ProjectGraph {
+		private final RequireGraph graph = new RequireGraph();
+		/** Fields by required module name, by requiring module name */
+		private final Map<String, Map<String, ResolvedFields>> resolved = new ConcurrentHashMap<String, Map<String, ResolvedFields>>();
+	}
+
+	/** Fields of a required module, valid while requiring module has the same stamp in graph */
+	private static final class ResolvedFields {
+		private final int stamp;
+		private final Map<String, IModelElement> fields;
+
+		private ResolvedFields(final int stamp, final Map<String, IModelElement> fields) {
+			this.stamp = stamp;
+			this.fields = fields;
+		}
+	}
+
+	private LuaRequireGraph() {
+	}
+
+	/**
+	 * @return graphs of all projects, to be registered by plug-in activator
+	 */
+	public static LuaProjectCache<?> getGraphs() {
+		return GRAPHS;
+	}
+
+	private static ProjectGraph getGraph(final IScriptProject project) {
+		return GRAPHS.get(project);
+	}
+
+	/**
+	 * Records modules a module requires and fields it exports, modules requiring it resolve its fields again when they changed.
+	 * 
+	 * @param module
+	 *            parsed module
+	 * @param root
+	 *            its valid AST
+	 */
+	public static void update(final ISourceModule module, final LuaSourceRoot root) {
+		final ModuleReferenceVisitor visitor = new ModuleReferenceVisitor();
+		try {
+			root.traverse(visitor);
+			// CHECKSTYLE:OFF
+		} catch (Exception e) {
+			// CHECKSTYLE:ON
+			Activator.logWarning("Unable to find required modules.", e); //$NON-NLS-1$
+			return;
+		}
+		final List<String> required = new ArrayList<String>();
+		for (final ModuleReference reference : visitor.getModuleReferences()) {
+			required.add(reference.getModuleNameReference());
+		}
+		final String name = LuaUtils.getModuleFullName(module);
+		final Map<String, String> exported = new HashMap<String, String>();
+		for (final Map.Entry<String, Declaration> field : root.getModuleFields().getDeclarations().entrySet()) {
+			exported.put(field.getKey(), getKind(field.getValue()));
+		}
+		final ProjectGraph graph = getGraph(module.getScriptProject());
+		graph.graph.update(name, required, exported);
+		// Modules of other projects may require it too
+		for (final ProjectGraph other : GRAPHS.values()) {
+			if (other != graph) {
+				other.graph.updateExports(name, exported);
+			}
+		}
+	}
+
+	/**
+	 * @param module
+	 *            a module
+	 * @return <code>true</code> when module has been recorded from its AST since graph was created
+	 */
+	public static boolean isParsed(final ISourceModule module) {
+		return getGraph(module.getScriptProject()).graph.hasExports(LuaUtils.getModuleFullName(module));
+	}
+
+	/**
+	 * Records modules a module requires, fields it exports are left as they are. Used for modules replayed from index, without AST.
+	 * 
+	 * @param module
+	 *            replayed module
+	 * @param required
+	 *            full names of modules it requires
+	 */
+	public static void updateRequires(final ISourceModule module, final Collection<String> required) {
+		getGraph(module.getScriptProject()).graph.updateRequires(LuaUtils.getModuleFullName(module), required);
+	}
+
+	/** Kind of an exported field, a field turning from a function into a table is a change for modules requiring it */
+	private static String getKind(final Declaration declaration) {
+		if (declaration instanceof MethodDeclaration) {
+			return KIND_FUNCTION;
+		} else if (declaration instanceof TableDeclaration) {
+			return KIND_TABLE;
+		}
+		return KIND_VARIABLE;
+	}
+
+	/**
+	 * Provides fields of a module required by another one, they are resolved once until exports of required module change.
+	 * 
+	 * @param module
+	 *            requiring module
+	 * @param requiredName
+	 *            full name of required module
+	 * @return model elements of fields by name, none when required module is not found
+	 * @throws ModelException
+	 *             when fields can not be located in required module
+	 */
+	public static Map<String, IModelElement> getRequiredFields(final ISourceModule module, final String requiredName) throws ModelException {
+		final ProjectGraph graph = getGraph(module.getScriptProject());
+		final String name = LuaUtils.getModuleFullName(module);
+		// Stamp is read before resolving, fields resolved from a module changing meanwhile are not valid with the new stamp
+		final int stamp = graph.graph.getStamp(name);
+		Map<String, ResolvedFields> byRequired = graph.resolved.get(name);
+		if (byRequired != null) {
+			final ResolvedFields cached = byRequired.get(requiredName);
+			if (cached != null && cached.stamp == stamp) {
+				return cached.fields;
+			}
+		}
+		final ISourceModule required = LuaUtils.getSourceModule(requiredName, module.getScriptProject());
+		final Map<String, IModelElement> fields = required == null ? Collections.<String, IModelElement> emptyMap() : LuaASTUtils
+				.getModuleFieldElements(required);
+		// Without an edge, a change of required module would not be noticed
+		if (graph.graph.requires(name, requiredName)) {
+			if (byRequired == null) {
+				byRequired = new ConcurrentHashMap<String, ResolvedFields>();
+				graph.resolved.put(name, byRequired);
+			}
+			byRequired.put(requiredName, new ResolvedFields(stamp, fields));
+		}
+		return fields;
+	}
+
+	/**
+	 * @param module
+	 *            a parsed module
+	 * @return full names of modules it requires, directly or not, closest ones first
+	 */
+	public static Set<String> getRequireClosure(final ISourceModule module) {
+		return getGraph(module.getScriptProject()).graph.getRequireClosure(LuaUtils.getModuleFullName(module));
+	}
+
+	/**
+	 * @param module
+	 *            a module
+	 * @return full names of parsed modules requiring it directly
+	 */
+	public static List<String> getDependents(final ISourceModule module) {
+		return getGraph(module.getScriptProject()).graph.getDependents(LuaUtils.getModuleFullName(module));
+	}
+}
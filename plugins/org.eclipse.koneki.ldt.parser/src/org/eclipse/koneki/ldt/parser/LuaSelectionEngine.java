@@ -10,8 +10,6 @@
  ******************************************************************************/
 package org.eclipse.koneki.ldt.parser;
 
-import java.util.Map;
-
 import org.eclipse.dltk.ast.ASTNode;
 import org.eclipse.dltk.ast.declarations.Declaration;
 import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
@@ -23,6 +21,8 @@ import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.ModelException;
 import org.eclipse.dltk.core.SourceParserUtil;
 import org.eclipse.koneki.ldt.core.LuaUtils;
+import org.eclipse.koneki.ldt.parser.ast.LuaNodeIndex;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
 import org.eclipse.koneki.ldt.parser.ast.declarations.LuaModuleDeclaration;
 import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
 import org.eclipse.koneki.ldt.parser.ast.expressions.Identifier;
@@ -88,15 +88,7 @@ public class LuaSelectionEngine extends ScriptSelectionEngine {
 	 * @return Declaration in LuaModuleDeclaration at given offsets
 	 */
 	public static Declaration findMinimalDeclaration(ModuleDeclaration ast, int start, int end) {
-		MatchNodeVisitor visitor = new MatchNodeVisitor(start, end + 1);
-		try {
-			ast.traverse(visitor);
-			// CHECKSTYLE:OFF
-		} catch (Exception e) {
-			// CHECKSTYLE:ON
-			Activator.logWarning("Problem occured while seeking for minimal node.", e); //$NON-NLS-1$
-		}
-		ASTNode node = visitor.getNode();
+		ASTNode node = findNodeAt(ast, start, end);
 		// if node is an identifier and it has a declaration get it.
 		if (node instanceof Identifier) {
 			Identifier id = (Identifier) node;
@@ -110,7 +102,7 @@ public class LuaSelectionEngine extends ScriptSelectionEngine {
 	}
 
 	/**
-	 * Find Node corresponding to the current selection.
+	 * Find Node corresponding to the current selection. Lua ASTs are searched through their {@link LuaNodeIndex}, other ones are browsed.
 	 * 
 	 * @param ast
 	 *            Syntax tree to browse
@@ -121,6 +113,9 @@ public class LuaSelectionEngine extends ScriptSelectionEngine {
 	 * @return node found at the given offsets
 	 */
 	public static ASTNode findNodeAt(ModuleDeclaration ast, int start, int end) {
+		if (ast instanceof LuaSourceRoot) {
+			return ((LuaSourceRoot) ast).getNodeIndex().findNode(start, end + 1);
+		}
 		MatchNodeVisitor visitor = new MatchNodeVisitor(start, end + 1);
 		try {
 			ast.traverse(visitor);
@@ -164,17 +159,10 @@ public class LuaSelectionEngine extends ScriptSelectionEngine {
 				// if local definition is a module Reference search the corresponding module
 				if (rootlocaldefinition instanceof ModuleReference) {
 					String moduleNameReference = ((ModuleReference) rootlocaldefinition).getModuleNameReference();
-					ISourceModule sourceModule = LuaUtils.getSourceModule(moduleNameReference, module.getScriptProject());
-					if (sourceModule != null) {
-						Map<String, Declaration> moduleFields = LuaASTUtils.getModuleFields(sourceModule);
-						Declaration declaration = moduleFields.get(index.getName());
-						if (declaration != null) {
-							try {
-								return sourceModule.getElementAt(declaration.sourceStart());
-							} catch (ModelException e) {
-								Activator.logWarning("Unable to get model element.", e); //$NON-NLS-1$
-							}
-						}
+					try {
+						return LuaRequireGraph.getRequiredFields(module, moduleNameReference).get(index.getName());
+					} catch (ModelException e) {
+						Activator.logWarning("Unable to get model element.", e); //$NON-NLS-1$
 					}
 				}
 			}
@@ -10,9 +10,15 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.parser;
 
+import org.eclipse.core.resources.IFile;
+import org.eclipse.dltk.compiler.ISourceElementRequestor;
 import org.eclipse.dltk.compiler.SourceElementRequestVisitor;
+import org.eclipse.dltk.compiler.env.IModuleSource;
 import org.eclipse.dltk.core.AbstractSourceElementParser;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.koneki.ldt.core.LuaNature;
+import org.eclipse.koneki.ldt.internal.parser.RequestorRecorder;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -20,13 +26,50 @@ import org.eclipse.koneki.ldt.core.LuaNature;
  */
 public class LuaSourceElementParser extends AbstractSourceElementParser {
 
+	/** Last created visitor, gives access to parsed AST */
+	private LuaSourceElementRequestorVisitor visitor;
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see org.eclipse.dltk.core.AbstractSourceElementParser#createVisitor()
 	 */
 	public SourceElementRequestVisitor createVisitor() {
-		return new LuaSourceElementRequestorVisitor(getRequestor());
+		visitor = new LuaSourceElementRequestorVisitor(getRequestor());
+		return visitor;
+	}
+
+	/**
+	 * Structure of files unchanged since they were indexed is replayed from {@link LuaDeclarationIndex}, other files are parsed and indexed.
+	 * 
+	 * @see org.eclipse.dltk.core.AbstractSourceElementParser#parseSourceModule(org.eclipse.dltk.compiler.env.IModuleSource)
+	 */
+	@Override
+	public void parseSourceModule(final IModuleSource module) {
+		// Only content of files can be indexed, not working copies
+		final IModelElement element = module.getModelElement();
+		if (!(element instanceof ISourceModule) || ((ISourceModule) element).isWorkingCopy()
+				|| !(((ISourceModule) element).getResource() instanceof IFile)) {
+			super.parseSourceModule(module);
+			return;
+		}
+		final IFile file = (IFile) ((ISourceModule) element).getResource();
+		final char[] contents = module.getContentsAsCharArray();
+		final ISourceElementRequestor requestor = getRequestor();
+		if (LuaDeclarationIndex.replay((ISourceModule) element, file, contents, requestor)) {
+			return;
+		}
+
+		// Parse recording structure
+		final RequestorRecorder recorder = new RequestorRecorder(requestor);
+		visitor = null;
+		setRequestor(recorder.getRequestor());
+		try {
+			super.parseSourceModule(module);
+		} finally {
+			setRequestor(requestor);
+		}
+		LuaDeclarationIndex.index(file, contents, recorder.getRecord(), visitor == null ? null : visitor.getSourceRoot());
 	}
 
 	/*
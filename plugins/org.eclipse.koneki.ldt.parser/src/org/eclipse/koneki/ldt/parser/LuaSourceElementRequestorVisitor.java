@@ -11,22 +11,42 @@
 package org.eclipse.koneki.ldt.parser;
 
 import org.eclipse.dltk.ast.declarations.FieldDeclaration;
+import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
 import org.eclipse.dltk.ast.declarations.TypeDeclaration;
 import org.eclipse.dltk.ast.statements.Statement;
 import org.eclipse.dltk.compiler.IElementRequestor;
 import org.eclipse.dltk.compiler.IElementRequestor.FieldInfo;
 import org.eclipse.dltk.compiler.ISourceElementRequestor;
 import org.eclipse.dltk.compiler.SourceElementRequestVisitor;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
 import org.eclipse.koneki.ldt.parser.ast.declarations.TableDeclaration;
 
 /**
  * TODO Comment this class
  */
 public class LuaSourceElementRequestorVisitor extends SourceElementRequestVisitor {
+	/** Last visited AST */
+	private LuaSourceRoot sourceRoot;
+
 	public LuaSourceElementRequestorVisitor(ISourceElementRequestor requesor) {
 		super(requesor);
 	}
 
+	@Override
+	public boolean visit(ModuleDeclaration declaration) throws Exception {
+		if (declaration instanceof LuaSourceRoot) {
+			sourceRoot = (LuaSourceRoot) declaration;
+		}
+		return super.visit(declaration);
+	}
+
+	/**
+	 * @return last visited AST, <code>null</code> when none was visited
+	 */
+	public LuaSourceRoot getSourceRoot() {
+		return sourceRoot;
+	}
+
 	@Override
 	public boolean endvisit(Statement statement) throws Exception {
 		if (statement instanceof FieldDeclaration) {
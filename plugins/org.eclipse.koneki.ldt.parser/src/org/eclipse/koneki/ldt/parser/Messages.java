@@ -18,7 +18,17 @@ import org.eclipse.osgi.util.NLS;
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.koneki.ldt.parser.messages"; //$NON-NLS-1$
 	public static String AlternativeLuaSourceParserUnableToBuild;
+	public static String IncrementalReparserUnableToReparse;
 	public static String LuaASTCacheNoSourceProvided;
+	public static String LuaDeclarationIndexSaving;
+	public static String LuaDeclarationIndexUnableToIndex;
+	public static String LuaDeclarationIndexUnableToSave;
+	public static String LuaBuildParticipantUnableToListModules;
+	public static String LuaNodeIndexUnableToIndex;
+	public static String LuaScopeUnableToCompute;
+	public static String ParallelParsingJobName;
+	public static String ParallelParsingJobProgress;
+	public static String ParserMetricsUnableToRegister;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
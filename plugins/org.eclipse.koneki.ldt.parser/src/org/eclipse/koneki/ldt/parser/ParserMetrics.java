@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.koneki.ldt.internal.parser.BoundedCache;
+import org.eclipse.koneki.ldt.internal.parser.RollingHistogram;
+
+/**
+ * Cost of parsing measured by {@link AlternativeLuaSourceParser}, available from {@link AlternativeLuaSourceParser#getMetrics()} and through JMX.
+ * 
+ * Each {@link Stage} has its own {@link RollingHistogram}, so recent durations can be told apart from the whole session ones. Measures are
+ * enabled by default, they only cost a few clock reads per parsing.
+ */
+public final class ParserMetrics implements ParserMetricsMXBean {
+	/** System property enabling measures, default is <code>true</code> */
+	public static final String METRICS_PROPERTY = "org.eclipse.koneki.ldt.parser.metrics"; //$NON-NLS-1$
+	/** Name of metrics MBean */
+	public static final String OBJECT_NAME = "org.eclipse.koneki.ldt.parser:type=ParserMetrics"; //$NON-NLS-1$
+	/** Count of recent durations percentiles are computed from */
+	private static final int WINDOW_SIZE = 1024;
+
+	/** Measured parsing stages */
+	public enum Stage {
+		/** Waiting for a Lua state, while all of them parse other files */
+		LOCK_WAIT,
+		/** Booting Metalua and loading scripts in a new Lua state */
+		STATE_BOOT,
+		/** Metalua parsing, from source to Metalua AST */
+		METALUA_PARSING,
+		/** Marking of declarations, scopes and module in Metalua AST */
+		MARKING,
+		/** Building of DLTK nodes from Metalua AST, or of their serialized form */
+		BUILDING,
+		/** Decoding of serialized DLTK nodes on Java side */
+		DECODING,
+		/** Splicing of changed statements in previous AST, including their parsing */
+		INCREMENTAL_REPARSING,
+		/** Whole parsing of a module */
+		TOTAL
+	}
+
+	private final boolean enabled;
+	private final BoundedCache<?, ?> cache;
+	private final RollingHistogram[] histograms = new RollingHistogram[Stage.values().length];
+	private final AtomicLong characters = new AtomicLong();
+	private final AtomicLong nodes = new AtomicLong();
+
+	/**
+	 * @param cache
+	 *            AST cache of parser
+	 * @param enabled
+	 *            <code>false</code> to ignore measures
+	 */
+	ParserMetrics(final BoundedCache<?, ?> cache, final boolean enabled) {
+		this.cache = cache;
+		this.enabled = enabled;
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new RollingHistogram(WINDOW_SIZE);
+		}
+	}
+
+	/**
+	 * Records duration of a stage.
+	 * 
+	 * @param stage
+	 *            measured stage
+	 * @param nanos
+	 *            duration in nanoseconds
+	 */
+	public void record(final Stage stage, final long nanos) {
+		if (enabled) {
+			histograms[stage.ordinal()].record(nanos);
+		}
+	}
+
+	/**
+	 * Records size of a source given to Metalua.
+	 * 
+	 * @param parsedCharacters
+	 *            count of characters of source
+	 * @param builtNodes
+	 *            count of nodes built from source
+	 */
+	public void recordSource(final int parsedCharacters, final int builtNodes) {
+		if (enabled) {
+			characters.addAndGet(parsedCharacters);
+			nodes.addAndGet(builtNodes);
+		}
+	}
+
+	/**
+	 * @return statistics of given stage
+	 */
+	public StageStatistics getStage(final Stage stage) {
+		final RollingHistogram histogram = histograms[stage.ordinal()];
+		final long[] recent = histogram.snapshot();
+		return new StageStatistics(stage.name(), histogram.getCount(), histogram.getTotal(), RollingHistogram.percentile(recent, 50),
+				RollingHistogram.percentile(recent, 90), RollingHistogram.percentile(recent, 99), RollingHistogram.percentile(recent, 100));
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public long getParseCount() {
+		return histograms[Stage.TOTAL.ordinal()].getCount();
+	}
+
+	@Override
+	public long getCharactersParsed() {
+		return characters.get();
+	}
+
+	@Override
+	public long getNodesBuilt() {
+		return nodes.get();
+	}
+
+	@Override
+	public StageStatistics[] getStages() {
+		final Stage[] stages = Stage.values();
+		final StageStatistics[] statistics = new StageStatistics[stages.length];
+		for (int i = 0; i < stages.length; i++) {
+			statistics[i] = getStage(stages[i]);
+		}
+		return statistics;
+	}
+
+	@Override
+	public long getCacheHitCount() {
+		return cache.getHitCount();
+	}
+
+	@Override
+	public long getCacheMissCount() {
+		return cache.getMissCount();
+	}
+
+	@Override
+	public double getCacheHitRatio() {
+		final long hits = cache.getHitCount();
+		final long lookups = hits + cache.getMissCount();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public long getCacheEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	@Override
+	public long getCacheWeight() {
+		return cache.getWeight();
+	}
+
+	@Override
+	public int getCacheSize() {
+		return cache.getSize();
+	}
+
+	@Override
+	public void reset() {
+		for (final RollingHistogram histogram : histograms) {
+			histogram.reset();
+		}
+		characters.set(0);
+		nodes.set(0);
+	}
+
+	/**
+	 * Publishes metrics in platform MBean server as {@link #OBJECT_NAME}.
+	 */
+	public void register() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (JMException e) {
+			Activator.logWarning(Messages.ParserMetricsUnableToRegister, e);
+		}
+	}
+
+	/**
+	 * Removes metrics from platform MBean server.
+	 */
+	public void unregister() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			Activator.logWarning(Messages.ParserMetricsUnableToRegister, e);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser;
+
+/**
+ * Management interface of {@link ParserMetrics}, available through JMX as {@link ParserMetrics#OBJECT_NAME}.
+ */
+public interface ParserMetricsMXBean {
+	/**
+	 * @return <code>false</code> when measures are disabled with {@link ParserMetrics#METRICS_PROPERTY}
+	 */
+	boolean isEnabled();
+
+	/**
+	 * @return count of parsed modules, whether fully or incrementally
+	 */
+	long getParseCount();
+
+	/**
+	 * @return count of source characters given to Metalua, incremental parsing only gives modified chunks
+	 */
+	long getCharactersParsed();
+
+	/**
+	 * @return count of Metalua nodes turned into DLTK nodes
+	 */
+	long getNodesBuilt();
+
+	/**
+	 * @return durations of each parsing stage
+	 */
+	StageStatistics[] getStages();
+
+	long getCacheHitCount();
+
+	long getCacheMissCount();
+
+	/**
+	 * @return ratio of AST cache lookups which found an AST, between 0 and 1
+	 */
+	double getCacheHitRatio();
+
+	long getCacheEvictionCount();
+
+	/**
+	 * @return count of source characters of cached ASTs
+	 */
+	long getCacheWeight();
+
+	/**
+	 * @return count of cached ASTs
+	 */
+	int getCacheSize();
+
+	/**
+	 * Forgets all measures, cache counters are kept as they belong to the cache.
+	 */
+	void reset();
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of durations of a parsing stage, in nanoseconds.
+ * 
+ * Count, total and mean cover all measures since metrics were reset, percentiles and maximum cover recent measures only.
+ */
+public final class StageStatistics {
+	private final String name;
+	private final long count;
+	private final long totalNanos;
+	private final long medianNanos;
+	private final long percentile90Nanos;
+	private final long percentile99Nanos;
+	private final long maxNanos;
+
+	@ConstructorProperties({ "name", "count", "totalNanos", "medianNanos", "percentile90Nanos", "percentile99Nanos", "maxNanos" })
+	public StageStatistics(final String name, final long count, final long totalNanos, final long medianNanos, final long percentile90Nanos,
+			final long percentile99Nanos, final long maxNanos) {
+		this.name = name;
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.medianNanos = medianNanos;
+		this.percentile90Nanos = percentile90Nanos;
+		this.percentile99Nanos = percentile99Nanos;
+		this.maxNanos = maxNanos;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public long getMeanNanos() {
+		return count == 0 ? 0 : totalNanos / count;
+	}
+
+	public long getMedianNanos() {
+		return medianNanos;
+	}
+
+	public long getPercentile90Nanos() {
+		return percentile90Nanos;
+	}
+
+	public long getPercentile99Nanos() {
+		return percentile99Nanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return name + ": count=" + count + ", mean=" + getMeanNanos() + "ns, p50=" + medianNanos + "ns, p90=" + percentile90Nanos + "ns, p99=" //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+				+ percentile99Nanos + "ns, max=" + maxNanos + "ns"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.ast;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.dltk.ast.declarations.MethodDeclaration;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ModelException;
+import org.eclipse.koneki.ldt.parser.ast.declarations.LuaModuleDeclaration;
+
+/**
+ * Fields a Lua module exports, by name. Declarations are collected once from AST, model elements they define are resolved at first request
+ * only.
+ */
+public final class LuaModuleFields {
+	private final Map<String, Declaration> declarations;
+
+	/** Model elements of {@link #elementsModule}, resolved at first request */
+	private Map<String, IModelElement> elements;
+	private ISourceModule elementsModule;
+
+	private LuaModuleFields(final Map<String, Declaration> declarations) {
+		this.declarations = declarations;
+	}
+
+	/**
+	 * Collects exported fields of an AST. Use {@link LuaSourceRoot#getModuleFields()}, which keeps them along with AST.
+	 * 
+	 * @param root
+	 *            AST of module
+	 * @return fields of module, none when source does not declare a module
+	 */
+	static LuaModuleFields build(final LuaSourceRoot root) {
+		final LuaModuleDeclaration module = root.getDeclarationsContainer().getLuaModuleDeclaration();
+		if (module == null) {
+			return new LuaModuleFields(Collections.<String, Declaration> emptyMap());
+		}
+		final Map<String, Declaration> declarations = new LinkedHashMap<String, Declaration>();
+		for (final MethodDeclaration declaration : module.getMethods()) {
+			declarations.put(declaration.getName(), declaration);
+		}
+		return new LuaModuleFields(Collections.unmodifiableMap(declarations));
+	}
+
+	/**
+	 * @return declarations of fields by name, this map can not be modified
+	 */
+	public Map<String, Declaration> getDeclarations() {
+		return declarations;
+	}
+
+	/**
+	 * Provides model elements defined by fields, they are resolved once for a module.
+	 * 
+	 * @param module
+	 *            source module this AST has been parsed from
+	 * @return model elements of fields by name, this map can not be modified
+	 * @throws ModelException
+	 *             when elements can not be located in module
+	 */
+	public synchronized Map<String, IModelElement> getElements(final ISourceModule module) throws ModelException {
+		if (elements == null || !module.equals(elementsModule)) {
+			final Map<String, IModelElement> resolved = new LinkedHashMap<String, IModelElement>();
+			for (final Entry<String, Declaration> entry : declarations.entrySet()) {
+				final IModelElement element = module.getElementAt(entry.getValue().sourceStart());
+				if (element != null) {
+					resolved.put(entry.getKey(), element);
+				}
+			}
+			elements = Collections.unmodifiableMap(resolved);
+			elementsModule = module;
+		}
+		return elements;
+	}
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.koneki.ldt.parser.Activator;
+import org.eclipse.koneki.ldt.parser.Messages;
+import org.eclipse.koneki.ldt.parser.ast.visitor.MatchNodeVisitor;
+
+/**
+ * Nodes of an AST by offset, to find the node under a selection without browsing the whole AST. It finds the same node as
+ * {@link MatchNodeVisitor}.
+ * 
+ * Matchable nodes are sorted by start of their matched area. This array is an implicit balanced tree: middle of each range is its root, and
+ * holds the greatest end of the range. Nodes covering a selection start before it, so they are in a prefix of the array, and subtrees which end
+ * before selection are skipped. Covering nodes are only the few nested ones, they are then compared in traversal order, as the visitor does.
+ */
+public final class LuaNodeIndex {
+	private final ASTNode[] nodes;
+	private final int[] starts;
+	private final int[] ends;
+	/** Rank of each node in traversal */
+	private final int[] orders;
+	/** Greatest end of the range which middle is at this position */
+	private final int[] maxEnds;
+
+	private LuaNodeIndex(final List<ASTNode> visited) {
+		// Sort by start, in traversal order for the same start
+		final Integer[] sorted = new Integer[visited.size()];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer first, final Integer second) {
+				final int firstStart = MatchNodeVisitor.matchStart(visited.get(first));
+				final int secondStart = MatchNodeVisitor.matchStart(visited.get(second));
+				if (firstStart != secondStart) {
+					return firstStart < secondStart ? -1 : 1;
+				}
+				return first.compareTo(second);
+			}
+		});
+		nodes = new ASTNode[sorted.length];
+		starts = new int[sorted.length];
+		ends = new int[sorted.length];
+		orders = new int[sorted.length];
+		maxEnds = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			nodes[i] = visited.get(sorted[i]);
+			starts[i] = MatchNodeVisitor.matchStart(nodes[i]);
+			ends[i] = MatchNodeVisitor.matchEnd(nodes[i]);
+			orders[i] = sorted[i];
+		}
+		computeMaxEnds(0, sorted.length);
+	}
+
+	/**
+	 * Indexes an AST in a single traversal. Use {@link LuaSourceRoot#getNodeIndex()}, which keeps it along with AST.
+	 * 
+	 * @param root
+	 *            AST to index
+	 * @return index of matchable nodes of AST
+	 */
+	static LuaNodeIndex build(final LuaSourceRoot root) {
+		final List<ASTNode> visited = new ArrayList<ASTNode>();
+		try {
+			root.traverse(new ASTVisitor() {
+				@Override
+				public boolean visitGeneral(final ASTNode node) throws Exception {
+					// A node met twice is kept twice, as visitor may match it on both occasions
+					if (MatchNodeVisitor.isMatchable(node)) {
+						visited.add(node);
+					}
+					return true;
+				}
+			});
+			// CHECKSTYLE:OFF
+		} catch (Exception e) {
+			// CHECKSTYLE:ON
+			Activator.logWarning(Messages.LuaNodeIndexUnableToIndex, e);
+		}
+		return new LuaNodeIndex(visited);
+	}
+
+	private int computeMaxEnds(final int low, final int high) {
+		if (low >= high) {
+			return Integer.MIN_VALUE;
+		}
+		final int middle = (low + high) >>> 1;
+		maxEnds[middle] = Math.max(ends[middle], Math.max(computeMaxEnds(low, middle), computeMaxEnds(middle + 1, high)));
+		return maxEnds[middle];
+	}
+
+	/**
+	 * Finds smallest node covering an area, as {@link MatchNodeVisitor} does.
+	 * 
+	 * @param start
+	 *            start offset of area
+	 * @param end
+	 *            end offset of area
+	 * @return matching node, <code>null</code> when there is none
+	 */
+	public ASTNode findNode(final int start, final int end) {
+		final List<Integer> covering = new ArrayList<Integer>();
+		collectCovering(0, nodes.length, start, end, covering);
+		// Nodes are compared in the order visitor meets them
+		sortByOrder(covering);
+		ASTNode result = null;
+		for (final int position : covering) {
+			if (result == null || MatchNodeVisitor.isNarrower(nodes[position], result)) {
+				result = nodes[position];
+			}
+		}
+		return result;
+	}
+
+	private void collectCovering(final int low, final int high, final int start, final int end, final List<Integer> covering) {
+		if (low >= high) {
+			return;
+		}
+		final int middle = (low + high) >>> 1;
+		if (maxEnds[middle] < end) {
+			// No node of this range ends after area
+			return;
+		}
+		collectCovering(low, middle, start, end, covering);
+		if (starts[middle] <= start) {
+			if (ends[middle] >= end) {
+				covering.add(middle);
+			}
+			collectCovering(middle + 1, high, start, end, covering);
+		}
+	}
+
+	private void sortByOrder(final List<Integer> positions) {
+		// Few nodes cover an area, an insertion sort is enough
+		for (int i = 1; i < positions.size(); i++) {
+			final int position = positions.get(i);
+			int j = i - 1;
+			while (j >= 0 && orders[positions.get(j)] > orders[position]) {
+				positions.set(j + 1, positions.get(j));
+				j--;
+			}
+			positions.set(j + 1, position);
+		}
+	}
+
+	/**
+	 * @return count of indexed nodes
+	 */
+	public int size() {
+		return nodes.length;
+	}
+}
@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.dltk.ast.declarations.Argument;
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.koneki.ldt.parser.Activator;
+import org.eclipse.koneki.ldt.parser.Messages;
+import org.eclipse.koneki.ldt.parser.ast.declarations.FunctionDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.declarations.TableDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.declarations.VariableDeclaration;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Function;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Identifier;
+import org.eclipse.koneki.ldt.parser.ast.statements.Chunk;
+import org.eclipse.koneki.ldt.parser.ast.statements.Do;
+import org.eclipse.koneki.ldt.parser.ast.statements.ElseIf;
+import org.eclipse.koneki.ldt.parser.ast.statements.ForInPair;
+import org.eclipse.koneki.ldt.parser.ast.statements.ForNumeric;
+import org.eclipse.koneki.ldt.parser.ast.statements.If;
+import org.eclipse.koneki.ldt.parser.ast.statements.Local;
+import org.eclipse.koneki.ldt.parser.ast.statements.LocalRec;
+import org.eclipse.koneki.ldt.parser.ast.statements.Repeat;
+import org.eclipse.koneki.ldt.parser.ast.statements.While;
+
+/**
+ * Block of a Lua source where local declarations are visible, with the blocks nested in it.
+ * 
+ * Nested scopes are sorted by offset, so innermost scope at an offset is found by a binary search at each depth. Local declarations of a scope are
+ * sorted by the offset they are visible from, declarations visible at an offset are the ones of enclosing scopes visible before it. A variable
+ * of a local statement is only visible after the whole statement, so <code>local x = x</code> refers to an outer <code>x</code>.
+ */
+public final class LuaScope {
+	private static final Comparator<LuaScope> BY_START = new Comparator<LuaScope>() {
+		@Override
+		public int compare(final LuaScope first, final LuaScope second) {
+			return first.start < second.start ? -1 : first.start == second.start ? 0 : 1;
+		}
+	};
+	private static final Comparator<Visible> BY_OFFSET = new Comparator<Visible>() {
+		@Override
+		public int compare(final Visible first, final Visible second) {
+			return first.from < second.from ? -1 : first.from == second.from ? 0 : 1;
+		}
+	};
+
+	/** Local declaration, with the offset after which it is visible */
+	private static final class Visible {
+		private final Declaration declaration;
+		private final int from;
+
+		private Visible(final Declaration declaration, final int from) {
+			this.declaration = declaration;
+			this.from = from;
+		}
+	}
+
+	private final int start;
+	private final int end;
+	private final LuaScope parent;
+	private final List<LuaScope> children = new ArrayList<LuaScope>();
+	private final List<Visible> locals = new ArrayList<Visible>();
+	/** Declarations of {@link #locals}, in the same order */
+	private final List<Declaration> declarations = new ArrayList<Declaration>();
+
+	private LuaScope(final int start, final int end, final LuaScope parent) {
+		this.start = start;
+		this.end = end;
+		this.parent = parent;
+	}
+
+	/**
+	 * Builds scope tree of an AST in a single traversal. Use {@link LuaSourceRoot#getScope()}, which keeps it along with AST.
+	 * 
+	 * @param root
+	 *            AST to browse
+	 * @return scope of whole source
+	 */
+	static LuaScope build(final LuaSourceRoot root) {
+		final LuaScope scope = new LuaScope(0, Integer.MAX_VALUE, null);
+		try {
+			root.traverse(new Builder(scope));
+			// CHECKSTYLE:OFF
+		} catch (Exception e) {
+			// CHECKSTYLE:ON
+			Activator.logError(Messages.LuaScopeUnableToCompute, e);
+			return new LuaScope(0, Integer.MAX_VALUE, null);
+		}
+		scope.sort();
+		return scope;
+	}
+
+	private void sort() {
+		Collections.sort(children, BY_START);
+		Collections.sort(locals, BY_OFFSET);
+		for (final Visible local : locals) {
+			declarations.add(local.declaration);
+		}
+		for (final LuaScope child : children) {
+			child.sort();
+		}
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return enclosing scope, <code>null</code> for scope of whole source
+	 */
+	public LuaScope getParent() {
+		return parent;
+	}
+
+	/**
+	 * @return local declarations of this scope only, sorted by the offset they are visible from
+	 */
+	public List<Declaration> getDeclarations() {
+		return Collections.unmodifiableList(declarations);
+	}
+
+	/**
+	 * @param offset
+	 *            offset in source
+	 * @return innermost scope containing offset
+	 */
+	public LuaScope getScopeAt(final int offset) {
+		LuaScope scope = this;
+		for (LuaScope child = scope.getChildAt(offset); child != null; child = scope.getChildAt(offset)) {
+			scope = child;
+		}
+		return scope;
+	}
+
+	private LuaScope getChildAt(final int offset) {
+		// Last child starting before offset is the only one which may contain it
+		int low = 0;
+		int high = children.size() - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			if (children.get(middle).start <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		if (high >= 0 && offset < children.get(high).end) {
+			return children.get(high);
+		}
+		return null;
+	}
+
+	/**
+	 * Provides local declarations visible at an offset, a declaration hides the ones with the same name declared before it or in enclosing
+	 * scopes.
+	 * 
+	 * @param offset
+	 *            offset in source
+	 * @return visible local declarations, innermost first
+	 */
+	public List<Declaration> getVisibleDeclarations(final int offset) {
+		final List<Declaration> visible = new ArrayList<Declaration>();
+		final Set<String> names = new HashSet<String>();
+		for (LuaScope scope = getScopeAt(offset); scope != null; scope = scope.parent) {
+			// Declarations visible from offset or after it are not visible yet
+			int low = 0;
+			int high = scope.locals.size() - 1;
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+				if (scope.locals.get(middle).from < offset) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			for (int i = high; i >= 0; i--) {
+				final Declaration declaration = scope.declarations.get(i);
+				if (names.add(declaration.getName())) {
+					visible.add(declaration);
+				}
+			}
+		}
+		return visible;
+	}
+
+	/**
+	 * Creates a scope for each block, and registers local declarations in the innermost one. Function parameters and loop variables are
+	 * registered as declarations of their block. Variables of a local statement are visible after its end, other declarations after their
+	 * start.
+	 */
+	private static final class Builder extends ASTVisitor {
+		private static final String DOTS = "..."; //$NON-NLS-1$
+
+		/** Scopes being built, innermost last */
+		private final List<LuaScope> scopes = new ArrayList<LuaScope>();
+		/** Nodes which opened a scope, innermost last */
+		private final List<ASTNode> scopeNodes = new ArrayList<ASTNode>();
+		/** Branches of conditions met, they are plain {@link Chunk}s */
+		private final Map<ASTNode, Boolean> branches = new IdentityHashMap<ASTNode, Boolean>();
+		/** End offsets of local statements declaring variables met */
+		private final Map<ASTNode, Integer> statementEnds = new IdentityHashMap<ASTNode, Integer>();
+
+		private Builder(final LuaScope root) {
+			scopes.add(root);
+			scopeNodes.add(null);
+		}
+
+		@Override
+		public boolean visitGeneral(final ASTNode node) throws Exception {
+			if (node instanceof If) {
+				final If condition = (If) node;
+				branches.put(condition.getNominal(), Boolean.TRUE);
+				if (condition.getAlternative() != null) {
+					branches.put(condition.getAlternative(), Boolean.TRUE);
+				}
+				if (node instanceof ElseIf) {
+					for (final Chunk chunk : ((ElseIf) node).getChunks()) {
+						branches.put(chunk, Boolean.TRUE);
+					}
+				}
+				return true;
+			}
+			// Function of a recursive local declaration is already visible in its own body
+			if (node instanceof Local && !(node instanceof LocalRec) && ((Local) node).getLeft() != null) {
+				for (final Object variable : ((Local) node).getLeft().getStatements()) {
+					statementEnds.put((ASTNode) variable, node.sourceEnd());
+				}
+			}
+			if (isLocalDeclaration(node)) {
+				final Integer statementEnd = statementEnds.get(node);
+				add(scopes.get(scopes.size() - 1), (Declaration) node, statementEnd != null ? statementEnd : node.sourceStart());
+			}
+			// Nodes built without position can not be located
+			if (isScope(node) && node.sourceStart() < node.sourceEnd()) {
+				final LuaScope current = scopes.get(scopes.size() - 1);
+				final LuaScope scope = new LuaScope(node.sourceStart(), node.sourceEnd(), current);
+				current.children.add(scope);
+				scopes.add(scope);
+				scopeNodes.add(node);
+				if (node instanceof FunctionDeclaration) {
+					// Body of a function declaration is a plain chunk, declaration holds its arguments
+					for (final Object argument : ((FunctionDeclaration) node).getArguments()) {
+						if (argument instanceof Argument && !DOTS.equals(((Argument) argument).getName())) {
+							add(scope, (Argument) argument, ((Argument) argument).sourceStart());
+						}
+					}
+				} else if (node instanceof Function) {
+					addVariables(scope, ((Function) node).getArguments());
+				} else if (node instanceof ForNumeric) {
+					addVariable(scope, ((ForNumeric) node).getVariable());
+				} else if (node instanceof ForInPair) {
+					addVariables(scope, ((ForInPair) node).getIdentifiers());
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void endvisitGeneral(final ASTNode node) throws Exception {
+			if (node == scopeNodes.get(scopeNodes.size() - 1)) {
+				scopes.remove(scopes.size() - 1);
+				scopeNodes.remove(scopeNodes.size() - 1);
+			}
+		}
+
+		private boolean isScope(final ASTNode node) {
+			return node instanceof FunctionDeclaration || node instanceof Function || node instanceof ForNumeric || node instanceof ForInPair
+					|| node instanceof While || node instanceof Repeat || node instanceof Do || branches.containsKey(node);
+		}
+
+		private static boolean isLocalDeclaration(final ASTNode node) {
+			// Arguments of function declarations are registered when their scope is created
+			return (node instanceof VariableDeclaration || node instanceof FunctionDeclaration || node instanceof TableDeclaration)
+					&& ((Declaration) node).isPrivate();
+		}
+
+		private static void addVariables(final LuaScope scope, final Chunk identifiers) {
+			if (identifiers != null) {
+				for (final Object node : identifiers.getStatements()) {
+					if (node instanceof Identifier) {
+						addVariable(scope, (Identifier) node);
+					}
+				}
+			}
+		}
+
+		private static void addVariable(final LuaScope scope, final Identifier identifier) {
+			if (identifier != null) {
+				final VariableDeclaration variable = new VariableDeclaration(identifier.getName(), identifier.sourceStart(), identifier.sourceEnd());
+				variable.setModifier(Declaration.AccPrivate);
+				add(scope, variable, identifier.sourceStart());
+			}
+		}
+
+		private static void add(final LuaScope scope, final Declaration declaration, final int visibleFrom) {
+			scope.locals.add(new Visible(declaration, visibleFrom));
+		}
+	}
+}
@@ -48,6 +48,25 @@ public class LuaSourceRoot extends ModuleDeclaration {
 
 	private boolean error;
 
+	/** Incremented each time this AST is modified in place after its creation */
+	private volatile int revision = 0;
+
+	/*
+	 * Following fields are computed from nodes, they are transient so that copies of AST compute their own
+	 */
+
+	/** Scopes of local declarations, computed at first request for {@link #scopeRevision} */
+	private transient LuaScope scope;
+	private transient int scopeRevision;
+
+	/** Nodes by offset, computed at first request for {@link #nodeIndexRevision} */
+	private transient LuaNodeIndex nodeIndex;
+	private transient int nodeIndexRevision;
+
+	/** Exported fields, collected at first request for {@link #moduleFieldsRevision} */
+	private transient LuaModuleFields moduleFields;
+	private transient int moduleFieldsRevision;
+
 	/**
 	 * Instantiates a new Lua module declaration.
 	 * 
@@ -138,6 +157,13 @@ public class LuaSourceRoot extends ModuleDeclaration {
 		memberDocumentation = doc;
 	}
 
+	/**
+	 * @return documentation by member name, <code>null</code> when there is none
+	 */
+	public Map<String, String> getMembersDocumentation() {
+		return memberDocumentation;
+	}
+
 	public String getMemberDocumentation(final String memberIdentifier) {
 		if (memberDocumentation != null) {
 			return memberDocumentation.get(memberIdentifier);
@@ -149,6 +175,60 @@ public class LuaSourceRoot extends ModuleDeclaration {
 		return declarationscontainer;
 	}
 
+	/**
+	 * @return count of in place modifications of this AST, enables to detect that an AST kept aside does not represent the same source anymore
+	 */
+	public int getRevision() {
+		return revision;
+	}
+
+	/**
+	 * Provides scope tree of this AST, it is computed once and computed again only when AST is modified in place. A shared AST is never
+	 * modified, updates are applied to a private copy before it is shared, so the lock only keeps readers from computing scopes twice.
+	 * 
+	 * @return scope of whole source, its nested scopes enable to find local declarations visible at an offset
+	 */
+	public synchronized LuaScope getScope() {
+		if (scope == null || scopeRevision != revision) {
+			scopeRevision = revision;
+			scope = LuaScope.build(this);
+		}
+		return scope;
+	}
+
+	/**
+	 * Provides nodes of this AST by offset, they are indexed once and indexed again only when AST is modified in place.
+	 * 
+	 * @return index of nodes, to find node under a selection
+	 */
+	public synchronized LuaNodeIndex getNodeIndex() {
+		if (nodeIndex == null || nodeIndexRevision != revision) {
+			nodeIndexRevision = revision;
+			nodeIndex = LuaNodeIndex.build(this);
+		}
+		return nodeIndex;
+	}
+
+	/**
+	 * Provides fields exported by module of this AST, they are collected once and collected again only when AST is modified in place.
+	 * 
+	 * @return exported fields, none when source does not declare a module
+	 */
+	public synchronized LuaModuleFields getModuleFields() {
+		if (moduleFields == null || moduleFieldsRevision != revision) {
+			moduleFieldsRevision = revision;
+			moduleFields = LuaModuleFields.build(this);
+		}
+		return moduleFields;
+	}
+
+	/**
+	 * Indicates that this AST has been modified in place and now represents a different source.
+	 */
+	public void incrementRevision() {
+		revision++;
+	}
+
 	/**
 	 * @param status
 	 */
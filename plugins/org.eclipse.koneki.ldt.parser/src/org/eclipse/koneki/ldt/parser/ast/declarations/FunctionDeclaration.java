@@ -94,6 +94,11 @@ public class FunctionDeclaration extends MethodDeclaration implements IOccurrenc
 		occurrences.add(node);
 	}
 
+	@Override
+	public void removeOccurrence(ASTNode node) {
+		occurrences.remove(node);
+	}
+
 	@Override
 	public ASTNode[] getOccurrences() {
 		return occurrences.toArray(new ASTNode[occurrences.size()]);
@@ -73,6 +73,11 @@ public class TableDeclaration extends TypeDeclaration implements IOccurrenceHold
 		occurrences.add(node);
 	}
 
+	@Override
+	public void removeOccurrence(ASTNode node) {
+		occurrences.remove(node);
+	}
+
 	@Override
 	public ASTNode[] getOccurrences() {
 		return occurrences.toArray(new ASTNode[occurrences.size()]);
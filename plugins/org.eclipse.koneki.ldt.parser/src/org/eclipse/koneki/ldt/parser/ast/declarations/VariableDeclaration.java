@@ -79,6 +79,11 @@ public class VariableDeclaration extends Declaration implements IOccurrenceHolde
 		occurrences.add(node);
 	}
 
+	@Override
+	public void removeOccurrence(ASTNode node) {
+		occurrences.remove(node);
+	}
+
 	@Override
 	public ASTNode[] getOccurrences() {
 		return occurrences.toArray(new ASTNode[occurrences.size()]);
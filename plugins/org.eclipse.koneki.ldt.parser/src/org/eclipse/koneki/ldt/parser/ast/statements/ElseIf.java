@@ -12,6 +12,7 @@
 package org.eclipse.koneki.ldt.parser.ast.statements;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.dltk.ast.ASTVisitor;
@@ -36,6 +37,13 @@ public class ElseIf extends If {
 	chunks.add(chunk);
     }
 
+    /**
+     * @return blocks of <code>elseif</code> clauses, nominal and alternative blocks excluded
+     */
+    public List<Chunk> getChunks() {
+	return Collections.unmodifiableList(chunks);
+    }
+
     public void traverse(ASTVisitor visitor) throws Exception {
 	if (visitor.visit(this)) {
 	    super.traverse(visitor);
@@ -61,30 +61,41 @@ public class MatchNodeVisitor extends ASTVisitor {
 	 * @see #MatchNodeVisitor(int, int)
 	 */
 	public boolean visitGeneral(ASTNode s) throws Exception {
-		int realStart = s.sourceStart();
-		int realEnd = s.sourceEnd();
-		if (s instanceof Block) {
-			// Ignore composite nodes like Chunk and Block
-			return true;
-		} else if (s.getClass() == SimpleReference.class) {
-			// Ignore SimpleReference because we need the parent node.
-			return true;
-		} else if (s instanceof LuaModuleDeclaration) {
-			// Ignore SimpleReference because we need the parent node.
-			return true;
-		} else if (s instanceof Declaration) {
-			Declaration declaration = (Declaration) s;
-			realStart = declaration.getNameStart();
-			realEnd = declaration.getNameEnd();
-		}
-		if (realStart <= start && realEnd >= end) {
-			if (getNode() == null) {
-				setNode(s);
-			} else if (s.sourceStart() >= getNode().sourceStart() && s.sourceEnd() <= getNode().sourceEnd()) {
+		if (isMatchable(s) && matchStart(s) <= start && matchEnd(s) >= end) {
+			if (getNode() == null || isNarrower(s, getNode())) {
 				setNode(s);
 			}
 		}
 		return true;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Indicates if a node can be matched, composite nodes are ignored in favor of their content.
+	 */
+	public static boolean isMatchable(ASTNode s) {
+		// Ignore composite nodes like Chunk and Block
+		// Ignore SimpleReference because we need the parent node.
+		return !(s instanceof Block) && s.getClass() != SimpleReference.class && !(s instanceof LuaModuleDeclaration);
+	}
+
+	/**
+	 * @return start of matched area of node, name of {@link Declaration}s only
+	 */
+	public static int matchStart(ASTNode s) {
+		return s instanceof Declaration ? ((Declaration) s).getNameStart() : s.sourceStart();
+	}
+
+	/**
+	 * @return end of matched area of node, name of {@link Declaration}s only
+	 */
+	public static int matchEnd(ASTNode s) {
+		return s instanceof Declaration ? ((Declaration) s).getNameEnd() : s.sourceEnd();
+	}
+
+	/**
+	 * Indicates if a matching node should replace current match, a node met later replaces a current one with the same source range.
+	 */
+	public static boolean isNarrower(ASTNode s, ASTNode current) {
+		return s.sourceStart() >= current.sourceStart() && s.sourceEnd() <= current.sourceEnd();
+	}
+}
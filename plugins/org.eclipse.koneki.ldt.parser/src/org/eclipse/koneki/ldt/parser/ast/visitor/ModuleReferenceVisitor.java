@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.parser.ast.visitor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.dltk.ast.ASTNode;
 import org.eclipse.dltk.ast.ASTVisitor;
 import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
@@ -18,14 +21,28 @@ import org.eclipse.koneki.ldt.parser.ast.expressions.Identifier;
 public class ModuleReferenceVisitor extends ASTVisitor {
 	private final String search;
 	private ModuleReference moduleReference;
+	private final List<ModuleReference> moduleReferences = new ArrayList<ModuleReference>();
 
 	public ModuleReferenceVisitor(final String nameToFind) {
 		search = nameToFind;
 		moduleReference = null;
 	}
 
+	/**
+	 * Collects all module references of browsed AST, see {@link #getModuleReferences()}.
+	 */
+	public ModuleReferenceVisitor() {
+		this(null);
+	}
+
 	@Override
 	public boolean visitGeneral(final ASTNode node) throws Exception {
+		if (search == null) {
+			if (node instanceof ModuleReference) {
+				moduleReferences.add((ModuleReference) node);
+			}
+			return true;
+		}
 		if (node instanceof Identifier) {
 			Identifier identifier = (Identifier) node;
 			if (identifier.getName().equals(search)) {
@@ -45,6 +62,13 @@ public class ModuleReferenceVisitor extends ASTVisitor {
 		return true;
 	}
 
+	/**
+	 * @return module references met, when no name was searched
+	 */
+	public List<ModuleReference> getModuleReferences() {
+		return moduleReferences;
+	}
+
 	public ModuleReference getModuleReference() {
 		return moduleReference;
 	}
@@ -16,9 +16,11 @@ import java.net.URL;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.koneki.ldt.internal.parser.LuaStatePool;
 import org.eclipse.koneki.ldt.metalua.MetaluaStateFactory;
 import org.eclipse.koneki.ldt.parser.Activator;
 
+import com.naef.jnlua.LuaException;
 import com.naef.jnlua.LuaRuntimeException;
 import com.naef.jnlua.LuaState;
 
@@ -27,12 +29,23 @@ import com.naef.jnlua.LuaState;
  * 
  * This class uses <strong>Metalua</strong> to gather information about source code depth and thus enable to modify if adequately.
  * 
+ * Booting Metalua takes far longer than formatting, so formatter {@link LuaState}s are pooled: they are loaded once and kept between calls. At
+ * least one of them stays loaded until {@link #closeStatePool()}.
+ * 
  * @author Kevin KIN-FOO <kkinfoo@sierrawireless.com>
  */
 public final class LuaSourceFormat {
 	public static final String FORMATTER_PATH = "/scripts/"; //$NON-NLS-1$
 	public static final String FORMATTER_LIB_NAME = "format"; //$NON-NLS-1$
 	public static final String INDENTATION_FUNTION = "indentCode"; //$NON-NLS-1$
+	/** System property defining how many sources can be formatted simultaneously, default is 2 */
+	public static final String POOL_SIZE_PROPERTY = "org.eclipse.koneki.ldt.parser.format.pool.size"; //$NON-NLS-1$
+	private static final int DEFAULT_POOL_SIZE = 2;
+	/** Delay after which a formatter state unused is closed, the last one is kept */
+	private static final long IDLE_TIMEOUT = 300000;
+
+	/** {@link LuaState}s with formatter library loaded as global <code>format</code> */
+	private static volatile LuaStatePool statePool = null;
 
 	private LuaSourceFormat() {
 	}
@@ -47,24 +60,32 @@ public final class LuaSourceFormat {
 	 * @return Offset semantic depth
 	 */
 	public static int depth(final String source, final int offset) {
-		// Load function
-		final LuaState lua = loadState();
-		lua.getField(-1, "indentLevel"); //$NON-NLS-1$
+		final LuaStatePool pool = getStatePool();
+		final LuaState lua = pool.acquire();
+		boolean reusable = false;
+		try {
+			// Load function
+			lua.getGlobal(FORMATTER_LIB_NAME);
+			lua.getField(-1, "indentLevel"); //$NON-NLS-1$
 
-		// Pass arguments
-		lua.pushString(source);
-		lua.pushInteger(offset);
+			// Pass arguments
+			lua.pushString(source);
+			lua.pushInteger(offset);
 
-		// Call with parameters count and return values count
-		try {
-			lua.call(2, 1);
-		} catch (final LuaRuntimeException e) {
-			Activator.logWarning(Messages.LuaSourceFormatDepthError, e);
-			return 0;
+			// Call with parameters count and return values count
+			int result = 0;
+			try {
+				lua.call(2, 1);
+				result = lua.toInteger(-1);
+			} catch (final LuaRuntimeException e) {
+				Activator.logWarning(Messages.LuaSourceFormatDepthError, e);
+			}
+			lua.setTop(0);
+			reusable = true;
+			return result > 0 ? result - 1 : result;
+		} finally {
+			release(pool, lua, reusable);
 		}
-		final int result = lua.toInteger(-1);
-		lua.close();
-		return result > 0 ? result - 1 : result;
 	}
 
 	/**
@@ -84,23 +105,24 @@ public final class LuaSourceFormat {
 	 */
 	public static String indent(final String source, final String delimiter, final String tabulation, final boolean indentInTable,
 			final int originalIndentationLevel) {
-		// Load function
-		final LuaState lua = loadState();
-		lua.getField(-1, INDENTATION_FUNTION);
-		lua.pushString(source);
-		lua.pushString(delimiter);
-		lua.pushString(tabulation);
-		lua.pushInteger(originalIndentationLevel);
-		lua.pushBoolean(indentInTable);
+		final LuaStatePool pool = getStatePool();
+		final LuaState lua = pool.acquire();
+		boolean reusable = false;
 		try {
-			lua.call(5, 1);
-		} catch (final LuaRuntimeException e) {
-			Activator.logWarning(Messages.LuaSourceFormatIndentationError, e);
-			return source;
+			// Load function
+			lua.getGlobal(FORMATTER_LIB_NAME);
+			lua.getField(-1, INDENTATION_FUNTION);
+			lua.pushString(source);
+			lua.pushString(delimiter);
+			lua.pushString(tabulation);
+			lua.pushInteger(originalIndentationLevel);
+			lua.pushBoolean(indentInTable);
+			final String formattedCode = callIndentation(lua, 5, source);
+			reusable = true;
+			return formattedCode;
+		} finally {
+			release(pool, lua, reusable);
 		}
-		final String formattedCode = lua.toString(-1);
-		lua.close();
-		return formattedCode;
 	}
 
 	/**
@@ -123,25 +145,84 @@ public final class LuaSourceFormat {
 	 */
 	public static String indent(final String source, final String delimiter, final int tabSize, final int indentationSize,
 			final boolean indentInTable, final int originalIndentationLevel) {
-		final LuaState lua = loadState();
-		lua.getField(-1, INDENTATION_FUNTION);
-		lua.pushString(source);
-		lua.pushString(delimiter);
-		lua.pushInteger(tabSize);
-		lua.pushInteger(indentationSize);
-		lua.pushInteger(originalIndentationLevel);
-		lua.pushBoolean(indentInTable);
+		final LuaStatePool pool = getStatePool();
+		final LuaState lua = pool.acquire();
+		boolean reusable = false;
+		try {
+			lua.getGlobal(FORMATTER_LIB_NAME);
+			lua.getField(-1, INDENTATION_FUNTION);
+			lua.pushString(source);
+			lua.pushString(delimiter);
+			lua.pushInteger(tabSize);
+			lua.pushInteger(indentationSize);
+			lua.pushInteger(originalIndentationLevel);
+			lua.pushBoolean(indentInTable);
+			final String formattedCode = callIndentation(lua, 6, source);
+			reusable = true;
+			return formattedCode;
+		} finally {
+			release(pool, lua, reusable);
+		}
+	}
+
+	/**
+	 * Calls indentation function with its arguments on top of formatter library, stack is emptied afterwards.
+	 * 
+	 * @return indented code, given source when it could not be indented
+	 */
+	private static String callIndentation(final LuaState lua, final int argCount, final String source) {
+		String formattedCode = source;
 		try {
-			lua.call(6, 1);
+			lua.call(argCount, 1);
+			formattedCode = lua.toString(-1);
 		} catch (final LuaRuntimeException e) {
 			Activator.logWarning(Messages.LuaSourceFormatIndentationError, e);
-			return source;
 		}
-		final String formattedCode = lua.toString(-1);
-		lua.close();
+		lua.setTop(0);
 		return formattedCode;
 	}
 
+	/**
+	 * Closes all formatter states, a new pool will be created at next formatting.
+	 */
+	public static synchronized void closeStatePool() {
+		if (statePool != null) {
+			statePool.close();
+			statePool = null;
+		}
+	}
+
+	/**
+	 * Class monitor is only taken while pool is missing, indentation queries do not contend on it.
+	 */
+	private static LuaStatePool getStatePool() {
+		final LuaStatePool pool = statePool;
+		if (pool != null) {
+			return pool;
+		}
+		synchronized (LuaSourceFormat.class) {
+			if (statePool == null) {
+				final int size = Math.max(1, Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE));
+				statePool = new LuaStatePool(size, 1, IDLE_TIMEOUT) {
+					@Override
+					protected LuaState createState() throws LuaException {
+						return loadState();
+					}
+				};
+			}
+			return statePool;
+		}
+	}
+
+	/** After a failure, state stack is not reliable anymore, state is closed */
+	private static void release(final LuaStatePool pool, final LuaState lua, final boolean reusable) {
+		if (reusable) {
+			pool.release(lua);
+		} else {
+			pool.invalidate(lua);
+		}
+	}
+
 	private static LuaState loadState() {
 		// Loading LuaState with Metalua capabilities
 		LuaState lua = MetaluaStateFactory.newLuaState();
@@ -163,6 +244,7 @@ public final class LuaSourceFormat {
 		lua.getGlobal("require"); //$NON-NLS-1$
 		lua.pushString(FORMATTER_LIB_NAME);
 		lua.call(1, 1);
+		lua.setGlobal(FORMATTER_LIB_NAME);
 		return lua;
 	}
 }
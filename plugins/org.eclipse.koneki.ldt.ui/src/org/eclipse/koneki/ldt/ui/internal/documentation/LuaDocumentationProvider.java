@@ -25,7 +25,9 @@ import org.eclipse.dltk.ui.documentation.IScriptDocumentationProviderExtension;
 import org.eclipse.dltk.ui.documentation.IScriptDocumentationProviderExtension2;
 import org.eclipse.dltk.ui.documentation.TextDocumentationResponse;
 import org.eclipse.koneki.ldt.Activator;
+import org.eclipse.koneki.ldt.internal.parser.DeclarationIndex;
 import org.eclipse.koneki.ldt.parser.LuaASTUtils;
+import org.eclipse.koneki.ldt.parser.LuaDeclarationIndex;
 import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
 
 /**
@@ -97,6 +99,11 @@ public class LuaDocumentationProvider implements IScriptDocumentationProvider, I
 			} else {
 				// get identifier
 				String elementName = member.getElementName();
+				// unchanged files are documented by index, without parsing them
+				final DeclarationIndex.Entry entry = LuaDeclarationIndex.getEntry(sourceModule);
+				if (entry != null) {
+					return entry.getMembersDocumentation().get(elementName);
+				}
 				// get documentation for this identifier
 				ModuleDeclaration moduleDeclaration = SourceParserUtil.getModuleDeclaration(sourceModule);
 				if (moduleDeclaration instanceof LuaSourceRoot) {
@@ -108,6 +115,10 @@ public class LuaDocumentationProvider implements IScriptDocumentationProvider, I
 	}
 
 	private String getModuleDocumentation(ISourceModule module) {
+		final DeclarationIndex.Entry entry = LuaDeclarationIndex.getEntry(module);
+		if (entry != null) {
+			return entry.getDocumentation();
+		}
 		ModuleDeclaration moduleDeclaration = SourceParserUtil.getModuleDeclaration(module);
 		if (moduleDeclaration instanceof LuaSourceRoot) {
 			return ((LuaSourceRoot) moduleDeclaration).getGlobalDocumentation();
@@ -20,6 +20,7 @@ package org.eclipse.koneki.ldt;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.koneki.ldt.core.LuaModuleIndex;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -47,6 +48,7 @@ public class Activator extends Plugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		LuaModuleIndex.getIndexes().register();
 	}
 
 	/*
@@ -55,6 +57,7 @@ public class Activator extends Plugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		LuaModuleIndex.getIndexes().unregister();
 		plugin = null;
 		super.stop(context);
 	}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.IParent;
+import org.eclipse.dltk.core.IProjectFragment;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ModelException;
+
+/**
+ * Source modules available to a project by full name and by absolute location, so modules are found without browsing the model.
+ * 
+ * Index is built at first lookup, browsing project fragments in the order {@link LuaUtils} used to, so the first module of a name still wins.
+ * Model deltas then only mark added and removed source modules, they are applied at next lookup. Changes of folders, fragments or build path
+ * drop the index, and changes of a name several modules share make it built again.
+ * 
+ * Lookups are made under the lock of the index, so they never see the maps while changes are applied or while it is built again. Only the
+ * listener records changes without lock.
+ */
+public final class LuaModuleIndex {
+	/** Indexes by project, only added and removed source modules are recorded */
+	private static final LuaProjectCache<LuaModuleIndex> INDEXES = new LuaProjectCache<LuaModuleIndex>() {
+		@Override
+		protected LuaModuleIndex create(final IScriptProject project) {
+			return new LuaModuleIndex(project);
+		}
+
+		@Override
+		protected void moduleChanged(final IScriptProject project, final LuaModuleIndex index, final ISourceModule module, final int kind) {
+			if (kind != IModelElementDelta.CHANGED) {
+				index.changedModules.put(module, kind == IModelElementDelta.REMOVED);
+			}
+		}
+	};
+
+	private final IScriptProject project;
+	private final Map<String, ISourceModule> modulesByName = new HashMap<String, ISourceModule>();
+	/** Keys are {@link File}s for local locations, so they are compared as the file system does */
+	private final Map<Object, ISourceModule> modulesByLocation = new HashMap<Object, ISourceModule>();
+	/** Keys of each indexed module, to remove them */
+	private final Map<ISourceModule, Key> keys = new HashMap<ISourceModule, Key>();
+	/** Names or locations of several modules, only the first one is indexed */
+	private final Set<Object> shared = new HashSet<Object>();
+	/** Modules added or removed since last lookup, with <code>true</code> when they were removed */
+	private final Map<ISourceModule, Boolean> changedModules = new ConcurrentHashMap<ISourceModule, Boolean>();
+	private boolean built = false;
+
+	/** Name and location of an indexed module */
+	private static final class Key {
+		private final String name;
+		private final Object location;
+
+		private Key(final String name, final Object location) {
+			this.name = name;
+			this.location = location;
+		}
+	}
+
+	private LuaModuleIndex(final IScriptProject project) {
+		this.project = project;
+	}
+
+	/**
+	 * @return indexes of all projects, to be registered by plug-in activator
+	 */
+	public static LuaProjectCache<?> getIndexes() {
+		return INDEXES;
+	}
+
+	/**
+	 * @return index of given project, built at first lookup
+	 */
+	static LuaModuleIndex getIndex(final IScriptProject project) {
+		return INDEXES.get(project);
+	}
+
+	/**
+	 * @param name
+	 *            full name of module with dot syntax
+	 * @return first module of project with this name, <code>null</code> when there is none
+	 * @throws ModelException
+	 *             when project can not be browsed to build index
+	 */
+	synchronized ISourceModule getModule(final String name) throws ModelException {
+		update();
+		return modulesByName.get(name);
+	}
+
+	/**
+	 * @param location
+	 *            absolute location of module
+	 * @return first module of project at this location, <code>null</code> when there is none
+	 * @throws ModelException
+	 *             when project can not be browsed to build index
+	 */
+	synchronized ISourceModule getModule(final URI location) throws ModelException {
+		update();
+		return modulesByLocation.get(toKey(location));
+	}
+
+	/**
+	 * Builds index when needed and applies changes since last lookup, caller holds the lock of the index.
+	 */
+	private void update() throws ModelException {
+		if (built) {
+			for (final ISourceModule module : changedModules.keySet()) {
+				final Boolean removed = changedModules.remove(module);
+				if (removed != null && !apply(module, removed)) {
+					// Another module may now be the first one of a name
+					built = false;
+					break;
+				}
+			}
+		}
+		if (!built) {
+			changedModules.clear();
+			modulesByName.clear();
+			modulesByLocation.clear();
+			keys.clear();
+			shared.clear();
+			for (final IProjectFragment fragment : project.getAllProjectFragments()) {
+				index(fragment);
+			}
+			built = true;
+		}
+	}
+
+	/**
+	 * @return <code>false</code> when index has to be built again
+	 */
+	private boolean apply(final ISourceModule module, final boolean removed) {
+		final Key key = keys.remove(module);
+		if (key != null) {
+			if (shared.contains(key.name) || shared.contains(key.location)) {
+				return false;
+			}
+			modulesByName.remove(key.name);
+			if (key.location != null) {
+				modulesByLocation.remove(key.location);
+			}
+		}
+		if (!removed && module.exists() && project.isOnBuildpath(module)) {
+			final String name = LuaUtils.getModuleFullName(module);
+			final Object location = toKey(LuaUtils.getModuleAbsolutePath(module));
+			if (modulesByName.containsKey(name) || (location != null && modulesByLocation.containsKey(location))) {
+				return false;
+			}
+			add(module, name, location);
+		}
+		return true;
+	}
+
+	private void index(final IParent parent) throws ModelException {
+		for (final IModelElement child : parent.getChildren()) {
+			if (child instanceof ISourceModule) {
+				final ISourceModule module = (ISourceModule) child;
+				final String name = LuaUtils.getModuleFullName(module);
+				final Object location = toKey(LuaUtils.getModuleAbsolutePath(module));
+				if (modulesByName.containsKey(name)) {
+					shared.add(name);
+				}
+				if (location != null && modulesByLocation.containsKey(location)) {
+					shared.add(location);
+				}
+				add(module, name, location);
+			} else if (child instanceof IParent) {
+				index((IParent) child);
+			}
+		}
+	}
+
+	private void add(final ISourceModule module, final String name, final Object location) {
+		if (!modulesByName.containsKey(name)) {
+			modulesByName.put(name, module);
+		}
+		if (location != null && !modulesByLocation.containsKey(location)) {
+			modulesByLocation.put(location, module);
+		}
+		keys.put(module, new Key(name, location));
+	}
+
+	private static Object toKey(final URI location) {
+		if (location == null) {
+			return null;
+		}
+		final File file = URIUtil.toFile(location);
+		return file != null ? file : location;
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ElementChangedEvent;
+import org.eclipse.dltk.core.IElementChangedListener;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ISourceModule;
+
+/**
+ * Values computed for each project from its source modules, such as indexes, kept up to date with model deltas.
+ * 
+ * Each added, removed or changed source module is given to the values of all projects, as a module can be available to other projects through
+ * their build path. Changes of folders, fragments or build path drop all values: module names depend on them, so rather than finding which values
+ * are affected, they are created again when needed.
+ * 
+ * Deltas are received between {@link #register()} and {@link #unregister()}, called by the activator of the plug-in owning the values.
+ * 
+ * @param <T>
+ *            type of values
+ */
+public abstract class LuaProjectCache<T> implements IElementChangedListener {
+	/** Values by project */
+	private final Map<IScriptProject, T> values = new ConcurrentHashMap<IScriptProject, T>();
+
+	/**
+	 * @return value of given project, created at first request
+	 */
+	public T get(final IScriptProject project) {
+		T value = values.get(project);
+		if (value == null) {
+			synchronized (values) {
+				value = values.get(project);
+				if (value == null) {
+					value = create(project);
+					values.put(project, value);
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return values of all projects, modified by concurrent changes without failure
+	 */
+	public Iterable<T> values() {
+		return values.values();
+	}
+
+	/**
+	 * Drops values of all projects, they are created again when needed.
+	 */
+	public void clear() {
+		values.clear();
+	}
+
+	/**
+	 * Starts following model deltas.
+	 */
+	public void register() {
+		DLTKCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+	}
+
+	/**
+	 * Stops following model deltas, values are dropped as they would not be kept up to date anymore.
+	 */
+	public void unregister() {
+		DLTKCore.removeElementChangedListener(this);
+		clear();
+	}
+
+	/**
+	 * @param project
+	 *            a project
+	 * @return new value of given project
+	 */
+	protected abstract T create(IScriptProject project);
+
+	/**
+	 * Notifies value of a project that a source module changed.
+	 * 
+	 * @param project
+	 *            project of value
+	 * @param value
+	 *            value to update
+	 * @param module
+	 *            changed source module, of this project or another one
+	 * @param kind
+	 *            kind of change, as defined by {@link IModelElementDelta#getKind()}
+	 */
+	protected abstract void moduleChanged(IScriptProject project, T value, ISourceModule module, int kind);
+
+	@Override
+	public void elementChanged(final ElementChangedEvent event) {
+		processDelta(event.getDelta());
+	}
+
+	private void processDelta(final IModelElementDelta delta) {
+		final IModelElement element = delta.getElement();
+		final int flags = delta.getFlags();
+		if (element.getElementType() == IModelElement.SOURCE_MODULE) {
+			for (final Map.Entry<IScriptProject, T> entry : values.entrySet()) {
+				moduleChanged(entry.getKey(), entry.getValue(), (ISourceModule) element, delta.getKind());
+			}
+			return;
+		}
+		if (element.getElementType() <= IModelElement.SCRIPT_FOLDER
+				&& (delta.getKind() != IModelElementDelta.CHANGED || (flags & (IModelElementDelta.F_BUILDPATH_CHANGED
+						| IModelElementDelta.F_ADDED_TO_BUILDPATH | IModelElementDelta.F_REMOVED_FROM_BUILDPATH | IModelElementDelta.F_CLOSED
+						| IModelElementDelta.F_OPENED)) != 0)) {
+			clear();
+			return;
+		}
+		if ((flags & IModelElementDelta.F_CHILDREN) != 0) {
+			for (final IModelElementDelta child : delta.getAffectedChildren()) {
+				processDelta(child);
+			}
+		}
+	}
+}
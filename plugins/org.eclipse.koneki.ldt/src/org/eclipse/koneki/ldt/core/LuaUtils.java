@@ -13,12 +13,9 @@ package org.eclipse.koneki.ldt.core;
 import java.net.URI;
 import java.net.URISyntaxException;
 
-import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.dltk.compiler.env.IModuleSource;
 import org.eclipse.dltk.core.IExternalSourceModule;
 import org.eclipse.dltk.core.IModelElement;
-import org.eclipse.dltk.core.IParent;
-import org.eclipse.dltk.core.IProjectFragment;
 import org.eclipse.dltk.core.IScriptFolder;
 import org.eclipse.dltk.core.IScriptProject;
 import org.eclipse.dltk.core.ISourceModule;
@@ -102,41 +99,9 @@ public final class LuaUtils {
 	 * @return the {@link IModuleSource} from full name with module dot syntax
 	 */
 	public static IModuleSource getModuleSource(String name, IScriptProject project) {
-		if (project == null && name == null || name.isEmpty())
-			return null;
-
-		// search in all source path.
-		IProjectFragment[] allProjectFragments;
-		try {
-			allProjectFragments = project.getAllProjectFragments();
-			for (IProjectFragment projectFragment : allProjectFragments) {
-				IModuleSource moduleSource = getModuleSource(name, projectFragment);
-				if (moduleSource != null)
-					return moduleSource;
-			}
-		} catch (ModelException e) {
-			Activator.logError("unable to find module :" + name, e); //$NON-NLS-1$
-			return null;
-		}
-		return null;
-	}
-
-	/**
-	 * @return the {@link IModuleSource} from full name with module dot syntax
-	 */
-	private static IModuleSource getModuleSource(String name, IParent parent) throws ModelException {
-		IModelElement[] children = parent.getChildren();
-		for (IModelElement child : children) {
-			if (child instanceof IModuleSource) {
-				if (name.equals(getModuleFullName((IModuleSource) child))) {
-					return (IModuleSource) child;
-				}
-			} else if (child instanceof IParent) {
-				IModuleSource moduleSource = getModuleSource(name, (IParent) child);
-				if (moduleSource != null)
-					return moduleSource;
-			}
-
+		ISourceModule sourceModule = getSourceModule(name, project);
+		if (sourceModule instanceof IModuleSource) {
+			return (IModuleSource) sourceModule;
 		}
 		return null;
 	}
@@ -145,11 +110,16 @@ public final class LuaUtils {
 	 * @return the {@link ISourceModule} from full name with module dot syntax
 	 */
 	public static ISourceModule getSourceModule(String name, IScriptProject project) {
-		IModuleSource moduleSource = getModuleSource(name, project);
-		if (moduleSource instanceof ISourceModule) {
-			return (ISourceModule) moduleSource;
+		if (project == null || name == null || name.isEmpty())
+			return null;
+
+		// search in all source path, through the module index of project
+		try {
+			return LuaModuleIndex.getIndex(project).getModule(name);
+		} catch (ModelException e) {
+			Activator.logError("unable to find module :" + name, e); //$NON-NLS-1$
+			return null;
 		}
-		return null;
 	}
 
 	/**
@@ -173,40 +143,13 @@ public final class LuaUtils {
 		if (project == null || absolutepath == null)
 			return null;
 
-		// search in all source path.
-		IProjectFragment[] allProjectFragments;
+		// search in all source path, through the module index of project
 		try {
-			allProjectFragments = project.getAllProjectFragments();
-			for (IProjectFragment projectFragment : allProjectFragments) {
-				ISourceModule moduleSource = getSourceModuleFromAbsolutePath(absolutepath, projectFragment);
-				if (moduleSource != null)
-					return moduleSource;
-			}
+			return LuaModuleIndex.getIndex(project).getModule(absolutepath);
 		} catch (ModelException e) {
 			Activator.logError("unable to find module :" + absolutepath, e); //$NON-NLS-1$
 			return null;
 		}
-		return null;
-	}
-
-	/**
-	 * @return the {@link ISourceModule} from Absolute local file URI and a parent
-	 */
-	private static ISourceModule getSourceModuleFromAbsolutePath(URI absolutepath, IParent parent) throws ModelException {
-		IModelElement[] children = parent.getChildren();
-		for (IModelElement child : children) {
-			if (child instanceof ISourceModule) {
-				if (URIUtil.sameURI(absolutepath, getModuleAbsolutePath((ISourceModule) child))) {
-					return (ISourceModule) child;
-				}
-			} else if (child instanceof IParent) {
-				ISourceModule moduleSource = getSourceModuleFromAbsolutePath(absolutepath, (IParent) child);
-				if (moduleSource != null)
-					return moduleSource;
-			}
-
-		}
-		return null;
 	}
 
 	/**
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.tests;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.IBuildpathEntry;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.koneki.ldt.core.LuaNature;
+import org.eclipse.koneki.ldt.core.LuaUtils;
+
+/**
+ * Checks modules found by name and by location in a project with two source folders, as files are added and removed.
+ */
+public class TestLuaModuleIndex extends TestCase {
+
+	private static final String PROJECT_NAME = "TestLuaModuleIndex"; //$NON-NLS-1$
+
+	private IProject project;
+	private IScriptProject scriptProject;
+	/** Source folder listed first in build path, its modules win over the ones of {@link #second} */
+	private IFolder first;
+	private IFolder second;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject(PROJECT_NAME);
+		project.create(null);
+		project.open(null);
+		final IProjectDescription description = project.getDescription();
+		description.setNatureIds(new String[] { LuaNature.LUA_NATURE });
+		project.setDescription(description, null);
+		first = project.getFolder("first"); //$NON-NLS-1$
+		first.create(true, true, null);
+		second = project.getFolder("second"); //$NON-NLS-1$
+		second.create(true, true, null);
+		scriptProject = DLTKCore.create(project);
+		scriptProject.setRawBuildpath(new IBuildpathEntry[] { DLTKCore.newSourceEntry(first.getFullPath()),
+				DLTKCore.newSourceEntry(second.getFullPath()) }, null);
+		createFile(first, "shared.lua"); //$NON-NLS-1$
+		createFile(second, "shared.lua"); //$NON-NLS-1$
+		createFile(second, "other.lua"); //$NON-NLS-1$
+		final IFolder folder = first.getFolder("pkg"); //$NON-NLS-1$
+		folder.create(true, true, null);
+		createFile(folder, "mod.lua"); //$NON-NLS-1$
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		project.delete(true, true, null);
+		super.tearDown();
+	}
+
+	private static IFile createFile(final IFolder folder, final String name) throws CoreException {
+		final IFile file = folder.getFile(name);
+		file.create(new ByteArrayInputStream("return {}\n".getBytes()), true, null); //$NON-NLS-1$
+		return file;
+	}
+
+	/** Asserts that module found by name is the one of given file, <code>null</code> when no module should be found */
+	private void assertModule(final String name, final IFile expected) {
+		final ISourceModule module = LuaUtils.getSourceModule(name, scriptProject);
+		if (expected == null) {
+			assertNull("No module expected for " + name, module); //$NON-NLS-1$
+		} else {
+			assertNotNull("Module expected for " + name, module); //$NON-NLS-1$
+			assertEquals("Wrong module for " + name, expected, module.getResource()); //$NON-NLS-1$
+		}
+	}
+
+	public void testFirstFragmentWins() {
+		assertModule("shared", first.getFile("shared.lua")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertModule("other", second.getFile("other.lua")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertModule("pkg.mod", first.getFolder("pkg").getFile("mod.lua")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertModule("missing", null); //$NON-NLS-1$
+	}
+
+	public void testLookupByLocation() {
+		// Location of a module hidden by name still leads to it
+		final IFile hidden = second.getFile("shared.lua"); //$NON-NLS-1$
+		final ISourceModule module = LuaUtils.getSourceModuleFromAbsoluteURI(hidden.getLocationURI(), scriptProject);
+		assertNotNull("Module expected at " + hidden.getLocationURI(), module); //$NON-NLS-1$
+		assertEquals(hidden, module.getResource());
+		assertNull(LuaUtils.getSourceModuleFromAbsoluteURI(project.getFile("none.lua").getLocationURI(), scriptProject)); //$NON-NLS-1$
+	}
+
+	public void testAddedModule() throws Exception {
+		// Index is built before module is added
+		assertModule("added", null); //$NON-NLS-1$
+		final IFile added = createFile(second, "added.lua"); //$NON-NLS-1$
+		assertModule("added", added); //$NON-NLS-1$
+		assertEquals(added, LuaUtils.getSourceModuleFromAbsoluteURI(added.getLocationURI(), scriptProject).getResource());
+	}
+
+	public void testAddedModuleHidingAnother() throws Exception {
+		assertModule("other", second.getFile("other.lua")); //$NON-NLS-1$ //$NON-NLS-2$
+		// A module of first fragment takes precedence over the one already indexed
+		final IFile added = createFile(first, "other.lua"); //$NON-NLS-1$
+		assertModule("other", added); //$NON-NLS-1$
+	}
+
+	public void testRemovedModule() throws Exception {
+		final IFile other = second.getFile("other.lua"); //$NON-NLS-1$
+		assertModule("other", other); //$NON-NLS-1$
+		other.delete(true, null);
+		assertModule("other", null); //$NON-NLS-1$
+		assertNull(LuaUtils.getSourceModuleFromAbsoluteURI(other.getLocationURI(), scriptProject));
+	}
+
+	public void testRemovedSharedName() throws Exception {
+		assertModule("shared", first.getFile("shared.lua")); //$NON-NLS-1$ //$NON-NLS-2$
+		// Module of second fragment is the first one of this name now
+		first.getFile("shared.lua").delete(true, null); //$NON-NLS-1$
+		assertModule("shared", second.getFile("shared.lua")); //$NON-NLS-1$ //$NON-NLS-2$
+		second.getFile("shared.lua").delete(true, null); //$NON-NLS-1$
+		assertModule("shared", null); //$NON-NLS-1$
+	}
+
+	public void testRemovedFolder() throws Exception {
+		assertModule("pkg.mod", first.getFolder("pkg").getFile("mod.lua")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		first.getFolder("pkg").delete(true, null); //$NON-NLS-1$
+		assertModule("pkg.mod", null); //$NON-NLS-1$
+		assertModule("shared", first.getFile("shared.lua")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
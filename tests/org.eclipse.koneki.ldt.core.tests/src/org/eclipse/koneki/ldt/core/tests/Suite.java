@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests;
+
+import junit.framework.TestSuite;
+
+import org.eclipse.koneki.ldt.core.internal.tests.TestLuaModuleIndex;
+
+public class Suite extends TestSuite {
+
+	/** Registers all tests to run */
+	public Suite() {
+		super();
+		setName("Lua core"); //$NON-NLS-1$
+		addTestSuite(TestLuaModuleIndex.class);
+	}
+}
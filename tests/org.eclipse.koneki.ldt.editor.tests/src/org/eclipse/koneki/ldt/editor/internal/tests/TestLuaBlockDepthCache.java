@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.internal.tests;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.koneki.ldt.editor.formatter.LuaBlockDepthCache;
+import org.eclipse.koneki.ldt.editor.formatter.LuaBlockScanner;
+
+/**
+ * Checks that lines provided by {@link LuaBlockDepthCache} while a document is edited are the ones of a scan of the whole document.
+ */
+public class TestLuaBlockDepthCache extends TestCase {
+
+	private static final String SOURCE = "local t = {\n" //$NON-NLS-1$
+			+ "a = 1,\n" //$NON-NLS-1$
+			+ "b = { 2, 3 },\n" //$NON-NLS-1$
+			+ "}\n" //$NON-NLS-1$
+			+ "function f(p)\n" //$NON-NLS-1$
+			+ "if p then\n" //$NON-NLS-1$
+			+ "return [[long\n" //$NON-NLS-1$
+			+ "string]]\n" //$NON-NLS-1$
+			+ "else\n" //$NON-NLS-1$
+			+ "repeat\n" //$NON-NLS-1$
+			+ "p = p - 1\n" //$NON-NLS-1$
+			+ "until p < 0\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "local s = 'end'\n"; //$NON-NLS-1$
+
+	/** Snippets inserted by random edits, opening or closing constructs */
+	private static final String[] SNIPPETS = { "do ", "end", "\n", "function g()\n", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			"{", "}", "(", ")", "--[[", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"]]", "'", "x = 1\n", "then\n", "\nend\n" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+	/**
+	 * Checks all lines of document against a scan of the whole document
+	 */
+	private static void assertSameLines(final IDocument document) throws Exception {
+		final LuaBlockScanner scanner = new LuaBlockScanner(document.get());
+		assertEquals("Wrong line count.", scanner.getLineCount(), document.getNumberOfLines()); //$NON-NLS-1$
+		final LuaBlockDepthCache cache = LuaBlockDepthCache.forDocument(document);
+		for (int line = 0; line < document.getNumberOfLines(); line++) {
+			assertSameLine(scanner, cache, document, line);
+		}
+	}
+
+	private static void assertSameLine(final LuaBlockScanner scanner, final LuaBlockDepthCache cache, final IDocument document, final int line)
+			throws Exception {
+		final LuaBlockScanner.Line expected = scanner.getLine(line);
+		final LuaBlockScanner.Line actual = cache.getLine(document, line);
+		final String message = "Wrong state of line " + line + " in:\n" + document.get(); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(message, expected.getStart(), actual.getStart());
+		assertEquals(message, expected.getNext(), actual.getNext());
+		assertEquals(message, expected.getIndentationBlockDepth(), actual.getIndentationBlockDepth());
+		assertEquals(message, expected.getIndentationTableDepth(), actual.getIndentationTableDepth());
+	}
+
+	public void testInitialLines() throws Exception {
+		assertSameLines(new Document(SOURCE));
+	}
+
+	public void testInsertInLine() throws Exception {
+		final Document document = new Document(SOURCE);
+		LuaBlockDepthCache.forDocument(document).getLine(document, document.getNumberOfLines() - 1);
+		// Opens a block on first line, all following depths change
+		document.replace(document.getLineOffset(0), 0, "do "); //$NON-NLS-1$
+		assertSameLines(document);
+		// Only this line changes
+		document.replace(document.getLineOffset(10), 0, "local q = "); //$NON-NLS-1$
+		assertSameLines(document);
+	}
+
+	public void testInsertLines() throws Exception {
+		final Document document = new Document(SOURCE);
+		assertSameLines(document);
+		document.replace(document.getLineOffset(5), 0, "while p do\nlocal t = {\n"); //$NON-NLS-1$
+		assertSameLines(document);
+		document.replace(document.getLineOffset(7), 0, "}\nend\n"); //$NON-NLS-1$
+		assertSameLines(document);
+	}
+
+	public void testDeleteLines() throws Exception {
+		final Document document = new Document(SOURCE);
+		assertSameLines(document);
+		// Removes end of function
+		document.replace(document.getLineOffset(12), document.getLineLength(12) + document.getLineLength(13), ""); //$NON-NLS-1$
+		assertSameLines(document);
+		// Removes end of long string
+		document.replace(document.getLineOffset(7), document.getLineLength(7), ""); //$NON-NLS-1$
+		assertSameLines(document);
+	}
+
+	public void testMultilineReplace() throws Exception {
+		final Document document = new Document(SOURCE);
+		assertSameLines(document);
+		// Replaces the end of a line, two whole lines and the start of another one
+		final int offset = document.getLineOffset(5) + 4;
+		final int end = document.getLineOffset(8) + 2;
+		document.replace(offset, end - offset, "true do\n--[[\ncomment]] if x then\nel"); //$NON-NLS-1$
+		assertSameLines(document);
+	}
+
+	public void testEditsWithoutRequests() throws Exception {
+		final Document document = new Document(SOURCE);
+		assertSameLines(document);
+		// Several changes before lines are requested again, the later one before the earlier one
+		document.replace(document.getLineOffset(9), 0, "do\n"); //$NON-NLS-1$
+		document.replace(document.getLineOffset(2), 0, "{\n"); //$NON-NLS-1$
+		document.replace(document.getLineOffset(12), 0, "}end\n"); //$NON-NLS-1$
+		assertSameLines(document);
+	}
+
+	public void testRequestBeforeChange() throws Exception {
+		final Document document = new Document(SOURCE);
+		final LuaBlockDepthCache cache = LuaBlockDepthCache.forDocument(document);
+		cache.getLine(document, 3);
+		document.replace(document.getLineOffset(8), 0, "do\n"); //$NON-NLS-1$
+		// Lines before change are still up to date
+		assertSameLine(new LuaBlockScanner(document.get()), cache, document, 3);
+		assertSameLines(document);
+	}
+
+	public void testRandomEdits() throws Exception {
+		final Random random = new Random(0);
+		final Document document = new Document(SOURCE);
+		final LuaBlockDepthCache cache = LuaBlockDepthCache.forDocument(document);
+		for (int i = 0; i < 300; i++) {
+			final int offset = random.nextInt(document.getLength() + 1);
+			final int length = random.nextInt(4) == 0 ? Math.min(random.nextInt(20), document.getLength() - offset) : 0;
+			document.replace(offset, length, SNIPPETS[random.nextInt(SNIPPETS.length)]);
+			// Request a single line most of the time, leaving following ones outdated
+			final LuaBlockScanner scanner = new LuaBlockScanner(document.get());
+			assertSameLine(scanner, cache, document, random.nextInt(document.getNumberOfLines()));
+			if (i % 10 == 0) {
+				assertSameLines(document);
+			}
+		}
+		assertSameLines(document);
+	}
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.internal.tests;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.editor.formatter.LuaBlockScanner;
+
+/**
+ * Checks block depths computed by {@link LuaBlockScanner} and regions of lines it formats apart.
+ */
+public class TestLuaBlockScanner extends TestCase {
+
+	private static final String FUNCTION = "function f()\n" //$NON-NLS-1$
+			+ "local a = 1\n" //$NON-NLS-1$
+			+ "if a then\n" //$NON-NLS-1$
+			+ "return a\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "end\n"; //$NON-NLS-1$
+
+	private static final String TABLE = "local t = {\n" //$NON-NLS-1$
+			+ "1,\n" //$NON-NLS-1$
+			+ "2\n" //$NON-NLS-1$
+			+ "}\n" //$NON-NLS-1$
+			+ "local u = t\n"; //$NON-NLS-1$
+
+	public void testLines() {
+		final LuaBlockScanner scanner = new LuaBlockScanner(FUNCTION);
+		assertEquals("Empty last line should be counted.", 7, scanner.getLineCount()); //$NON-NLS-1$
+		assertEquals("Wrong line of first offset.", 0, scanner.getLineOfOffset(0)); //$NON-NLS-1$
+		assertEquals("Wrong line of delimiter.", 0, scanner.getLineOfOffset(FUNCTION.indexOf('\n'))); //$NON-NLS-1$
+		assertEquals("Wrong line of line start.", 1, scanner.getLineOfOffset(FUNCTION.indexOf('\n') + 1)); //$NON-NLS-1$
+		assertEquals("Text end should belong to last line.", 6, scanner.getLineOfOffset(FUNCTION.length())); //$NON-NLS-1$
+		assertEquals("Wrong line end.", FUNCTION.indexOf("local"), scanner.getLineEnd(0)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testBlockDepths() {
+		final LuaBlockScanner scanner = new LuaBlockScanner(FUNCTION);
+		final int[] depths = { 0, 1, 1, 2, 2, 1, 0 };
+		for (int line = 0; line < depths.length; line++) {
+			assertEquals("Wrong block depth at line " + line, depths[line], scanner.getLine(line).getBlockDepth()); //$NON-NLS-1$
+		}
+		assertEquals("Closing line should lower depth.", 1, scanner.getLine(4).getMinBlockDepth()); //$NON-NLS-1$
+	}
+
+	public void testNumberAtSourceStart() {
+		assertEquals(1, new LuaBlockScanner("1").getLineCount()); //$NON-NLS-1$
+		assertEquals(1, new LuaBlockScanner(".5").getLineCount()); //$NON-NLS-1$
+		final LuaBlockScanner scanner = new LuaBlockScanner("0x1p+4 do\nend"); //$NON-NLS-1$
+		assertEquals("Hexadecimal exponent should be part of number.", 1, scanner.getLine(1).getBlockDepth()); //$NON-NLS-1$
+	}
+
+	public void testNumberExponent() {
+		final LuaBlockScanner scanner = new LuaBlockScanner("local a = 1e-3 - 2\nlocal b = 0xe-1\n"); //$NON-NLS-1$
+		assertTrue("Statement should end with number.", scanner.getLine(1).isBoundary()); //$NON-NLS-1$
+		assertTrue("Statement should end with number.", scanner.getLine(2).isBoundary()); //$NON-NLS-1$
+	}
+
+	public void testRegionOfSingleStatement() {
+		final LuaBlockScanner.Region region = new LuaBlockScanner(FUNCTION).getEnclosingRegion(3, 3);
+		assertEquals("Wrong first line.", 3, region.getFirstLine()); //$NON-NLS-1$
+		assertEquals("Wrong last line.", 3, region.getLastLine()); //$NON-NLS-1$
+		assertEquals("Wrong region depth.", 2, region.getBlockDepth()); //$NON-NLS-1$
+	}
+
+	public void testRegionExtendedToWholeStatement() {
+		final LuaBlockScanner.Region region = new LuaBlockScanner(TABLE).getEnclosingRegion(1, 2);
+		assertEquals("Wrong first line.", 0, region.getFirstLine()); //$NON-NLS-1$
+		assertEquals("Wrong last line.", 3, region.getLastLine()); //$NON-NLS-1$
+		assertEquals("Wrong region depth.", 0, region.getBlockDepth()); //$NON-NLS-1$
+		assertEquals("Wrong region table depth.", 0, region.getTableDepth()); //$NON-NLS-1$
+	}
+
+	public void testRegionExtendedToClosedBlock() {
+		// Selected end belongs to if statement
+		final LuaBlockScanner.Region region = new LuaBlockScanner(FUNCTION).getEnclosingRegion(4, 4);
+		assertEquals("Wrong first line.", 2, region.getFirstLine()); //$NON-NLS-1$
+		assertEquals("Wrong last line.", 4, region.getLastLine()); //$NON-NLS-1$
+		assertEquals("Wrong region depth.", 1, region.getBlockDepth()); //$NON-NLS-1$
+	}
+
+	public void testRegionAcrossBlocks() {
+		// From inside the if block to the function body
+		final LuaBlockScanner.Region region = new LuaBlockScanner(FUNCTION).getEnclosingRegion(1, 3);
+		assertEquals("Wrong first line.", 1, region.getFirstLine()); //$NON-NLS-1$
+		assertEquals("Wrong last line.", 4, region.getLastLine()); //$NON-NLS-1$
+		assertEquals("Wrong region depth.", 1, region.getBlockDepth()); //$NON-NLS-1$
+	}
+
+	public void testRegionOfWholeSource() {
+		final LuaBlockScanner scanner = new LuaBlockScanner(FUNCTION);
+		final LuaBlockScanner.Region region = scanner.getEnclosingRegion(0, scanner.getLineCount() - 1);
+		assertEquals("Wrong first line.", 0, region.getFirstLine()); //$NON-NLS-1$
+		assertEquals("Wrong last line.", scanner.getLineCount() - 1, region.getLastLine()); //$NON-NLS-1$
+		assertEquals("Wrong region depth.", 0, region.getBlockDepth()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Checks depth of first token of each line, and whether a statement can start at each line
+	 */
+	private static void assertIndentation(final String source, final int[] blockDepths, final int[] tableDepths, final boolean[] boundaries) {
+		final LuaBlockScanner scanner = new LuaBlockScanner(source);
+		for (int line = 0; line < blockDepths.length; line++) {
+			final LuaBlockScanner.Line scanned = scanner.getLine(line);
+			assertEquals("Wrong block depth of line " + line, blockDepths[line], scanned.getIndentationBlockDepth()); //$NON-NLS-1$
+			assertEquals("Wrong table depth of line " + line, tableDepths[line], scanned.getIndentationTableDepth()); //$NON-NLS-1$
+			assertEquals("Wrong boundary at line " + line, boundaries[line], scanned.isBoundary()); //$NON-NLS-1$
+		}
+	}
+
+	public void testIfElseIfElse() {
+		final String source = "if a then\n" //$NON-NLS-1$
+				+ "b()\n" //$NON-NLS-1$
+				+ "elseif c then\n" //$NON-NLS-1$
+				+ "d()\n" //$NON-NLS-1$
+				+ "else\n" //$NON-NLS-1$
+				+ "e()\n" //$NON-NLS-1$
+				+ "end\n"; //$NON-NLS-1$
+		assertIndentation(source, new int[] { 0, 1, 0, 1, 0, 1, 0, 0 }, new int[8], new boolean[] { true, true, true, true, true, true, true,
+				true });
+		final LuaBlockScanner scanner = new LuaBlockScanner(source);
+		assertEquals("Branch should close previous one.", 0, scanner.getLine(2).getMinBlockDepth()); //$NON-NLS-1$
+		assertEquals("Branch should close previous one.", 0, scanner.getLine(4).getMinBlockDepth()); //$NON-NLS-1$
+		final LuaBlockScanner.Region region = scanner.getEnclosingRegion(4, 4);
+		assertEquals("Branch should extend region to whole if statement.", 0, region.getFirstLine()); //$NON-NLS-1$
+		assertEquals("Branch should extend region to whole if statement.", 6, region.getLastLine()); //$NON-NLS-1$
+	}
+
+	public void testRepeatUntil() {
+		final String source = "repeat\n" //$NON-NLS-1$
+				+ "x = x + 1\n" //$NON-NLS-1$
+				+ "until x > 10 and\n" //$NON-NLS-1$
+				+ "y\n" //$NON-NLS-1$
+				+ "f()\n"; //$NON-NLS-1$
+		// Condition goes on after until
+		assertIndentation(source, new int[] { 0, 1, 0, 0, 0 }, new int[5], new boolean[] { true, true, true, false, true });
+	}
+
+	public void testLongStringsAndComments() {
+		final String source = "local s = [==[\n" //$NON-NLS-1$
+				+ "end ]] do\n" //$NON-NLS-1$
+				+ "]==] do\n" //$NON-NLS-1$
+				+ "--[[ function\n" //$NON-NLS-1$
+				+ "]] end -- do\n" //$NON-NLS-1$
+				+ "local t = 'end' .. \"do\" do\n" //$NON-NLS-1$
+				+ "end\n"; //$NON-NLS-1$
+		final LuaBlockScanner scanner = new LuaBlockScanner(source);
+		final int[] depths = { 0, 0, 0, 1, 1, 0, 1, 0 };
+		for (int line = 0; line < depths.length; line++) {
+			assertEquals("Wrong block depth at line " + line, depths[line], scanner.getLine(line).getBlockDepth()); //$NON-NLS-1$
+		}
+		assertFalse("Line should continue long string.", scanner.getLine(1).isBoundary()); //$NON-NLS-1$
+		assertFalse("Line should continue long string.", scanner.getLine(2).isBoundary()); //$NON-NLS-1$
+		assertTrue("Statement should start after long string.", scanner.getLine(3).isBoundary()); //$NON-NLS-1$
+		assertFalse("Line should continue long comment.", scanner.getLine(4).isBoundary()); //$NON-NLS-1$
+		assertTrue("Statement should start after long comment.", scanner.getLine(5).isBoundary()); //$NON-NLS-1$
+	}
+
+	public void testNestedTables() {
+		final String source = "local t = {\n" //$NON-NLS-1$
+				+ "a = {\n" //$NON-NLS-1$
+				+ "1,\n" //$NON-NLS-1$
+				+ "},\n" //$NON-NLS-1$
+				+ "}\n"; //$NON-NLS-1$
+		// A leading closing brace belongs to enclosing constructor
+		assertIndentation(source, new int[5], new int[] { 0, 1, 2, 1, 0 }, new boolean[] { true, false, false, false, false });
+		final LuaBlockScanner scanner = new LuaBlockScanner(source);
+		assertEquals("Wrong table depth at line start.", 2, scanner.getLine(3).getTableDepth()); //$NON-NLS-1$
+		assertTrue("Statement should start after table.", scanner.getLine(5).isBoundary()); //$NON-NLS-1$
+	}
+
+	public void testFunctionArguments() {
+		final String source = "f(a,\n" //$NON-NLS-1$
+				+ "function()\n" //$NON-NLS-1$
+				+ "return 1\n" //$NON-NLS-1$
+				+ "end)\n" //$NON-NLS-1$
+				+ "g()\n"; //$NON-NLS-1$
+		// Statements of a function body start lines, even inside arguments
+		assertIndentation(source, new int[] { 0, 0, 1, 0, 0 }, new int[5], new boolean[] { true, false, true, true, true });
+		final LuaBlockScanner.Region region = new LuaBlockScanner(source).getEnclosingRegion(2, 2);
+		assertEquals("Function body should be a region.", 2, region.getFirstLine()); //$NON-NLS-1$
+		assertEquals("Function body should be a region.", 2, region.getLastLine()); //$NON-NLS-1$
+		assertEquals("Wrong region depth.", 1, region.getBlockDepth()); //$NON-NLS-1$
+	}
+
+	public void testScanLineFromState() {
+		final LuaBlockScanner scanner = new LuaBlockScanner(FUNCTION);
+		int offset = 0;
+		LuaBlockScanner.State state = LuaBlockScanner.State.INITIAL;
+		for (int line = 0; line < scanner.getLineCount(); line++) {
+			final LuaBlockScanner.Line scanned = LuaBlockScanner.scanLine(FUNCTION, offset, state);
+			assertEquals("Wrong state at end of line " + line, scanner.getLine(line).getNext(), scanned.getNext()); //$NON-NLS-1$
+			offset = scanned.getEnd();
+			state = scanned.getNext();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.internal.tests;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.ui.CodeFormatterConstants;
+import org.eclipse.dltk.ui.formatter.IScriptFormatter;
+import org.eclipse.jface.text.Document;
+import org.eclipse.koneki.ldt.editor.formatter.LuaFormatterFactory;
+import org.eclipse.koneki.ldt.editor.formatter.LuaFormatterPreferenceConstants;
+
+/**
+ * Checks that formatting a range of lines only modifies these lines, at the depth of their statements.
+ */
+public class TestLuaFormatter extends TestCase {
+
+	private static final String FUNCTION = "function f()\n" //$NON-NLS-1$
+			+ "local a = 1\n" //$NON-NLS-1$
+			+ "if a then\n" //$NON-NLS-1$
+			+ "return a\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "end\n"; //$NON-NLS-1$
+
+	private static final String TABLE = "local t = {\n" //$NON-NLS-1$
+			+ "1,\n" //$NON-NLS-1$
+			+ "2\n" //$NON-NLS-1$
+			+ "}\n"; //$NON-NLS-1$
+
+	private static IScriptFormatter newFormatter(final boolean formatTableValues) {
+		final Map<String, String> preferences = new HashMap<String, String>();
+		preferences.put(LuaFormatterPreferenceConstants.FORMATTER_TAB_CHAR, CodeFormatterConstants.TAB);
+		preferences.put(LuaFormatterPreferenceConstants.FORMATTER_TAB_SIZE, "4"); //$NON-NLS-1$
+		preferences.put(LuaFormatterPreferenceConstants.FORMATTER_INDENTATION_SIZE, "4"); //$NON-NLS-1$
+		preferences.put(LuaFormatterPreferenceConstants.FORMATTER_INDENT_TABLE_VALUES, String.valueOf(formatTableValues));
+		return new LuaFormatterFactory().createFormatter("\n", preferences); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return source with lines from <code>first</code> to <code>last</code> formatted
+	 */
+	private static String formatLines(final IScriptFormatter formatter, final String source, final int first, final int last) throws Exception {
+		final Document document = new Document(source);
+		final int offset = document.getLineOffset(first);
+		final int length = document.getLineOffset(last) + document.getLineLength(last) - offset;
+		formatter.format(source, offset, length, 0).apply(document);
+		return document.get();
+	}
+
+	public void testWholeSource() throws Exception {
+		final String expected = "function f()\n" //$NON-NLS-1$
+				+ "\tlocal a = 1\n" //$NON-NLS-1$
+				+ "\tif a then\n" //$NON-NLS-1$
+				+ "\t\treturn a\n" //$NON-NLS-1$
+				+ "\tend\n" //$NON-NLS-1$
+				+ "end\n"; //$NON-NLS-1$
+		final Document document = new Document(FUNCTION);
+		newFormatter(false).format(FUNCTION, 0, FUNCTION.length(), 0).apply(document);
+		assertEquals(expected, document.get());
+	}
+
+	public void testNestedLineAtItsDepth() throws Exception {
+		final String expected = "function f()\n" //$NON-NLS-1$
+				+ "local a = 1\n" //$NON-NLS-1$
+				+ "if a then\n" //$NON-NLS-1$
+				+ "\t\treturn a\n" //$NON-NLS-1$
+				+ "end\n" //$NON-NLS-1$
+				+ "end\n"; //$NON-NLS-1$
+		assertEquals("Only selected line should be indented.", expected, formatLines(newFormatter(false), FUNCTION, 3, 3)); //$NON-NLS-1$
+	}
+
+	public void testClosingLineOnly() throws Exception {
+		final String expected = "function f()\n" //$NON-NLS-1$
+				+ "local a = 1\n" //$NON-NLS-1$
+				+ "if a then\n" //$NON-NLS-1$
+				+ "return a\n" //$NON-NLS-1$
+				+ "\tend\n" //$NON-NLS-1$
+				+ "end\n"; //$NON-NLS-1$
+		// Whole if statement is formatted, but only its last line is modified
+		assertEquals("Only selected line should be indented.", expected, formatLines(newFormatter(false), FUNCTION, 4, 4)); //$NON-NLS-1$
+	}
+
+	public void testLineOfMultilineStatement() throws Exception {
+		final String expected = "local t = {\n" //$NON-NLS-1$
+				+ "\t1,\n" //$NON-NLS-1$
+				+ "2\n" //$NON-NLS-1$
+				+ "}\n"; //$NON-NLS-1$
+		assertEquals("Only selected table value should be indented.", expected, formatLines(newFormatter(true), TABLE, 1, 1)); //$NON-NLS-1$
+	}
+
+	public void testAlreadyFormattedLineUnchanged() throws Exception {
+		final String formatted = "function f()\n" //$NON-NLS-1$
+				+ "\tlocal a = 1\n" //$NON-NLS-1$
+				+ "end\n"; //$NON-NLS-1$
+		final Document document = new Document(formatted);
+		final int offset = document.getLineOffset(1);
+		assertFalse("No edit expected on formatted line.", newFormatter(false).format(formatted, offset, 0, 0).hasChildren()); //$NON-NLS-1$
+	}
+
+	public void testDetectIndentationLevel() throws Exception {
+		final Document document = new Document(FUNCTION);
+		final IScriptFormatter formatter = newFormatter(false);
+		// Level is the count of blocks containing first token of line, a closing end belongs to enclosing block
+		final int[] levels = { 0, 1, 1, 2, 1, 0, 0 };
+		for (int line = 0; line < levels.length; line++) {
+			final int offset = document.getLineOffset(line);
+			assertEquals("Wrong level of line " + line, levels[line], formatter.detectIndentationLevel(document, offset)); //$NON-NLS-1$
+		}
+		// Level follows document changes
+		document.replace(0, 0, "do\n"); //$NON-NLS-1$
+		assertEquals("Level should follow document changes.", 3, formatter.detectIndentationLevel(document, document.getLineOffset(4))); //$NON-NLS-1$
+	}
+
+	public void testDetectIndentationLevelInTable() throws Exception {
+		final Document document = new Document(TABLE);
+		final int value = document.getLineOffset(1);
+		assertEquals("Table values should not be indented.", 0, newFormatter(false).detectIndentationLevel(document, value)); //$NON-NLS-1$
+		assertEquals("Table values should be indented.", 1, newFormatter(true).detectIndentationLevel(document, value)); //$NON-NLS-1$
+		final int closingBrace = document.getLineOffset(3);
+		assertEquals("Closing brace belongs to enclosing level.", 0, newFormatter(true).detectIndentationLevel(document, closingBrace)); //$NON-NLS-1$
+	}
+}
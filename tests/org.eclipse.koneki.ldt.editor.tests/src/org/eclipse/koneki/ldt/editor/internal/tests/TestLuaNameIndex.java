@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.internal.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.editor.internal.completion.LuaNameIndex;
+
+/**
+ * Checks names found by {@link LuaNameIndex} and their ranking.
+ */
+public class TestLuaNameIndex extends TestCase {
+
+	/** Count of proposals completion asks for */
+	private static final int LIMIT = 500;
+
+	private static LuaNameIndex<String> newIndex(final String... names) {
+		final LuaNameIndex<String> index = new LuaNameIndex<String>();
+		for (final String name : names) {
+			index.add(name, name, name);
+		}
+		return index;
+	}
+
+	private static List<String> names(final List<LuaNameIndex.Match<String>> matches) {
+		final List<String> names = new ArrayList<String>();
+		for (final LuaNameIndex.Match<String> match : matches) {
+			names.add(match.getName());
+		}
+		return names;
+	}
+
+	public void testScore() {
+		assertEquals(LuaNameIndex.EXACT, LuaNameIndex.score("print", "print")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(LuaNameIndex.PREFIX, LuaNameIndex.score("printf", "pri")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(LuaNameIndex.PREFIX_IGNORING_CASE, LuaNameIndex.score("Print", "pri")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(LuaNameIndex.INITIALS, LuaNameIndex.score("getConfigValue", "gcv")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(LuaNameIndex.INITIALS, LuaNameIndex.score("get_config_value", "gcv")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(LuaNameIndex.SUBSTRING, LuaNameIndex.score("getConfig", "config")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(LuaNameIndex.SUBSEQUENCE, LuaNameIndex.score("getConfig", "gtcf")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(LuaNameIndex.NONE, LuaNameIndex.score("getConfig", "tcf")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(LuaNameIndex.NONE, LuaNameIndex.score("getConfig", "xyz")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testRanking() {
+		final LuaNameIndex<String> index = newIndex("gatherConfig", "getConfig", "gc", "gc_value", "g_gc", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+				"getc", "graphic", "gcLongerName", "xyz"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		// Exact, then prefix, initials, substring and subsequence matches, shortest first
+		final List<String> expected = Arrays.asList("gc", "gc_value", "gcLongerName", "getConfig", "gatherConfig", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+				"g_gc", "getc", "graphic"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		final List<LuaNameIndex.Match<String>> matches = index.find("gc", LIMIT); //$NON-NLS-1$
+		assertEquals(expected, names(matches));
+		assertEquals(LuaNameIndex.EXACT, matches.get(0).getScore());
+		assertEquals(LuaNameIndex.PREFIX, matches.get(1).getScore());
+		assertEquals(LuaNameIndex.INITIALS, matches.get(3).getScore());
+		assertEquals(LuaNameIndex.SUBSTRING, matches.get(5).getScore());
+		assertEquals(LuaNameIndex.SUBSEQUENCE, matches.get(6).getScore());
+	}
+
+	public void testPrefixIgnoringCase() {
+		final LuaNameIndex<String> index = newIndex("GetConfig", "getConfig", "config"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		final List<String> expected = Arrays.asList("getConfig", "GetConfig"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(expected, names(index.find("getC", LIMIT))); //$NON-NLS-1$
+	}
+
+	public void testSubstringShortestFirst() {
+		final String longest = "config_of_server"; //$NON-NLS-1$
+		final LuaNameIndex<String> index = newIndex("loadConfigFile", "setConfig", "myConfigValue", longest); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		// A name starting with typed text ranks before shorter names containing it
+		final List<String> substrings = Arrays.asList("setConfig", "myConfigValue", "loadConfigFile"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		final List<String> expected = new ArrayList<String>();
+		expected.add(longest);
+		expected.addAll(substrings);
+		assertEquals(expected, names(index.find("config", LIMIT))); //$NON-NLS-1$
+		expected.remove(longest);
+		expected.add(longest);
+		assertEquals(expected, names(index.find("onfig", LIMIT))); //$NON-NLS-1$
+	}
+
+	public void testShortTypedTextSubstring() {
+		final String[] names = { "fill", "config", "profile", "offer", "fx" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		final LuaNameIndex<String> index = newIndex(names);
+		final List<String> found = names(index.find("fi", LIMIT)); //$NON-NLS-1$
+		assertEquals(Arrays.asList("fill", "config", "profile"), found); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		// Same matches as scoring names one by one, as proposals filters do
+		for (final String name : names) {
+			assertEquals("Wrong match of " + name, LuaNameIndex.score(name, "fi") != LuaNameIndex.NONE, found.contains(name)); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	public void testInitialsAfterSeparator() {
+		final LuaNameIndex<String> index = newIndex("_get_config", "other"); //$NON-NLS-1$ //$NON-NLS-2$
+		final List<LuaNameIndex.Match<String>> matches = index.find("gc", LIMIT); //$NON-NLS-1$
+		assertEquals(Arrays.asList("_get_config"), names(matches)); //$NON-NLS-1$
+		assertEquals(LuaNameIndex.INITIALS, matches.get(0).getScore());
+	}
+
+	public void testNoMatch() {
+		final LuaNameIndex<String> index = newIndex("getConfig", "setValue"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(index.find("xyz", LIMIT).isEmpty()); //$NON-NLS-1$
+		assertTrue(index.find("vg", LIMIT).isEmpty()); //$NON-NLS-1$
+	}
+
+	public void testEmptyTypedText() {
+		final LuaNameIndex<String> index = newIndex("b", "a", "c"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(Arrays.asList("a", "b"), names(index.find("", 2))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	public void testLimitKeepsBestMatches() {
+		final LuaNameIndex<String> index = new LuaNameIndex<String>();
+		for (int i = 0; i < 50; i++) {
+			index.add("x" + i + "Config", "x" + i, "x" + i); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		}
+		index.add("aConfig", "a", "a"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		index.add("configure", "c", "c"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		// Prefix match first, then shortest substring matches, whatever order they were added in
+		final List<String> expected = Arrays.asList("configure", "aConfig", "x0Config", "x1Config"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals(expected, names(index.find("config", 4))); //$NON-NLS-1$
+		assertEquals(4, index.find("conf", 4).size()); //$NON-NLS-1$
+	}
+
+	public void testRemoveAndReplace() {
+		final LuaNameIndex<String> index = new LuaNameIndex<String>();
+		final String key = index.add("getConfig", "module1", "first"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		index.add("getConfig", "module2", "second"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(2, index.find("onfig", LIMIT).size()); //$NON-NLS-1$
+		// Adding a name with the same identifier replaces it
+		index.add("getConfig", "module2", "replaced"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(2, index.size());
+		index.remove(key);
+		final List<LuaNameIndex.Match<String>> matches = index.find("onfig", LIMIT); //$NON-NLS-1$
+		assertEquals(1, matches.size());
+		assertEquals("replaced", matches.get(0).getValue()); //$NON-NLS-1$
+		assertEquals(1, index.find("gc", LIMIT).size()); //$NON-NLS-1$
+		// Removing most names rebuilds posting lists
+		for (int i = 0; i < 10; i++) {
+			index.remove(index.add("name" + i, "m", "v")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		assertEquals(1, index.find("gc", LIMIT).size()); //$NON-NLS-1$
+		assertTrue(index.find("name", LIMIT).isEmpty()); //$NON-NLS-1$
+	}
+}
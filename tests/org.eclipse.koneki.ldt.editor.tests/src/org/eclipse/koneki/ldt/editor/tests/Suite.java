@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.editor.tests;
+
+import junit.framework.TestSuite;
+
+import org.eclipse.koneki.ldt.editor.internal.tests.TestLuaBlockDepthCache;
+import org.eclipse.koneki.ldt.editor.internal.tests.TestLuaBlockScanner;
+import org.eclipse.koneki.ldt.editor.internal.tests.TestLuaFormatter;
+import org.eclipse.koneki.ldt.editor.internal.tests.TestLuaNameIndex;
+
+public class Suite extends TestSuite {
+
+	/** Registers all tests to run */
+	public Suite() {
+		super();
+		setName("Lua editor"); //$NON-NLS-1$
+		addTestSuite(TestLuaBlockScanner.class);
+		addTestSuite(TestLuaFormatter.class);
+		addTestSuite(TestLuaBlockDepthCache.class);
+		addTestSuite(TestLuaNameIndex.class);
+	}
+}
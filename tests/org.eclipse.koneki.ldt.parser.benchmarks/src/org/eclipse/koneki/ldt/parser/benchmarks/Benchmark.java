@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.benchmarks;
+
+/**
+ * An operation measured on each file of {@link LuaCorpus} by {@link BenchmarkRunner}.
+ */
+public abstract class Benchmark {
+	private final String name;
+
+	protected Benchmark(final String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Called before measuring operation on a source.
+	 * 
+	 * @param source
+	 *            Lua source operation deals with
+	 */
+	public void setUp(final String source) throws Exception {
+	}
+
+	/**
+	 * Runs operation once. Only the returned duration is accounted, so an operation can prepare its input without being charged for it.
+	 * 
+	 * @return nanoseconds spent in measured operation
+	 */
+	public abstract long run() throws Exception;
+
+	/**
+	 * Called once operation is measured on a source.
+	 */
+	public void tearDown() throws Exception {
+	}
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures average time of {@link Benchmark} operations, the way JMH does in <code>avgt</code> mode: warm-up iterations are run and
+ * discarded, then each measurement iteration runs the operation for a given time and gives a score in milliseconds per operation.
+ * 
+ * Results are written in JMH JSON format, so tools reading JMH results can be used to compare runs.
+ */
+public class BenchmarkRunner {
+	/** Quantile of normal distribution giving a 99.9% confidence interval, as JMH reports */
+	private static final double CONFIDENCE_QUANTILE = 3.291;
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	/** Measure of an operation on a source */
+	public static final class Result {
+		private final String benchmark;
+		private final String corpus;
+		private final int sourceLength;
+		private final double[] scores;
+
+		private Result(final String benchmark, final String corpus, final int sourceLength, final double[] scores) {
+			this.benchmark = benchmark;
+			this.corpus = corpus;
+			this.sourceLength = sourceLength;
+			this.scores = scores;
+		}
+
+		/**
+		 * @return average milliseconds per operation
+		 */
+		public double getScore() {
+			double sum = 0;
+			for (final double score : scores) {
+				sum += score;
+			}
+			return sum / scores.length;
+		}
+
+		/**
+		 * @return half width of score 99.9% confidence interval
+		 */
+		public double getScoreError() {
+			if (scores.length < 2) {
+				return Double.NaN;
+			}
+			final double mean = getScore();
+			double squares = 0;
+			for (final double score : scores) {
+				squares += (score - mean) * (score - mean);
+			}
+			return CONFIDENCE_QUANTILE * Math.sqrt(squares / (scores.length - 1)) / Math.sqrt(scores.length);
+		}
+	}
+
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationTime;
+	private final List<Result> results = new ArrayList<Result>();
+
+	/**
+	 * @param warmupIterations
+	 *            count of iterations run before measuring
+	 * @param measurementIterations
+	 *            count of measured iterations
+	 * @param iterationTime
+	 *            minimum duration of an iteration in milliseconds, an iteration runs at least one operation
+	 */
+	public BenchmarkRunner(final int warmupIterations, final int measurementIterations, final long iterationTime) {
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * Measures a benchmark on a corpus file.
+	 * 
+	 * @return measure of benchmark
+	 */
+	public Result run(final Benchmark benchmark, final LuaCorpus corpus) throws Exception {
+		return run(benchmark, corpus.name().toLowerCase(Locale.ENGLISH), corpus.getSource());
+	}
+
+	/**
+	 * Measures a benchmark on an input of its own.
+	 * 
+	 * @param corpus
+	 *            name of input in results
+	 * @param source
+	 *            input given to benchmark
+	 * @return measure of benchmark
+	 */
+	public Result run(final Benchmark benchmark, final String corpus, final String source) throws Exception {
+		benchmark.setUp(source);
+		try {
+			for (int i = 0; i < warmupIterations; i++) {
+				iteration(benchmark);
+			}
+			final double[] scores = new double[measurementIterations];
+			for (int i = 0; i < measurementIterations; i++) {
+				scores[i] = iteration(benchmark);
+			}
+			final Result result = new Result(benchmark.getName(), corpus, source.length(), scores);
+			results.add(result);
+			return result;
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * @return milliseconds per operation during this iteration
+	 */
+	private double iteration(final Benchmark benchmark) throws Exception {
+		final long deadline = System.nanoTime() + iterationTime * 1000000L;
+		long measured = 0;
+		int operations = 0;
+		do {
+			measured += benchmark.run();
+			operations++;
+		} while (System.nanoTime() < deadline);
+		return measured / NANOS_PER_MILLI / operations;
+	}
+
+	public List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Writes results measured so far in JMH JSON format.
+	 * 
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 *             when file can not be written
+	 */
+	public void write(final File file) throws IOException {
+		final File folder = file.getAbsoluteFile().getParentFile();
+		if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Unable to create folder " + folder.getPath()); //$NON-NLS-1$
+		}
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8"); //$NON-NLS-1$
+		try {
+			writer.write(toJSON());
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return results in JMH JSON format
+	 */
+	public String toJSON() {
+		final StringBuilder json = new StringBuilder("[\n"); //$NON-NLS-1$
+		for (int i = 0; i < results.size(); i++) {
+			final Result result = results.get(i);
+			json.append("  {\n"); //$NON-NLS-1$
+			json.append("    \"benchmark\" : \"").append(result.benchmark).append("\",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("    \"mode\" : \"avgt\",\n"); //$NON-NLS-1$
+			json.append("    \"threads\" : 1,\n"); //$NON-NLS-1$
+			json.append("    \"forks\" : 0,\n"); //$NON-NLS-1$
+			json.append("    \"warmupIterations\" : ").append(warmupIterations).append(",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("    \"warmupTime\" : \"").append(iterationTime).append(" ms\",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("    \"measurementIterations\" : ").append(measurementIterations).append(",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("    \"measurementTime\" : \"").append(iterationTime).append(" ms\",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("    \"params\" : {\n"); //$NON-NLS-1$
+			json.append("      \"corpus\" : \"").append(result.corpus).append("\",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("      \"sourceLength\" : \"").append(result.sourceLength).append("\"\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("    },\n"); //$NON-NLS-1$
+			json.append("    \"primaryMetric\" : {\n"); //$NON-NLS-1$
+			json.append("      \"score\" : ").append(number(result.getScore())).append(",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("      \"scoreError\" : ").append(number(result.getScoreError())).append(",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append("      \"scoreUnit\" : \"ms/op\",\n"); //$NON-NLS-1$
+			json.append("      \"rawData\" : [\n        [ "); //$NON-NLS-1$
+			for (int j = 0; j < result.scores.length; j++) {
+				json.append(j == 0 ? "" : ", ").append(number(result.scores[j])); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			json.append(" ]\n      ]\n"); //$NON-NLS-1$
+			json.append("    }\n"); //$NON-NLS-1$
+			json.append(i == results.size() - 1 ? "  }\n" : "  },\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return json.append("]\n").toString(); //$NON-NLS-1$
+	}
+
+	/** JSON has no representation for NaN */
+	private static String number(final double value) {
+		return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ENGLISH, "%.6f", value); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.benchmarks;
+
+import java.io.File;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.editor.internal.completion.LuaNameIndex;
+
+/**
+ * Measures lookups of completion proposals in a {@link LuaNameIndex} of many global names, results are written in JMH JSON format to the file
+ * given by {@value #OUTPUT_PROPERTY} system property.
+ * 
+ * Each typed text is a corpus of its own: short texts match many names by prefix, others by substring, initials or subsequence.
+ */
+public class CompletionBenchmarks extends TestCase {
+	/** System property defining file where results are written, default is <code>completion-benchmarks.json</code> */
+	public static final String OUTPUT_PROPERTY = "org.eclipse.koneki.ldt.parser.benchmarks.completion.output"; //$NON-NLS-1$
+
+	/** Words global names are made of */
+	private static final String[] WORDS = { "get", "set", "config", "value", "name", "list", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+			"table", "file", "path", "init", "load", "save", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+			"figure", "user", "data", "node", "parse", "format", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+			"string", "buffer", "socket", "event", "widget", "layout", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+			"color", "image", "text", "window", "frame", "timer", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+			"cache", "index", "query", "error", "debug" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+	/** Texts typed by user */
+	private static final String[] TYPED = { "f", "fi", "fig", "ing", "gcv", "onfig", "conf_val" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+
+	private static final int GLOBAL_COUNT = 100000;
+
+	/** Count of proposals completion asks for */
+	private static final int LIMIT = 500;
+
+	/** Looks typed text up in an index of {@link #GLOBAL_COUNT} generated names */
+	private static final class NameLookup extends Benchmark {
+		private final LuaNameIndex<String> index = new LuaNameIndex<String>();
+		private String typed;
+
+		private NameLookup() {
+			super("nameIndexFind"); //$NON-NLS-1$
+			// Same names for each run
+			final Random random = new Random(0);
+			for (int i = 0; i < GLOBAL_COUNT; i++) {
+				final StringBuilder name = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+				final boolean camelCase = random.nextBoolean();
+				for (int words = random.nextInt(3); words > 0; words--) {
+					final String word = WORDS[random.nextInt(WORDS.length)];
+					if (camelCase) {
+						name.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+					} else {
+						name.append('_').append(word);
+					}
+				}
+				if (random.nextInt(4) == 0) {
+					name.append(random.nextInt(100));
+				}
+				index.add(name.toString(), "module" + i % 500 + '.' + i, name.toString()); //$NON-NLS-1$
+			}
+		}
+
+		@Override
+		public void setUp(final String text) {
+			typed = text;
+		}
+
+		@Override
+		public long run() {
+			final long start = System.nanoTime();
+			index.find(typed, LIMIT);
+			return System.nanoTime() - start;
+		}
+	}
+
+	public void testNameLookup() throws Exception {
+		final int iterations = Integer.getInteger(ParserBenchmarks.ITERATIONS_PROPERTY, 5);
+		final BenchmarkRunner runner = new BenchmarkRunner(iterations, iterations, Long.getLong(ParserBenchmarks.ITERATION_TIME_PROPERTY, 1000));
+		final NameLookup lookup = new NameLookup();
+		for (final String typed : TYPED) {
+			final BenchmarkRunner.Result result = runner.run(lookup, typed, typed);
+			assertTrue("A benchmark should take time.", result.getScore() > 0); //$NON-NLS-1$
+		}
+		runner.write(new File(System.getProperty(OUTPUT_PROPERTY, "completion-benchmarks.json"))); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.benchmarks;
+
+/**
+ * Generated Lua modules of several sizes, always the same for a given size so results of different runs can be compared.
+ * 
+ * Modules mix what parser has to deal with: documentation, requires, global and local functions, tables, loops, closures and references to
+ * earlier declarations.
+ */
+public enum LuaCorpus {
+	SMALL(10), MEDIUM(200), LARGE(1000);
+
+	private final String source;
+
+	private LuaCorpus(final int functions) {
+		source = generate(functions);
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	private static String generate(final int functions) {
+		final StringBuilder code = new StringBuilder();
+		code.append("---\n-- Generated module\n-- @module corpus\nlocal M = {}\n"); //$NON-NLS-1$
+		code.append("local helper = require 'helper'\n\n"); //$NON-NLS-1$
+		for (int i = 0; i < functions; i++) {
+			code.append("---\n-- Function number ").append(i).append('\n'); //$NON-NLS-1$
+			code.append("-- @param a first value\n-- @param b second value\n-- @return sum of fields\n"); //$NON-NLS-1$
+			code.append("function M.fn").append(i).append("(a, b)\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			code.append("\tlocal t = { x = a, y = b, [1] = ").append(i).append(", name = \"fn").append(i).append("\" }\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			code.append("\tfor k = 1, #t do\n"); //$NON-NLS-1$
+			code.append("\t\tif t[k] and k > 2 then\n\t\t\tt.x = t.x + k * 2\n\t\telse\n\t\t\tt.y = helper.call(t, k)\n\t\tend\n"); //$NON-NLS-1$
+			code.append("\tend\n"); //$NON-NLS-1$
+			code.append("\treturn t.x + t.y, function() return a, v").append(Math.max(0, i - 1)).append(" end\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			code.append("end\n"); //$NON-NLS-1$
+			code.append("local v").append(i).append(" = \"value \" .. ").append(i).append("\n\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		code.append("return M\n"); //$NON-NLS-1$
+		return code.toString();
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.compiler.env.ModuleSource;
+import org.eclipse.dltk.compiler.problem.ProblemCollector;
+import org.eclipse.koneki.ldt.parser.AlternativeLuaSourceParser;
+
+/**
+ * Compares parsing throughput of a single parsing state with the one of a pool of states, results are written in JMH JSON format to the file
+ * given by {@value #OUTPUT_PROPERTY} system property.
+ * 
+ * Both benchmarks parse the same batch of {@link LuaCorpus} files from the same threads, only the size of the pool of states differs. A lower
+ * score means more files parsed per second.
+ */
+public class ParallelParsingBenchmarks extends TestCase {
+	/** System property defining file where results are written, default is <code>parallel-benchmarks.json</code> */
+	public static final String OUTPUT_PROPERTY = "org.eclipse.koneki.ldt.parser.benchmarks.parallel.output"; //$NON-NLS-1$
+
+	/** Threads parsing simultaneously, at least two so that a single state is contended */
+	private static final int THREAD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+	/** Files parsed by an operation */
+	private static final int BATCH_SIZE = THREAD_COUNT * 4;
+
+	/** Parses a batch of copies of a source from {@link #THREAD_COUNT} threads */
+	private static final class ParallelParsing extends Benchmark {
+		private final int poolSize;
+		private final List<Callable<Object>> parsings = new ArrayList<Callable<Object>>(BATCH_SIZE);
+		private ExecutorService executor;
+
+		private ParallelParsing(final String name, final int poolSize) {
+			super(name);
+			this.poolSize = poolSize;
+		}
+
+		@Override
+		public void setUp(final String source) {
+			System.setProperty(AlternativeLuaSourceParser.POOL_SIZE_PROPERTY, Integer.toString(poolSize));
+			AlternativeLuaSourceParser.closeStatePool();
+			executor = Executors.newFixedThreadPool(THREAD_COUNT);
+			parsings.clear();
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				parsings.add(new Callable<Object>() {
+					@Override
+					public Object call() {
+						// No model element, so no AST is cached
+						return new AlternativeLuaSourceParser().parse(new ModuleSource("corpus.lua", source), new ProblemCollector()); //$NON-NLS-1$
+					}
+				});
+			}
+		}
+
+		@Override
+		public long run() throws Exception {
+			final long start = System.nanoTime();
+			for (final Future<Object> parsing : executor.invokeAll(parsings)) {
+				parsing.get();
+			}
+			return System.nanoTime() - start;
+		}
+
+		@Override
+		public void tearDown() {
+			executor.shutdown();
+			AlternativeLuaSourceParser.closeStatePool();
+		}
+	}
+
+	public void testParallelParsing() throws Exception {
+		final int iterations = Integer.getInteger(ParserBenchmarks.ITERATIONS_PROPERTY, 5);
+		final BenchmarkRunner runner = new BenchmarkRunner(iterations, iterations, Long.getLong(ParserBenchmarks.ITERATION_TIME_PROPERTY, 1000));
+		final Benchmark[] benchmarks = { new ParallelParsing("parallelParsingSingleState", 1), //$NON-NLS-1$
+				new ParallelParsing("parallelParsingPooledStates", THREAD_COUNT) }; //$NON-NLS-1$
+		final String poolSize = System.getProperty(AlternativeLuaSourceParser.POOL_SIZE_PROPERTY);
+		try {
+			for (final Benchmark benchmark : benchmarks) {
+				for (final LuaCorpus corpus : LuaCorpus.values()) {
+					final BenchmarkRunner.Result result = runner.run(benchmark, corpus);
+					assertTrue("A benchmark should take time.", result.getScore() > 0); //$NON-NLS-1$
+				}
+			}
+		} finally {
+			if (poolSize == null) {
+				System.clearProperty(AlternativeLuaSourceParser.POOL_SIZE_PROPERTY);
+			} else {
+				System.setProperty(AlternativeLuaSourceParser.POOL_SIZE_PROPERTY, poolSize);
+			}
+		}
+		runner.write(new File(System.getProperty(OUTPUT_PROPERTY, "parallel-benchmarks.json"))); //$NON-NLS-1$
+	}
+}
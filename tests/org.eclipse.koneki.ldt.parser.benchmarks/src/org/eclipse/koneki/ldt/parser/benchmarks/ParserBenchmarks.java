@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.benchmarks;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.compiler.env.ModuleSource;
+import org.eclipse.dltk.compiler.problem.ProblemCollector;
+import org.eclipse.koneki.ldt.internal.parser.DLTKObjectDecoder;
+import org.eclipse.koneki.ldt.parser.AlternativeLuaSourceParser;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Measures each stage of Lua parsing on {@link LuaCorpus} files, results are written in JMH JSON format to the file given by
+ * {@value #OUTPUT_PROPERTY} system property.
+ * 
+ * Stages are Metalua parsing alone, declaration marking of a parsed AST, building of DLTK objects from Lua through <code>DLTKObjectFactory</code>
+ * or through a serialized AST, and end to end parsing with {@link AlternativeLuaSourceParser}. Both building stages include Metalua parsing and
+ * marking, subtracting their scores gives the cost of object creation.
+ */
+public class ParserBenchmarks extends TestCase {
+	/** System property defining file where results are written, default is <code>benchmarks.json</code> */
+	public static final String OUTPUT_PROPERTY = "org.eclipse.koneki.ldt.parser.benchmarks.output"; //$NON-NLS-1$
+	/** System property defining count of warm-up and measurement iterations, default is 5 */
+	public static final String ITERATIONS_PROPERTY = "org.eclipse.koneki.ldt.parser.benchmarks.iterations"; //$NON-NLS-1$
+	/** System property defining minimum duration of an iteration in milliseconds, default is 1000 */
+	public static final String ITERATION_TIME_PROPERTY = "org.eclipse.koneki.ldt.parser.benchmarks.iterationtime"; //$NON-NLS-1$
+
+	/** Lua functions running parsing stages separately on a state loaded by {@link AlternativeLuaSourceParser} */
+	private static final String STAGES = "require 'errnode'\n" //$NON-NLS-1$
+			+ "benchmark = {}\n" //$NON-NLS-1$
+			+ "function benchmark.parse(source) benchmark.ast = getast(source) end\n" //$NON-NLS-1$
+			+ "function benchmark.mark()\n" //$NON-NLS-1$
+			+ "  local ast = mark.parent(benchmark.ast)\n" //$NON-NLS-1$
+			+ "  ast = mark.declaration(ast)\n" //$NON-NLS-1$
+			+ "  ast = mark.tablefields(ast)\n" //$NON-NLS-1$
+			+ "  mark.module(ast)\n" //$NON-NLS-1$
+			+ "  benchmark.ast = nil\n" //$NON-NLS-1$
+			+ "end\n"; //$NON-NLS-1$
+
+	/** Benchmark calling Lua functions on a state of its own */
+	private abstract static class LuaBenchmark extends Benchmark {
+		protected LuaState lua;
+		protected String source;
+
+		protected LuaBenchmark(final String name) {
+			super(name);
+		}
+
+		@Override
+		public void setUp(final String code) throws Exception {
+			source = code;
+			lua = AlternativeLuaSourceParser.newLuaState();
+			lua.load(STAGES, "benchmark"); //$NON-NLS-1$
+			lua.call(0, 0);
+		}
+
+		@Override
+		public void tearDown() throws Exception {
+			lua.close();
+		}
+
+		/** Calls a function of given table with source as argument, results are dropped */
+		protected void call(final String table, final String function, final boolean withSource) {
+			lua.getGlobal(table);
+			lua.getField(-1, function);
+			if (withSource) {
+				lua.pushString(source);
+			}
+			lua.call(withSource ? 1 : 0, 0);
+			lua.pop(1);
+		}
+	}
+
+	/** Metalua lexing and parsing only */
+	private static final class MetaluaParsing extends LuaBenchmark {
+		private MetaluaParsing() {
+			super("metaluaParsing"); //$NON-NLS-1$
+		}
+
+		@Override
+		public long run() {
+			final long start = System.nanoTime();
+			call("benchmark", "parse", true); //$NON-NLS-1$ //$NON-NLS-2$
+			return System.nanoTime() - start;
+		}
+	}
+
+	/** <code>declaration_marker</code> passes on a Metalua AST, parsing is not accounted */
+	private static final class DeclarationMarking extends LuaBenchmark {
+		private DeclarationMarking() {
+			super("declarationMarking"); //$NON-NLS-1$
+		}
+
+		@Override
+		public long run() {
+			call("benchmark", "parse", true); //$NON-NLS-1$ //$NON-NLS-2$
+			final long start = System.nanoTime();
+			call("benchmark", "mark", false); //$NON-NLS-1$ //$NON-NLS-2$
+			return System.nanoTime() - start;
+		}
+	}
+
+	/** AST built by Lua calling <code>DLTKObjectFactory</code> for each node */
+	private static final class ObjectFactoryBuilding extends LuaBenchmark {
+		private ObjectFactoryBuilding() {
+			super("objectFactoryBuilding"); //$NON-NLS-1$
+		}
+
+		@Override
+		public long run() {
+			final long start = System.nanoTime();
+			lua.getGlobal("parsemod"); //$NON-NLS-1$
+			lua.getField(-1, "ast_builder"); //$NON-NLS-1$
+			lua.pushString(source);
+			lua.call(1, 1);
+			lua.pop(2);
+			return System.nanoTime() - start;
+		}
+	}
+
+	/** AST serialized by Lua then decoded by {@link DLTKObjectDecoder} */
+	private static final class SerializedBuilding extends LuaBenchmark {
+		private SerializedBuilding() {
+			super("serializedBuilding"); //$NON-NLS-1$
+		}
+
+		@Override
+		public long run() {
+			final long start = System.nanoTime();
+			lua.getGlobal("parsemod"); //$NON-NLS-1$
+			lua.getField(-1, "ast_serializer"); //$NON-NLS-1$
+			lua.pushString(source);
+			lua.call(1, 1);
+			final String serialized = lua.checkString(-1);
+			lua.pop(2);
+			DLTKObjectDecoder.decode(serialized);
+			return System.nanoTime() - start;
+		}
+	}
+
+	/** Whole parsing as done for editors and builders, without caches */
+	private static final class EndToEnd extends Benchmark {
+		private final AlternativeLuaSourceParser parser = new AlternativeLuaSourceParser();
+		private ModuleSource module;
+
+		private EndToEnd() {
+			super("endToEnd"); //$NON-NLS-1$
+		}
+
+		@Override
+		public void setUp(final String source) {
+			// No model element, so no AST is cached
+			module = new ModuleSource("corpus.lua", source); //$NON-NLS-1$
+		}
+
+		@Override
+		public long run() {
+			final long start = System.nanoTime();
+			parser.parse(module, new ProblemCollector());
+			return System.nanoTime() - start;
+		}
+	}
+
+	public void testParsingStages() throws Exception {
+		final int iterations = Integer.getInteger(ITERATIONS_PROPERTY, 5);
+		final BenchmarkRunner runner = new BenchmarkRunner(iterations, iterations, Long.getLong(ITERATION_TIME_PROPERTY, 1000));
+		final Benchmark[] benchmarks = { new MetaluaParsing(), new DeclarationMarking(), new ObjectFactoryBuilding(), new SerializedBuilding(),
+				new EndToEnd() };
+		for (final Benchmark benchmark : benchmarks) {
+			for (final LuaCorpus corpus : LuaCorpus.values()) {
+				final BenchmarkRunner.Result result = runner.run(benchmark, corpus);
+				assertTrue("A benchmark should take time.", result.getScore() > 0); //$NON-NLS-1$
+			}
+		}
+		runner.write(new File(System.getProperty(OUTPUT_PROPERTY, "benchmarks.json"))); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.internal.parser.BoundedCache;
+
+public class TestBoundedCache extends TestCase {
+
+	/** Strings weigh their length */
+	private static BoundedCache<String, String> newCache(final long maxWeight) {
+		return new BoundedCache<String, String>(maxWeight, false) {
+			@Override
+			protected int weight(final String value) {
+				return value.length();
+			}
+		};
+	}
+
+	public void testLeastRecentlyUsedEviction() {
+		final BoundedCache<String, String> cache = newCache(10);
+		cache.put("a", "aaaa"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put("b", "bbbb"); //$NON-NLS-1$ //$NON-NLS-2$
+		// Makes "b" the least recently used
+		assertEquals("aaaa", cache.get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put("c", "cccc"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		assertNull("Least recently used value should have been evicted.", cache.get("b")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("aaaa", cache.get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("cccc", cache.get("c")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Wrong total weight.", 8, cache.getWeight()); //$NON-NLS-1$
+		assertEquals("Wrong eviction count.", 1, cache.getEvictionCount()); //$NON-NLS-1$
+		assertEquals("Wrong hit count.", 3, cache.getHitCount()); //$NON-NLS-1$
+		assertEquals("Wrong miss count.", 1, cache.getMissCount()); //$NON-NLS-1$
+	}
+
+	public void testEvictionFollowsAccessOrder() {
+		final BoundedCache<String, String> cache = newCache(4);
+		for (final String key : new String[] { "a", "b", "c", "d" }) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			cache.put(key, key);
+		}
+		// Access order is now b, d, a, c
+		cache.get("c"); //$NON-NLS-1$
+		cache.get("a"); //$NON-NLS-1$
+		cache.get("c"); //$NON-NLS-1$
+		cache.put("e", "ee"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Two least recently used values should have been evicted.", 2, cache.getEvictionCount()); //$NON-NLS-1$
+		assertNull(cache.get("b")); //$NON-NLS-1$
+		assertNull(cache.get("d")); //$NON-NLS-1$
+		assertEquals("a", cache.get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("c", cache.get("c")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("ee", cache.get("e")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Wrong total weight.", 4, cache.getWeight()); //$NON-NLS-1$
+	}
+
+	public void testReplaceAndRemove() {
+		final BoundedCache<String, String> cache = newCache(10);
+		cache.put("a", "aaaa"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put("a", "aa"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Replaced value should not be weighed anymore.", 2, cache.getWeight()); //$NON-NLS-1$
+		cache.remove("a"); //$NON-NLS-1$
+		assertEquals("Removed value should not be weighed anymore.", 0, cache.getWeight()); //$NON-NLS-1$
+		assertTrue("No key should be left.", cache.keys().isEmpty()); //$NON-NLS-1$
+	}
+
+	public void testTooHeavyValue() {
+		final BoundedCache<String, String> cache = newCache(3);
+		cache.put("a", "aaaa"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull("Value heavier than cache should not be kept.", cache.get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(0, cache.getSize());
+	}
+
+	public void testConcurrentAccess() throws Exception {
+		final BoundedCache<String, String> cache = newCache(50);
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						final String key = Integer.toString((i * 7 + seed) % 40);
+						if (cache.get(key) == null) {
+							cache.put(key, key + key);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		int weight = 0;
+		for (final String key : cache.keys()) {
+			final String value = cache.get(key);
+			weight += value == null ? 0 : value.length();
+		}
+		assertTrue("Cache should not exceed its maximum weight.", cache.getWeight() <= 50); //$NON-NLS-1$
+		assertEquals("Total weight should match cached values.", weight, cache.getWeight()); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.compiler.IElementRequestor.FieldInfo;
+import org.eclipse.dltk.compiler.ISourceElementRequestor;
+import org.eclipse.koneki.ldt.internal.parser.DeclarationIndex;
+import org.eclipse.koneki.ldt.internal.parser.RequestorRecorder;
+import org.eclipse.koneki.ldt.internal.parser.SourceHash;
+
+public class TestDeclarationIndex extends TestCase {
+
+	private static final String SOURCE = "local m = require 'module'\nfield = 1\n"; //$NON-NLS-1$
+	private static final String VERSION = "1.0.0/builder"; //$NON-NLS-1$
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("declarations", ".idx"); //$NON-NLS-1$ //$NON-NLS-2$
+		file.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		new File(file.getPath() + ".bak").delete(); //$NON-NLS-1$
+		super.tearDown();
+	}
+
+	/** Requestor logging names of called methods and of entered fields */
+	private static ISourceElementRequestor newLogger(final List<String> log) {
+		final InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				final StringBuilder call = new StringBuilder(method.getName());
+				for (final Object arg : args == null ? new Object[0] : args) {
+					call.append(' ').append(arg instanceof FieldInfo ? ((FieldInfo) arg).name + '@' + ((FieldInfo) arg).nameSourceStart : arg);
+				}
+				log.add(call.toString());
+				return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+			}
+		};
+		return (ISourceElementRequestor) Proxy.newProxyInstance(ISourceElementRequestor.class.getClassLoader(),
+				new Class<?>[] { ISourceElementRequestor.class }, handler);
+	}
+
+	private static DeclarationIndex.Entry newEntry(final long timestamp, final byte[] structure) {
+		final Map<String, String> documentation = Collections.singletonMap("field", "Documented field"); //$NON-NLS-1$ //$NON-NLS-2$
+		final Map<String, String> references = Collections.singletonMap("m", "module"); //$NON-NLS-1$ //$NON-NLS-2$
+		return new DeclarationIndex.Entry(timestamp, SOURCE.length(), SourceHash.hash(SOURCE), structure, "Module", documentation, //$NON-NLS-1$
+				references);
+	}
+
+	public void testRecordAndReplay() {
+		final List<String> recorded = new ArrayList<String>();
+		final RequestorRecorder recorder = new RequestorRecorder(newLogger(recorded));
+		final FieldInfo field = new FieldInfo();
+		field.name = "field"; //$NON-NLS-1$
+		field.nameSourceStart = 27;
+		field.nameSourceEnd = 32;
+		recorder.getRequestor().enterModule();
+		recorder.getRequestor().enterField(field);
+		recorder.getRequestor().exitField(36);
+		recorder.getRequestor().exitModule(SOURCE.length());
+		assertNotNull("Calls should be recordable.", recorder.getRecord()); //$NON-NLS-1$
+
+		final List<String> replayed = new ArrayList<String>();
+		assertTrue("Record should be replayed.", RequestorRecorder.replay(recorder.getRecord(), newLogger(replayed))); //$NON-NLS-1$
+		assertEquals("Replayed calls should match recorded ones.", recorded, replayed); //$NON-NLS-1$
+	}
+
+	public void testSaveAndLoad() throws Exception {
+		final DeclarationIndex index = new DeclarationIndex(file, VERSION);
+		index.put("src/module.lua", newEntry(42, new byte[] { 1, 2, 3 })); //$NON-NLS-1$
+		index.save();
+
+		final DeclarationIndex loaded = new DeclarationIndex(file, VERSION);
+		assertTrue("Saved index should be loaded.", loaded.load()); //$NON-NLS-1$
+		final DeclarationIndex.Entry entry = loaded.get("src/module.lua", 42, SOURCE.toCharArray()); //$NON-NLS-1$
+		assertNotNull("Entry should be found with same timestamp.", entry); //$NON-NLS-1$
+		assertEquals("Module", entry.getDocumentation()); //$NON-NLS-1$
+		assertEquals("Documented field", entry.getMembersDocumentation().get("field")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("module", entry.getModuleReferences().get("m")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(3, entry.getStructure().length);
+	}
+
+	public void testFailedSaveStaysModified() throws Exception {
+		// Index folder can not be created under a file
+		final DeclarationIndex index = new DeclarationIndex(new File(file, "declarations.idx"), VERSION); //$NON-NLS-1$
+		file.createNewFile();
+		index.put("src/module.lua", newEntry(42, new byte[] { 1, 2, 3 })); //$NON-NLS-1$
+		try {
+			index.save();
+			fail("Index should not be saved under a file."); //$NON-NLS-1$
+		} catch (IOException e) {
+			assertTrue("Index not saved should stay modified.", index.isModified()); //$NON-NLS-1$
+		}
+	}
+
+	public void testBackupLoaded() throws Exception {
+		final DeclarationIndex index = new DeclarationIndex(file, VERSION);
+		index.put("src/module.lua", newEntry(42, new byte[] { 1, 2, 3 })); //$NON-NLS-1$
+		index.save();
+		assertFalse("Saved index should not be modified.", index.isModified()); //$NON-NLS-1$
+		index.put("src/other.lua", newEntry(42, new byte[] { 4 })); //$NON-NLS-1$
+		index.save();
+
+		// Save interrupted after index file was backed up
+		assertTrue(file.renameTo(new File(file.getPath() + ".bak"))); //$NON-NLS-1$
+		final DeclarationIndex loaded = new DeclarationIndex(file, VERSION);
+		assertTrue("Backup should be loaded when index file is missing.", loaded.load()); //$NON-NLS-1$
+		assertEquals(2, loaded.paths().size());
+	}
+
+	public void testOtherVersionIgnored() throws Exception {
+		final DeclarationIndex index = new DeclarationIndex(file, VERSION);
+		index.put("src/module.lua", newEntry(42, new byte[] { 1, 2, 3 })); //$NON-NLS-1$
+		index.save();
+
+		final DeclarationIndex loaded = new DeclarationIndex(file, VERSION + ".other"); //$NON-NLS-1$
+		assertFalse("Index of another version should be ignored.", loaded.load()); //$NON-NLS-1$
+		assertTrue(loaded.paths().isEmpty());
+	}
+
+	public void testValidation() {
+		final DeclarationIndex index = new DeclarationIndex(file, VERSION);
+		index.put("module.lua", newEntry(42, new byte[0])); //$NON-NLS-1$
+		assertNull("Changed content should not match.", index.get("module.lua", 43, (SOURCE + ' ').toCharArray())); //$NON-NLS-1$ //$NON-NLS-2$
+		final String sameLength = SOURCE.replace('1', '2');
+		assertNull("Content changed within timestamp resolution should not match.", //$NON-NLS-1$
+				index.get("module.lua", 42, sameLength.toCharArray())); //$NON-NLS-1$
+		assertNotNull("Same content should match.", index.get("module.lua", 43, SOURCE.toCharArray())); //$NON-NLS-1$ //$NON-NLS-2$
+		final DeclarationIndex.Entry restamped = index.get("module.lua", 43, SOURCE.toCharArray()); //$NON-NLS-1$
+		assertEquals("New timestamp should be remembered.", 43, restamped.getTimestamp()); //$NON-NLS-1$
+	}
+
+	public void testCorruptedFile() throws Exception {
+		final FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(new byte[] { 'L', 'D', 'I', 'X', 0, 0 });
+		} finally {
+			output.close();
+		}
+		final DeclarationIndex index = new DeclarationIndex(file, VERSION);
+		assertFalse("Corrupted index should be ignored.", index.load()); //$NON-NLS-1$
+		assertTrue(index.paths().isEmpty());
+	}
+}
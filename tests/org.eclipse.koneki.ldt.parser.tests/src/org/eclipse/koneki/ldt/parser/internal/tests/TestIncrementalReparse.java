@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import java.util.List;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.koneki.ldt.internal.parser.IOccurrenceHolder;
+import org.eclipse.koneki.ldt.internal.parser.IncrementalReparser;
+import org.eclipse.koneki.ldt.internal.parser.ReparsableAST;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.ast.statements.Chunk;
+import org.eclipse.koneki.ldt.parser.ast.statements.Do;
+import org.eclipse.koneki.ldt.parser.ast.statements.Local;
+import org.eclipse.koneki.ldt.parser.internal.tests.utils.AbstractParserTest;
+
+/**
+ * Checks that ASTs updated by {@link IncrementalReparser} match ASTs of a full parse
+ */
+public class TestIncrementalReparse extends AbstractParserTest {
+
+	private IncrementalReparser.ChunkParser parser;
+	private IncrementalReparser reparser;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		parser = new IncrementalReparser.ChunkParser() {
+			@Override
+			public LuaSourceRoot parse(final String source) {
+				return TestIncrementalReparse.this.parse(source);
+			}
+		};
+		reparser = new IncrementalReparser(parser);
+	}
+
+	private static List<?> topLevelStatements(final LuaSourceRoot root) {
+		for (final Object statement : root.getStatements()) {
+			if (statement instanceof Chunk) {
+				return ((Chunk) statement).getStatements();
+			}
+		}
+		fail("No top-level chunk found."); //$NON-NLS-1$
+		return null;
+	}
+
+	private static void assertSameOffsets(final LuaSourceRoot expected, final LuaSourceRoot actual) {
+		final List<?> expectedStatements = topLevelStatements(expected);
+		final List<?> actualStatements = topLevelStatements(actual);
+		assertEquals("Wrong count of top-level statements.", expectedStatements.size(), actualStatements.size()); //$NON-NLS-1$
+		for (int i = 0; i < expectedStatements.size(); i++) {
+			final ASTNode expectedNode = (ASTNode) expectedStatements.get(i);
+			final ASTNode actualNode = (ASTNode) actualStatements.get(i);
+			assertEquals("Wrong statement type.", expectedNode.getClass(), actualNode.getClass()); //$NON-NLS-1$
+			assertEquals("Wrong statement start.", expectedNode.sourceStart(), actualNode.sourceStart()); //$NON-NLS-1$
+			assertEquals("Wrong statement end.", expectedNode.sourceEnd(), actualNode.sourceEnd()); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Reparses <code>before</code> to get <code>after</code>, reparse has to succeed and match a full parse
+	 */
+	private LuaSourceRoot assertReparsed(final String before, final String after) {
+		final LuaSourceRoot previous = parse(before);
+		final LuaSourceRoot updated = reparser.reparse(previous, before, after);
+		assertNotNull("Change should be parsed incrementally.", updated); //$NON-NLS-1$
+		assertSameOffsets(parse(after), updated);
+		assertEquals("Wrong source end.", parse(after).sourceEnd(), updated.sourceEnd()); //$NON-NLS-1$
+		return updated;
+	}
+
+	public void testFunctionBodyChange() {
+		final String before = "local a = 1\nfunction f()\n\treturn 1\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		final String after = "local a = 1\nfunction f()\n\treturn 12\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		final LuaSourceRoot previous = parse(before);
+		final LuaSourceRoot updated = reparser.reparse(previous, before, after);
+		assertNotSame("Previous AST should not be modified.", previous, updated); //$NON-NLS-1$
+		assertSameOffsets(parse(before), previous);
+		assertSameOffsets(parse(after), updated);
+		assertEquals("Global function should be declared once.", 1, updated.getDeclarationsContainer().getDeclarations().size()); //$NON-NLS-1$
+	}
+
+	public void testOuterLocalOccurrences() {
+		final String before = "local t = {}\nfunction f()\n\treturn t\nend\nprint(t)\n"; //$NON-NLS-1$
+		final String after = "local t = {}\nfunction f()\n\treturn t, t\nend\nprint(t)\n"; //$NON-NLS-1$
+		final LuaSourceRoot previous = parse(before);
+		final LuaSourceRoot updated = reparser.reparse(previous, before, after);
+		assertNotSame("Previous AST should not be modified.", previous, updated); //$NON-NLS-1$
+		assertSameOffsets(parse(before), previous);
+		assertSameOffsets(parse(after), updated);
+
+		final Local expected = (Local) topLevelStatements(parse(after)).get(0);
+		final Local actual = (Local) topLevelStatements(updated).get(0);
+		final IOccurrenceHolder expectedDeclaration = (IOccurrenceHolder) expected.getLeft().getStatements().get(0);
+		final IOccurrenceHolder actualDeclaration = (IOccurrenceHolder) actual.getLeft().getStatements().get(0);
+		assertEquals("Occurrences of top-level local should be updated.", expectedDeclaration.getOccurrences().length, //$NON-NLS-1$
+				actualDeclaration.getOccurrences().length);
+		final Local kept = (Local) topLevelStatements(parse(before)).get(0);
+		final Local original = (Local) topLevelStatements(previous).get(0);
+		assertEquals("Occurrences of previous top-level local should be kept.", //$NON-NLS-1$
+				((IOccurrenceHolder) kept.getLeft().getStatements().get(0)).getOccurrences().length,
+				((IOccurrenceHolder) original.getLeft().getStatements().get(0)).getOccurrences().length);
+	}
+
+	public void testNewGlobalUsedElsewhere() {
+		final String before = "local a = 1\nlocal b = 2\nprint(y)\n"; //$NON-NLS-1$
+		final String after = "local a = 1\ny = 2\nprint(y)\n"; //$NON-NLS-1$
+		final LuaSourceRoot previous = parse(before);
+		assertNull("A global used elsewhere needs a full parse.", reparser.reparse(previous, before, after)); //$NON-NLS-1$
+		assertSameOffsets(parse(before), previous);
+	}
+
+	public void testSupplementaryCharacters() {
+		// Each surrogate of a pair takes 3 bytes once pushed to Lua
+		final String before = "local s = '\uD83D\uDE00'\nfunction f()\n\treturn 1\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		final String after = "local s = '\uD83D\uDE00'\nfunction f()\n\treturn '\uD834\uDD1E\u00E9'\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		assertReparsed(before, after);
+	}
+
+	public void testNulInString() {
+		// NUL takes 2 bytes once pushed to Lua
+		final String before = "local s = 'a\u0000b'\nfunction f()\n\treturn 1\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		final String after = "local s = 'a\u0000b'\nfunction f()\n\treturn '\u0000\u0000'\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		assertReparsed(before, after);
+	}
+
+	public void testChangeAtFileStart() {
+		final String before = "local a = 1\nlocal b = 2\nprint(b)\n"; //$NON-NLS-1$
+		final String after = "local z = 0\nlocal a = 1\nlocal b = 2\nprint(b)\n"; //$NON-NLS-1$
+		assertReparsed(before, after);
+		assertReparsed(after, before);
+	}
+
+	public void testChangeAtFileEnd() {
+		final String before = "local a = 1\nlocal b = 2\nprint(b)"; //$NON-NLS-1$
+		final String after = "local a = 1\nlocal b = 2\nprint(b)\nprint(3)\n"; //$NON-NLS-1$
+		assertReparsed(before, after);
+		assertReparsed(after, before);
+	}
+
+	public void testNestingChange() {
+		// Two statements become one block
+		final String before = "local a = 1\nprint(a)\nprint(a)\nlocal c = 3\n"; //$NON-NLS-1$
+		final String after = "local a = 1\ndo\n\tprint(a)\n\tprint(a)\nend\nlocal c = 3\n"; //$NON-NLS-1$
+		final LuaSourceRoot updated = assertReparsed(before, after);
+		assertTrue("Statements should be nested in a block.", topLevelStatements(updated).get(1) instanceof Do); //$NON-NLS-1$
+		assertReparsed(after, before);
+
+		// Nesting inside a function body
+		final String function = "local a = 1\nfunction f()\n\treturn a\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		final String nested = "local a = 1\nfunction f()\n\tif a then\n\t\treturn a\n\tend\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		assertReparsed(function, nested);
+		assertReparsed(nested, function);
+	}
+
+	public void testPublishedASTNotModified() {
+		final String first = "local a = 1\nfunction f()\n\treturn 1\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		final String second = "local a = 1\nfunction f()\n\treturn 123\nend\nlocal b = 2\n"; //$NON-NLS-1$
+		final String third = "local a = 1\nfunction f()\n\treturn 123\nend\nlocal b = 2\nprint(b)\n"; //$NON-NLS-1$
+		final ReparsableAST initial = new ReparsableAST(parse(first), first);
+
+		final ReparsableAST updated = initial.update(second, parser);
+		assertNotNull("Change should be parsed incrementally.", updated); //$NON-NLS-1$
+		assertNotSame("Published AST should not be modified.", initial.getRoot(), updated.getRoot()); //$NON-NLS-1$
+		assertSameOffsets(parse(first), initial.getRoot());
+		assertSameOffsets(parse(second), updated.getRoot());
+
+		// Names counted by first update are reused by next one
+		final ReparsableAST last = updated.update(third, parser);
+		assertNotNull("Change should be parsed incrementally.", last); //$NON-NLS-1$
+		assertSameOffsets(parse(second), updated.getRoot());
+		assertSameOffsets(parse(third), last.getRoot());
+		assertSameOffsets(parse(third), last.copy());
+		assertNotSame("Copy should not be shared.", last.getRoot(), last.copy()); //$NON-NLS-1$
+	}
+
+	public void testNamesUpdated() {
+		// Global declared by first change is used by second one
+		final String first = "local a = 1\nlocal b = 2\nlocal c = 3\n"; //$NON-NLS-1$
+		final String second = "local a = 1\ny = 2\nlocal c = 3\n"; //$NON-NLS-1$
+		final String third = "local a = 1\ny = 2\nprint(y)\n"; //$NON-NLS-1$
+		final ReparsableAST updated = new ReparsableAST(parse(first), first).update(second, parser);
+		assertNotNull("Change should be parsed incrementally.", updated); //$NON-NLS-1$
+		assertNull("A global used elsewhere needs a full parse.", updated.update(third, parser)); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.koneki.ldt.parser.ast.LuaModuleFields;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.internal.tests.utils.AbstractParserTest;
+
+/**
+ * Checks that {@link LuaModuleFields} are kept along with AST
+ */
+public class TestLuaModuleFields extends AbstractParserTest {
+
+	private static final String SOURCE = "local a = 1\n" //$NON-NLS-1$
+			+ "function f(p) return p end\n"; //$NON-NLS-1$
+
+	private static final String MODULE_SOURCE = "module(\"m\")\n" //$NON-NLS-1$
+			+ "function first(p) return p end\n" //$NON-NLS-1$
+			+ "function second() end\n"; //$NON-NLS-1$
+
+	/** Source module answering each offset with a new element, and counting requests */
+	private static final class CountingModule implements InvocationHandler {
+		private int requests;
+		private final ISourceModule module = (ISourceModule) Proxy.newProxyInstance(ISourceModule.class.getClassLoader(),
+				new Class<?>[] { ISourceModule.class }, this);
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) {
+			if ("getElementAt".equals(method.getName())) { //$NON-NLS-1$
+				requests++;
+				return Proxy.newProxyInstance(IModelElement.class.getClassLoader(), new Class<?>[] { IModelElement.class }, this);
+			}
+			if ("equals".equals(method.getName())) { //$NON-NLS-1$
+				return proxy == args[0];
+			}
+			if ("hashCode".equals(method.getName())) { //$NON-NLS-1$
+				return System.identityHashCode(proxy);
+			}
+			return null;
+		}
+	}
+
+	public void testNoFieldsWithoutModule() {
+		final LuaSourceRoot root = parse(SOURCE);
+		assertTrue("Source without module should export no field.", root.getModuleFields().getDeclarations().isEmpty()); //$NON-NLS-1$
+	}
+
+	public void testModuleFields() {
+		final LuaModuleFields fields = parse(MODULE_SOURCE).getModuleFields();
+		assertEquals(new HashSet<String>(Arrays.asList("first", "second")), fields.getDeclarations().keySet()); //$NON-NLS-1$ //$NON-NLS-2$
+		// Declaration covers function definition, model element is looked up from its start
+		final int start = fields.getDeclarations().get("first").sourceStart(); //$NON-NLS-1$
+		assertTrue("Wrong start of first.", MODULE_SOURCE.indexOf("function first") <= start //$NON-NLS-1$ //$NON-NLS-2$
+				&& start < MODULE_SOURCE.indexOf("function second")); //$NON-NLS-1$
+	}
+
+	public void testElementsResolvedOncePerModule() throws Exception {
+		final LuaModuleFields fields = parse(MODULE_SOURCE).getModuleFields();
+		final CountingModule module = new CountingModule();
+		final Map<String, IModelElement> elements = fields.getElements(module.module);
+		assertEquals(fields.getDeclarations().keySet(), elements.keySet());
+		assertEquals("Each field should be resolved once.", 2, module.requests); //$NON-NLS-1$
+		assertSame("Elements should be kept for the same module.", elements, fields.getElements(module.module)); //$NON-NLS-1$
+		assertEquals("Elements should not be resolved again.", 2, module.requests); //$NON-NLS-1$
+		// Another module has its own elements
+		final CountingModule other = new CountingModule();
+		assertNotSame(elements, fields.getElements(other.module));
+		assertEquals("Elements of another module should be resolved.", 2, other.requests); //$NON-NLS-1$
+	}
+
+	public void testFieldsKeptUntilModification() {
+		final LuaSourceRoot root = parse(SOURCE);
+		final LuaModuleFields fields = root.getModuleFields();
+		assertSame("Fields should be collected once.", fields, root.getModuleFields()); //$NON-NLS-1$
+		root.incrementRevision();
+		assertNotSame("Fields should be collected again after modification.", fields, root.getModuleFields()); //$NON-NLS-1$
+	}
+}
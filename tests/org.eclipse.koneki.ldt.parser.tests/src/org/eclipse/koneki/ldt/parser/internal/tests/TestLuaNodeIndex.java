@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import org.eclipse.koneki.ldt.parser.ast.LuaNodeIndex;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.ast.expressions.Identifier;
+import org.eclipse.koneki.ldt.parser.ast.visitor.MatchNodeVisitor;
+import org.eclipse.koneki.ldt.parser.internal.tests.utils.AbstractParserTest;
+
+/**
+ * Checks that {@link LuaNodeIndex} finds the same nodes as {@link MatchNodeVisitor}
+ */
+public class TestLuaNodeIndex extends AbstractParserTest {
+
+	private static final String SOURCE = "local m = require 'module'\n" //$NON-NLS-1$
+			+ "local t = { field = 1, other = { 'a', 'b' } }\n" //$NON-NLS-1$
+			+ "function f(p, ...)\n" //$NON-NLS-1$
+			+ "  local v = m.call(p, t.field)\n" //$NON-NLS-1$
+			+ "  if v then return v + 1 elseif p then return -p else return #t end\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "for i = 1, 10 do f(i) end\n"; //$NON-NLS-1$
+
+	public void testSameNodesAsVisitor() throws Exception {
+		final LuaSourceRoot root = parse(SOURCE);
+		final LuaNodeIndex index = root.getNodeIndex();
+		assertTrue("Nodes should be indexed.", index.size() > 0); //$NON-NLS-1$
+		for (int start = 0; start <= SOURCE.length(); start++) {
+			for (int end = start; end <= start + 3; end++) {
+				final MatchNodeVisitor visitor = new MatchNodeVisitor(start, end);
+				root.traverse(visitor);
+				assertSame("Wrong node for [" + start + ", " + end + "].", visitor.getNode(), index.findNode(start, end)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		}
+	}
+
+	public void testIdentifierFound() {
+		final LuaSourceRoot root = parse(SOURCE);
+		final int offset = SOURCE.indexOf("f(i)"); //$NON-NLS-1$
+		assertTrue("Identifier should be found under selection.", root.getNodeIndex().findNode(offset, offset + 1) instanceof Identifier); //$NON-NLS-1$
+	}
+
+	public void testIndexKeptUntilModification() {
+		final LuaSourceRoot root = parse(SOURCE);
+		final LuaNodeIndex index = root.getNodeIndex();
+		assertSame("Nodes should be indexed once.", index, root.getNodeIndex()); //$NON-NLS-1$
+		root.incrementRevision();
+		assertNotSame("Nodes should be indexed again after modification.", index, root.getNodeIndex()); //$NON-NLS-1$
+	}
+}
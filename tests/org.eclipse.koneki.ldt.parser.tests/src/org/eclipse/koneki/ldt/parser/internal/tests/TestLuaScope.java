@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.koneki.ldt.parser.ast.LuaScope;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.internal.tests.utils.AbstractParserTest;
+
+/**
+ * Checks local declarations visible at offsets of a source, as found in its {@link LuaScope} tree
+ */
+public class TestLuaScope extends AbstractParserTest {
+
+	private static final String SOURCE = "local a = 1\n" //$NON-NLS-1$
+			+ "local function f(p)\n" //$NON-NLS-1$
+			+ "  local b = 2\n" //$NON-NLS-1$
+			+ "  for i = 1, 2 do\n" //$NON-NLS-1$
+			+ "    local a = i\n" //$NON-NLS-1$
+			+ "    print(a)\n" //$NON-NLS-1$
+			+ "  end\n" //$NON-NLS-1$
+			+ "  print(b)\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "print(a)\n"; //$NON-NLS-1$
+
+	private static final String SHADOWING_SOURCE = "local x = 1\n" //$NON-NLS-1$
+			+ "do\n" //$NON-NLS-1$
+			+ "  local x = x + 1\n" //$NON-NLS-1$
+			+ "  repeat\n" //$NON-NLS-1$
+			+ "    local r = x\n" //$NON-NLS-1$
+			+ "  until r > 0\n" //$NON-NLS-1$
+			+ "  print(x)\n" //$NON-NLS-1$
+			+ "end\n"; //$NON-NLS-1$
+
+	private LuaSourceRoot root;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = parse(SOURCE);
+	}
+
+	private static Set<String> names(final List<Declaration> declarations) {
+		final List<String> names = new ArrayList<String>();
+		for (final Declaration declaration : declarations) {
+			names.add(declaration.getName());
+		}
+		final Set<String> distinct = new HashSet<String>(names);
+		assertEquals("A name should only be visible once.", names.size(), distinct.size()); //$NON-NLS-1$
+		return distinct;
+	}
+
+	private static Set<String> expected(final String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+	public void testLoopBody() {
+		final List<Declaration> visible = root.getScope().getVisibleDeclarations(SOURCE.indexOf("print(a)")); //$NON-NLS-1$
+		assertEquals(expected("a", "i", "b", "p", "f"), names(visible)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		for (final Declaration declaration : visible) {
+			if ("a".equals(declaration.getName())) { //$NON-NLS-1$
+				assertTrue("Local of loop should hide outer one.", declaration.sourceStart() > SOURCE.indexOf("for")); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+
+	public void testFunctionBody() {
+		final List<Declaration> visible = root.getScope().getVisibleDeclarations(SOURCE.indexOf("print(b)")); //$NON-NLS-1$
+		assertEquals(expected("a", "b", "p", "f"), names(visible)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	public void testTopLevel() {
+		final List<Declaration> visible = root.getScope().getVisibleDeclarations(SOURCE.lastIndexOf("print(a)")); //$NON-NLS-1$
+		assertEquals(expected("a", "f"), names(visible)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testNotYetDeclared() {
+		final List<Declaration> visible = root.getScope().getVisibleDeclarations(0);
+		assertTrue("Nothing should be declared at start of source.", visible.isEmpty()); //$NON-NLS-1$
+	}
+
+	/** @return the only visible declaration with given name */
+	private static Declaration visible(final List<Declaration> visible, final String name) {
+		for (final Declaration declaration : visible) {
+			if (name.equals(declaration.getName())) {
+				return declaration;
+			}
+		}
+		fail(name + " should be visible."); //$NON-NLS-1$
+		return null;
+	}
+
+	public void testLocalNotVisibleInItsStatement() throws Exception {
+		final LuaScope scope = parse(SHADOWING_SOURCE).getScope();
+		// Value of inner x refers to outer x
+		final Declaration x = visible(scope.getVisibleDeclarations(SHADOWING_SOURCE.indexOf("x + 1")), "x"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("Outer x should be visible.", x.sourceStart() < SHADOWING_SOURCE.indexOf("do")); //$NON-NLS-1$ //$NON-NLS-2$
+		// Once its statement ends, inner x hides outer one
+		final Declaration inner = visible(scope.getVisibleDeclarations(SHADOWING_SOURCE.indexOf("print(x)")), "x"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("Inner x should hide outer one.", inner.sourceStart() > SHADOWING_SOURCE.indexOf("do")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testRepeatBody() throws Exception {
+		final LuaScope scope = parse(SHADOWING_SOURCE).getScope();
+		final int condition = SHADOWING_SOURCE.indexOf("r > 0"); //$NON-NLS-1$
+		assertEquals("Condition of repeat should see locals of its body.", expected("x", "r"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				names(scope.getVisibleDeclarations(condition)));
+		assertNotSame("Repeat should open a scope.", scope.getScopeAt(SHADOWING_SOURCE.indexOf("do")), scope.getScopeAt(condition)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Locals of repeat should not be visible after it.", expected("x"), //$NON-NLS-1$ //$NON-NLS-2$
+				names(scope.getVisibleDeclarations(SHADOWING_SOURCE.indexOf("print(x)")))); //$NON-NLS-1$
+	}
+
+	public void testScopeKeptUntilModification() {
+		final LuaScope scope = root.getScope();
+		assertSame("Scope tree should be computed once.", scope, root.getScope()); //$NON-NLS-1$
+		root.incrementRevision();
+		assertNotSame("Scope tree should be computed again after modification.", scope, root.getScope()); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.internal.parser.LuaStatePool;
+
+import com.naef.jnlua.LuaState;
+
+public class TestLuaStatePool extends TestCase {
+
+	/** Idle timeout of tested pools, in milliseconds */
+	private static final long IDLE_TIMEOUT = 50;
+
+	private static LuaStatePool newPool(final int maxSize, final int minIdle) {
+		return new LuaStatePool(maxSize, minIdle, IDLE_TIMEOUT) {
+			@Override
+			protected LuaState createState() {
+				return new LuaState();
+			}
+		};
+	}
+
+	public void testStateReused() {
+		final LuaStatePool pool = newPool(2, 0);
+		try {
+			final LuaState state = pool.acquire();
+			pool.release(state);
+			assertSame("Idle state should be reused.", state, pool.acquire()); //$NON-NLS-1$
+			assertEquals("Wrong pool size.", 1, pool.getSize()); //$NON-NLS-1$
+		} finally {
+			pool.close();
+		}
+	}
+
+	public void testIdlePoolShrinks() throws InterruptedException {
+		final LuaStatePool pool = newPool(2, 0);
+		try {
+			final LuaState first = pool.acquire();
+			final LuaState second = pool.acquire();
+			pool.release(first);
+			pool.release(second);
+			assertEquals("Released states should be idle.", 2, pool.getIdleCount()); //$NON-NLS-1$
+
+			// No state is acquired nor released meanwhile, only the timer can evict them
+			final long deadline = System.currentTimeMillis() + IDLE_TIMEOUT * 40;
+			while (pool.getSize() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(IDLE_TIMEOUT);
+			}
+			assertEquals("Idle states should have been evicted without using pool.", 0, pool.getSize()); //$NON-NLS-1$
+			assertFalse("Evicted state should be closed.", first.isOpen()); //$NON-NLS-1$
+		} finally {
+			pool.close();
+		}
+	}
+
+	public void testMinIdleKept() throws InterruptedException {
+		final LuaStatePool pool = newPool(2, 1);
+		try {
+			final LuaState first = pool.acquire();
+			final LuaState second = pool.acquire();
+			pool.release(first);
+			pool.release(second);
+			Thread.sleep(IDLE_TIMEOUT * 2);
+			pool.evictIdleStates();
+			assertEquals("Minimum count of idle states should be kept.", 1, pool.getIdleCount()); //$NON-NLS-1$
+			assertSame("Most recently used state should be kept.", second, pool.acquire()); //$NON-NLS-1$
+		} finally {
+			pool.close();
+		}
+	}
+
+	public void testOldStatesEvictedOnAcquire() throws InterruptedException {
+		final LuaStatePool pool = newPool(2, 0);
+		try {
+			final LuaState state = pool.acquire();
+			pool.release(state);
+			Thread.sleep(IDLE_TIMEOUT * 2);
+			final LuaState acquired = pool.acquire();
+			assertNotSame("A state idle for too long should not be handed out.", state, acquired); //$NON-NLS-1$
+			assertFalse("State idle for too long should be closed.", state.isOpen()); //$NON-NLS-1$
+			assertEquals("Wrong pool size.", 1, pool.getSize()); //$NON-NLS-1$
+		} finally {
+			pool.close();
+		}
+	}
+}
@@ -10,31 +10,66 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.parser.internal.tests;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import junit.framework.TestCase;
 
+import org.eclipse.dltk.ast.parser.IModuleDeclaration;
 import org.eclipse.dltk.ast.parser.ISourceParser;
 import org.eclipse.dltk.compiler.env.ModuleSource;
+import org.eclipse.koneki.ldt.parser.AlternativeLuaSourceParser;
 import org.eclipse.koneki.ldt.parser.LuaSourceParserFactory;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
 import org.eclipse.koneki.ldt.parser.internal.tests.utils.DummyReporter;
 
 /**
- * Just checks if it is safe to parse several sources file simultaneously
+ * Checks if it is safe to parse several sources file simultaneously, with one or several parsing states.
  */
 public class TestMultipleParsing extends TestCase {
 
 	/** Increase this counter, in order to test harder */
 	private static final int THREAD_COUNT = 5;
 
+	/** Count of files parsed in parallel parsing test */
+	private static final int FILE_COUNT = 100;
+
+	private static final String CODE = "do local var= 21 var = 22 end set = 12 while true do set = 0 end repeat set = 1 until true for k = 1,10 do set = 2  end for k = 1,10,2 do set = 2  end for k,i in  12,15  do set =3 end local z = var or {} local var, v local c = nil local var = 12, 0 local function var (o) end while true or false do return end while 1 do return one end while 1 do return one, two end call({}) recall(-12) recall(true, false) local mod mod:sample() mod:sample('yop') mod:sample('yop', ...) if true then call() end if true then call() else recall() end local tab = {} local tab = { var = 12, 3+0 } if true then yop() end if false then raplapla() else yop() end if true then yop() elseif false then callThePolice() end if true then yop() elseif false then callThePolice() else hangUp() end no =function  ()end function another() end function par( x, ... ) end function par( ra, me, tres, ...)end function par( o ) return o end"; //$NON-NLS-1$
+
 	private class Parsing extends Thread {
 		@Override
 		public void run() {
-			final String code = "do local var= 21 var = 22 end set = 12 while true do set = 0 end repeat set = 1 until true for k = 1,10 do set = 2  end for k = 1,10,2 do set = 2  end for k,i in  12,15  do set =3 end local z = var or {} local var, v local c = nil local var = 12, 0 local function var (o) end while true or false do return end while 1 do return one end while 1 do return one, two end call({}) recall(-12) recall(true, false) local mod mod:sample() mod:sample('yop') mod:sample('yop', ...) if true then call() end if true then call() else recall() end local tab = {} local tab = { var = 12, 3+0 } if true then yop() end if false then raplapla() else yop() end if true then yop() elseif false then callThePolice() end if true then yop() elseif false then callThePolice() else hangUp() end no =function  ()end function another() end function par( x, ... ) end function par( ra, me, tres, ...)end function par( o ) return o end"; //$NON-NLS-1$
 			ISourceParser parser = new LuaSourceParserFactory().createSourceParser();
-			ModuleSource input = new ModuleSource(code);
+			ModuleSource input = new ModuleSource(CODE);
 			parser.parse(input, new DummyReporter());
 		}
 	}
 
+	/** Parses a source and provides its count of top level statements */
+	private static class CountingParsing implements Callable<Integer> {
+		private final String code;
+
+		public CountingParsing(final String code) {
+			this.code = code;
+		}
+
+		@Override
+		public Integer call() {
+			final ISourceParser parser = new LuaSourceParserFactory().createSourceParser();
+			final DummyReporter reporter = new DummyReporter();
+			final IModuleDeclaration module = parser.parse(new ModuleSource(code), reporter);
+			assertTrue("No LuaSourceRoot provided.", module instanceof LuaSourceRoot); //$NON-NLS-1$
+			assertFalse("Error while parsing.", ((LuaSourceRoot) module).hasError()); //$NON-NLS-1$
+			assertTrue("Problems reported while parsing.", reporter.getProblems().isEmpty()); //$NON-NLS-1$
+			return ((LuaSourceRoot) module).getStatements().size();
+		}
+	}
+
 	public void testMultipleParsing() {
 
 		// Create several threads
@@ -61,4 +96,65 @@ public class TestMultipleParsing extends TestCase {
 		assertEquals("A thread encounter an error", count, THREAD_COUNT); //$NON-NLS-1$
 	}
 
+	/**
+	 * Parses a bunch of files from several threads, first with a single parsing state as before pooling, then with a state per thread. Results
+	 * have to be the same as the ones of sequential parsing. Throughput of both is compared by <code>ParallelParsingBenchmarks</code>.
+	 */
+	public void testParallelParsingResults() throws InterruptedException, ExecutionException {
+		// Source files with different sizes
+		final List<String> sources = new ArrayList<String>(FILE_COUNT);
+		for (int k = 0; k < FILE_COUNT; k++) {
+			final StringBuilder code = new StringBuilder();
+			for (int repeat = 0; repeat <= k % 10; repeat++) {
+				code.append(CODE).append('\n');
+			}
+			sources.add(code.toString());
+		}
+
+		// Sequential reference
+		final List<Integer> expected = new ArrayList<Integer>(FILE_COUNT);
+		for (final String source : sources) {
+			expected.add(new CountingParsing(source).call());
+		}
+
+		final String poolSize = System.getProperty(AlternativeLuaSourceParser.POOL_SIZE_PROPERTY);
+		try {
+			parseWithPool(1, sources, expected);
+			parseWithPool(THREAD_COUNT, sources, expected);
+		} finally {
+			if (poolSize == null) {
+				System.clearProperty(AlternativeLuaSourceParser.POOL_SIZE_PROPERTY);
+			} else {
+				System.setProperty(AlternativeLuaSourceParser.POOL_SIZE_PROPERTY, poolSize);
+			}
+			AlternativeLuaSourceParser.closeStatePool();
+		}
+	}
+
+	/**
+	 * Parses sources from {@link #THREAD_COUNT} threads with a pool of given size, twice so that states booted by the first run are reused.
+	 */
+	private static void parseWithPool(final int poolSize, final List<String> sources, final List<Integer> expected) throws InterruptedException,
+			ExecutionException {
+		System.setProperty(AlternativeLuaSourceParser.POOL_SIZE_PROPERTY, Integer.toString(poolSize));
+		AlternativeLuaSourceParser.closeStatePool();
+		parseInParallel(sources, expected);
+		parseInParallel(sources, expected);
+	}
+
+	private static void parseInParallel(final List<String> sources, final List<Integer> expected) throws InterruptedException,
+			ExecutionException {
+		final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		try {
+			final List<Future<Integer>> results = new ArrayList<Future<Integer>>(sources.size());
+			for (final String source : sources) {
+				results.add(executor.submit(new CountingParsing(source)));
+			}
+			for (int k = 0; k < sources.size(); k++) {
+				assertEquals("Parallel parsing differs from sequential one for file " + k, expected.get(k), results.get(k).get()); //$NON-NLS-1$
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
 }
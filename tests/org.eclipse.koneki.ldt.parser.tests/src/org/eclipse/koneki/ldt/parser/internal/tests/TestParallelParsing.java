@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.dltk.ast.parser.IModuleDeclaration;
+import org.eclipse.dltk.compiler.env.IModuleSource;
+import org.eclipse.dltk.compiler.env.ModuleSource;
+import org.eclipse.dltk.compiler.problem.IProblemReporter;
+import org.eclipse.koneki.ldt.internal.parser.ParallelParsingJob;
+import org.eclipse.koneki.ldt.parser.AlternativeLuaSourceParser;
+import org.eclipse.koneki.ldt.parser.internal.tests.utils.DummyReporter;
+
+/**
+ * Checks that modules parsed ahead by {@link ParallelParsingJob} give the same declarations as modules parsed one at a time.
+ */
+public class TestParallelParsing extends TestCase {
+
+	/** More modules than results workers can hold, so workers have to wait for builder */
+	private static final int MODULE_COUNT = 40;
+
+	private static final int PARALLELISM = 3;
+
+	private static final ParallelParsingJob.ModuleParser PARSER = new ParallelParsingJob.ModuleParser() {
+		@Override
+		public IModuleDeclaration parse(final IModuleSource module, final IProblemReporter reporter) {
+			return new AlternativeLuaSourceParser().parse(module, reporter);
+		}
+	};
+
+	private static List<ModuleSource> modules() {
+		final List<ModuleSource> modules = new ArrayList<ModuleSource>();
+		for (int i = 0; i < MODULE_COUNT; i++) {
+			final StringBuilder source = new StringBuilder();
+			for (int j = 0; j <= i % 7; j++) {
+				source.append("local v").append(j).append(" = ").append(i).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+				source.append("function f").append(j).append("(p, q) local r = p return r end\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			if (i % 5 == 0) {
+				// Some modules have syntax errors
+				source.append("local = \n"); //$NON-NLS-1$
+			}
+			modules.add(new ModuleSource("module" + i + ".lua", source.toString())); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return modules;
+	}
+
+	public void testSameDeclarationsInOrder() throws Exception {
+		checkSameDeclarations(modules());
+	}
+
+	public void testSameDeclarationsInReverseOrder() throws Exception {
+		final List<ModuleSource> modules = modules();
+		final ParallelParsingJob job = new ParallelParsingJob(modules, PARSER, PARALLELISM);
+		job.schedule();
+		try {
+			// Builder parses modules not claimed yet by itself, and takes the ones already parsed
+			final List<ModuleSource> reversed = new ArrayList<ModuleSource>(modules);
+			Collections.reverse(reversed);
+			for (final ModuleSource module : reversed) {
+				assertSameDeclarations(module, job.take(module, module.getContentsAsCharArray()));
+			}
+		} finally {
+			job.cancel();
+			job.join();
+		}
+	}
+
+	public void testChangedContentsNotProvided() throws Exception {
+		final List<ModuleSource> modules = modules();
+		final ParallelParsingJob job = new ParallelParsingJob(modules, PARSER, PARALLELISM);
+		job.schedule();
+		try {
+			for (final ModuleSource module : modules) {
+				final char[] changed = (module.getSourceContents() + "\nlocal changed").toCharArray(); //$NON-NLS-1$
+				assertNull("AST of other contents should not be provided.", job.take(module, changed)); //$NON-NLS-1$
+			}
+		} finally {
+			job.cancel();
+			job.join();
+		}
+	}
+
+	private static void checkSameDeclarations(final List<ModuleSource> modules) throws Exception {
+		final ParallelParsingJob job = new ParallelParsingJob(modules, PARSER, PARALLELISM);
+		job.schedule();
+		try {
+			int provided = 0;
+			for (final ModuleSource module : modules) {
+				final ParallelParsingJob.Result result = job.take(module, module.getContentsAsCharArray());
+				if (result != null) {
+					provided++;
+				}
+				assertSameDeclarations(module, result);
+			}
+			assertTrue("Some modules should have been parsed ahead.", provided > 0); //$NON-NLS-1$
+		} finally {
+			job.cancel();
+			job.join();
+		}
+	}
+
+	/**
+	 * Compares result of parsing ahead, when there is one, to a sequential parse of the same module, problems included
+	 */
+	private static void assertSameDeclarations(final ModuleSource module, final ParallelParsingJob.Result result) throws Exception {
+		if (result == null) {
+			// Builder parses it sequentially
+			return;
+		}
+		final DummyReporter expectedProblems = new DummyReporter();
+		final IModuleDeclaration expected = PARSER.parse(module, expectedProblems);
+		final DummyReporter actualProblems = new DummyReporter();
+		result.getProblems().copyTo(actualProblems);
+		assertEquals("Wrong declarations in " + module.getFileName(), describe(expected), describe(result.getModule())); //$NON-NLS-1$
+		assertEquals("Wrong problem count in " + module.getFileName(), expectedProblems.getProblems().size(), //$NON-NLS-1$
+				actualProblems.getProblems().size());
+	}
+
+	/** Describes declarations with their type, name and offsets, in traversal order */
+	private static List<String> describe(final IModuleDeclaration module) throws Exception {
+		final List<String> description = new ArrayList<String>();
+		((ASTNode) module).traverse(new ASTVisitor() {
+			@Override
+			public boolean visitGeneral(final ASTNode node) throws Exception {
+				if (node instanceof Declaration) {
+					final Declaration declaration = (Declaration) node;
+					description.add(declaration.getClass().getSimpleName() + ' ' + declaration.getName() + " [" //$NON-NLS-1$
+							+ declaration.sourceStart() + ',' + declaration.sourceEnd() + ']');
+				}
+				return true;
+			}
+		});
+		return description;
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.internal.parser.RequireGraph;
+
+public class TestRequireGraph extends TestCase {
+
+	private static Set<String> set(final String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+	/** Kinds of exported names, by name, from names each followed by its kind */
+	private static Map<String, String> fields(final String... namesAndKinds) {
+		final Map<String, String> fields = new HashMap<String, String>();
+		for (int i = 0; i < namesAndKinds.length; i += 2) {
+			fields.put(namesAndKinds[i], namesAndKinds[i + 1]);
+		}
+		return fields;
+	}
+
+	private RequireGraph graph;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// a requires b, b requires c and d, d requires b
+		graph = new RequireGraph();
+		graph.update("a", Arrays.asList("b"), fields()); //$NON-NLS-1$ //$NON-NLS-2$
+		graph.update("b", Arrays.asList("c", "d", "c"), fields("f", "function")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		graph.update("c", Collections.<String> emptyList(), fields("g", "table")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		graph.update("d", Arrays.asList("b"), fields()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testEdges() {
+		assertTrue(graph.requires("a", "b")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertFalse(graph.requires("b", "a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Duplicated requires should be recorded once.", 2, graph.getRequires("b").size()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(set("a", "d"), new HashSet<String>(graph.getDependents("b"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(4, graph.size());
+	}
+
+	public void testRequireClosure() {
+		assertEquals(set("b", "c", "d"), graph.getRequireClosure("a")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals("Module requiring itself through a cycle is not part of its closure.", set("c", "d"), graph.getRequireClosure("b")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertTrue(graph.getRequireClosure("unknown").isEmpty()); //$NON-NLS-1$
+	}
+
+	public void testExportChangeInvalidatesDependentsOnly() {
+		final int a = graph.getStamp("a"); //$NON-NLS-1$
+		final int b = graph.getStamp("b"); //$NON-NLS-1$
+		final int d = graph.getStamp("d"); //$NON-NLS-1$
+		graph.update("c", Collections.<String> emptyList(), fields("g", "table")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("Same exports should not invalidate dependents.", b, graph.getStamp("b")); //$NON-NLS-1$ //$NON-NLS-2$
+		graph.update("c", Collections.<String> emptyList(), fields("g", "table", "h", "function")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		assertTrue("Dependent should be invalidated.", b != graph.getStamp("b")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Indirect dependent should not be invalidated.", a, graph.getStamp("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Unrelated module should not be invalidated.", d, graph.getStamp("d")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testKindChangeInvalidatesDependents() {
+		final int b = graph.getStamp("b"); //$NON-NLS-1$
+		// Same name, a table turned into a function
+		graph.update("c", Collections.<String> emptyList(), fields("g", "function")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertTrue("Dependent should be invalidated when kind of a field changes.", b != graph.getStamp("b")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testUpdateRequiresKeepsExports() {
+		// Module replayed from index, its exports are unknown
+		graph.updateRequires("e", Arrays.asList("c")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(graph.requires("e", "c")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertFalse(graph.hasExports("e")); //$NON-NLS-1$
+		final int a = graph.getStamp("a"); //$NON-NLS-1$
+		final int b = graph.getStamp("b"); //$NON-NLS-1$
+		final int e = graph.getStamp("e"); //$NON-NLS-1$
+		graph.updateRequires("b", Arrays.asList("c", "d")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("Same requires should not invalidate module.", b, graph.getStamp("b")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Known exports should be kept.", a, graph.getStamp("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		// Module parsed once exports are known
+		graph.update("c", Collections.<String> emptyList(), fields("g", "table")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("Same exports should not invalidate dependents.", e, graph.getStamp("e")); //$NON-NLS-1$ //$NON-NLS-2$
+		graph.updateRequires("a", Arrays.asList("e")); //$NON-NLS-1$ //$NON-NLS-2$
+		final int requiringE = graph.getStamp("a"); //$NON-NLS-1$
+		graph.update("e", Arrays.asList("c"), fields()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("Exports becoming known should invalidate dependents.", requiringE != graph.getStamp("a")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testRequiresChange() {
+		final int a = graph.getStamp("a"); //$NON-NLS-1$
+		graph.update("a", Arrays.asList("c"), fields()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("Module requiring other modules should be invalidated.", a != graph.getStamp("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(set("d"), new HashSet<String>(graph.getDependents("b"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(set("a", "b"), new HashSet<String>(graph.getDependents("c"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	public void testRemove() {
+		final int a = graph.getStamp("a"); //$NON-NLS-1$
+		graph.remove("b"); //$NON-NLS-1$
+		assertTrue("Dependent of removed module should be invalidated.", a != graph.getStamp("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(graph.getRequires("b").isEmpty()); //$NON-NLS-1$
+		assertTrue("Modules requiring removed one are still recorded.", graph.requires("a", "b")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertTrue("Removed module should not require other modules anymore.", graph.getDependents("d").isEmpty()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
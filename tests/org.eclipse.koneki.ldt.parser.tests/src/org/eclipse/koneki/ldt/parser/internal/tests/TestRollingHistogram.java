@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.internal.parser.RollingHistogram;
+
+public class TestRollingHistogram extends TestCase {
+
+	public void testPercentiles() {
+		final RollingHistogram histogram = new RollingHistogram(100);
+		for (int value = 100; value > 0; value--) {
+			histogram.record(value);
+		}
+		final long[] values = histogram.snapshot();
+		assertEquals("Wrong median.", 50, RollingHistogram.percentile(values, 50)); //$NON-NLS-1$
+		assertEquals("Wrong 99th percentile.", 99, RollingHistogram.percentile(values, 99)); //$NON-NLS-1$
+		assertEquals("Wrong maximum.", 100, RollingHistogram.percentile(values, 100)); //$NON-NLS-1$
+		assertEquals("Wrong minimum.", 1, RollingHistogram.percentile(values, 0)); //$NON-NLS-1$
+	}
+
+	public void testWindowKeepsRecentValues() {
+		final RollingHistogram histogram = new RollingHistogram(4);
+		for (int value = 1; value <= 10; value++) {
+			histogram.record(value);
+		}
+		final long[] values = histogram.snapshot();
+		assertEquals("Window should be full.", 4, values.length); //$NON-NLS-1$
+		assertEquals("Oldest values should be dropped.", 7, values[0]); //$NON-NLS-1$
+		assertEquals("Totals should cover all values.", 10, histogram.getCount()); //$NON-NLS-1$
+		assertEquals("Totals should cover all values.", 55, histogram.getTotal()); //$NON-NLS-1$
+	}
+
+	public void testReset() {
+		final RollingHistogram histogram = new RollingHistogram(4);
+		histogram.record(42);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.snapshot().length);
+		assertEquals(0, RollingHistogram.percentile(histogram.snapshot(), 50));
+	}
+}
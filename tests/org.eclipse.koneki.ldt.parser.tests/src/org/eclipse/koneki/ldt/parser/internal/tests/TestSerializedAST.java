@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.parser.internal.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.dltk.ast.expressions.Literal;
+import org.eclipse.dltk.ast.references.SimpleReference;
+import org.eclipse.koneki.ldt.internal.parser.DLTKObjectDecoder;
+import org.eclipse.koneki.ldt.parser.AlternativeLuaSourceParser;
+import org.eclipse.koneki.ldt.parser.ast.LuaSourceRoot;
+import org.eclipse.koneki.ldt.parser.ast.declarations.ModuleReference;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Checks that ASTs built through {@link DLTKObjectDecoder} are the same as the ones built by calling a Java function for each node, string
+ * values included.
+ */
+public class TestSerializedAST extends TestCase {
+
+	private static final String[] SOURCES = { "local s = 'a\\0b'", //$NON-NLS-1$
+			"local s = '\\255\\254'", //$NON-NLS-1$
+			"local s = '\\0'\nlocal t = { ['\\0'] = 1, k = '\\200' }", //$NON-NLS-1$
+			"local s = '\uD83D\uDE00 and \u00E9'\nlocal function f(p) return p .. '\uD834\uDD1E' end", //$NON-NLS-1$
+			"local m = require 'mod\\0ule'\nm.call('\\0', \"\\255\")", //$NON-NLS-1$
+			"local s = [[long\n\uD83D\uDE00 string]] -- comment \u00E9\nreturn s" }; //$NON-NLS-1$
+
+	private LuaState lua;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		lua = AlternativeLuaSourceParser.newLuaState();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		lua.close();
+		super.tearDown();
+	}
+
+	public void testSameASTInBothModes() throws Exception {
+		for (final String source : SOURCES) {
+			final List<String> expected = describe(buildPerNode(source));
+			final List<String> actual = describe(buildSerialized(source));
+			assertEquals("Serialized AST differs for " + source, expected, actual); //$NON-NLS-1$
+		}
+	}
+
+	public void testStringValues() throws Exception {
+		assertTrue("NUL should be kept in string value.", stringValues(buildSerialized(SOURCES[0])).contains("a\u0000b")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("Invalid bytes should be replaced.", //$NON-NLS-1$
+				stringValues(buildSerialized(SOURCES[1])).contains("\uFFFD\uFFFD")); //$NON-NLS-1$
+		assertTrue("Supplementary characters should be kept.", //$NON-NLS-1$
+				stringValues(buildSerialized(SOURCES[3])).contains("\uD83D\uDE00 and \u00E9")); //$NON-NLS-1$
+	}
+
+	public void testModuleNameWithNul() throws Exception {
+		final LuaSourceRoot root = buildSerialized(SOURCES[4]);
+		final List<String> references = new ArrayList<String>();
+		root.traverse(new ASTVisitor() {
+			@Override
+			public boolean visitGeneral(final ASTNode node) throws Exception {
+				if (node instanceof ModuleReference) {
+					references.add(((ModuleReference) node).getModuleNameReference());
+				}
+				return true;
+			}
+		});
+		assertEquals("Wrong module references.", 1, references.size()); //$NON-NLS-1$
+		assertEquals("mod\u0000ule", references.get(0)); //$NON-NLS-1$
+	}
+
+	private LuaSourceRoot buildPerNode(final String source) {
+		lua.getGlobal("parsemod"); //$NON-NLS-1$
+		lua.getField(-1, "ast_builder"); //$NON-NLS-1$
+		lua.pushString(source);
+		lua.call(1, 1);
+		final LuaSourceRoot root = lua.checkJavaObject(-1, LuaSourceRoot.class);
+		lua.pop(2);
+		assertFalse("Error while parsing " + source, root.hasError()); //$NON-NLS-1$
+		return root;
+	}
+
+	private LuaSourceRoot buildSerialized(final String source) {
+		lua.getGlobal("parsemod"); //$NON-NLS-1$
+		lua.getField(-1, "ast_serializer"); //$NON-NLS-1$
+		lua.pushString(source);
+		lua.call(1, 1);
+		final String serialized = lua.checkString(-1);
+		lua.pop(2);
+		final LuaSourceRoot root = DLTKObjectDecoder.decode(serialized);
+		assertFalse("Error while parsing " + source, root.hasError()); //$NON-NLS-1$
+		return root;
+	}
+
+	/** Describes each node with its type, offsets and value, in traversal order */
+	private static List<String> describe(final LuaSourceRoot root) throws Exception {
+		final List<String> description = new ArrayList<String>();
+		root.traverse(new ASTVisitor() {
+			@Override
+			public boolean visitGeneral(final ASTNode node) throws Exception {
+				final StringBuilder line = new StringBuilder(node.getClass().getSimpleName());
+				if (node instanceof Literal) {
+					line.append(' ').append(((Literal) node).getValue());
+				} else if (node instanceof SimpleReference) {
+					line.append(' ').append(((SimpleReference) node).getName());
+				} else if (node instanceof Declaration) {
+					line.append(' ').append(((Declaration) node).getName());
+				}
+				line.append(" [").append(node.sourceStart()).append(',').append(node.sourceEnd()).append(']'); //$NON-NLS-1$
+				description.add(line.toString());
+				return true;
+			}
+		});
+		return description;
+	}
+
+	/** Values of string literals, in traversal order */
+	private static List<String> stringValues(final LuaSourceRoot root) throws Exception {
+		final List<String> values = new ArrayList<String>();
+		root.traverse(new ASTVisitor() {
+			@Override
+			public boolean visitGeneral(final ASTNode node) throws Exception {
+				if (node instanceof org.eclipse.koneki.ldt.parser.ast.expressions.String) {
+					values.add(((Literal) node).getValue());
+				}
+				return true;
+			}
+		});
+		return values;
+	}
+}
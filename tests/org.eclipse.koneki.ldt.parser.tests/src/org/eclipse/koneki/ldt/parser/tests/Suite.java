@@ -17,12 +17,23 @@ import org.eclipse.koneki.ldt.parser.internal.modules.tests.TestModuleReference;
 import org.eclipse.koneki.ldt.parser.internal.modules.tests.TestModules;
 import org.eclipse.koneki.ldt.parser.internal.tables.tests.TestTables;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestASTValidity;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestBoundedCache;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestDeclarationIndex;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestDeclarations;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestExpressions;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestIncrementalReparse;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestLuaBinaryOperations;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestLuaModuleFields;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestLuaNodeIndex;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestLuaScope;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestLuaSourceParser;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestLuaStatePool;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestModuleDeclaration;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestMultipleParsing;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestParallelParsing;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestRequireGraph;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestRollingHistogram;
+import org.eclipse.koneki.ldt.parser.internal.tests.TestSerializedAST;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestSourceElementRequestVisitor;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestStatements;
 import org.eclipse.koneki.ldt.parser.internal.tests.TestUnaryOperations;
@@ -55,5 +66,16 @@ public class Suite extends TestSuite {
 		addTestSuite(TestModuleReference.class);
 		addTestSuite(TestModules.class);
 		addTestSuite(TestTables.class);
+		addTestSuite(TestIncrementalReparse.class);
+		addTestSuite(TestBoundedCache.class);
+		addTestSuite(TestDeclarationIndex.class);
+		addTestSuite(TestRollingHistogram.class);
+		addTestSuite(TestLuaScope.class);
+		addTestSuite(TestLuaNodeIndex.class);
+		addTestSuite(TestLuaModuleFields.class);
+		addTestSuite(TestRequireGraph.class);
+		addTestSuite(TestLuaStatePool.class);
+		addTestSuite(TestSerializedAST.class);
+		addTestSuite(TestParallelParsing.class);
 	}
 }